@@ -0,0 +1,64 @@
+package com.idt.codechallenge;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.idt.codechallenge.benchmarks.Workload;
+
+/**
+ * <pre>
+ * OptimizingBufferedReader over the query file, the way RecordMatcher uses it: passes over all queries, one pass per data record.
+ * - preload: first pass loads the file into memory, the rest read from memory;
+ * - stream: every pass re-opens and re-reads the file.
+ * Lives in the matcher's package: the reader is package-private.
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OptimizingBufferedReaderBenchmark {
+
+	private final static double MEMORY_RATIO = 0.1d;
+	private final static int BUFFER_SIZE = 8192;
+
+	@Param({"1", "100"})
+	public int passes;
+
+	@Benchmark
+	public void preload(Workload workload, Blackhole bh) throws IOException {
+		read(workload.getQueryFile(), true, bh);
+	}
+
+	@Benchmark
+	public void stream(Workload workload, Blackhole bh) throws IOException {
+		read(workload.getQueryFile(), false, bh);
+	}
+
+	private void read(String queryFile, boolean isOptimize, Blackhole bh) throws IOException {
+		try (OptimizingBufferedReader<Set<String>> reader = 
+				new OptimizingBufferedReader<Set<String>>(queryFile, isOptimize, MEMORY_RATIO, BUFFER_SIZE, Utils::toQueryWords)) {
+			for (int p = 0; p < passes; p++) {
+				Set<String> queryWords;
+				while ((queryWords = reader.readLine()) != null) {
+					bh.consume(queryWords);
+				}
+			}
+		}
+	}
+}
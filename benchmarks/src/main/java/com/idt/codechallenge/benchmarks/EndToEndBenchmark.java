@@ -0,0 +1,63 @@
+package com.idt.codechallenge.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.idt.codechallenge.RecordMatcher;
+import com.idt.codechallenge.concurrent.ConcurrentRecordMatcher;
+
+/**
+ * <pre>
+ * Whole runs, files to JSON: data file read from the local disk (OS cache - after warmup), output discarded.
+ * - recordMatcher: single-threaded RecordMatcher;
+ * - concurrentRecordMatcher: ConcurrentRecordMatcher with workerCount workers.
+ * workerCount is a parameter of concurrentRecordMatcher only: recordMatcher runs once per workload, not once per worker count.
+ * Query file is pre-loaded by default (that's what makes RecordMatcher usable at all on large data);
+ * -p optimizeQueryReads=false re-reads it for every record.
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EndToEndBenchmark {
+
+	private final static int BUFFER_SIZE = 8192;
+
+	@Param({"true"})
+	public boolean optimizeQueryReads;
+
+	/**
+	 * Worker count, of the benchmarks that take it.
+	 */
+	@State(Scope.Benchmark)
+	public static class Workers {
+		@Param({"1", "2", "4"})
+		public int workerCount;
+	}
+
+	@Benchmark
+	public long recordMatcher(Workload workload) throws IOException {
+		RecordMatcher matcher = new RecordMatcher(workload.dataFile, workload.queryFile, null, BUFFER_SIZE, false, optimizeQueryReads, false, false);
+		return matcher.match(new Workload.NullOutputStream());
+	}
+
+	@Benchmark
+	public long concurrentRecordMatcher(Workload workload, Workers workers) throws IOException {
+		ConcurrentRecordMatcher matcher = new ConcurrentRecordMatcher(workload.dataFile, workload.queryFile, workers.workerCount, BUFFER_SIZE, false, false);
+		return matcher.match(new Workload.NullOutputStream());
+	}
+}
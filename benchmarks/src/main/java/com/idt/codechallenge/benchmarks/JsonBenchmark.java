@@ -0,0 +1,94 @@
+package com.idt.codechallenge.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.gson.Gson;
+import com.idt.codechallenge.JsonMatchSink;
+import com.idt.codechallenge.MatchSink;
+import com.idt.codechallenge.Utils;
+
+/**
+ * <pre>
+ * JSON emission for all matches of the workload (matches are found once, in setup):
+ * - toJson: filtering out query words and building the JSON string - {@link Utils#toJson Utils.toJson};
+ * - sink: the same through JsonMatchSink, with writer and encoding, into an output stream that discards everything.
+ * Score is per whole set of matches; the match count is printed in setup.
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class JsonBenchmark {
+
+	/**
+	 * One match, as handed to a sink
+	 */
+	private static class Match {
+		final long line;
+		final int queryId;
+		final Set<String> queryWords;
+		final Map<String, Integer> wordCounts;
+
+		Match(long l, int q, Set<String> qw, Map<String, Integer> wc) {
+			line = l;
+			queryId = q;
+			queryWords = qw;
+			wordCounts = wc;
+		}
+	}
+
+	private List<Match> matches;
+	private Gson gson;
+
+	@Setup(Level.Trial)
+	public void setup(Workload workload) throws IOException {
+		List<Set<String>> queries = new ArrayList<Set<String>>();
+		for (String line : workload.queries) {
+			queries.add(Utils.toQueryWords(line));
+		}
+		matches = new ArrayList<Match>();
+		MatchSink collector = (line, queryId, queryWords, wordCounts) -> matches.add(new Match(line, queryId, queryWords, wordCounts));
+		for (int r = 0; r < workload.records.size(); r++) {
+			Utils.matchRow(r + 1, Utils.countWords(workload.records.get(r)), queries, collector);
+		}
+		System.out.println("matches: " + matches.size());
+		gson = new Gson();
+	}
+
+	@Benchmark
+	public void toJson(Blackhole bh) {
+		for (Match m : matches) {
+			bh.consume(Utils.toJson(m.line, m.queryWords, Utils.nonQueryWords(m.wordCounts, m.queryWords), gson));
+		}
+	}
+
+	@Benchmark
+	public void sink() throws IOException {
+		JsonMatchSink sink = new JsonMatchSink(new Workload.NullOutputStream());
+		for (Match m : matches) {
+			sink.onMatch(m.line, m.queryId, m.queryWords, m.wordCounts);
+		}
+		sink.flush();
+	}
+}
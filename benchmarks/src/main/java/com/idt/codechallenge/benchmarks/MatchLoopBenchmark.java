@@ -0,0 +1,66 @@
+package com.idt.codechallenge.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.idt.codechallenge.MatchSink;
+import com.idt.codechallenge.Utils;
+
+/**
+ * <pre>
+ * The per-row query loop: every pre-tokenized record against every query, matches handed to a sink that does nothing.
+ * Same loop as RecordMatcher.writeOutOnlyNonMatchingWords, minus the query reads
+ * (that one is private, and reads queries from its reader; {@link Utils#matchRow Utils.matchRow} is the shared in-memory version).
+ * Tokenization and output are not included - see TokenizerBenchmark and JsonBenchmark.
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MatchLoopBenchmark {
+
+	private List<Map<String, Integer>> rows;
+	private List<Set<String>> queries;
+
+	@Setup(Level.Trial)
+	public void setup(Workload workload) {
+		rows = new ArrayList<Map<String, Integer>>(workload.records.size());
+		for (String line : workload.records) {
+			rows.add(Utils.countWords(line));
+		}
+		queries = new ArrayList<Set<String>>(workload.queries.size());
+		for (String line : workload.queries) {
+			queries.add(Utils.toQueryWords(line));
+		}
+	}
+
+	@Benchmark
+	public long matchRows(Blackhole bh) throws IOException {
+		MatchSink sink = (line, queryId, queryWords, wordCounts) -> bh.consume(queryId);
+		long matchCount = 0;
+		for (int r = 0; r < rows.size(); r++) {
+			matchCount += Utils.matchRow(r + 1, rows.get(r), queries, sink);
+		}
+		return matchCount;
+	}
+}
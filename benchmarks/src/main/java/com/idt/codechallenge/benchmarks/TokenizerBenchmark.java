@@ -0,0 +1,33 @@
+package com.idt.codechallenge.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.idt.codechallenge.Utils;
+
+/**
+ * Row tokenization: CSV line to map of {word,count} ({@link Utils#countWords(String) Utils.countWords}), every record of the workload.
+ * Score is per whole data set; divide by recordCount for per-row cost.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenizerBenchmark {
+
+	@Benchmark
+	public void countWords(Workload workload, Blackhole bh) {
+		for (String line : workload.records) {
+			bh.consume(Utils.countWords(line));
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package com.idt.codechallenge.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.idt.codechallenge.WorkloadGenerator;
+
+/**
+ * <pre>
+ * Synthetic data and query files shared by the benchmarks, made by {@link WorkloadGenerator WorkloadGenerator};
+ * one set per combination of parameters.
+ *
+ * Records: WORDS_PER_RECORD words each, Zipf-distributed (zipfExponent) over a VOCABULARY_SIZE-word vocabulary.
+ * Queries: WORDS_PER_QUERY distinct words each, picked so that each matches about selectivity of the records.
+ *
+ * Seeded: the same parameters always give the same files, run to run.
+ * </pre>
+ */
+@State(Scope.Benchmark)
+public class Workload {
+
+	final static int VOCABULARY_SIZE = 10000;
+	final static int WORDS_PER_RECORD = 10;
+	final static int WORDS_PER_QUERY = 2;
+	final static long SEED = 42;
+
+	@Param({"10000", "100000"})
+	public int recordCount;
+
+	@Param({"10", "100"})
+	public int queryCount;
+
+	@Param({"1.0"})
+	public double zipfExponent;
+
+	@Param({"0.0025"})
+	public double selectivity;
+
+	/**
+	 * Lines of the data file, as written
+	 */
+	List<String> records;
+
+	/**
+	 * Lines of the query file, as written
+	 */
+	List<String> queries;
+
+	String dataFile;
+	String queryFile;
+
+	private Path dir;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		WorkloadGenerator generator = WorkloadGenerator.Builder.builder()
+				.withVocabularySize(VOCABULARY_SIZE)
+				.withZipfExponent(zipfExponent)
+				.withWordsPerRecord(WORDS_PER_RECORD)
+				.withQueryLength(WORDS_PER_QUERY)
+				.withSelectivity(selectivity)
+				.withSeed(SEED)
+				.build();
+
+		dir = Files.createTempDirectory("idt-bench");
+		Path data = dir.resolve("records.txt");
+		Path query = dir.resolve("queries.txt");
+		dataFile = data.toAbsolutePath().toString();
+		queryFile = query.toAbsolutePath().toString();
+		generator.writeData(dataFile, recordCount);
+		generator.writeQueries(queryFile, queryCount);
+
+		records = Files.readAllLines(data);
+		queries = Files.readAllLines(query);
+	}
+
+	@TearDown(Level.Trial)
+	public void teardown() throws IOException {
+		Files.deleteIfExists(dir.resolve("records.txt"));
+		Files.deleteIfExists(dir.resolve("queries.txt"));
+		Files.deleteIfExists(dir);
+	}
+
+	/**
+	 * @return full path of the data file
+	 */
+	public String getDataFile() {
+		return dataFile;
+	}
+
+	/**
+	 * @return full path of the query file
+	 */
+	public String getQueryFile() {
+		return queryFile;
+	}
+
+	/**
+	 * Output that goes nowhere: end-to-end runs pay for JSON, not for a terminal.
+	 */
+	final static class NullOutputStream extends OutputStream {
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	}
+}
@@ -0,0 +1,288 @@
+package com.idt.codechallenge;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * <pre>
+ * Output stream that takes the writing off the caller's thread: for a matcher whose results go to a slow output
+ * (stdout piped into a slow consumer, a network share...).
+ *
+ * Bytes are collected in one of several swap buffers. When it is full (size policy) the buffer is handed over
+ * to a writer thread, and the caller goes on filling the next free one; the writer writes full buffers out in order,
+ * and gives them back. The caller waits only when there is no free buffer - all of them full, or being written.
+ * With a time policy the writer also takes the buffer being filled, if what is in it has waited longer than flushMillis:
+ * results of a slow-matching run don't sit in memory until a buffer fills up.
+ * The stream behind is flushed whenever the writer has caught up.
+ *
+ * flush() hands over what there is, and waits for everything to be written and flushed; close() does the same,
+ * then closes the stream behind (System.out excepted).
+ * An error writing the stream behind comes out of the next write(), flush() or close().
+ *
+ * Thread safety: safe; meant for one writing thread.
+ * </pre>
+ */
+public class AsyncOutputStream extends OutputStream {
+
+	public final static int DEFAULT_BUFFERS = 2;
+	public final static int DEFAULT_BUFFERSIZE = 64 * 1024;
+
+	private final OutputStream out;
+	private final long flushNanos;
+	private final WriterThread writer;
+
+	// all below: guarded by this
+	private final Deque<Buffer> full = new ArrayDeque<Buffer>();
+	private final Deque<Buffer> free = new ArrayDeque<Buffer>();
+	// the one being filled
+	private Buffer current;
+	// the writer is writing one out
+	private boolean isWriting = false;
+	// the writer has caught up, and is flushing the stream behind
+	private boolean isFlushing = false;
+	private boolean isClosed = false;
+	private IOException error = null;
+
+	/**
+	 * One swap buffer.
+	 */
+	private static class Buffer {
+		private final byte[] bytes;
+		private int count = 0;
+		// when the first of its bytes came
+		private long since;
+
+		Buffer(int size) {
+			bytes = new byte[size];
+		}
+	}
+
+	/**
+	 * Writes full buffers out, in order.
+	 */
+	private class WriterThread extends Thread {
+
+		WriterThread() {
+			super("async-output");
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			try {
+				Buffer buffer;
+				while ((buffer = next()) != null) {
+					out.write(buffer.bytes, 0, buffer.count);
+					boolean isCaughtUp = written(buffer);
+					if (isCaughtUp) {
+						out.flush();
+						flushed();
+					}
+				}
+				out.flush();
+			}
+			catch (IOException e) {
+				failed(e);
+			}
+			catch (InterruptedException e) {
+				failed(new IOException("Async output writer interrupted", e));
+			}
+		}
+	}
+
+	/**
+	 * Two buffers of 64K, size policy only.
+	 * @param out stream to write to
+	 */
+	public AsyncOutputStream(OutputStream out) {
+		this(out, null, null, null);
+	}
+
+	/**
+	 * @param out stream to write to
+	 * @param buffers number of swap buffers, at least 2; default: 2
+	 * @param bufferSize size of each, in bytes: a buffer is handed over to the writer when full; default: 64K
+	 * @param flushMillis max time bytes wait in a buffer that is not full; default (and 0): no limit - size policy only
+	 */
+	public AsyncOutputStream(OutputStream out, Integer buffers, Integer bufferSize, Long flushMillis) {
+		if (out == null) throw new IllegalArgumentException("out cannot be null");
+		if (buffers != null && buffers < 2) throw new IllegalArgumentException("buffers must be at least 2. Default is " + DEFAULT_BUFFERS);
+		if (bufferSize != null && bufferSize <= 0) throw new IllegalArgumentException("bufferSize must be positive. Default is " + DEFAULT_BUFFERSIZE);
+		if (flushMillis != null && flushMillis < 0) throw new IllegalArgumentException("flushMillis cannot be negative");
+		this.out = out;
+		int count = (buffers != null? buffers : DEFAULT_BUFFERS);
+		int size = (bufferSize != null? bufferSize : DEFAULT_BUFFERSIZE);
+		flushNanos = (flushMillis != null? flushMillis : 0) * 1_000_000L;
+		current = new Buffer(size);
+		for (int i = 1; i < count; i++) free.add(new Buffer(size));
+		writer = new WriterThread();
+		writer.start();
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] {(byte)b}, 0, 1);
+	}
+
+	@Override
+	public synchronized void write(byte[] b, int off, int len) throws IOException {
+		if (isClosed) throw new IOException("Stream closed");
+		while (len > 0) {
+			check();
+			if (current.count == 0) current.since = System.nanoTime();
+			int n = Math.min(len, current.bytes.length - current.count);
+			System.arraycopy(b, off, current.bytes, current.count, n);
+			current.count += n;
+			off += n;
+			len -= n;
+			if (current.count == current.bytes.length) handOver();
+		}
+	}
+
+	/**
+	 * Hands over what there is, waits until it is all written and the stream behind is flushed.
+	 */
+	@Override
+	public synchronized void flush() throws IOException {
+		if (isClosed) return;
+		if (current.count > 0) handOver();
+		await();
+	}
+
+	/**
+	 * Flushes, stops the writer, closes the stream behind - unless it is System.out.
+	 */
+	@Override
+	public void close() throws IOException {
+		IOException failure = null;
+		synchronized (this) {
+			if (isClosed) return;
+			try {
+				flush();
+			}
+			catch (IOException e) {
+				failure = e;
+			}
+			isClosed = true;
+			notifyAll();
+		}
+		try {
+			writer.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			if (failure == null) failure = new IOException("Interrupted while closing", e);
+		}
+		if (out != System.out) out.close();
+		if (failure != null) throw failure;
+		synchronized (this) {
+			check();
+		}
+	}
+
+	/**
+	 * Caller: current buffer goes to the writer; the next free one becomes current. Waits if there is none.
+	 */
+	private void handOver() throws IOException {
+		while (free.isEmpty()) {
+			check();
+			waitHere();
+		}
+		full.add(current);
+		current = free.poll();
+		notifyAll();
+	}
+
+	/**
+	 * Caller: waits until nothing is left to write, and the stream behind is flushed.
+	 */
+	private void await() throws IOException {
+		while (!full.isEmpty() || isWriting || isFlushing) {
+			check();
+			waitHere();
+		}
+		check();
+	}
+
+	private void waitHere() throws IOException {
+		try {
+			wait();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the output", e);
+		}
+	}
+
+	/**
+	 * Writer: next buffer to write; the current one too, once its bytes have waited long enough. Null when closed.
+	 */
+	private synchronized Buffer next() throws InterruptedException {
+		while (full.isEmpty()) {
+			if (isClosed) return null;
+			if (flushNanos > 0 && current.count > 0) {
+				long waited = System.nanoTime() - current.since;
+				if (waited >= flushNanos) {
+					// writer is idle, so all others are free
+					full.add(current);
+					current = free.poll();
+					break;
+				}
+				long millis = (flushNanos - waited) / 1_000_000L;
+				wait(millis, (int)((flushNanos - waited) % 1_000_000L));
+			}
+			else if (flushNanos > 0) {
+				wait(flushNanos / 1_000_000L, (int)(flushNanos % 1_000_000L));
+			}
+			else {
+				wait();
+			}
+		}
+		isWriting = true;
+		return full.poll();
+	}
+
+	/**
+	 * Writer: buffer is written, back to the free ones.
+	 * @return true when there is nothing else to write: the writer flushes the stream behind - callers of flush() wait for that too
+	 */
+	private synchronized boolean written(Buffer buffer) {
+		buffer.count = 0;
+		free.add(buffer);
+		isWriting = false;
+		isFlushing = full.isEmpty();
+		notifyAll();
+		return isFlushing;
+	}
+
+	/**
+	 * Writer: the stream behind is flushed.
+	 */
+	private synchronized void flushed() {
+		isFlushing = false;
+		notifyAll();
+	}
+
+	/**
+	 * Writer: can't write any more; callers waiting are let through - with the error.
+	 */
+	private synchronized void failed(IOException e) {
+		error = e;
+		isWriting = false;
+		isFlushing = false;
+		notifyAll();
+	}
+
+	private void check() throws IOException {
+		if (error != null) throw new IOException("Error writing output", error);
+	}
+
+	/**
+	 * A string representation of this instance.
+	 */
+	public synchronized String toString() {
+		return "AsyncOutputStream: buffers=" + (free.size() + full.size() + 1 + (isWriting? 1 : 0)) + "; size=" + current.bytes.length + "; flushMillis=" + (flushNanos / 1_000_000L);
+	}
+}
@@ -0,0 +1,206 @@
+package com.idt.codechallenge;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.idt.codechallenge.metrics.CountingOutputStream;
+import com.idt.codechallenge.metrics.MatcherMetrics;
+
+/**
+ * <pre>
+ * Compact binary output, for machine consumers: the same results as {@link JsonMatchSink JsonMatchSink},
+ * with no query repeated on every line and no word spelled out more than once. Read it back with {@link BinaryResultReader BinaryResultReader}.
+ *
+ * Layout (varint: unsigned LEB128 - 7 bits a byte, low bits first):
+ *   header     : "LFRB", version (1 byte)
+ *   records    : one per match, in the order they came:
+ *                varint length of the rest; varint line #; varint query id;
+ *                varint number of pairs; that many pairs of (varint word id, varint count) - non-query words only
+ *   end        : varint 0
+ *   words      : varint number of words; per word, by id (0, 1, 2... in order of first use): varint length, UTF-8 bytes
+ *   queries    : varint number of queries; per query: varint query id, varint number of words, that many word ids
+ *   footer     : 8 bytes - offset of the words section (big-endian); "LFRB"
+ *
+ * Words and queries are only known once all records are written: they go at the end, on finish().
+ * A file not finished has no footer - and can't be read: a run that failed half way leaves no file that passes for complete.
+ * Offsets count from the first byte this sink writes: give it a stream of its own.
+ *
+ *   try (BinaryMatchSink sink = new BinaryMatchSink(out)) {
+ *       matcher.match(sink);
+ *       sink.finish();
+ *   }
+ *
+ * finish() writes the end, the dictionary and the footer, and flushes the stream; close() only flushes it.
+ * Neither closes the stream.
+ *
+ * Thread safety: safe (calls are serialized).
+ * </pre>
+ */
+public class BinaryMatchSink implements MatchSink, Closeable {
+
+	final static byte[] MAGIC = {'L', 'F', 'R', 'B'};
+	final static int VERSION = 1;
+	final static int FOOTER_LENGTH = 8 + MAGIC.length;
+
+	private final OutputStream out;
+
+	// word -> id, ids in order of first use
+	private final Map<String, Integer> wordIds = new HashMap<String, Integer>();
+	// query id -> its word ids
+	private final Map<Integer, int[]> queries = new TreeMap<Integer, int[]>();
+
+	// one record, built before its length is known
+	private byte[] record = new byte[256];
+	private int recordLength;
+	private final byte[] varint = new byte[10];
+
+	private long bytesWritten = 0;
+	private boolean isFinished = false;
+	private boolean isClosed = false;
+
+	/**
+	 * @param out stream to write to; bytes written are reported to metrics
+	 * @throws IOException when the header can't be written
+	 */
+	public BinaryMatchSink(OutputStream out) throws IOException {
+		if (out == null) throw new IllegalArgumentException("out cannot be null");
+		this.out = new BufferedOutputStream(new CountingOutputStream(out, MatcherMetrics.global()), 64 * 1024);
+		write(MAGIC, MAGIC.length);
+		this.out.write(VERSION);
+		bytesWritten++;
+	}
+
+	@Override
+	public synchronized void onMatch(long line, int queryId, Set<String> queryWords, Map<String, Integer> wordCounts) throws IOException {
+		if (isFinished || isClosed) throw new IOException("Sink " + (isClosed? "closed" : "finished"));
+		if (!queries.containsKey(queryId)) {
+			int[] ids = new int[queryWords.size()];
+			int i = 0;
+			for (String word : queryWords) ids[i++] = wordId(word);
+			queries.put(queryId, ids);
+		}
+
+		recordLength = 0;
+		put(line);
+		put(queryId);
+		// same words, same order as the JSON sink's
+		Map<String, Integer> result = Utils.nonQueryWords(wordCounts, queryWords);
+		put(result.size());
+		for (Map.Entry<String, Integer> entry : result.entrySet()) {
+			put(wordId(entry.getKey()));
+			put(entry.getValue());
+		}
+		writeVarint(recordLength);
+		write(record, recordLength);
+	}
+
+	@Override
+	public synchronized void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public synchronized long getCharsWritten() {
+		return bytesWritten;
+	}
+
+	/**
+	 * All results are in: writes the end of records, the words and the queries, and the footer; flushes.
+	 * Call it once the match succeeded - and only then.
+	 * @throws IOException when the stream fails; or the sink is closed already
+	 */
+	public synchronized void finish() throws IOException {
+		if (isFinished) return;
+		if (isClosed) throw new IOException("Sink closed");
+		isFinished = true;
+		writeVarint(0);
+
+		long wordsOffset = bytesWritten;
+		String[] words = new String[wordIds.size()];
+		for (Map.Entry<String, Integer> entry : wordIds.entrySet()) words[entry.getValue()] = entry.getKey();
+		writeVarint(words.length);
+		for (String word : words) {
+			byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+			writeVarint(bytes.length);
+			write(bytes, bytes.length);
+		}
+		writeVarint(queries.size());
+		for (Map.Entry<Integer, int[]> query : queries.entrySet()) {
+			writeVarint(query.getKey());
+			writeVarint(query.getValue().length);
+			for (int id : query.getValue()) writeVarint(id);
+		}
+
+		for (int shift = 56; shift >= 0; shift -= 8) out.write((int)(wordsOffset >>> shift));
+		bytesWritten += 8;
+		write(MAGIC, MAGIC.length);
+		out.flush();
+	}
+
+	/**
+	 * Flushes what was written; no footer - unless {@link #finish() finish()} wrote it already.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (isClosed) return;
+		isClosed = true;
+		out.flush();
+	}
+
+	private int wordId(String word) {
+		Integer id = wordIds.get(word);
+		if (id == null) {
+			id = wordIds.size();
+			wordIds.put(word, id);
+		}
+		return id;
+	}
+
+	/**
+	 * Varint into the record being built.
+	 */
+	private void put(long value) {
+		if (recordLength + varint.length > record.length) {
+			byte[] bigger = new byte[record.length * 2];
+			System.arraycopy(record, 0, bigger, 0, recordLength);
+			record = bigger;
+		}
+		recordLength = encode(value, record, recordLength);
+	}
+
+	private void writeVarint(long value) throws IOException {
+		write(varint, encode(value, varint, 0));
+	}
+
+	private void write(byte[] bytes, int length) throws IOException {
+		out.write(bytes, 0, length);
+		bytesWritten += length;
+	}
+
+	/**
+	 * Unsigned LEB128.
+	 * @return position after the last byte
+	 */
+	static int encode(long value, byte[] bytes, int at) {
+		while ((value & ~0x7FL) != 0) {
+			bytes[at++] = (byte)((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		bytes[at++] = (byte)value;
+		return at;
+	}
+
+	/**
+	 * A string representation of this instance.
+	 */
+	public synchronized String toString() {
+		return "BinaryMatchSink: words=" + wordIds.size() + "; queries=" + queries.size() + "; bytes=" + bytesWritten;
+	}
+}
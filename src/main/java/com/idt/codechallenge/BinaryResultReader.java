@@ -0,0 +1,280 @@
+package com.idt.codechallenge;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.gson.Gson;
+
+/**
+ * <pre>
+ * Reads results written by {@link BinaryMatchSink BinaryMatchSink}, one at a time, in the order they were written:
+ *   try (BinaryResultReader reader = new BinaryResultReader("results.bin")) {
+ *       BinaryResultReader.Result result;
+ *       while ((result = reader.next()) != null) { ... }
+ *   }
+ *
+ * The dictionary (words and queries) is at the end of the file: it is read first, through the footer -
+ * so the file has to be a local one (seekable), and complete (see {@link BinaryMatchSink#finish() finish}).
+ * Each result comes with its words spelled out; {@link Result#toJson() toJson()} gives the very line the JSON output has.
+ *
+ * Thread safety: not safe.
+ * </pre>
+ */
+public class BinaryResultReader implements Closeable {
+
+	private final static Gson GSON = new Gson();
+
+	private final String fileLocation;
+	private final SeekableByteChannel channel;
+	private final InputStream records;
+	private final String[] words;
+	// query id -> its words, in the order the matcher had them
+	private final Map<Integer, Set<String>> queries = new HashMap<Integer, Set<String>>();
+
+	private byte[] record = new byte[256];
+	private boolean isEnd = false;
+
+	/**
+	 * One match.
+	 */
+	public static class Result {
+		private final long line;
+		private final int queryId;
+		private final Set<String> queryWords;
+		private final Map<String, Integer> result;
+
+		Result(long line, int queryId, Set<String> queryWords, Map<String, Integer> result) {
+			this.line = line;
+			this.queryId = queryId;
+			this.queryWords = queryWords;
+			this.result = result;
+		}
+
+		/**
+		 * @return data file line # (1-based)
+		 */
+		public long getLine() {
+			return line;
+		}
+
+		/**
+		 * @return query id: its 0-based position in the query file
+		 */
+		public int getQueryId() {
+			return queryId;
+		}
+
+		/**
+		 * @return the query; read-only
+		 */
+		public Set<String> getQueryWords() {
+			return queryWords;
+		}
+
+		/**
+		 * @return {word, count} of the record's non-query words, in the order the JSON output has them
+		 */
+		public Map<String, Integer> getResult() {
+			return result;
+		}
+
+		/**
+		 * @return same JSON line as the JSON output, e.g. {"line":2,"query":"[red, apple]","result":{"chair":1}} - no line separator
+		 */
+		public String toJson() {
+			return Utils.toJson(line, queryWords, result, GSON);
+		}
+
+		/**
+		 * A string representation of this instance.
+		 */
+		public String toString() {
+			return toJson();
+		}
+	}
+
+	/**
+	 * Opens the file, reads its dictionary; results are read with {@link #next() next()}.
+	 * @param file full path to a local file written by BinaryMatchSink
+	 * @throws IOException when unreadable, not a binary result file, or not complete
+	 */
+	public BinaryResultReader(String file) throws IOException {
+		if (file == null) throw new IllegalArgumentException("file cannot be null");
+		fileLocation = file;
+		channel = Files.newByteChannel(Utils.getPath(file));
+		try {
+			long size = channel.size();
+			if (size < BinaryMatchSink.MAGIC.length + 1 + BinaryMatchSink.FOOTER_LENGTH) throw new IOException("Not a complete binary result file: " + file);
+			ByteBuffer header = read(0, BinaryMatchSink.MAGIC.length + 1);
+			if (!isMagic(header)) throw new IOException("Not a binary result file: " + file);
+			int version = header.get();
+			if (version != BinaryMatchSink.VERSION) throw new IOException("Unsupported binary result version: " + version + "; file: " + file);
+			ByteBuffer footer = read(size - BinaryMatchSink.FOOTER_LENGTH, BinaryMatchSink.FOOTER_LENGTH);
+			long wordsOffset = footer.getLong();
+			if (!isMagic(footer) || wordsOffset < BinaryMatchSink.MAGIC.length + 1 || wordsOffset > size - BinaryMatchSink.FOOTER_LENGTH) {
+				throw new IOException("Not a complete binary result file (no footer): " + file);
+			}
+
+			// dictionary first
+			channel.position(wordsOffset);
+			InputStream in = new BufferedInputStream(Channels.newInputStream(channel));
+			words = new String[(int)readVarint(in)];
+			for (int i = 0; i < words.length; i++) {
+				byte[] bytes = readFully(in, new byte[(int)readVarint(in)]);
+				words[i] = new String(bytes, StandardCharsets.UTF_8);
+			}
+			long queryCount = readVarint(in);
+			for (long q = 0; q < queryCount; q++) {
+				int id = (int)readVarint(in);
+				Set<String> query = new LinkedHashSet<String>();
+				long wordCount = readVarint(in);
+				for (long w = 0; w < wordCount; w++) query.add(word(readVarint(in)));
+				queries.put(id, Collections.unmodifiableSet(query));
+			}
+
+			// then back to the records
+			channel.position(BinaryMatchSink.MAGIC.length + 1);
+			records = new BufferedInputStream(Channels.newInputStream(channel), 64 * 1024);
+		}
+		catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return next result; null when there are no more
+	 * @throws IOException when unreadable, or the file is broken
+	 */
+	public Result next() throws IOException {
+		if (isEnd) return null;
+		int length = (int)readVarint(records);
+		if (length == 0) {
+			isEnd = true;
+			return null;
+		}
+		if (length > record.length) record = new byte[Math.max(length, record.length * 2)];
+		readFully(records, record, length);
+
+		int[] at = {0};
+		long line = decode(record, at);
+		int queryId = (int)decode(record, at);
+		Set<String> query = queries.get(queryId);
+		if (query == null) throw new IOException("Unknown query id " + queryId + " at line " + line + "; file: " + fileLocation);
+		long pairs = decode(record, at);
+		Map<String, Integer> result = new LinkedHashMap<String, Integer>();
+		for (long p = 0; p < pairs; p++) {
+			String word = word(decode(record, at));
+			result.put(word, (int)decode(record, at));
+		}
+		if (at[0] != length) throw new IOException("Broken record at line " + line + "; file: " + fileLocation);
+		return new Result(line, queryId, query, Collections.unmodifiableMap(result));
+	}
+
+	/**
+	 * @param queryId query id
+	 * @return the query's words; null when no result is about it
+	 */
+	public Set<String> getQuery(int queryId) {
+		return queries.get(queryId);
+	}
+
+	/**
+	 * @return number of distinct words in the dictionary
+	 */
+	public int getWordCount() {
+		return words.length;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private String word(long id) throws IOException {
+		if (id < 0 || id >= words.length) throw new IOException("Unknown word id " + id + "; file: " + fileLocation);
+		return words[(int)id];
+	}
+
+	private ByteBuffer read(long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		channel.position(position);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) throw new EOFException("Unexpected end of file: " + fileLocation);
+		}
+		// Buffer's flip(): ByteBuffer's own is JDK 9+ - built with a newer JDK, the class must still run on 8
+		((Buffer)buffer).flip();
+		return buffer;
+	}
+
+	private static boolean isMagic(ByteBuffer buffer) {
+		byte[] magic = new byte[BinaryMatchSink.MAGIC.length];
+		buffer.get(magic);
+		return Arrays.equals(magic, BinaryMatchSink.MAGIC);
+	}
+
+	private static byte[] readFully(InputStream in, byte[] bytes) throws IOException {
+		return readFully(in, bytes, bytes.length);
+	}
+
+	private static byte[] readFully(InputStream in, byte[] bytes, int length) throws IOException {
+		int n = 0;
+		while (n < length) {
+			int read = in.read(bytes, n, length - n);
+			if (read < 0) throw new EOFException("Unexpected end of binary results");
+			n += read;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Unsigned LEB128, from a stream.
+	 */
+	static long readVarint(InputStream in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.read();
+			if (b < 0) throw new EOFException("Unexpected end of binary results");
+			value |= (long)(b & 0x7F) << shift;
+			if ((b & 0x80) == 0) return value;
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	/**
+	 * Unsigned LEB128, from a record; at[0] is the position, moved past the value.
+	 */
+	private static long decode(byte[] bytes, int[] at) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			if (at[0] >= bytes.length) throw new IOException("Malformed record");
+			int b = bytes[at[0]++];
+			value |= (long)(b & 0x7F) << shift;
+			if ((b & 0x80) == 0) return value;
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	/**
+	 * A string representation of this instance.
+	 */
+	public String toString() {
+		return "BinaryResultReader: " + fileLocation + "; words=" + words.length + "; queries=" + queries.size();
+	}
+}
@@ -0,0 +1,215 @@
+package com.idt.codechallenge;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+/**
+ * <pre>
+ * Progress marker for incremental processing of an append-only data file.
+ *
+ * Remembers:
+ * - offset: byte offset in the data file right after the last processed record;
+ * - line: number of the last processed record (so that line numbers in the output stay absolute);
+ * - query hash: hash of the query file contents the checkpoint was produced with;
+ * - head hash: hash of the first (up to HEAD_SIZE) bytes of the data file.
+ *
+ * A checkpoint is only good for the same query file and the same data file.
+ * If queries changed - all of the data has to be re-matched.
+ * If the head of the data file changed (or the file got shorter than offset) - it is not the same file anymore
+ * (rotated, truncated, rewritten), and has to be processed from the start.
+ *
+ * Stored as a Properties file. Writes go to a temp file first, which then replaces the checkpoint file:
+ * a crash mid-write leaves the previous checkpoint intact.
+ * </pre>
+ */
+class Checkpoint {
+
+	/**
+	 * How many bytes from the start of the data file to hash
+	 */
+	final static int HEAD_SIZE = 4096;
+
+	private final static String KEY_OFFSET = "offset";
+	private final static String KEY_LINE = "line";
+	private final static String KEY_QUERYHASH = "queryHash";
+	private final static String KEY_HEADHASH = "headHash";
+	private final static String KEY_HEADLENGTH = "headLength";
+
+	private long offset = 0;
+	private long line = 0;
+	private String queryHash;
+	private String headHash = "";
+	private int headLength = 0;
+
+	/**
+	 * New checkpoint: start of the data file.
+	 * @param qHash hash of the query file
+	 */
+	Checkpoint(String qHash) {
+		queryHash = qHash;
+	}
+
+	private Checkpoint(long off, long ln, String qHash, String hHash, int hLength) {
+		offset = off;
+		line = ln;
+		queryHash = qHash;
+		headHash = hHash;
+		headLength = hLength;
+	}
+
+	long getOffset() {
+		return offset;
+	}
+
+	long getLine() {
+		return line;
+	}
+
+	String getQueryHash() {
+		return queryHash;
+	}
+
+	/**
+	 * Moves the checkpoint forward.
+	 * @param dataFileLocation data file the offset refers to: its head is re-hashed
+	 * @param off byte offset right after the last processed record
+	 * @param ln number of the last processed record
+	 * @throws IOException when data file is unreadable
+	 */
+	void advance(String dataFileLocation, long off, long ln) throws IOException {
+		offset = off;
+		line = ln;
+		headLength = (int)Math.min(HEAD_SIZE, off);
+		headHash = hashHead(dataFileLocation, headLength);
+	}
+
+	/**
+	 * Checks whether this checkpoint can be used to resume processing.
+	 * @param qHash hash of the current query file
+	 * @param dataFileLocation current data file
+	 * @return null if the checkpoint is good; otherwise - the reason why it is not
+	 * @throws IOException when data file is unreadable
+	 */
+	String getInvalidationReason(String qHash, String dataFileLocation) throws IOException {
+		if (!qHash.equals(queryHash)) {
+			return "query file changed";
+		}
+		if (Files.size(Utils.getPath(dataFileLocation)) < offset) {
+			return "data file is shorter than checkpoint offset " + offset;
+		}
+		if (!headHash.equals(hashHead(dataFileLocation, headLength))) {
+			return "head of the data file changed";
+		}
+		return null;
+	}
+
+	/**
+	 * Loads checkpoint from a file.
+	 * @param checkpointFileLocation full path to checkpoint file
+	 * @return loaded checkpoint, or null if there is no checkpoint file
+	 * @throws IOException when file is unreadable, or not a valid checkpoint
+	 */
+	static Checkpoint load(String checkpointFileLocation) throws IOException {
+		Path path = Utils.getPath(checkpointFileLocation);
+		if (!Files.exists(path)) return null;
+
+		Properties props = new Properties();
+		try (InputStream in = Files.newInputStream(path)) {
+			props.load(in);
+		}
+		try {
+			return new Checkpoint(
+					Long.parseLong(props.getProperty(KEY_OFFSET)),
+					Long.parseLong(props.getProperty(KEY_LINE)),
+					props.getProperty(KEY_QUERYHASH, ""),
+					props.getProperty(KEY_HEADHASH, ""),
+					Integer.parseInt(props.getProperty(KEY_HEADLENGTH)));
+		}
+		catch (NumberFormatException e) {
+			throw new IOException("Invalid checkpoint file: " + checkpointFileLocation, e);
+		}
+	}
+
+	/**
+	 * Stores this checkpoint: writes temp file, then moves it over the checkpoint file.
+	 * @param checkpointFileLocation full path to checkpoint file
+	 * @throws IOException when file is not writable
+	 */
+	void store(String checkpointFileLocation) throws IOException {
+		Properties props = new Properties();
+		props.setProperty(KEY_OFFSET, Long.toString(offset));
+		props.setProperty(KEY_LINE, Long.toString(line));
+		props.setProperty(KEY_QUERYHASH, queryHash);
+		props.setProperty(KEY_HEADHASH, headHash);
+		props.setProperty(KEY_HEADLENGTH, Integer.toString(headLength));
+
+		Path path = Utils.getPath(checkpointFileLocation);
+		Path tmp = Utils.getPath(checkpointFileLocation + ".tmp");
+		try (OutputStream out = Files.newOutputStream(tmp)) {
+			props.store(out, "large-file-reader checkpoint");
+		}
+		Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Hashes full contents of a file.
+	 * @param fileLocation file path or URL
+	 * @return hex SHA-256
+	 * @throws IOException when file is unreadable
+	 */
+	static String hashFile(String fileLocation) throws IOException {
+		try (InputStream in = Utils.openInputStream(fileLocation)) {
+			return hash(in, Long.MAX_VALUE);
+		}
+	}
+
+	/**
+	 * Hashes first few bytes of a local file.
+	 * @param fileLocation full path to a local file
+	 * @param length number of bytes to hash
+	 * @return hex SHA-256
+	 * @throws IOException when file is unreadable
+	 */
+	static String hashHead(String fileLocation, int length) throws IOException {
+		try (InputStream in = Files.newInputStream(Utils.getPath(fileLocation))) {
+			return hash(in, length);
+		}
+	}
+
+	private static String hash(InputStream in, long maxBytes) throws IOException {
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e) {
+			// every JRE is required to have SHA-256
+			throw new IllegalStateException(e);
+		}
+		byte[] buf = new byte[8192];
+		long remaining = maxBytes;
+		int n;
+		while (remaining > 0 && (n = in.read(buf, 0, (int)Math.min(buf.length, remaining))) > 0) {
+			md.update(buf, 0, n);
+			remaining -= n;
+		}
+		StringBuilder sb = new StringBuilder();
+		for (byte b : md.digest()) {
+			sb.append(String.format("%02x", b));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * A string representation of this instance.
+	 */
+	public String toString() {
+		return "Checkpoint: offset=" + offset + "; line=" + line;
+	}
+}
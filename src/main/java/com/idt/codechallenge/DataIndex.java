@@ -0,0 +1,231 @@
+package com.idt.codechallenge;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.idt.codechallenge.metrics.MatcherMetrics;
+
+/**
+ * <pre>
+ * Whole data file, tokenized once and kept in memory in encoded form - for processes that run many query batches
+ * against the same data (see {@link com.idt.codechallenge.server.MatcherServer MatcherServer}).
+ *
+ * Encoding:
+ * - dictionary: every distinct word gets an int id;
+ * - each record: array of its distinct word ids (in order of first appearance), a parallel array of counts,
+ *   and a sorted copy of the ids for lookups;
+ * - postings (inverted index): for each word id - ascending array of records containing it.
+ *
+ * A query is answered by walking the shortest posting list among its words,
+ * and checking the remaining words against each candidate record (binary search).
+ * A query with a word that is not in the dictionary is rejected without touching any records.
+ *
+ * Results are exactly what RecordMatcher would produce for the same data and queries:
+ * same output lines, same order (by line, then by query order in the batch).
+ *
+ * Thread safety: immutable once loaded; any number of threads may query it at the same time.
+ * </pre>
+ */
+public class DataIndex {
+
+	private final static int[] NONE = new int[0];
+
+	private final Map<String, Integer> dictionary;
+	private final String[] words;
+	private final int[][] recordWords;
+	private final int[][] recordCounts;
+	private final int[][] sortedRecordWords;
+	private final int[][] postings;
+
+	private DataIndex(Map<String, Integer> dict, String[] w, int[][] rWords, int[][] rCounts, int[][] sWords, int[][] p) {
+		dictionary = dict;
+		words = w;
+		recordWords = rWords;
+		recordCounts = rCounts;
+		sortedRecordWords = sWords;
+		postings = p;
+	}
+
+	/**
+	 * Reads and encodes the whole data file.
+	 * @param dataFileLocation file path or URL
+	 * @param bufferSize size of BufferedReader buffer
+	 * @return loaded index
+	 * @throws IOException when file is invalid or unreadable
+	 */
+	public static DataIndex load(String dataFileLocation, int bufferSize) throws IOException {
+		Map<String, Integer> dict = new HashMap<String, Integer>();
+		List<String> wordList = new ArrayList<String>();
+		List<int[]> rWords = new ArrayList<int[]>();
+		List<int[]> rCounts = new ArrayList<int[]>();
+
+		try (BufferedReader reader = Utils.openReader(dataFileLocation, bufferSize, true)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				MatcherMetrics.global().recordParsed();
+				// words in order of first appearance: decoding in the same order gives back an identical map
+				Map<String, Integer> wordCounts = new LinkedHashMap<String, Integer>();
+				for (String w : line.split(",")) {
+					wordCounts.merge(w, 1, Integer::sum);
+				}
+				int[] ids = new int[wordCounts.size()];
+				int[] counts = new int[wordCounts.size()];
+				int i = 0;
+				for (Map.Entry<String, Integer> e : wordCounts.entrySet()) {
+					Integer id = dict.get(e.getKey());
+					if (id == null) {
+						id = wordList.size();
+						dict.put(e.getKey(), id);
+						wordList.add(e.getKey());
+					}
+					ids[i] = id;
+					counts[i++] = e.getValue();
+				}
+				rWords.add(ids);
+				rCounts.add(counts);
+			}
+		}
+
+		int[][] recordWords = rWords.toArray(new int[rWords.size()][]);
+		int[][] recordCounts = rCounts.toArray(new int[rCounts.size()][]);
+		int[][] sortedWords = new int[recordWords.length][];
+		for (int r = 0; r < recordWords.length; r++) {
+			sortedWords[r] = recordWords[r].clone();
+			Arrays.sort(sortedWords[r]);
+		}
+
+		// inverted index: first count, then fill - records are visited in order, so postings come out sorted
+		int[] docFreq = new int[wordList.size()];
+		for (int[] ids : recordWords) {
+			for (int id : ids) docFreq[id]++;
+		}
+		int[][] postings = new int[wordList.size()][];
+		for (int id = 0; id < postings.length; id++) {
+			postings[id] = new int[docFreq[id]];
+		}
+		int[] fill = new int[wordList.size()];
+		for (int r = 0; r < recordWords.length; r++) {
+			for (int id : recordWords[r]) {
+				postings[id][fill[id]++] = r;
+			}
+		}
+
+		return new DataIndex(dict, wordList.toArray(new String[wordList.size()]), recordWords, recordCounts, sortedWords, postings);
+	}
+
+	/**
+	 * @return number of records
+	 */
+	public int size() {
+		return recordWords.length;
+	}
+
+	/**
+	 * @return number of distinct words
+	 */
+	public int getWordCount() {
+		return words.length;
+	}
+
+	/**
+	 * Finds all records containing all of the query words.
+	 * @param queryWords query
+	 * @return ascending 0-based record indices
+	 */
+	public int[] find(Set<String> queryWords) {
+		int[] ids = new int[queryWords.size()];
+		int i = 0;
+		for (String w : queryWords) {
+			Integer id = dictionary.get(w);
+			if (id == null) return NONE;	// word never seen - nothing can match
+			ids[i++] = id;
+		}
+		if (ids.length == 0) return NONE;
+
+		// start from the rarest word
+		int rarest = 0;
+		for (i = 1; i < ids.length; i++) {
+			if (postings[ids[i]].length < postings[ids[rarest]].length) rarest = i;
+		}
+		int[] candidates = postings[ids[rarest]];
+		int[] found = new int[candidates.length];
+		int n = 0;
+		for (int r : candidates) {
+			boolean isMatch = true;
+			for (i = 0; i < ids.length && isMatch; i++) {
+				if (i != rarest) isMatch = Arrays.binarySearch(sortedRecordWords[r], ids[i]) >= 0;
+			}
+			if (isMatch) found[n++] = r;
+		}
+		// only candidates from the rarest word's postings count: the rest were never looked at
+		MatcherMetrics.global().queriesEvaluated(candidates.length);
+		return Arrays.copyOf(found, n);
+	}
+
+	/**
+	 * Decodes a record back into {word, count} map - same as Utils.countWords would produce for the original line.
+	 * @param record 0-based record index
+	 * @return map of {word,count}
+	 */
+	public Map<String, Integer> getWordCounts(int record) {
+		int[] ids = recordWords[record];
+		int[] counts = recordCounts[record];
+		Map<String, Integer> wordCounts = new HashMap<String, Integer>();
+		for (int i = 0; i < ids.length; i++) {
+			// merge(), not put(): that is what Utils.countWords's collector does, and the two
+			// order colliding keys differently - the output must be byte-for-byte the same
+			wordCounts.merge(words[ids[i]], counts[i], Integer::sum);
+		}
+		return wordCounts;
+	}
+
+	/**
+	 * Matches a batch of queries against all records, hands every match over to the sink.
+	 * Order is the same as RecordMatcher's: by line, then by query order in the batch (query id: position in the batch).
+	 *
+	 * @param queries batch of queries
+	 * @param sink receiver of results
+	 * @return number of matches
+	 * @throws IOException passes on whatever sink throws
+	 */
+	public long match(List<Set<String>> queries, MatchSink sink) throws IOException {
+		// (record, query) pairs packed into longs: sorting them gives the canonical output order
+		long[] hits = new long[16];
+		int n = 0;
+		for (int q = 0; q < queries.size(); q++) {
+			for (int r : find(queries.get(q))) {
+				if (n == hits.length) hits = Arrays.copyOf(hits, n * 2);
+				hits[n++] = ((long)r << 32) | q;
+			}
+		}
+		Arrays.sort(hits, 0, n);
+
+		int lastRecord = -1;
+		Map<String, Integer> wordCounts = null;
+		for (int i = 0; i < n; i++) {
+			int r = (int)(hits[i] >>> 32);
+			int q = (int)hits[i];
+			if (r != lastRecord) {
+				wordCounts = getWordCounts(r);
+				lastRecord = r;
+			}
+			sink.onMatch(r + 1, q, queries.get(q), wordCounts);
+		}
+		MatcherMetrics.global().matchesEmitted(n);
+		return n;
+	}
+
+	/**
+	 * A string representation of this instance.
+	 */
+	public String toString() {
+		return "DataIndex: records=" + recordWords.length + "; words=" + words.length;
+	}
+}
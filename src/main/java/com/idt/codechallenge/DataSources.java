@@ -0,0 +1,141 @@
+package com.idt.codechallenge;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * <pre>
+ * Data file arguments, expanded into the list of data sources they stand for:
+ * - a directory: the regular files in it (not in its subdirectories), by name;
+ * - a glob pattern (has any of * ? [ {): the files that match it, by path - e.g. logs/2024-*.csv, data/**.txt.
+ *   The pattern is matched against whole paths, as given (relative stays relative); ** goes into subdirectories.
+ *   Quote it, so that the shell leaves it alone;
+ * - anything else (a file, a URL - even one with ? or [ in it): as is.
+ * Hidden files (.name) are left out of both, as the shell would.
+ * Sources are kept in argument order; one that comes up more than once is only kept the first time.
+ *
+ * A directory, or a pattern, that comes up empty is an error: most likely a typo.
+ * </pre>
+ */
+public class DataSources {
+
+	private final static String GLOB_CHARS = "*?[{";
+
+	private DataSources() {}
+
+	/**
+	 * @param args data file arguments: files, directories, glob patterns, URLs
+	 * @return data sources, in order, without repeats
+	 * @throws IOException when a directory cannot be listed
+	 * @throws IllegalArgumentException when a directory or pattern has no files in it
+	 */
+	public static List<String> expand(Collection<String> args) throws IOException {
+		Set<String> sources = new LinkedHashSet<String>();
+		for (String arg : args) {
+			List<String> found;
+			if (isUrl(arg)) {
+				// one source, whatever characters its query string has
+				sources.add(arg);
+				continue;
+			}
+			else if (isGlob(arg)) {
+				found = glob(arg);
+			}
+			else if (Files.isDirectory(Utils.getPath(arg))) {
+				found = list(arg);
+			}
+			else {
+				sources.add(arg);
+				continue;
+			}
+			if (found.isEmpty()) throw new IllegalArgumentException("No data files in " + arg);
+			sources.addAll(found);
+		}
+		return new ArrayList<String>(sources);
+	}
+
+	/**
+	 * @param arg data file argument
+	 * @return true if it stands for (possibly) several data files: a directory, or a glob pattern
+	 */
+	public static boolean isMulti(String arg) {
+		if (isUrl(arg)) return false;
+		return isGlob(arg) || Files.isDirectory(Utils.getPath(arg));
+	}
+
+	/**
+	 * A URL is never a pattern (http://host/data?x=1 is one source). Checked by its form only - no connection is made:
+	 * an existing file is a file, anything else that parses as a URL is one.
+	 */
+	static boolean isUrl(String arg) {
+		if (Utils.isFile(arg)) return false;
+		try {
+			new URL(arg);
+			return true;
+		}
+		catch (MalformedURLException e) {
+			return false;
+		}
+	}
+
+	static boolean isGlob(String arg) {
+		for (int i = 0; i < arg.length(); i++) {
+			if (GLOB_CHARS.indexOf(arg.charAt(i)) >= 0) return true;
+		}
+		return false;
+	}
+
+	private static boolean isVisibleFile(Path p) {
+		return Files.isRegularFile(p) && !p.getFileName().toString().startsWith(".");
+	}
+
+	/**
+	 * Regular files of a directory, by name.
+	 */
+	private static List<String> list(String dir) throws IOException {
+		try (Stream<Path> files = Files.list(Utils.getPath(dir))) {
+			return files
+					.filter(DataSources::isVisibleFile)
+					.sorted()
+					.map(Path::toString)
+					.collect(Collectors.toList());
+		}
+	}
+
+	/**
+	 * Files matching a glob pattern, by path. Only the directory the pattern starts from (its part up to
+	 * the last separator before the first glob character) is walked - and below it, only as deep as the pattern goes.
+	 */
+	private static List<String> glob(String pattern) throws IOException {
+		Path path = Utils.getPath(pattern);
+		String separator = path.getFileSystem().getSeparator();
+		int firstGlob = 0;
+		while (GLOB_CHARS.indexOf(pattern.charAt(firstGlob)) < 0) firstGlob++;
+		int lastSeparator = pattern.lastIndexOf(separator, firstGlob);
+		Path base = (lastSeparator < 0? Utils.getPath("") : lastSeparator == 0? Utils.getPath(separator) : Utils.getPath(pattern.substring(0, lastSeparator)));
+		if (!Files.isDirectory(base)) return new ArrayList<String>();
+		// depth: one level per separator past the base; any depth with **
+		String rest = pattern.substring(lastSeparator + 1);
+		int depth = (rest.contains("**")? Integer.MAX_VALUE : rest.split(Pattern.quote(separator), -1).length);
+		PathMatcher matcher = path.getFileSystem().getPathMatcher("glob:" + pattern);
+		try (Stream<Path> files = Files.walk(base, depth)) {
+			return files
+					.filter(p -> isVisibleFile(p) && matcher.matches(p))
+					.sorted()
+					.map(Path::toString)
+					.collect(Collectors.toList());
+		}
+	}
+}
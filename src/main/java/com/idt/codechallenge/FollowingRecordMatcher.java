@@ -0,0 +1,233 @@
+package com.idt.codechallenge;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.util.Map;
+
+import com.idt.codechallenge.concurrent.QueryRegistry;
+import com.idt.codechallenge.metrics.MatcherMetrics;
+
+/**
+ * <pre>
+ * Streaming matcher: like "tail -f", follows a growing data source and matches each record as soon as it arrives.
+ *
+ * Sources:
+ * - stdin (data file location "-"): runs until stdin is closed; the unterminated last line (if any) is matched too;
+ * - local file: matched from the beginning, then followed forever (or until {@link #stop() stop} is called).
+ *   If the file gets truncated (e.g. log rotation by copy-truncate) - starts over from its beginning.
+ *
+ * Queries are pre-loaded into memory once (on the first match()), into a {@link QueryRegistry QueryRegistry}:
+ * when embedded, queries may be added, updated or removed through {@link #getQueryRegistry() getQueryRegistry}
+ * while the stream is being matched - each new record is matched against the queries registered at that moment.
+ *
+ * Output is flushed when any of these is true:
+ * - flushBatchSize matches have been written since the last flush;
+ * - flushInterval ms have passed since the last flush;
+ * - there is no more input at hand: the next read would have to wait for the source.
+ * The last rule is what keeps latency low on a slow stream; the first two bound it on a fast one.
+ *
+ * Not thread-safe: one match() at a time. stop() may be called from any thread; it stops the match() under way -
+ * the next one follows the source from its beginning again, with the same queries.
+ * </pre>
+ */
+public class FollowingRecordMatcher implements Matcher {
+
+	/**
+	 * Data file location that stands for stdin
+	 */
+	public final static String STDIN = "-";
+
+	private final static boolean DEFAULT_VERBOSE = false;
+	private final static boolean DEFAULT_SUPERVERBOSE = false;
+	private final static int DEFAULT_BUFFERSIZE = 8192;
+	private final static long DEFAULT_FLUSHINTERVAL = 200;
+	private final static int DEFAULT_FLUSHBATCHSIZE = 1000;
+
+	private final String dataFileLocation;
+	private final String queryFileLocation;
+
+	private boolean isVerbose = DEFAULT_VERBOSE;
+	private boolean isSuperVerbose = DEFAULT_SUPERVERBOSE;
+	private int bufferSize = DEFAULT_BUFFERSIZE;
+	private long flushInterval = DEFAULT_FLUSHINTERVAL;
+	private int flushBatchSize = DEFAULT_FLUSHBATCHSIZE;
+
+	private final QueryRegistry queryRegistry = new QueryRegistry();
+
+	private volatile boolean isStopped = false;
+	// queries are read once: later runs match against the registry as it is
+	private boolean isLoaded = false;
+
+	/**
+	 * Ctor with all defaults except for file locations.
+	 * @param dfLocation data file: full path to a local file, or "-" for stdin
+	 * @param qfLocation query file: full path or URL
+	 */
+	public FollowingRecordMatcher(String dfLocation, String qfLocation) {
+		this(dfLocation, qfLocation, DEFAULT_FLUSHINTERVAL, DEFAULT_FLUSHBATCHSIZE, DEFAULT_BUFFERSIZE, DEFAULT_VERBOSE, DEFAULT_SUPERVERBOSE);
+	}
+
+	/**
+	 * Ctor with full set of arguments.
+	 * @param dfLocation data file: full path to a local file, or "-" for stdin
+	 * @param qfLocation query file: full path or URL
+	 * @param flushIntervalMs max time (ms) matches may sit in the output buffer. If null is passed - will use default 200.
+	 * @param flushBatch max number of matches that may sit in the output buffer. If null is passed - will use default 1000.
+	 * @param bufSize positive integer - size of read buffers. If null is passed - will use default 8192.
+	 * @param isVerb when true - generates some extra output
+	 * @param isSuperVerb when true - generates lots of extra output
+	 */
+	public FollowingRecordMatcher(
+			String dfLocation,
+			String qfLocation,
+			Long flushIntervalMs,
+			Integer flushBatch,
+			Integer bufSize,
+			Boolean isVerb,
+			Boolean isSuperVerb) {
+
+		if (dfLocation == null) throw new IllegalArgumentException("dataFileLocation cannot be null");
+		this.dataFileLocation = dfLocation;
+
+		if (qfLocation == null) throw new IllegalArgumentException("queryFileLocation cannot be null");
+		this.queryFileLocation = qfLocation;
+
+		this.isSuperVerbose = (isSuperVerb != null? isSuperVerb : isSuperVerbose);
+		this.isVerbose = (isVerb != null?  isVerb || isSuperVerbose : isVerbose || isSuperVerbose);	// superverbose is an overriding option
+
+		if (flushIntervalMs != null && flushIntervalMs <= 0) throw new IllegalArgumentException("flushInterval must be positive. Default is " + DEFAULT_FLUSHINTERVAL);
+		this.flushInterval = (flushIntervalMs != null? flushIntervalMs : DEFAULT_FLUSHINTERVAL);
+
+		if (flushBatch != null && flushBatch <= 0) throw new IllegalArgumentException("flushBatchSize must be positive. Default is " + DEFAULT_FLUSHBATCHSIZE);
+		this.flushBatchSize = (flushBatch != null? flushBatch : DEFAULT_FLUSHBATCHSIZE);
+
+		if(bufSize !=  null && bufSize <= 0 ) throw new IllegalArgumentException("bufferSize must be positive. Default is " + DEFAULT_BUFFERSIZE);
+		this.bufferSize = (bufSize != null? bufSize : DEFAULT_BUFFERSIZE);
+	}
+
+	/**
+	 * Follows the source, matching records as they arrive.
+	 * Returns when stdin is closed, or when stop() is called.
+	 *
+	 * @param sink receiver of results; flushed by the same rules as the JSON output
+	 * @throws IOException when files are unreadable
+	 * @return number of matches found
+	 */
+	@Override
+	public long match(MatchSink sink) throws IOException {
+		boolean isStdin = STDIN.equals(dataFileLocation);
+		if (!isStdin && Utils.getFileLocationType(dataFileLocation) != Utils.LOCATIONTYPE_FILE) {
+			throw new IllegalArgumentException("Follow mode requires stdin or a local data file: " + dataFileLocation);
+		}
+
+		if (!isLoaded) {
+			queryRegistry.addAll(Utils.readQueries(queryFileLocation, bufferSize));
+			isLoaded = true;
+			info("Read " + queryRegistry.size() + " queries");
+		}
+		isStopped = false;
+
+		long rowNum = 0;
+		long matchCount = 0;
+		long unflushed = 0;
+		long lastFlush = System.currentTimeMillis();
+		// per-record and per-match latencies: what a streaming consumer waits for, once a record has arrived
+		long allocationMark = MatcherMetrics.threadAllocatedBytes();
+		MatcherMetrics.LatencyRecorder latency = MatcherMetrics.global().latencyRecorder();
+		MatchSink timedSink = new TimedMatchSink(sink, latency.getEmitHistogram());
+
+		OffsetLineReader reader = (isStdin?
+				new OffsetLineReader(Channels.newChannel(System.in), 0, bufferSize)
+				: OffsetLineReader.open(dataFileLocation, 0, bufferSize));
+		try {
+			while (!isStopped) {
+				// about to (maybe) wait for the source: push out what we have first
+				if (unflushed > 0 && !reader.hasBufferedLine()) {
+					sink.flush();
+					unflushed = 0;
+					lastFlush = System.currentTimeMillis();
+				}
+
+				String line = reader.readLine();
+				if (line == null) {
+					if (isStdin) {
+						if (!reader.isEndOfStream()) continue;
+						// stdin is closed: whatever is left is the last record
+						line = reader.readRemainder();
+						if (line == null) break;
+						isStopped = true;
+					}
+					else {
+						if (Files.size(Utils.getPath(dataFileLocation)) < reader.position()) {
+							info("Data file truncated; starting over");
+							reader.close();
+							reader = OffsetLineReader.open(dataFileLocation, 0, bufferSize);
+							rowNum = 0;
+							continue;
+						}
+						sleep(Math.min(flushInterval, 100));
+						continue;
+					}
+				}
+
+				rowNum++;
+				long start = System.nanoTime();
+				Map<String, Integer> wordCounts = Utils.countWords(line);
+				debug("row: " + rowNum + "; wordCounts=" + wordCounts);
+				long matches = queryRegistry.match(rowNum, wordCounts, timedSink);
+				latency.record(System.nanoTime() - start);
+				matchCount += matches;
+				unflushed += matches;
+
+				if (unflushed >= flushBatchSize || (unflushed > 0 && System.currentTimeMillis() - lastFlush >= flushInterval)) {
+					sink.flush();
+					unflushed = 0;
+					lastFlush = System.currentTimeMillis();
+				}
+			}
+		}
+		finally {
+			sink.flush();
+			reader.close();
+			MatcherMetrics.global().allocatedSince(allocationMark);
+			MatcherMetrics.global().merge(latency);
+		}
+
+		info("Records processed: " + rowNum);
+		return matchCount;
+	}
+
+	/**
+	 * @return live set of queries this matcher applies to each new record
+	 */
+	public QueryRegistry getQueryRegistry() {
+		return queryRegistry;
+	}
+
+	/**
+	 * Makes match() return after the record it is currently on.
+	 */
+	public void stop() {
+		isStopped = true;
+	}
+
+	private void sleep(long ms) {
+		try {
+			Thread.sleep(ms);
+		}
+		catch (InterruptedException e) {
+			// treat as a request to stop
+			Thread.currentThread().interrupt();
+			isStopped = true;
+		}
+	}
+
+	private void info(Object message) {
+		if (isVerbose) System.out.println(message);
+	}
+
+	private void debug(Object message) {
+		if (isSuperVerbose) System.out.println(message);
+	}
+}
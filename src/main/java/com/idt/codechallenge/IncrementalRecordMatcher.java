@@ -0,0 +1,168 @@
+package com.idt.codechallenge;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.idt.codechallenge.metrics.MatcherMetrics;
+
+/**
+ * <pre>
+ * Matcher for append-only data files that grow between runs.
+ *
+ * Each run resumes from a {@link Checkpoint checkpoint} left by the previous run,
+ * and only matches records appended since then. Line numbers in the output are absolute (counted from the start of the file).
+ * When done - the checkpoint is moved to the end of the last complete record.
+ *
+ * The checkpoint is thrown away (and the whole file re-matched) when:
+ * - there is no checkpoint file yet;
+ * - the query file changed;
+ * - the data file was rotated/truncated/rewritten: shorter than the checkpoint offset, or its head changed.
+ *
+ * Unterminated last line is never matched: the writer may not be done with it yet.
+ * It will be picked up by the next run once its line break is there.
+ *
+ * Checkpoint is only stored after all output has been flushed: if the run dies half-way,
+ * the next run repeats it (some matches may be printed twice, none are lost).
+ *
+ * Data file must be a local file; query file may be a URL.
+ * Queries are always pre-loaded into memory.
+ * </pre>
+ */
+public class IncrementalRecordMatcher implements Matcher {
+
+	private final static boolean DEFAULT_VERBOSE = false;
+	private final static boolean DEFAULT_SUPERVERBOSE = false;
+	private final static int DEFAULT_BUFFERSIZE = 8192;
+
+	private final String dataFileLocation;
+	private final String queryFileLocation;
+	private final String checkpointFileLocation;
+
+	private boolean isVerbose = DEFAULT_VERBOSE;
+	private boolean isSuperVerbose = DEFAULT_SUPERVERBOSE;
+	private int bufferSize = DEFAULT_BUFFERSIZE;
+
+	/**
+	 * Ctor with all defaults except for file locations.
+	 * @param dfLocation data file: full path to a local file
+	 * @param qfLocation query file: full path or URL
+	 * @param cpLocation checkpoint file: full path. Does not have to exist.
+	 */
+	public IncrementalRecordMatcher(String dfLocation, String qfLocation, String cpLocation) {
+		this(dfLocation, qfLocation, cpLocation, DEFAULT_BUFFERSIZE, DEFAULT_VERBOSE, DEFAULT_SUPERVERBOSE);
+	}
+
+	/**
+	 * Ctor with full set of arguments.
+	 * @param dfLocation data file: full path to a local file
+	 * @param qfLocation query file: full path or URL
+	 * @param cpLocation checkpoint file: full path. Does not have to exist.
+	 * @param bufSize positive integer - size of read buffers. If null is passed - will use default 8192.
+	 * @param isVerb when true - generates some extra output
+	 * @param isSuperVerb when true - generates lots of extra output
+	 */
+	public IncrementalRecordMatcher(
+			String dfLocation,
+			String qfLocation,
+			String cpLocation,
+			Integer bufSize,
+			Boolean isVerb,
+			Boolean isSuperVerb) {
+
+		if (dfLocation == null) throw new IllegalArgumentException("dataFileLocation cannot be null");
+		this.dataFileLocation = dfLocation;
+
+		if (qfLocation == null) throw new IllegalArgumentException("queryFileLocation cannot be null");
+		this.queryFileLocation = qfLocation;
+
+		if (cpLocation == null) throw new IllegalArgumentException("checkpointFileLocation cannot be null");
+		this.checkpointFileLocation = cpLocation;
+
+		this.isSuperVerbose = (isSuperVerb != null? isSuperVerb : isSuperVerbose);
+		this.isVerbose = (isVerb != null?  isVerb || isSuperVerbose : isVerbose || isSuperVerbose);	// superverbose is an overriding option
+
+		if(bufSize !=  null && bufSize <= 0 ) throw new IllegalArgumentException("bufferSize must be positive. Default is " + DEFAULT_BUFFERSIZE);
+		this.bufferSize = (bufSize != null? bufSize : DEFAULT_BUFFERSIZE);
+	}
+
+	/**
+	 * Matches records appended since the last checkpoint; moves the checkpoint forward.
+	 *
+	 * @param sink receiver of results
+	 * @throws IOException when files are unreadable, or checkpoint cannot be written
+	 * @return number of matches found
+	 */
+	@Override
+	public long match(MatchSink sink) throws IOException {
+
+		if (Utils.getFileLocationType(dataFileLocation) != Utils.LOCATIONTYPE_FILE) {
+			throw new IllegalArgumentException("Incremental mode requires a local data file: " + dataFileLocation);
+		}
+
+		String queryHash = Checkpoint.hashFile(queryFileLocation);
+		Checkpoint checkpoint = Checkpoint.load(checkpointFileLocation);
+		if (checkpoint == null) {
+			info("No checkpoint found; starting from the beginning");
+			checkpoint = new Checkpoint(queryHash);
+		}
+		else {
+			String reason = checkpoint.getInvalidationReason(queryHash, dataFileLocation);
+			if (reason != null) {
+				info("Checkpoint discarded (" + reason + "); starting from the beginning");
+				checkpoint = new Checkpoint(queryHash);
+			}
+			else {
+				info("Resuming from " + checkpoint);
+			}
+		}
+
+		List<Set<String>> queries = Utils.readQueries(queryFileLocation, bufferSize);
+		info("Read " + queries.size() + " queries");
+
+		long rowNum = checkpoint.getLine();
+		long firstRow = rowNum;
+		long matchCount = 0;
+		long endOffset;
+		long allocationMark = MatcherMetrics.threadAllocatedBytes();
+		MatcherMetrics.LatencyRecorder latency = MatcherMetrics.global().latencyRecorder();
+		MatchSink timedSink = new TimedMatchSink(sink, latency.getEmitHistogram());
+
+		try (OffsetLineReader reader = OffsetLineReader.open(dataFileLocation, checkpoint.getOffset(), bufferSize)) {
+			String line;
+			// only complete lines: an unterminated tail stays for the next run
+			while ((line = reader.readLine()) != null) {
+				rowNum++;
+				long start = System.nanoTime();
+				Map<String, Integer> wordCounts = Utils.countWords(line);
+				debug("row: " + rowNum + "; wordCounts=" + wordCounts);
+				matchCount += Utils.matchRow(rowNum, wordCounts, queries, timedSink);
+				latency.record(System.nanoTime() - start);
+			}
+			endOffset = reader.position();
+		}
+		finally {
+			MatcherMetrics.global().merge(latency);
+		}
+
+		// checkpoint must not get ahead of the output
+		sink.flush();
+
+		checkpoint.advance(dataFileLocation, endOffset, rowNum);
+		checkpoint.store(checkpointFileLocation);
+		MatcherMetrics.global().allocatedSince(allocationMark);
+
+		info("Records processed: " + (rowNum - firstRow) + "; new " + checkpoint);
+
+		return matchCount;
+	}
+
+	private void info(Object message) {
+		if (isVerbose) System.out.println(message);
+	}
+
+	private void debug(Object message) {
+		if (isSuperVerbose) System.out.println(message);
+	}
+}
@@ -0,0 +1,100 @@
+package com.idt.codechallenge;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.gson.Gson;
+import com.idt.codechallenge.metrics.CountingOutputStream;
+import com.idt.codechallenge.metrics.MatcherMetrics;
+import com.idt.codechallenge.metrics.OutputFlushEvent;
+import com.idt.codechallenge.metrics.StageEvents;
+
+/**
+ * <pre>
+ * The standard matcher output: one JSON line per match, e.g.
+ * {"line":2,"query":"[red, apple]","result":{"chair":1,"purple":1,"house":1}}
+ *
+ * Thread safety: not safe (same as the BufferedWriter behind it). Give each thread its own instance,
+ * with flushEach on, if several threads share the same OutputStream.
+ * </pre>
+ */
+public class JsonMatchSink implements MatchSink {
+
+	private final BufferedWriter outWriter;
+
+	// Gson instances are reusable; use this one each time JSON is needed
+	private final Gson gson = new Gson();
+
+	private final boolean isFlushEach;
+
+	// written since the last flush: for JFR
+	private long pendingChars;
+	private long pendingMatches;
+	private long charsWritten;
+
+	/**
+	 * @param out stream to write JSON lines to
+	 */
+	public JsonMatchSink(OutputStream out) {
+		this(out, false);
+	}
+
+	/**
+	 * @param out stream to write JSON lines to; bytes written are reported to metrics
+	 * @param flushEach when true - every line is pushed to out as soon as it is written
+	 */
+	public JsonMatchSink(OutputStream out, boolean flushEach) {
+		this(new BufferedWriter(new OutputStreamWriter(new CountingOutputStream(out, MatcherMetrics.global()))), flushEach);
+	}
+
+	/**
+	 * @param writer writer to write JSON lines to; not counted in metrics - count the stream behind it, if needed
+	 * @param flushEach when true - writer is flushed after every line
+	 */
+	public JsonMatchSink(BufferedWriter writer, boolean flushEach) {
+		outWriter = writer;
+		isFlushEach = flushEach;
+	}
+
+	@Override
+	public void onMatch(long line, int queryId, Set<String> queryWords, Map<String, Integer> wordCounts) throws IOException {
+		// leave only words that *do not match* the query, and print what's left, with line # and the query
+		String json = Utils.toJson(line, queryWords, Utils.nonQueryWords(wordCounts, queryWords), gson);
+		outWriter.write(json);
+		outWriter.newLine();
+		pendingChars += json.length() + System.lineSeparator().length();
+		charsWritten += json.length() + System.lineSeparator().length();
+		pendingMatches++;
+		if (isFlushEach) flush();
+	}
+
+	@Override
+	public void flush() throws IOException {
+		if (!StageEvents.isFlushEnabled()) {
+			outWriter.flush();
+			pendingChars = 0;
+			pendingMatches = 0;
+			return;
+		}
+		OutputFlushEvent event = new OutputFlushEvent();
+		event.begin();
+		outWriter.flush();
+		event.end();
+		if (event.shouldCommit()) {
+			event.chars = pendingChars;
+			event.matches = pendingMatches;
+			event.commit();
+		}
+		pendingChars = 0;
+		pendingMatches = 0;
+	}
+
+	@Override
+	public long getCharsWritten() {
+		return charsWritten;
+	}
+}
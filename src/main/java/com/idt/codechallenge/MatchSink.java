@@ -0,0 +1,55 @@
+package com.idt.codechallenge;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <pre>
+ * Receiver of match results, one call per (record, query) match - in the same order the matcher would print them.
+ *
+ * This is the structured alternative to reading matcher's JSON output back:
+ * in-process consumers get line #, query and the record's word counts as they are, with no serialization in between.
+ * JSON output is just one implementation ({@link JsonMatchSink JsonMatchSink}).
+ *
+ * Calls are synchronous: the matcher does not go on until onMatch() returns.
+ * A slow sink slows the matcher down - i.e. backpressure comes for free.
+ *
+ * Arguments passed to onMatch() belong to the matcher: read-only, and only valid for the duration of the call.
+ * Copy whatever has to be kept.
+ *
+ * Thread safety: up to the implementation. Matchers that run several workers
+ * ({@link com.idt.codechallenge.concurrent.ConcurrentRecordMatcher ConcurrentRecordMatcher}) call the same sink from all of them.
+ * </pre>
+ */
+public interface MatchSink extends Flushable {
+
+	/**
+	 * One match.
+	 * @param line data file line # (1-based)
+	 * @param queryId id of the query: its 0-based position in the query file (or its id in a QueryRegistry)
+	 * @param queryWords the query
+	 * @param wordCounts {word, count} of the whole record, query words included. See {@link Utils#nonQueryWords(Map, Set) Utils.nonQueryWords}.
+	 * @throws IOException whatever the sink's own output throws
+	 */
+	public void onMatch(long line, int queryId, Set<String> queryWords, Map<String, Integer> wordCounts) throws IOException;
+
+	/**
+	 * Matcher calls this when it wants results delivered so far to be visible downstream: at the end of the run,
+	 * and at points where it would flush its output (e.g. before waiting for more input).
+	 * Does nothing by default.
+	 */
+	@Override
+	public default void flush() throws IOException {
+	}
+
+	/**
+	 * Characters of output written by this sink so far - for sinks that write output (e.g. JSON); 0 by default.
+	 * Used to charge output to queries when profiling (see {@link com.idt.codechallenge.metrics.QueryProfiler QueryProfiler}).
+	 * @return running total, never decreases
+	 */
+	public default long getCharsWritten() {
+		return 0;
+	}
+}
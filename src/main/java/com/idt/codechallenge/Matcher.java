@@ -9,5 +9,22 @@ import java.io.OutputStream;
  *
  */
 public interface Matcher {
-	public long match(OutputStream out) throws IOException;
+
+	/**
+	 * Runs the match, prints results as JSON lines.
+	 * @param out an OutpuStream to write result into.
+	 * @return number of matches found
+	 * @throws IOException
+	 */
+	public default long match(OutputStream out) throws IOException {
+		return match(new JsonMatchSink(out));
+	}
+
+	/**
+	 * Runs the match, hands each result over to the sink. The sink is flushed before returning.
+	 * @param sink receiver of results
+	 * @return number of matches found
+	 * @throws IOException
+	 */
+	public long match(MatchSink sink) throws IOException;
 }
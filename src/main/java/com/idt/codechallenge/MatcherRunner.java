@@ -1,5 +1,13 @@
 package com.idt.codechallenge;
 
+import java.io.BufferedWriter;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.DefaultParser;
@@ -8,6 +16,13 @@ import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 
 import com.idt.codechallenge.concurrent.ConcurrentRecordMatcher;
+import com.idt.codechallenge.concurrent.ForkJoinRecordMatcher;
+import com.idt.codechallenge.concurrent.MultiSourceMatcher;
+import com.idt.codechallenge.concurrent.QueryShardedRecordMatcher;
+import com.idt.codechallenge.metrics.MatcherMetrics;
+import com.idt.codechallenge.metrics.ProgressReporter;
+import com.idt.codechallenge.metrics.QueryProfiler;
+import com.idt.codechallenge.server.MatcherServer;
 
 /**
  * This class runs RecordMatcher: a matcher that implements an algorithm for matching data records against set of queries.
@@ -32,6 +47,32 @@ public class MatcherRunner {
 	private final static String OPT_BUFFERSIZE 			= "b";
 	private final static String OPT_HELP 				= "help";
 	private final static String OPT_MINFREEMEMRATIO 	= "m";
+	private final static String OPT_INCREMENTAL 		= "i";
+	private final static String OPT_FOLLOW 				= "f";
+	private final static String OPT_FLUSHINTERVAL 		= "fi";
+	private final static String OPT_FLUSHBATCH 			= "fb";
+	private final static String OPT_SERVER 				= "s";
+	private final static String OPT_PROGRESS 			= "p";
+	private final static String OPT_QUERYPROFILE 		= "qp";
+	private final static String OPT_AUTOTUNE 			= "at";
+	private final static String OPT_QUERYSHARDS 		= "qs";
+	private final static String OPT_FORKJOIN 			= "fj";
+	private final static String OPT_OUTPUT 				= "o";
+	private final static String OPT_RANGE 				= "range";
+	private final static String OPT_PROCESSES 			= "ps";
+	private final static String OPT_PROCESSHEAP 		= "ph";
+	private final static String OPT_PROCESSRETRIES 		= "pr";
+	private final static String OPT_PROCESSTIMEOUT 		= "pt";
+	private final static String OPT_FILECONCURRENCY 	= "fc";
+	private final static String OPT_QUERYFILES 			= "q";
+	private final static String OPT_ASYNCBUFFERS 		= "ab";
+	private final static String OPT_ASYNCBUFFERSIZE 	= "abs";
+	private final static String OPT_ASYNCFLUSH 			= "abt";
+	private final static String OPT_GZIP 				= "z";
+	private final static String OPT_GZIPTHREADS 		= "zt";
+	private final static String OPT_BINARY 				= "bo";
+
+	private final static long DEFAULT_VERBOSE_PROGRESS_SECONDS = 10;
 	
 	/**
 	 * CLI entry point.
@@ -55,8 +96,14 @@ public class MatcherRunner {
 				return;
 			}		
 
+			// counters are always on; publishing them lets a long run be watched from outside (JConsole, etc.)
+			MatcherMetrics.global().register();
+
 			// with all options that are on/off: in absence of a flag let the matcher decide on a default
 			Boolean isConcurrent = (line.hasOption(OPT_CONCURRENT)? true : false);					System.out.println("isConcurrent="+isConcurrent);	
+			Boolean isQuerySharded = (line.hasOption(OPT_QUERYSHARDS)? true : false);				System.out.println("isQuerySharded="+isQuerySharded);	
+			Boolean isForkJoin = (line.hasOption(OPT_FORKJOIN)? true : false);						System.out.println("isForkJoin="+isForkJoin);	
+			Boolean isAutoTune = (line.hasOption(OPT_AUTOTUNE)? true : null);						System.out.println("isAutoTune="+isAutoTune);	
 			Integer workerCount = null;
 			Long val = (Long)line.getParsedOptionValue(OPT_WORKERCOUNT);
 			if (val != null) workerCount = val.intValue();											System.out.println("workerCount="+workerCount);		
@@ -69,13 +116,141 @@ public class MatcherRunner {
 			Integer bufferSize = null;
 			val = (Long)line.getParsedOptionValue(OPT_BUFFERSIZE);
 			if (val != null) bufferSize = val.intValue();		System.out.println("bufferSize="+bufferSize);	
+			String checkpointFile = line.getOptionValue(OPT_INCREMENTAL);							System.out.println("checkpointFile="+checkpointFile);	
+			Boolean isFollow = (line.hasOption(OPT_FOLLOW)? true : false);							System.out.println("isFollow="+isFollow);	
+			Long flushInterval = (Long)line.getParsedOptionValue(OPT_FLUSHINTERVAL);				System.out.println("flushInterval="+flushInterval);	
+			Integer flushBatch = null;
+			val = (Long)line.getParsedOptionValue(OPT_FLUSHBATCH);
+			if (val != null) flushBatch = val.intValue();											System.out.println("flushBatch="+flushBatch);	
+			Integer serverPort = null;
+			val = (Long)line.getParsedOptionValue(OPT_SERVER);
+			if (val != null) serverPort = val.intValue();											System.out.println("serverPort="+serverPort);	
+			Long progressSeconds = (Long)line.getParsedOptionValue(OPT_PROGRESS);					System.out.println("progressSeconds="+progressSeconds);	
+			String queryProfileFile = line.getOptionValue(OPT_QUERYPROFILE);						System.out.println("queryProfileFile="+queryProfileFile);	
+			String outputFile = line.getOptionValue(OPT_OUTPUT);									System.out.println("outputFile="+outputFile);	
+			String range = line.getOptionValue(OPT_RANGE);											System.out.println("range="+range);	
+			Integer processCount = null;
+			val = (Long)line.getParsedOptionValue(OPT_PROCESSES);
+			if (val != null) processCount = val.intValue();											System.out.println("processCount="+processCount);	
+			String processHeap = line.getOptionValue(OPT_PROCESSHEAP);								System.out.println("processHeap="+processHeap);	
+			Integer processRetries = null;
+			val = (Long)line.getParsedOptionValue(OPT_PROCESSRETRIES);
+			if (val != null) processRetries = val.intValue();										System.out.println("processRetries="+processRetries);	
+			Long processTimeout = (Long)line.getParsedOptionValue(OPT_PROCESSTIMEOUT);				System.out.println("processTimeout="+processTimeout);	
+			Integer fileConcurrency = null;
+			val = (Long)line.getParsedOptionValue(OPT_FILECONCURRENCY);
+			if (val != null) fileConcurrency = val.intValue();										System.out.println("fileConcurrency="+fileConcurrency);	
+			String[] queryOutputs = line.getOptionValues(OPT_QUERYFILES);							System.out.println("queryOutputs="+(queryOutputs != null? String.join(" ", queryOutputs) : null));	
+			Integer asyncBuffers = null;
+			val = (Long)line.getParsedOptionValue(OPT_ASYNCBUFFERS);
+			if (val != null) asyncBuffers = val.intValue();											System.out.println("asyncBuffers="+asyncBuffers);	
+			Integer asyncBufferSize = null;
+			val = (Long)line.getParsedOptionValue(OPT_ASYNCBUFFERSIZE);
+			if (val != null) asyncBufferSize = val.intValue();										System.out.println("asyncBufferSize="+asyncBufferSize);	
+			Long asyncFlushMillis = (Long)line.getParsedOptionValue(OPT_ASYNCFLUSH);				System.out.println("asyncFlushMillis="+asyncFlushMillis);	
+			Boolean isGzip = (line.hasOption(OPT_GZIP)? true : false);								System.out.println("isGzip="+isGzip);	
+			Integer gzipThreads = null;
+			val = (Long)line.getParsedOptionValue(OPT_GZIPTHREADS);
+			if (val != null) gzipThreads = val.intValue();											System.out.println("gzipThreads="+gzipThreads);	
+			Boolean isBinary = (line.hasOption(OPT_BINARY)? true : false);							System.out.println("isBinary="+isBinary);	
 			
 			// and remaining args are positional - file names are not prefixed
-			String dataFile = line.getArgList().get(0);												System.out.println("dataFile="+dataFile);	
-			String queryFile = line.getArgList().get(1);											System.out.println("queryFile="+queryFile);	
+			List<String> positional = line.getArgList();
+			String dataFile = positional.get(0);													System.out.println("dataFile="+dataFile);	
+			if (serverPort != null) {
+				// server mode: no query file - queries come with requests
+				runServer(dataFile, serverPort, workerCount, bufferSize, isVerbose);
+				return;
+			}
+			if (queryOutputs != null) {
+				// shared scan: no qfile argument - query files come with their outputs
+				runSharedScan(dataFile, queryOutputs, bufferSize, isVerbose, isSuperVerbose);
+				return;
+			}
+			// query file is the last one; data files (directories, patterns) are all before it
+			if (positional.size() < 2) throw new IllegalArgumentException("Query file is missing");
+			String queryFile = positional.get(positional.size() - 1);								System.out.println("queryFile="+queryFile);	
+			List<String> dataFiles = positional.subList(0, positional.size() - 1);
+			if (dataFiles.size() > 1 || DataSources.isMulti(dataFile)) {
+				// many files: queries read once, files matched in parallel, one output
+				runMultiFile(dataFiles, queryFile, fileConcurrency, workerCount, bufferSize, outputFile, isVerbose, isSuperVerbose);
+				return;
+			}
+			if (isBinary && outputFile == null) throw new IllegalArgumentException("Binary output (-" + OPT_BINARY + ") needs -" + OPT_OUTPUT + " FILE");
+			if (processCount != null) {
+				// coordinator: the match itself runs in child JVMs
+				runCoordinator(dataFile, queryFile, processCount, processHeap, processRetries, processTimeout, bufferSize, outputFile, isVerbose);
+				return;
+			}
 			
+			QueryProfiler profiler = (queryProfileFile != null? new QueryProfiler() : null);
 			Matcher matcher = null;
-			if (isConcurrent) {
+			long rangeStart = 0;
+			long rangeEnd = 0;
+			if (range != null) {
+				String[] bounds = range.split(":");
+				if (bounds.length != 2) throw new IllegalArgumentException("Range must be START:END; got " + range);
+				rangeStart = Long.parseLong(bounds[0].trim());
+				rangeEnd = Long.parseLong(bounds[1].trim());
+			}
+			if (range != null) {
+				// one shard of the data file: normally started by a coordinator (-ps)
+				matcher = new RangeRecordMatcher(
+						dataFile, 
+						queryFile,
+						rangeStart,
+						rangeEnd,
+						bufferSize,
+						isVerbose,
+						isSuperVerbose
+						);
+			}
+			else if (isFollow) {
+				// streaming: match records as they arrive, until stdin closes (or forever, when tailing a file)
+				matcher = new FollowingRecordMatcher(
+						dataFile, 
+						queryFile,
+						flushInterval,
+						flushBatch,
+						bufferSize,
+						isVerbose,
+						isSuperVerbose
+						);
+			}
+			else if (checkpointFile != null) {
+				// incremental: only records appended since the last run
+				matcher = new IncrementalRecordMatcher(
+						dataFile, 
+						queryFile,
+						checkpointFile,
+						bufferSize,
+						isVerbose,
+						isSuperVerbose
+						);
+			}
+			else if (isQuerySharded) {
+				// workers split the queries: for query files much bigger than one core gets through per record
+				matcher = new QueryShardedRecordMatcher(
+						dataFile, 
+						queryFile,
+						workerCount,
+						bufferSize,
+						isVerbose,
+						isSuperVerbose
+						);
+			}
+			else if (isForkJoin) {
+				// work-stealing: uneven records get spread over all threads
+				matcher = new ForkJoinRecordMatcher(
+						dataFile, 
+						queryFile,
+						workerCount,
+						bufferSize,
+						isVerbose,
+						isSuperVerbose
+						);
+			}
+			else if (isConcurrent) {
 				// create concurrent matcher. If parameters are set right - runs ~30% faster.
 				matcher = new ConcurrentRecordMatcher(
 						dataFile, 
@@ -83,7 +258,9 @@ public class MatcherRunner {
 						workerCount,
 						bufferSize,
 						isVerbose,
-						isSuperVerbose
+						isSuperVerbose,
+						profiler,
+						isAutoTune
 						);
 			}
 			else {
@@ -95,7 +272,8 @@ public class MatcherRunner {
 						isOptimizeDataReads,
 						isOptimizeQueryReads,
 						isVerbose,
-						isSuperVerbose
+						isSuperVerbose,
+						profiler
 						);
 			}
 			
@@ -106,13 +284,75 @@ public class MatcherRunner {
 				System.out.println("Starting match...");
 			}
 			
+			// progress: explicitly asked for, or in verbose mode
+			if (progressSeconds == null && isVerb) progressSeconds = DEFAULT_VERBOSE_PROGRESS_SECONDS;
+			ProgressReporter progress = null;
+			if (progressSeconds != null) {
+				long total = (isFollow? -1 : Utils.getSourceLength(dataFile));	// a followed file has no end
+				if (total > 0 && range != null) total = Math.min(total, rangeEnd) - Math.min(total, rangeStart);
+				if (total > 0 && checkpointFile != null) {
+					// incremental: only what was appended since the last run is left
+					Checkpoint checkpoint = Checkpoint.load(checkpointFile);
+					if (checkpoint != null) total -= checkpoint.getOffset();
+				}
+				progress = new ProgressReporter(MatcherMetrics.global(), total, progressSeconds * 1000, System.err).start();
+			}
+
 			long now = System.currentTimeMillis();
 			
-			long matchCount = matcher.match(System.out);
+			long matchCount;
+			// concurrent workers writing to a file: each writes regions of its own, instead of taking turns on one stream
+			// (gzip and binary output need one stream)
+			boolean isPositional = (outputFile != null && matcher instanceof ConcurrentRecordMatcher && !isGzip && !isBinary);
+			OutputStream out = (isPositional? null : outputFile != null? Files.newOutputStream(Utils.getPath(outputFile)) : System.out);
+			if (out != null && isGzip) {
+				// compressed on a pool of threads, block by block: the matcher only hands bytes over
+				out = new ParallelGzipOutputStream(out, gzipThreads, null, null);
+			}
+			if (out != null && (asyncBuffers != null || asyncBufferSize != null || asyncFlushMillis != null)) {
+				// a writer thread of its own: the matcher does not wait on a slow output until all buffers are full
+				out = new AsyncOutputStream(out, asyncBuffers, asyncBufferSize, asyncFlushMillis);
+			}
+			try {
+				if (isPositional) {
+					matchCount = ((ConcurrentRecordMatcher)matcher).matchToFile(outputFile);
+				}
+				else if (isBinary) {
+					// the dictionary goes at the end - of a successful run only: a failed one leaves a file that can't be read
+					try (BinaryMatchSink sink = new BinaryMatchSink(out)) {
+						matchCount = matcher.match(sink);
+						sink.finish();
+					}
+				}
+				else {
+					matchCount = matcher.match(out);
+				}
+			}
+			finally {
+				if (progress != null) progress.stop();
+				if (out != null && out != System.out) out.close();
+			}
+			if (range != null && outputFile != null) {
+				// shard's results are complete: tell the coordinator (an error above never gets here)
+				ShardCoordinator.markDone(outputFile, ((RangeRecordMatcher)matcher).getRecordCount(), matchCount);
+			}
+			if (matcher instanceof ConcurrentRecordMatcher && ((ConcurrentRecordMatcher)matcher).getTunedSettings() != null) {
+				// to stderr, like progress: stdout carries the results. Worth passing as -w next time
+				System.err.println("Auto-tuned: " + ((ConcurrentRecordMatcher)matcher).getTunedSettings());
+			}
 			
 			long elapsed = System.currentTimeMillis() - now;	
 			if (isVerb) {
 				System.out.println("DONE! Matches #: " + matchCount + ". Elapsed: "+elapsed+" ms");
+				System.out.println(MatcherMetrics.global());
+				System.out.println("Record latency: " + MatcherMetrics.global().getRecordLatency());
+				System.out.println("Emit latency  : " + MatcherMetrics.global().getEmitLatency());
+			}
+			if (profiler != null) {
+				try (BufferedWriter report = Files.newBufferedWriter(Utils.getPath(queryProfileFile), StandardCharsets.UTF_8)) {
+					profiler.writeReport(queryProfileFile, report);
+				}
+				if (isVerb) System.out.println("Query profile written to " + queryProfileFile);
 			}
 
 		}
@@ -126,6 +366,139 @@ public class MatcherRunner {
 		}		
 	}
 
+	/**
+	 * Splits the data file into byte ranges, matches each in a child JVM, merges their results.
+	 * @param dataFile data file location: a local file
+	 * @param queryFile query file location
+	 * @param processes number of child JVMs (shards)
+	 * @param heap max heap of each child, as in -Xmx (may be null)
+	 * @param retries times a failed shard is started again (may be null)
+	 * @param timeoutSeconds time limit of each child's run (may be null)
+	 * @param bufferSize read buffer size (may be null)
+	 * @param outputFile where to write results; null - stdout
+	 * @param isVerbose verbose flag (may be null)
+	 * @throws Exception
+	 */
+	private static void runCoordinator(String dataFile, String queryFile, int processes, String heap, Integer retries, Long timeoutSeconds, Integer bufferSize, String outputFile, Boolean isVerbose) throws Exception {
+		boolean isVerb = (isVerbose != null? isVerbose : false);
+		ShardCoordinator.Builder builder = ShardCoordinator.Builder.builder(dataFile, queryFile)
+				.withShards(processes)
+				.withHeap(heap)
+				.withBufferSize(bufferSize)
+				.withVerbose(isVerb);
+		if (retries != null) builder.withRetries(retries);
+		if (timeoutSeconds != null) builder.withTimeout(TimeUnit.SECONDS.toMillis(timeoutSeconds));
+		ShardCoordinator coordinator = builder.build();
+
+		long now = System.currentTimeMillis();
+		long matchCount;
+		OutputStream out = (outputFile != null? Files.newOutputStream(Utils.getPath(outputFile)) : System.out);
+		try {
+			matchCount = coordinator.match(out);
+		}
+		finally {
+			if (out != System.out) out.close();
+		}
+		if (isVerb) System.out.println("DONE! Matches #: " + matchCount + ". Elapsed: " + (System.currentTimeMillis() - now) + " ms");
+	}
+
+	/**
+	 * Matches the data file against several query files in one pass; each query file's results go to its own file.
+	 * @param dataFile data file location
+	 * @param queryOutputs QFILE=OUTFILE pairs
+	 * @param bufferSize read buffer size (may be null)
+	 * @param isVerbose verbose flag (may be null)
+	 * @param isSuperVerbose very verbose flag (may be null)
+	 * @throws Exception
+	 */
+	private static void runSharedScan(String dataFile, String[] queryOutputs, Integer bufferSize, Boolean isVerbose, Boolean isSuperVerbose) throws Exception {
+		boolean isVerb = (isVerbose != null? isVerbose : false);
+		List<String> queryFiles = new ArrayList<String>();
+		List<String> outputFiles = new ArrayList<String>();
+		for (String pair : queryOutputs) {
+			// the last = : URLs may have some of their own
+			int eq = pair.lastIndexOf('=');
+			if (eq <= 0 || eq == pair.length() - 1) throw new IllegalArgumentException("Expected QFILE=OUTFILE; got " + pair);
+			queryFiles.add(pair.substring(0, eq));
+			outputFiles.add(pair.substring(eq + 1));
+		}
+		SharedScanMatcher matcher = new SharedScanMatcher(dataFile, queryFiles, bufferSize, isVerbose, isSuperVerbose);
+
+		long now = System.currentTimeMillis();
+		long[] matchCounts;
+		List<OutputStream> outs = new ArrayList<OutputStream>();
+		try {
+			for (String outputFile : outputFiles) outs.add(Files.newOutputStream(Utils.getPath(outputFile)));
+			matchCounts = matcher.matchTo(outs);
+		}
+		finally {
+			for (OutputStream out : outs) out.close();
+		}
+		if (isVerb) {
+			for (int i = 0; i < queryFiles.size(); i++) {
+				System.out.println(queryFiles.get(i) + " -> " + outputFiles.get(i) + ": " + matchCounts[i] + " matches");
+			}
+			System.out.println("DONE! Elapsed: " + (System.currentTimeMillis() - now) + " ms");
+		}
+	}
+
+	/**
+	 * Matches many data files against the same queries: files in parallel, one output, each line with its file.
+	 * @param dataFiles data file arguments: files, directories, glob patterns, URLs
+	 * @param queryFile query file location
+	 * @param fileConcurrency max files read at once (may be null)
+	 * @param workers number of matching threads (may be null)
+	 * @param bufferSize read buffer size (may be null)
+	 * @param outputFile where to write results; null - stdout
+	 * @param isVerbose verbose flag (may be null)
+	 * @param isSuperVerbose very verbose flag (may be null)
+	 * @throws Exception
+	 */
+	private static void runMultiFile(List<String> dataFiles, String queryFile, Integer fileConcurrency, Integer workers, Integer bufferSize, String outputFile, Boolean isVerbose, Boolean isSuperVerbose) throws Exception {
+		boolean isVerb = (isVerbose != null? isVerbose : false);
+		List<String> sources = DataSources.expand(dataFiles);
+		MultiSourceMatcher matcher = MultiSourceMatcher.Builder.builder(sources, queryFile)
+				.withReaders(fileConcurrency)
+				.withWorkers(workers)
+				.withBufferSize(bufferSize)
+				.withVerbose(isVerbose)
+				.withSuperVerbose(isSuperVerbose)
+				.build();
+		if (isVerb) System.out.println(sources.size() + " data files; " + matcher);
+
+		long now = System.currentTimeMillis();
+		long matchCount;
+		OutputStream out = (outputFile != null? Files.newOutputStream(Utils.getPath(outputFile)) : System.out);
+		try (SharedOutputWriter writer = new SharedOutputWriter(out)) {
+			matchCount = matcher.match(writer::sinkFor);
+		}
+		finally {
+			if (out != System.out) out.close();
+		}
+		if (isVerb) System.out.println("DONE! Matches #: " + matchCount + ". Elapsed: " + (System.currentTimeMillis() - now) + " ms");
+	}
+
+	/**
+	 * Loads the data once, then serves query batches over HTTP until the process is killed.
+	 * @param dataFile data file location
+	 * @param port port to listen on
+	 * @param threads number of request threads (may be null)
+	 * @param bufferSize read buffer size (may be null)
+	 * @param isVerbose verbose flag (may be null)
+	 * @throws Exception
+	 */
+	private static void runServer(String dataFile, int port, Integer threads, Integer bufferSize, Boolean isVerbose) throws Exception {
+		boolean isVerb = (isVerbose != null? isVerbose : false);
+		long now = System.currentTimeMillis();
+		DataIndex index = DataIndex.load(dataFile, (bufferSize != null? bufferSize : 8192));
+		if (isVerb) System.out.println("Loaded " + index + " in " + (System.currentTimeMillis() - now) + " ms");
+
+		MatcherServer server = new MatcherServer(index, port, threads, isVerbose);
+		int actualPort = server.start();
+		System.out.println("Matcher server listening on http://localhost:" + actualPort + "/match");
+		Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+	}
+
 	/**
 	 * Creates Options object from the passed command line args.
 	 * @param args
@@ -138,7 +511,20 @@ public class MatcherRunner {
 		// add t option
 		options.addOption(OPT_CONCURRENT, false, "Run in concurrent mode: data reads and query matches run simutlaneously. May improve perfromrance somewhat."
 				+" In this mode the only other options that will have an effect are: "
-				+"-" + OPT_BUFFERSIZE + ", -" + OPT_WORKERCOUNT + ", -" + OPT_VERBOSE + " and -" +OPT_SUPERVERBOSE+"; the rest will be ignored." );
+				+"-" + OPT_BUFFERSIZE + ", -" + OPT_WORKERCOUNT + ", -" + OPT_AUTOTUNE + ", -" + OPT_QUERYPROFILE + ", -" + OPT_VERBOSE + " and -" +OPT_SUPERVERBOSE+"; the rest will be ignored." );
+		options.addOption(OPT_QUERYSHARDS, false, "Query-sharded mode, for very large query files: -" + OPT_WORKERCOUNT + " workers (default: number of CPUs) "
+				+"split the queries between them, and each matches every record against its share; records are read and tokenized once, by one thread. "
+				+"Output is in the same order as in the default mode. "
+				+"In this mode the only other options that will have an effect are: "
+				+"-" + OPT_BUFFERSIZE + ", -" + OPT_WORKERCOUNT + ", -" + OPT_VERBOSE + " and -" +OPT_SUPERVERBOSE+"; the rest will be ignored.");
+		options.addOption(OPT_FORKJOIN, false, "Fork/join mode: records are read in chunks, each chunk is split recursively between -" + OPT_WORKERCOUNT + " threads "
+				+"(default: number of CPUs) of a work-stealing pool that tokenize, match and serialize; idle threads take over work of busy ones, "
+				+"so expensive records do not hold the rest up. Output is in the same order as in the default mode. "
+				+"In this mode the only other options that will have an effect are: "
+				+"-" + OPT_BUFFERSIZE + ", -" + OPT_WORKERCOUNT + ", -" + OPT_VERBOSE + " and -" +OPT_SUPERVERBOSE+"; the rest will be ignored.");
+		options.addOption(OPT_AUTOTUNE, false, "When in concurrent mode: tune the number of active workers and the number of records they take at a time while running "
+				+"(hill-climbing on records/s), instead of experimenting with -" + OPT_WORKERCOUNT + ". -" + OPT_WORKERCOUNT + " is then the max number of workers "
+				+"(default: number of CPUs). The settings arrived at are printed to stderr at the end; -" + OPT_VERBOSE + " also prints every change.");
 		options.addOption(OPT_VERBOSE, false, "Verbose. In addition to the results will print some data such as record counts, JVM memory, etc.");
 		options.addOption(OPT_SUPERVERBOSE, false, "Very verbose. Super talkative, spits out data for each data row. Lots of screen output. PERFORMANCE KILLER!");
 		options.addOption(OPT_OPTIMIZE_DATAREADS, false, "Tries to optimize data reads by pre-loading all of data into memory. "
@@ -153,7 +539,7 @@ public class MatcherRunner {
                 .hasArg()
                 .argName("WORKERS")
                 .desc("(default: 1) When in concurrent mode: number of matcher threads to launch. "
-                		+"Experiment with it to see its effect on performance. Typical optimal value is 3-5.")
+                		+"Experiment with it to see its effect on performance (or let -" + OPT_AUTOTUNE + " find it). Typical optimal value is 3-5.")
                 .build();
 		opt1.setType(Number.class);
 		options.addOption(opt1);
@@ -178,6 +564,190 @@ public class MatcherRunner {
 		opt3.setType(Number.class);
 		options.addOption(opt3);
 
+		Option opt4 = Option.builder(OPT_INCREMENTAL)
+                .hasArg()
+                .argName("CHECKPOINT")
+                .desc("Incremental mode for append-only data files: only match records appended since the last run. "
+                		+"CHECKPOINT is a file where the position reached by the run is kept (created if missing). "
+                		+"Starts over from the beginning if the query file, or the head of the data file changed. "
+                		+"Data file must be local. In this mode the only other options that will have an effect are: "
+                		+"-" + OPT_BUFFERSIZE + ", -" + OPT_VERBOSE + " and -" +OPT_SUPERVERBOSE+"; the rest will be ignored.")
+                .build();
+		options.addOption(opt4);
+
+		options.addOption(OPT_FOLLOW, false, "Follow mode (like tail -f): match records as they arrive. "
+				+"Data file is either a local file (matched from the beginning, then followed until the process is killed), "
+				+"or - (stdin; runs until stdin is closed). Output is flushed as soon as there is no more input at hand, "
+				+"or every -" + OPT_FLUSHINTERVAL + " ms, or every -" + OPT_FLUSHBATCH + " matches - whichever comes first. "
+				+"In this mode the only other options that will have an effect are: "
+				+"-" + OPT_FLUSHINTERVAL + ", -" + OPT_FLUSHBATCH + ", -" + OPT_BUFFERSIZE + ", -" + OPT_VERBOSE + " and -" +OPT_SUPERVERBOSE+"; the rest will be ignored.");
+
+		Option opt5 = Option.builder(OPT_FLUSHINTERVAL)
+                .hasArg()
+                .argName("MILLIS")
+                .desc("(default: 200) When in follow mode: max time in ms a match may wait in the output buffer.")
+                .build();
+		opt5.setType(Number.class);
+		options.addOption(opt5);
+
+		Option opt6 = Option.builder(OPT_FLUSHBATCH)
+                .hasArg()
+                .argName("COUNT")
+                .desc("(default: 1000) When in follow mode: max number of matches that may wait in the output buffer.")
+                .build();
+		opt6.setType(Number.class);
+		options.addOption(opt6);
+
+		Option opt7 = Option.builder(OPT_SERVER)
+                .hasArg()
+                .argName("PORT")
+                .desc("Server mode: load data file into memory once, then match query batches sent over HTTP (localhost only): "
+                		+"POST query file contents to http://localhost:PORT/match, get JSON lines back. "
+                		+"No qfile argument in this mode. -" + OPT_WORKERCOUNT + " sets the number of request threads (default: number of CPUs). "
+                		+"The only other options that will have an effect are: "
+                		+"-" + OPT_BUFFERSIZE + " and -" + OPT_VERBOSE + "; the rest will be ignored.")
+                .build();
+		opt7.setType(Number.class);
+		options.addOption(opt7);
+
+		Option opt8 = Option.builder(OPT_PROGRESS)
+                .hasArg()
+                .argName("SECONDS")
+                .desc("Print a progress line (to stderr) every SECONDS: records/s, MB/s, matches/s, and - when the data file size is known - "
+                		+"percent done and ETA. Default: every " + DEFAULT_VERBOSE_PROGRESS_SECONDS + " s with -" + OPT_VERBOSE + ", off otherwise.")
+                .build();
+		opt8.setType(Number.class);
+		options.addOption(opt8);
+
+		Option opt9 = Option.builder(OPT_QUERYPROFILE)
+                .hasArg()
+                .argName("REPORT")
+                .desc("Profile queries: per query - records checked, matches, output size and (sampled) time spent on it. "
+                		+"At the end of the run writes the queries ranked by time to REPORT: JSON if the name ends with .json, CSV otherwise. "
+                		+"Default and concurrent (-" + OPT_CONCURRENT + ") modes only. Slows the run down a little.")
+                .build();
+		options.addOption(opt9);
+
+		Option opt10 = Option.builder(OPT_OUTPUT)
+                .hasArg()
+                .argName("FILE")
+                .desc("Write results to FILE instead of stdout.")
+                .build();
+		options.addOption(opt10);
+
+		Option opt11 = Option.builder(OPT_RANGE)
+                .hasArg()
+                .argName("START:END")
+                .desc("Range mode: only match records that start within bytes [START, END) of the data file (local file only). "
+                		+"Line numbers are relative to the range. With -" + OPT_OUTPUT + ", FILE.done is written once the results are complete. "
+                		+"This is what the child JVMs of -" + OPT_PROCESSES + " run. "
+                		+"In this mode the only other options that will have an effect are: "
+                		+"-" + OPT_OUTPUT + ", -" + OPT_BUFFERSIZE + ", -" + OPT_VERBOSE + " and -" +OPT_SUPERVERBOSE+"; the rest will be ignored.")
+                .build();
+		options.addOption(opt11);
+
+		Option opt12 = Option.builder(OPT_PROCESSES)
+                .hasArg()
+                .argName("N")
+                .desc("Coordinator mode, for data files too large for one JVM: split the data file (local file only) into N byte ranges, "
+                		+"match each in a child JVM of its own, and merge their results in line order. "
+                		+"A child that fails is started again (see -" + OPT_PROCESSRETRIES + "). "
+                		+"In this mode the only other options that will have an effect are: "
+                		+"-" + OPT_PROCESSHEAP + ", -" + OPT_PROCESSRETRIES + ", -" + OPT_PROCESSTIMEOUT + ", -" + OPT_OUTPUT + ", -" + OPT_BUFFERSIZE + " and -" + OPT_VERBOSE + "; the rest will be ignored.")
+                .build();
+		opt12.setType(Number.class);
+		options.addOption(opt12);
+
+		Option opt13 = Option.builder(OPT_PROCESSHEAP)
+                .hasArg()
+                .argName("HEAP")
+                .desc("When in coordinator mode: max heap of each child JVM, as in -Xmx (e.g. 2g). Default: the JVM's default.")
+                .build();
+		options.addOption(opt13);
+
+		Option opt14 = Option.builder(OPT_PROCESSRETRIES)
+                .hasArg()
+                .argName("COUNT")
+                .desc("(default: 2) When in coordinator mode: how many times a failed child is started again before giving up.")
+                .build();
+		opt14.setType(Number.class);
+		options.addOption(opt14);
+
+		Option opt21 = Option.builder(OPT_PROCESSTIMEOUT)
+                .hasArg()
+                .argName("SECONDS")
+                .desc("When in coordinator mode: time limit of each child JVM's run. A child still running then is killed, and counts as failed "
+                		+"(see -" + OPT_PROCESSRETRIES + "). Default: no limit.")
+                .build();
+		opt21.setType(Number.class);
+		options.addOption(opt21);
+
+		Option opt15 = Option.builder(OPT_FILECONCURRENCY)
+                .hasArg()
+                .argName("FILES")
+                .desc("When matching several data files (more than one dfile, a directory, or a pattern): max number of files read at once. "
+                		+"Default: 4096 on Java 21+ (files are read on virtual threads), 64 otherwise. -" + OPT_WORKERCOUNT + " sets the number of "
+                		+"matching threads (default: number of CPUs). In this mode the only other options that will have an effect are: "
+                		+"-" + OPT_WORKERCOUNT + ", -" + OPT_OUTPUT + ", -" + OPT_BUFFERSIZE + ", -" + OPT_VERBOSE + " and -" +OPT_SUPERVERBOSE+"; the rest will be ignored.")
+                .build();
+		opt15.setType(Number.class);
+		options.addOption(opt15);
+
+		Option opt16 = Option.builder(OPT_QUERYFILES)
+                .hasArg()
+                .argName("QFILE=OUTFILE")
+                .desc("Shared-scan mode: match the data file against several query files in one pass - the data is read and tokenized once. "
+                		+"Repeat for each query file: -" + OPT_QUERYFILES + " a.txt=a.jsonl -" + OPT_QUERYFILES + " b.txt=b.jsonl; "
+                		+"results for QFILE go to OUTFILE, the same as a run with QFILE alone would give. No qfile argument in this mode. "
+                		+"The only other options that will have an effect are: "
+                		+"-" + OPT_BUFFERSIZE + ", -" + OPT_VERBOSE + " and -" +OPT_SUPERVERBOSE+"; the rest will be ignored.")
+                .build();
+		options.addOption(opt16);
+
+		Option opt17 = Option.builder(OPT_ASYNCBUFFERS)
+                .hasArg()
+                .argName("BUFFERS")
+                .desc("Asynchronous output: results are collected in BUFFERS swap buffers (at least 2; default: " + AsyncOutputStream.DEFAULT_BUFFERS + "), "
+                		+"written out by a thread of its own; the matcher waits only when all of them are full. "
+                		+"For a slow output, e.g. stdout piped into a slow consumer. Any of -" + OPT_ASYNCBUFFERS + ", -" + OPT_ASYNCBUFFERSIZE + ", -" + OPT_ASYNCFLUSH + " turns it on. "
+                		+"Modes that write one stream (default mode first of all); not with several data files, -" + OPT_QUERYFILES + ", -" + OPT_PROCESSES + " or -" + OPT_SERVER + ".")
+                .build();
+		opt17.setType(Number.class);
+		options.addOption(opt17);
+
+		Option opt18 = Option.builder(OPT_ASYNCBUFFERSIZE)
+                .hasArg()
+                .argName("BYTES")
+                .desc("(default: " + AsyncOutputStream.DEFAULT_BUFFERSIZE + ") Asynchronous output: size of each buffer; a full buffer is handed over to the writer.")
+                .build();
+		opt18.setType(Number.class);
+		options.addOption(opt18);
+
+		Option opt19 = Option.builder(OPT_ASYNCFLUSH)
+                .hasArg()
+                .argName("MILLIS")
+                .desc("Asynchronous output: results that have waited MILLIS in a buffer that is not full yet are written out anyway. "
+                		+"Default: not until the buffer is full (or the end of the run).")
+                .build();
+		opt19.setType(Number.class);
+		options.addOption(opt19);
+
+		options.addOption(OPT_GZIP, false, "Gzip the results. Blocks of " + (ParallelGzipOutputStream.DEFAULT_BLOCKSIZE / 1024) + "K are compressed in parallel (see -" + OPT_GZIPTHREADS + ") "
+				+"into gzip members of their own, written in order: gunzip/zcat read them as one file. Use with -" + OPT_OUTPUT + ": stdout also carries the run's messages. "
+				+"Modes that write one stream; not with several data files, -" + OPT_QUERYFILES + ", -" + OPT_PROCESSES + " or -" + OPT_SERVER + ".");
+
+		Option opt20 = Option.builder(OPT_GZIPTHREADS)
+                .hasArg()
+                .argName("THREADS")
+                .desc("When gzipping the results (-" + OPT_GZIP + "): number of compressing threads. Default: number of CPUs.")
+                .build();
+		opt20.setType(Number.class);
+		options.addOption(opt20);
+
+		options.addOption(OPT_BINARY, false, "Write results in a compact binary format instead of JSON lines: line numbers as varints, query ids instead of queries, "
+				+"word ids instead of words - with the words and queries written once, at the end. Read it with BinaryResultReader. "
+				+"Needs -" + OPT_OUTPUT + ". Modes that write one stream; not with several data files, -" + OPT_QUERYFILES + ", -" + OPT_PROCESSES + " or -" + OPT_SERVER + ".");
+
 		return options;
 	}
 
@@ -187,11 +757,12 @@ public class MatcherRunner {
 	public static void help(Options options) {
 		// automatically generate the help statement from CLI Options (including usage and descriptions of all args)...
 		HelpFormatter formatter = new HelpFormatter();
-		formatter.printHelp( "java [javaopts] MatcherRunner [options] dfile qfile \nusage from jar: java [javaopts] -jar jarfile [options]", options );
+		formatter.printHelp( "java [javaopts] MatcherRunner [options] dfile [dfile...] qfile \n       java [javaopts] MatcherRunner -s PORT [options] dfile \n       java [javaopts] MatcherRunner -q QFILE=OUTFILE [-q QFILE=OUTFILE...] [options] dfile \nusage from jar: java [javaopts] -jar jarfile [options]", options );
 		
 		// ...and add the long description of what this program does
 		System.out.println(
-				"dfile    	Data file: full path to file, or a valid URL. File format: CSV. Lines separated by line breaks, comma-separated values within lines.\n" + 
+				"dfile    	Data file: full path to file, or a valid URL (or - for stdin, in follow mode). File format: CSV. Lines separated by line breaks, comma-separated values within lines.\n" + 
+				"         	Several data files, a directory (its files) or a quoted glob pattern (e.g. 'logs/*.csv') match them all in parallel, into one output; each result line then has a \"file\" (see -" + OPT_FILECONCURRENCY + ").\n" + 
 				"qfile    	Query file: full path to file, or a valid URL. File format: CSV. Lines separated by line breaks, comma-separated values within lines.\n" +  
 				"javaopts 	standard JVM options\n" +
 				"jarfile  	name of the JAR containing MatcherRunner as the entry point.\n" +
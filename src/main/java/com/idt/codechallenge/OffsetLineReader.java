@@ -0,0 +1,247 @@
+package com.idt.codechallenge;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import com.idt.codechallenge.metrics.MatcherMetrics;
+
+/**
+ * <pre>
+ * Line reader that knows the exact byte offset of every line it returns.
+ *
+ * BufferedReader reads ahead and decodes chars, so there is no way to tell where in the file (in bytes) a given line ended.
+ * This reader works directly off a byte channel and keeps track of:
+ * - position: byte offset right after the last line returned (i.e. where the next line starts);
+ * - partial line: bytes read from the source that are not yet terminated by a line break.
+ *
+ * Only complete (line break-terminated) lines are returned by {@link #readLine() readLine}.
+ * This matters for files that are being appended to while we read them: a half-written last line
+ * is not consumed, and will be returned once the writer finishes it.
+ * Use {@link #readRemainder() readRemainder} to get the unterminated tail when the source is known to be final.
+ *
+ * After end of the source is reached readLine() may be called again:
+ * if the source has grown in the meantime (e.g. an appended file) - reading resumes where it stopped.
+ *
+ * Line breaks: \n, or \r\n. Encoding: UTF-8.
+ *
+ * Thread safety: not safe, since it maintains internal state of the reader.
+ * </pre>
+ */
+public class OffsetLineReader implements Closeable {
+
+	private final static int DEFAULT_BUFFERSIZE = 8192;
+
+	private final ReadableByteChannel channel;
+
+	/**
+	 * Read buffer; bytes between bufPos and bufLimit have not been looked at yet
+	 */
+	private final byte[] buf;
+	private int bufPos = 0;
+	private int bufLimit = 0;
+
+	/**
+	 * Index of the next known line break in the buffer; -1 (or anything below bufPos) if not known
+	 */
+	private int nextBreak = -1;
+
+	/**
+	 * Bytes of the line currently being assembled (no line break seen yet)
+	 */
+	private byte[] partial = new byte[256];
+	private int partialLen = 0;
+
+	/**
+	 * Byte offset right after the last returned line
+	 */
+	private long position;
+
+	private boolean isEndOfStream = false;
+
+	/**
+	 * Full arg set ctor.
+	 * @param ch channel to read from. Must be positioned at startOffset already.
+	 * @param startOffset byte offset of the channel's current position; all reported positions are relative to the same origin
+	 * @param bufSize size of the read buffer
+	 */
+	public OffsetLineReader(ReadableByteChannel ch, long startOffset, int bufSize) {
+		if (ch == null) throw new IllegalArgumentException("channel cannot be null");
+		if (startOffset < 0) throw new IllegalArgumentException("startOffset cannot be negative");
+		if (bufSize <= 0) throw new IllegalArgumentException("bufferSize must be positive");
+		channel = ch;
+		position = startOffset;
+		buf = new byte[bufSize];
+	}
+
+	/**
+	 * With default buffer size, starting at the beginning of the channel.
+	 * @param ch
+	 */
+	public OffsetLineReader(ReadableByteChannel ch) {
+		this(ch, 0, DEFAULT_BUFFERSIZE);
+	}
+
+	/**
+	 * Opens a local file and positions the reader at the given byte offset.
+	 * URLs are not supported: offsets only make sense against a local file.
+	 *
+	 * @param fileLocation full path to a local file
+	 * @param startOffset byte offset to start reading from
+	 * @param bufSize size of the read buffer
+	 * @return reader positioned at startOffset
+	 * @throws IOException when file is missing or unreadable
+	 */
+	public static OffsetLineReader open(String fileLocation, long startOffset, int bufSize) throws IOException {
+		if (Utils.getFileLocationType(fileLocation) != Utils.LOCATIONTYPE_FILE) {
+			throw new IllegalArgumentException("Byte offsets are only supported for local files: " + fileLocation);
+		}
+		SeekableByteChannel ch = Files.newByteChannel(Utils.getPath(fileLocation));
+		ch.position(startOffset);
+		return new OffsetLineReader(ch, startOffset, bufSize);
+	}
+
+	/**
+	 * Reads next complete line.
+	 * @return line without the line break; null if no complete line is available (yet).
+	 * @throws IOException passes on whatever channel throws
+	 */
+	public String readLine() throws IOException {
+		while (true) {
+			// look for line break in what's left in the buffer
+			int i = findBreak();
+			if (i >= 0) {
+				appendPartial(bufPos, i - bufPos);
+				bufPos = i + 1;
+				// the line break itself counts towards position
+				position += partialLen + 1;
+				return takePartial();
+			}
+			// no line break: keep what we have, read more
+			appendPartial(bufPos, bufLimit - bufPos);
+			bufPos = bufLimit;
+			if (!fill()) {
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Returns the unterminated tail of the source (if any), and advances position past it.
+	 * Only makes sense once the source is known not to grow anymore.
+	 * @return partial line; null if there is none
+	 * @throws IOException passes on whatever channel throws
+	 */
+	public String readRemainder() throws IOException {
+		// pull in whatever is still buffered
+		appendPartial(bufPos, bufLimit - bufPos);
+		bufPos = bufLimit;
+		if (partialLen == 0) return null;
+		position += partialLen;
+		return takePartial();
+	}
+
+	/**
+	 * Tells whether next readLine() can be served from the buffer, without going to the source.
+	 * Useful when reading from a source that blocks (e.g. stdin): a caller may want to do something
+	 * (like flushing its output) before possibly waiting for more input.
+	 * @return true if a complete line is already buffered
+	 */
+	public boolean hasBufferedLine() {
+		return findBreak() >= 0;
+	}
+
+	/**
+	 * @return byte offset right after the last line returned
+	 */
+	public long position() {
+		return position;
+	}
+
+	/**
+	 * @return true if there are bytes read past position that have not been returned as a line yet
+	 */
+	public boolean hasUnreadBytes() {
+		return partialLen > 0 || bufPos < bufLimit;
+	}
+
+	/**
+	 * @return true if the last attempt to read from the source hit its end
+	 */
+	public boolean isEndOfStream() {
+		return isEndOfStream;
+	}
+
+	/**
+	 * Finds the next line break in the buffer, from bufPos on; remembered until the buffer moves past it.
+	 * @return index of the line break in the buffer; -1 if there is none
+	 */
+	private int findBreak() {
+		if (nextBreak >= bufPos) return nextBreak;
+		for (int i = bufPos; i < bufLimit; i++) {
+			if (buf[i] == '\n') {
+				nextBreak = i;
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Reads next chunk from the channel into the buffer.
+	 * @return false if nothing was read
+	 */
+	private boolean fill() throws IOException {
+		int n = channel.read(ByteBuffer.wrap(buf));
+		if (n < 0) {
+			isEndOfStream = true;
+			return false;
+		}
+		// only ever used for data sources
+		MatcherMetrics.global().bytesRead(n);
+		MatcherMetrics.global().dataBytesRead(n);
+		isEndOfStream = false;
+		bufPos = 0;
+		bufLimit = n;
+		nextBreak = -1;
+		return n > 0;
+	}
+
+	private void appendPartial(int from, int len) {
+		if (len <= 0) return;
+		if (partialLen + len > partial.length) {
+			partial = Arrays.copyOf(partial, Math.max(partial.length * 2, partialLen + len));
+		}
+		System.arraycopy(buf, from, partial, partialLen, len);
+		partialLen += len;
+	}
+
+	private String takePartial() {
+		int len = partialLen;
+		// \r\n: drop \r as well
+		if (len > 0 && partial[len - 1] == '\r') len--;
+		String line = new String(partial, 0, len, StandardCharsets.UTF_8);
+		partialLen = 0;
+		return line;
+	}
+
+	/**
+	 * Closeable impl: closes the channel.
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * A string representation of this instance.
+	 */
+	public String toString() {
+		return "OffsetLineReader: position=" + position + "; partial bytes=" + partialLen;
+	}
+}
@@ -3,12 +3,18 @@ package com.idt.codechallenge;
 import java.io.BufferedReader;
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.idt.codechallenge.metrics.MatcherMetrics;
 
 /**
  * This class is a memory-optimized line reader from a file, with optional conversion of each line into an object of caller's choice
@@ -21,6 +27,7 @@ import java.util.stream.Collectors;
  * Optional: each line may be converted according to a Java streams lambda (Function; takes one value in, returns another value) passed into ctor.
  * 
  * Optimization: trying to load the whole file into memory, and read from memory during subsequent line reads.
+ * A local data file is loaded with all CPUs: its byte ranges read and converted in parallel (see RecordSpliterator).
  * This class is backed by a BufferedReader.
  * 
  * If this class detects that during initial load the memory consumption grows too close to the specified limit -
@@ -73,16 +80,25 @@ class OptimizingBufferedReader <R> implements Closeable {
 	private int bufferSize;	
 	
 	private boolean isOptimize = DEFAULT_ISOPTIMIZE;
+
+	/**
+	 * When true - the source is the data file: bytes read count towards progress.
+	 */
+	private boolean isDataSource = false;
 	
 	/**
 	 * Full arg set ctor.
 	 * @param fLocation file location. URL or full local path.
+	 * @param isOpt when true - tries to pre-load the whole file into memory
+	 * @param minMemRatio min free memory ratio to maintain while pre-loading
 	 * @param bSize size of internal reader's buffer to allocate
+	 * @param isData when true - the source is the data file (for metrics)
 	 * @param converterFunction a lambda (Function) to convert lines from the file into whatever.
 	 * @throws IOException
 	 */
-	OptimizingBufferedReader(String fLocation, boolean isOpt, double minMemRatio, int bSize, Function<String,R> converterFunction) throws IOException {
+	OptimizingBufferedReader(String fLocation, boolean isOpt, double minMemRatio, int bSize, boolean isData, Function<String,R> converterFunction) throws IOException {
 		fileLocation = fLocation;
+		isDataSource = isData;
 		isOptimize = isOpt;
 		bufferSize = bSize;
 		minFreeMemoryRatio = minMemRatio;
@@ -94,6 +110,17 @@ class OptimizingBufferedReader <R> implements Closeable {
 		}
 	}
 
+	/**
+	 * Not a data source.
+	 * @param fLocation file location. URL or full local path.
+	 * @param bSize size of internal reader's buffer to allocate
+	 * @param converterFunction a lambda (Function) to convert lines from the file into whatever.
+	 * @throws IOException
+	 */
+	OptimizingBufferedReader(String fLocation, boolean isOpt, double minMemRatio, int bSize, Function<String,R> converterFunction) throws IOException {
+		this(fLocation, isOpt, minMemRatio, bSize, false, converterFunction);
+	}
+
 	/**
 	 * With default converter (no conversion, returns lines as-is)
 	 * @param fLocation
@@ -166,7 +193,7 @@ class OptimizingBufferedReader <R> implements Closeable {
 			internalReader.close();
 			internalReader = null;
 		}
-		internalReader = Utils.openReader(fileLocation, bufferSize);
+		internalReader = Utils.openReader(fileLocation, bufferSize, isDataSource);
 	}
 	
 	/**
@@ -183,6 +210,12 @@ class OptimizingBufferedReader <R> implements Closeable {
 		resetReader();	
 		if (!isOptimize) return;	// we are in non-optimizing mode - no pre-reads at all
 		
+		if (isDataSource && Utils.getFileLocationType(fileLocation) == Utils.LOCATIONTYPE_FILE) {
+			lines = preloadParallel();
+			// limit reached: lines are null, the internal reader is still at the start
+			return;
+		}
+
 		lines = new ArrayList<R>();
 		
 		boolean isLimitReached = false;
@@ -208,6 +241,48 @@ class OptimizingBufferedReader <R> implements Closeable {
 		}
 	}
 	
+	/**
+	 * Pre-loads a local file: ranges of it read and converted by the common ForkJoinPool, collected in file order.
+	 * Converter must be thread-safe. Memory is checked before each conversion, by whichever thread does it.
+	 * Allocation by the pool threads is added to {@link MatcherMetrics MatcherMetrics} (the calling thread's is its caller's to count):
+	 * each of them is marked on its first record, and counted from there once the stream is done.
+	 * @return all lines, converted; null if the memory limit was reached
+	 */
+	private List<R> preloadParallel() throws IOException {
+		Thread caller = Thread.currentThread();
+		Map<Thread, Long> allocationMarks = new ConcurrentHashMap<Thread, Long>();
+		try (Stream<Record> records = RecordSpliterator.stream(fileLocation, bufferSize)) {
+			return records.parallel()
+					.map(record -> {
+						Thread thread = Thread.currentThread();
+						if (thread != caller && !allocationMarks.containsKey(thread)) allocationMarks.put(thread, MatcherMetrics.threadAllocatedBytes());
+						if (Utils.getEstimatedMemoryRatio() < minFreeMemoryRatio) throw new MemoryLimitReached();
+						return stringToSetConverter.apply(record.getText());
+					})
+					.collect(Collectors.toList());
+		}
+		catch (MemoryLimitReached e) {
+			return null;
+		}
+		catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		finally {
+			for (Map.Entry<Thread, Long> mark : allocationMarks.entrySet()) MatcherMetrics.global().allocatedSince(mark.getKey(), mark.getValue());
+		}
+	}
+
+	/**
+	 * Stops a parallel pre-load; no stack trace - it is not an error.
+	 */
+	private static class MemoryLimitReached extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		MemoryLimitReached() {
+			super(null, null, false, false);
+		}
+	}
+
 	/**
 	 * Closeable impl: closes the internal reader if it exists.
 	 * This class can be used in try-with-resources.
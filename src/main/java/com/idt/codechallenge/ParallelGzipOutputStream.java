@@ -0,0 +1,234 @@
+package com.idt.codechallenge;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * <pre>
+ * Gzip output, compressed in parallel (the way pigz does it): bytes written are cut into blocks,
+ * each block is compressed on a pool of threads into a gzip member of its own, and the members are written out
+ * in block order by a writer thread. Concatenated members are a valid gzip file: gunzip, zcat, GZIPInputStream
+ * read it as one stream.
+ *
+ * The caller only copies bytes into the current block; it waits only when there are too many blocks being
+ * compressed or written (twice the number of threads) - so memory stays bounded when the output is slow.
+ * Each block is compressed on its own, without the previous one as a dictionary: output is a little bigger than
+ * plain gzip's (less so with bigger blocks).
+ *
+ * flush() does not cut a block short (same as GZIPOutputStream): it only flushes the stream behind,
+ * once the members already cut are written. Flushes asked for while one is still waiting for the writer are that one flush.
+ * close() compresses the last block, waits for all of it to be written,
+ * then closes the stream behind (System.out excepted).
+ * An error compressing or writing comes out of the next write(), flush() or close().
+ *
+ * Thread safety: safe.
+ * </pre>
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+	public final static int DEFAULT_BLOCKSIZE = 128 * 1024;
+	private final static int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+
+	private final OutputStream out;
+	private final int blockSize;
+	private final int level;
+	private final ExecutorService compressors;
+	// one thread: writes members in the order they were submitted
+	private final ExecutorService writer;
+	// blocks being compressed or written
+	private final Semaphore inFlight;
+	// a flush is queued for the writer, not started yet
+	private final AtomicBoolean isFlushPending = new AtomicBoolean(false);
+
+	private byte[] block;
+	private int count = 0;
+	private long members = 0;
+	private boolean isClosed = false;
+	private volatile IOException error = null;
+
+	/**
+	 * Default block size and compression level, a thread per CPU.
+	 * @param out stream to write gzip to
+	 */
+	public ParallelGzipOutputStream(OutputStream out) {
+		this(out, null, null, null);
+	}
+
+	/**
+	 * @param out stream to write gzip to
+	 * @param threads number of compressing threads; default: number of CPUs
+	 * @param blockSize bytes compressed into one member; default: 128K
+	 * @param level compression level, 1 (fastest) to 9 (best); default: gzip's default (6)
+	 */
+	public ParallelGzipOutputStream(OutputStream out, Integer threads, Integer blockSize, Integer level) {
+		if (out == null) throw new IllegalArgumentException("out cannot be null");
+		if (threads != null && threads <= 0) throw new IllegalArgumentException("threads must be positive. Default is number of CPUs");
+		if (blockSize != null && blockSize <= 0) throw new IllegalArgumentException("blockSize must be positive. Default is " + DEFAULT_BLOCKSIZE);
+		if (level != null && (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION)) throw new IllegalArgumentException("level must be 1 to 9");
+		this.out = out;
+		int threadCount = (threads != null? threads : DEFAULT_THREADS);
+		this.blockSize = (blockSize != null? blockSize : DEFAULT_BLOCKSIZE);
+		this.level = (level != null? level : Deflater.DEFAULT_COMPRESSION);
+		compressors = Executors.newFixedThreadPool(threadCount, daemons("gzip-"));
+		writer = Executors.newSingleThreadExecutor(daemons("gzip-writer-"));
+		inFlight = new Semaphore(2 * threadCount);
+		block = new byte[this.blockSize];
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] {(byte)b}, 0, 1);
+	}
+
+	@Override
+	public synchronized void write(byte[] b, int off, int len) throws IOException {
+		if (isClosed) throw new IOException("Stream closed");
+		check();
+		while (len > 0) {
+			int n = Math.min(len, blockSize - count);
+			System.arraycopy(b, off, block, count, n);
+			count += n;
+			off += n;
+			len -= n;
+			if (count == blockSize) submit();
+		}
+	}
+
+	/**
+	 * Flushes the stream behind, once the members already cut are written; the current block is left as it is.
+	 * Nothing more is queued if a flush is queued already: that one comes after the same members.
+	 */
+	@Override
+	public synchronized void flush() throws IOException {
+		if (isClosed) return;
+		check();
+		if (!isFlushPending.compareAndSet(false, true)) return;
+		writer.execute(() -> {
+			// from here on, a flush asked for may come after members this one does not: it is queued anew
+			isFlushPending.set(false);
+			if (error != null) return;
+			try {
+				out.flush();
+			}
+			catch (IOException e) {
+				error = e;
+			}
+		});
+	}
+
+	/**
+	 * Compresses what is left, waits for all of it to be written, closes the stream behind - unless it is System.out.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (isClosed) return;
+		isClosed = true;
+		try {
+			// nothing written at all: still a valid (empty) gzip file
+			if (count > 0 || members == 0) submit();
+		}
+		finally {
+			compressors.shutdown();
+			writer.shutdown();
+			try {
+				while (!writer.awaitTermination(1, TimeUnit.MINUTES));
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				if (error == null) error = new IOException("Interrupted while closing", e);
+			}
+			try {
+				out.flush();
+			}
+			finally {
+				if (out != System.out) out.close();
+			}
+		}
+		check();
+	}
+
+	/**
+	 * Current block goes to be compressed, and then written; a new one is started.
+	 */
+	private void submit() throws IOException {
+		try {
+			inFlight.acquire();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the compressors", e);
+		}
+		byte[] data = block;
+		int length = count;
+		Future<byte[]> member = compressors.submit(() -> compress(data, length));
+		writer.execute(() -> write(member));
+		block = new byte[blockSize];
+		count = 0;
+		members++;
+	}
+
+	/**
+	 * Writer: writes the member once compressed.
+	 */
+	private void write(Future<byte[]> member) {
+		try {
+			if (error != null) return;
+			out.write(member.get());
+		}
+		catch (ExecutionException e) {
+			error = (e.getCause() instanceof IOException? (IOException)e.getCause() : new IOException("Error compressing output", e.getCause()));
+		}
+		catch (InterruptedException e) {
+			error = new IOException("Gzip writer interrupted", e);
+		}
+		catch (IOException e) {
+			error = e;
+		}
+		finally {
+			inFlight.release();
+		}
+	}
+
+	/**
+	 * One block into one gzip member.
+	 */
+	private byte[] compress(byte[] data, int length) throws IOException {
+		ByteArrayOutputStream member = new ByteArrayOutputStream(length / 4 + 64);
+		try (GZIPOutputStream gzip = new GZIPOutputStream(member, 8192) {{ def.setLevel(level); }}) {
+			gzip.write(data, 0, length);
+		}
+		return member.toByteArray();
+	}
+
+	private void check() throws IOException {
+		if (error != null) throw new IOException("Error writing gzip output", error);
+	}
+
+	private static ThreadFactory daemons(String prefix) {
+		AtomicInteger number = new AtomicInteger();
+		return r -> {
+			Thread t = new Thread(r, prefix + number.getAndIncrement());
+			t.setDaemon(true);
+			return t;
+		};
+	}
+
+	/**
+	 * A string representation of this instance.
+	 */
+	public String toString() {
+		return "ParallelGzipOutputStream: blockSize=" + blockSize + "; level=" + level + "; members=" + members;
+	}
+}
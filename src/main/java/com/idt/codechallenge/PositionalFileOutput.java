@@ -0,0 +1,160 @@
+package com.idt.codechallenge;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.gson.Gson;
+import com.idt.codechallenge.metrics.MatcherMetrics;
+
+/**
+ * <pre>
+ * Output file that many threads write to at once, with no lock around the writes:
+ * a thread serializes a chunk of output into a buffer of its own, reserves a region of the file for it
+ * (one atomic add to the shared position), and writes the chunk at that position - FileChannel.write(buffer, position).
+ * Writes of different threads go to different regions: they neither wait for each other, nor mix.
+ *
+ * Two ways to use it:
+ * - unordered: {@link #newSink() newSink} - a JSON sink per thread; chunks land in the file in the order they are reserved.
+ *   Lines of one sink stay in their order; lines of different sinks are interleaved chunk by chunk.
+ *   This is what concurrent workers (ConcurrentRecordMatcher) use when writing to a file;
+ * - ordered: {@link #write(long, ByteBuffer) write(sequence, chunk)} - chunks numbered 0, 1, 2...
+ *   regions are reserved in sequence order (chunk N waits until chunk N - 1 has its region - not until it is written),
+ *   then written in parallel. Every sequence number must come, once - an empty chunk included: a missing one holds up the rest.
+ *
+ * Output is always a local file; it is created, or truncated.
+ * close() closes the file: whatever sinks have not flushed is not in it.
+ *
+ * Thread safety: safe; each sink is for one thread at a time.
+ * </pre>
+ */
+public class PositionalFileOutput implements Closeable {
+
+	private final static int CHUNK_CHARS = 64 * 1024;
+
+	private final String fileLocation;
+	private final FileChannel channel;
+	// next free byte of the file
+	private final AtomicLong position = new AtomicLong();
+
+	// ordered writes: next sequence number to get its region
+	private final Object sequenceLock = new Object();
+	private long nextSequence = 0;
+
+	/**
+	 * @param outputFile full path to a local file; created, or truncated
+	 * @throws IOException when the file cannot be opened for writing
+	 */
+	public PositionalFileOutput(String outputFile) throws IOException {
+		if (outputFile == null) throw new IllegalArgumentException("outputFile cannot be null");
+		fileLocation = outputFile;
+		channel = FileChannel.open(Utils.getPath(outputFile), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+	}
+
+	/**
+	 * JSON sink (same lines as {@link JsonMatchSink JsonMatchSink}) that writes to this file in chunks of whole lines:
+	 * a chunk goes out when it is full, and on flush().
+	 * Not thread-safe: one per thread.
+	 * @return new sink
+	 */
+	public MatchSink newSink() {
+		return new MatchSink() {
+			private final Gson gson = new Gson();
+			private final StringBuilder chunk = new StringBuilder();
+			private long charsWritten = 0;
+
+			@Override
+			public void onMatch(long line, int queryId, Set<String> queryWords, Map<String, Integer> wordCounts) throws IOException {
+				int length = chunk.length();
+				chunk.append(Utils.toJson(line, queryWords, Utils.nonQueryWords(wordCounts, queryWords), gson)).append(System.lineSeparator());
+				charsWritten += chunk.length() - length;
+				if (chunk.length() >= CHUNK_CHARS) flush();
+			}
+
+			@Override
+			public void flush() throws IOException {
+				if (chunk.length() == 0) return;
+				write(ByteBuffer.wrap(chunk.toString().getBytes(StandardCharsets.UTF_8)));
+				chunk.setLength(0);
+			}
+
+			@Override
+			public long getCharsWritten() {
+				return charsWritten;
+			}
+		};
+	}
+
+	/**
+	 * Unordered: reserves the next free region, writes the chunk into it.
+	 * @param chunk bytes to write, from its position to its limit
+	 * @throws IOException whatever the file throws
+	 */
+	public void write(ByteBuffer chunk) throws IOException {
+		writeAt(chunk, position.getAndAdd(chunk.remaining()));
+	}
+
+	/**
+	 * Ordered: waits for chunks with lower sequence numbers to get their regions, reserves the next one, writes the chunk into it.
+	 * @param sequence chunk's number: 0, 1, 2... each exactly once
+	 * @param chunk bytes to write, from its position to its limit; may be empty
+	 * @throws IOException whatever the file throws; or interrupted while waiting
+	 */
+	public void write(long sequence, ByteBuffer chunk) throws IOException {
+		long start;
+		synchronized (sequenceLock) {
+			if (sequence < nextSequence) throw new IllegalStateException("Sequence " + sequence + " is written already");
+			try {
+				while (sequence != nextSequence) sequenceLock.wait();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for sequence " + sequence, e);
+			}
+			start = position.getAndAdd(chunk.remaining());
+			nextSequence++;
+			sequenceLock.notifyAll();
+		}
+		writeAt(chunk, start);
+	}
+
+	/**
+	 * Positional write of the whole chunk: FileChannel may write less than asked, at a time.
+	 */
+	private void writeAt(ByteBuffer chunk, long start) throws IOException {
+		int length = chunk.remaining();
+		long at = start;
+		while (chunk.hasRemaining()) {
+			at += channel.write(chunk, at);
+		}
+		MatcherMetrics.global().outputBytes(length);
+	}
+
+	/**
+	 * @return bytes reserved so far: the size of the file once all writes are done
+	 */
+	public long size() {
+		return position.get();
+	}
+
+	/**
+	 * Closes the file.
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * A string representation of this instance.
+	 */
+	public String toString() {
+		return "PositionalFileOutput: " + fileLocation + "; size=" + position.get();
+	}
+}
@@ -0,0 +1,166 @@
+package com.idt.codechallenge;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import com.idt.codechallenge.metrics.MatcherMetrics;
+
+/**
+ * <pre>
+ * Queries, matched one record at a time - for use in streams of {@link Record Record}s:
+ *
+ *   QueryMatcher matcher = QueryMatcher.load("queries.txt");
+ *   try (Stream&lt;Record&gt; records = RecordSpliterator.stream("data.txt")) {
+ *       records.parallel().flatMap(matcher::matchRecord).forEachOrdered(QueryMatcher.into(sink));
+ *   }
+ *
+ * Records are parsed and matched by the stream's threads (the common ForkJoinPool, unless run from another pool);
+ * forEachOrdered() hands the matches over to the sink in (line, query) order, one at a time -
+ * the same sequence of onMatch() calls the sequential matchers make. The sink need not be thread-safe.
+ * {@link #match(Stream, MatchSink) match} does all of the above, and flushes the sink.
+ *
+ * Thread safety: safe - queries are never changed after construction.
+ * </pre>
+ */
+public class QueryMatcher {
+
+	private final List<Set<String>> queries;
+
+	/**
+	 * One match: a record and a query it matched.
+	 */
+	public static final class Match {
+		private final long line;
+		private final int queryId;
+		private final Set<String> queryWords;
+		private final Map<String, Integer> wordCounts;
+
+		Match(long l, int q, Set<String> qw, Map<String, Integer> wc) {
+			line = l;
+			queryId = q;
+			queryWords = qw;
+			wordCounts = wc;
+		}
+
+		public long getLine() {return line;}
+		public int getQueryId() {return queryId;}
+		public Set<String> getQueryWords() {return queryWords;}
+		public Map<String, Integer> getWordCounts() {return wordCounts;}
+
+		/**
+		 * Hands this match over to the sink.
+		 * @param sink receiver of results
+		 * @throws IOException whatever the sink throws
+		 */
+		public void emitTo(MatchSink sink) throws IOException {
+			sink.onMatch(line, queryId, queryWords, wordCounts);
+		}
+
+		/**
+		 * A string representation of this instance.
+		 */
+		public String toString() {
+			return "Match: line=" + line + "; query=" + queryId + " " + queryWords;
+		}
+	}
+
+	/**
+	 * @param qs queries; query id is the position in the list
+	 */
+	public QueryMatcher(List<Set<String>> qs) {
+		if (qs == null) throw new IllegalArgumentException("queries cannot be null");
+		queries = Collections.unmodifiableList(new ArrayList<Set<String>>(qs));
+	}
+
+	/**
+	 * Reads queries from a query file.
+	 * @param queryFileLocation file path or URL
+	 * @return matcher of the file's queries
+	 * @throws IOException when file is invalid or unreadable
+	 */
+	public static QueryMatcher load(String queryFileLocation) throws IOException {
+		return new QueryMatcher(Utils.readQueries(queryFileLocation, 8192));
+	}
+
+	/**
+	 * Parses a record, matches it against all queries.
+	 * @param record data record
+	 * @return its matches, in query order; empty if none
+	 */
+	public Stream<Match> matchRecord(Record record) {
+		Map<String, Integer> wordCounts = Utils.countWords(record.getText());
+		List<Match> matches = null;
+		for (int q = 0; q < queries.size(); q++) {
+			Set<String> queryWords = queries.get(q);
+			if (wordCounts.keySet().containsAll(queryWords)) {
+				if (matches == null) matches = new ArrayList<Match>(2);
+				matches.add(new Match(record.getLine(), q, queryWords, wordCounts));
+			}
+		}
+		MatcherMetrics.global().queriesEvaluated(queries.size());
+		if (matches == null) return Stream.empty();
+		MatcherMetrics.global().matchesEmitted(matches.size());
+		return matches.stream();
+	}
+
+	/**
+	 * Matches a stream of records - parallel or not - into the sink, in record order; flushes the sink at the end.
+	 * @param records records to match; not closed
+	 * @param sink receiver of results
+	 * @return number of matches found
+	 * @throws IOException whatever the sink or the record source throw
+	 */
+	public long match(Stream<Record> records, MatchSink sink) throws IOException {
+		AtomicLong matchCount = new AtomicLong();
+		Consumer<Match> emit = into(sink);
+		try {
+			records.flatMap(this::matchRecord).forEachOrdered(m -> {
+				emit.accept(m);
+				matchCount.incrementAndGet();
+			});
+		}
+		catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		sink.flush();
+		return matchCount.get();
+	}
+
+	/**
+	 * The sink as a stream consumer: for forEachOrdered(). Sink's IOExceptions come out wrapped in UncheckedIOException.
+	 * @param sink receiver of results
+	 * @return consumer that hands each match over to the sink
+	 */
+	public static Consumer<Match> into(MatchSink sink) {
+		return m -> {
+			try {
+				m.emitTo(sink);
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		};
+	}
+
+	/**
+	 * @return number of queries
+	 */
+	public int size() {
+		return queries.size();
+	}
+
+	/**
+	 * A string representation of this instance.
+	 */
+	public String toString() {
+		return "QueryMatcher: " + queries.size() + " queries";
+	}
+}
@@ -0,0 +1,155 @@
+package com.idt.codechallenge;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.idt.codechallenge.metrics.MatcherMetrics;
+
+/**
+ * <pre>
+ * Matcher for one byte range of a local data file: what each child JVM of the {@link ShardCoordinator ShardCoordinator} runs.
+ *
+ * A record belongs to the range its first byte is in: [start, end). Ranges may be cut at any byte:
+ * a record cut in two belongs to the range it starts in - the next range skips its tail.
+ * Adjacent ranges therefore have every record exactly once.
+ *
+ * Line numbers in the output are relative to the range (its first record is line 1): the absolute ones are not known
+ * without reading everything before the range. Whoever put the ranges together adds them up - see {@link #getRecordCount() getRecordCount}.
+ *
+ * Data file must be a local file; query file may be a URL.
+ * Queries are always pre-loaded into memory.
+ * </pre>
+ */
+public class RangeRecordMatcher implements Matcher {
+
+	private final static boolean DEFAULT_VERBOSE = false;
+	private final static boolean DEFAULT_SUPERVERBOSE = false;
+	private final static int DEFAULT_BUFFERSIZE = 8192;
+
+	private final String dataFileLocation;
+	private final String queryFileLocation;
+	private final long start;
+	private final long end;
+
+	private boolean isVerbose = DEFAULT_VERBOSE;
+	private boolean isSuperVerbose = DEFAULT_SUPERVERBOSE;
+	private int bufferSize = DEFAULT_BUFFERSIZE;
+
+	private long recordCount = 0;
+
+	/**
+	 * Ctor with all defaults except for file locations and the range.
+	 * @param dfLocation data file: full path to a local file
+	 * @param qfLocation query file: full path or URL
+	 * @param s first byte of the range
+	 * @param e byte after the last one of the range; may be past the end of the file
+	 */
+	public RangeRecordMatcher(String dfLocation, String qfLocation, long s, long e) {
+		this(dfLocation, qfLocation, s, e, DEFAULT_BUFFERSIZE, DEFAULT_VERBOSE, DEFAULT_SUPERVERBOSE);
+	}
+
+	/**
+	 * Ctor with full set of arguments.
+	 * @param dfLocation data file: full path to a local file
+	 * @param qfLocation query file: full path or URL
+	 * @param s first byte of the range
+	 * @param e byte after the last one of the range; may be past the end of the file
+	 * @param bufSize positive integer - size of read buffers. If null is passed - will use default 8192.
+	 * @param isVerb when true - generates some extra output
+	 * @param isSuperVerb when true - generates lots of extra output
+	 */
+	public RangeRecordMatcher(
+			String dfLocation,
+			String qfLocation,
+			long s,
+			long e,
+			Integer bufSize,
+			Boolean isVerb,
+			Boolean isSuperVerb) {
+
+		if (dfLocation == null) throw new IllegalArgumentException("dataFileLocation cannot be null");
+		this.dataFileLocation = dfLocation;
+
+		if (qfLocation == null) throw new IllegalArgumentException("queryFileLocation cannot be null");
+		this.queryFileLocation = qfLocation;
+
+		if (s < 0 || e < s) throw new IllegalArgumentException("range must be 0 <= start <= end; got " + s + ":" + e);
+		this.start = s;
+		this.end = e;
+
+		this.isSuperVerbose = (isSuperVerb != null? isSuperVerb : isSuperVerbose);
+		this.isVerbose = (isVerb != null?  isVerb || isSuperVerbose : isVerbose || isSuperVerbose);	// superverbose is an overriding option
+
+		if(bufSize !=  null && bufSize <= 0 ) throw new IllegalArgumentException("bufferSize must be positive. Default is " + DEFAULT_BUFFERSIZE);
+		this.bufferSize = (bufSize != null? bufSize : DEFAULT_BUFFERSIZE);
+	}
+
+	/**
+	 * Matches the records of the range.
+	 *
+	 * @param sink receiver of results; line numbers are relative to the range
+	 * @throws IOException when files are unreadable
+	 * @return number of matches found
+	 */
+	@Override
+	public long match(MatchSink sink) throws IOException {
+
+		if (Utils.getFileLocationType(dataFileLocation) != Utils.LOCATIONTYPE_FILE) {
+			throw new IllegalArgumentException("Range mode requires a local data file: " + dataFileLocation);
+		}
+
+		List<Set<String>> queries = Utils.readQueries(queryFileLocation, bufferSize);
+		info("Read " + queries.size() + " queries; range " + start + ":" + end);
+
+		long rowNum = 0;
+		long matchCount = 0;
+		long allocationMark = MatcherMetrics.threadAllocatedBytes();
+		MatcherMetrics.LatencyRecorder latency = MatcherMetrics.global().latencyRecorder();
+		MatchSink timedSink = new TimedMatchSink(sink, latency.getEmitHistogram());
+
+		// one byte early: tells whether a record starts right at start
+		try (OffsetLineReader reader = OffsetLineReader.open(dataFileLocation, Math.max(0, start - 1), bufferSize)) {
+			if (start > 0) {
+				// the previous range's last record (or just its line break): skipped
+				if (reader.readLine() == null) reader.readRemainder();
+			}
+			String line;
+			// position: where the next record starts. The file is final: an unterminated last line is a record too
+			while (reader.position() < end && ((line = reader.readLine()) != null || (line = reader.readRemainder()) != null)) {
+				rowNum++;
+				long begin = System.nanoTime();
+				Map<String, Integer> wordCounts = Utils.countWords(line);
+				debug("row: " + rowNum + "; wordCounts=" + wordCounts);
+				matchCount += Utils.matchRow(rowNum, wordCounts, queries, timedSink);
+				latency.record(System.nanoTime() - begin);
+			}
+		}
+		finally {
+			MatcherMetrics.global().allocatedSince(allocationMark);
+			MatcherMetrics.global().merge(latency);
+		}
+		sink.flush();
+		recordCount = rowNum;
+
+		info("Records processed: " + rowNum);
+
+		return matchCount;
+	}
+
+	/**
+	 * @return number of records in the range; known after match() is done
+	 */
+	public long getRecordCount() {
+		return recordCount;
+	}
+
+	private void info(Object message) {
+		if (isVerbose) System.out.println(message);
+	}
+
+	private void debug(Object message) {
+		if (isSuperVerbose) System.out.println(message);
+	}
+}
@@ -0,0 +1,60 @@
+package com.idt.codechallenge;
+
+/**
+ * <pre>
+ * One record (line) of a data file, as streamed by {@link RecordSpliterator RecordSpliterator}:
+ * - line: its line # in the file (1-based);
+ * - offset: byte offset of its first byte in the file;
+ * - text: the line itself, without the line break.
+ *
+ * Immutable.
+ * </pre>
+ */
+public final class Record {
+
+	private final long line;
+	private final long offset;
+	private final String text;
+
+	/**
+	 * @param l line # (1-based)
+	 * @param o byte offset of the record in the file
+	 * @param t the line, without the line break
+	 */
+	public Record(long l, long o, String t) {
+		if (l <= 0) throw new IllegalArgumentException("line # must be positive");
+		if (o < 0) throw new IllegalArgumentException("offset cannot be negative");
+		if (t == null) throw new IllegalArgumentException("text cannot be null");
+		line = l;
+		offset = o;
+		text = t;
+	}
+
+	/**
+	 * @return line # in the file (1-based)
+	 */
+	public long getLine() {
+		return line;
+	}
+
+	/**
+	 * @return byte offset of the record's first byte in the file
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * @return the line, without the line break
+	 */
+	public String getText() {
+		return text;
+	}
+
+	/**
+	 * A string representation of this instance.
+	 */
+	public String toString() {
+		return "Record: line=" + line + "; offset=" + offset + "; text=" + text;
+	}
+}
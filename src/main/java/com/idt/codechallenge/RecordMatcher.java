@@ -1,17 +1,13 @@
 package com.idt.codechallenge;
 
-import java.io.BufferedWriter;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.util.Arrays;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
+import com.idt.codechallenge.metrics.MatcherMetrics;
+import com.idt.codechallenge.metrics.QueryProfiler;
 
 /**
  * <pre>
@@ -44,6 +40,7 @@ public class RecordMatcher implements Matcher {
 	private boolean isSuperVerbose = DEFAULT_SUPERVERBOSE;
 	private double minFreeMemoryRatio = DEFAULT_MEMORY_RATIO;
 	private int bufferSize = DEFAULT_BUFFERSIZE;
+	private QueryProfiler profiler = null;
 	
 	/**
 	 * Ctor with all defaults except for data and query files locations.
@@ -106,6 +103,24 @@ public class RecordMatcher implements Matcher {
 			Boolean isOptQryReads, 
 			Boolean isVerb, 
 			Boolean isSuperVerb) {
+		this(dfleLocation, qfLocation, minMemRatio, bufSize, isOptDataReads, isOptQryReads, isVerb, isSuperVerb, null);
+	}
+
+	/**
+	 * Same as the full ctor, plus per-query profiling.
+	 * 
+	 * @param prof when not null - every query's cost is recorded in it (see {@link QueryProfiler QueryProfiler}); costs some time itself
+	 */
+	public RecordMatcher(
+			String dfleLocation, 
+			String qfLocation, 
+			Double  minMemRatio, 
+			Integer bufSize, 
+			Boolean isOptDataReads, 
+			Boolean isOptQryReads, 
+			Boolean isVerb, 
+			Boolean isSuperVerb,
+			QueryProfiler prof) {
 
 		if (dfleLocation == null) throw new IllegalArgumentException("dataFileLocation cannot be null");
 		this.dataFileLocation = dfleLocation;
@@ -124,6 +139,7 @@ public class RecordMatcher implements Matcher {
 		
 		if(bufSize !=  null && bufSize < 0 ) throw new IllegalArgumentException("bufferSize must be positive. Java default is " + DEFAULT_BUFFERSIZE);
 		this.bufferSize = (bufSize != null? bufSize : DEFAULT_BUFFERSIZE);
+		this.profiler = prof;
 	}	
 
 	/**
@@ -181,13 +197,16 @@ public class RecordMatcher implements Matcher {
 	 * You may want to experiment with combinations of bufferSize and minFreeMemoryRatio.
 	 * </pre>
 	 * 
-	 * @param out an OutpuStream to write result into. 
+	 * @param sink receiver of results; JSON output (see {@link Matcher#match(OutputStream) match(OutputStream)}) is one of them. 
 	 * @throws IOException some Readers managed outside try-with-resources may throw.
 	 * @return number of matches found
 	 */
 	@Override
-	public long match(OutputStream out) throws IOException {
+	public long match(MatchSink sink) throws IOException {
 
+		long allocationMark = MatcherMetrics.threadAllocatedBytes();
+		// per-record and per-match latencies
+		MatcherMetrics.LatencyRecorder latency = MatcherMetrics.global().latencyRecorder();
 		if (isVerbose) {
 			// show memory stats before processing
 			Utils.getEstimatedMemoryRatio(isVerbose);
@@ -199,12 +218,6 @@ public class RecordMatcher implements Matcher {
 		Utils.getFileLocationType(dataFileLocation);
 		Utils.getFileLocationType(queryFileLocation);
 
-		// to write output to
-		BufferedWriter outWriter = new BufferedWriter(new OutputStreamWriter(out));
-		
-		// Gson instances are reusable; use this one each time JSON is needed
-		Gson gson = new Gson();
-		
 		// running row counter, for inclusion into results, and stats to display
 		long rowNum = 0;
 		long matchCount = 0;
@@ -216,6 +229,7 @@ public class RecordMatcher implements Matcher {
 						isOptimizeDataReads,
 						minFreeMemoryRatio,
 						bufferSize,
+						true,
 						(s) -> {return s;}) ;
 				// the lambda will split each query into a Set containing unique query words.
 				OptimizingBufferedReader<Set<String>> brQuery = new OptimizingBufferedReader<Set<String>>(
@@ -223,46 +237,44 @@ public class RecordMatcher implements Matcher {
 						isOptimizeQueryReads,
 						minFreeMemoryRatio,
 						bufferSize,
-						(s) -> {return Arrays.asList(s.split(",")).stream().collect(Collectors.toSet());});
+						Utils::toQueryWords);
 			) {
 			
 			// refillable map of word frequencies, per line per query... 
 			Map<String, Integer> wordCounts = null;	
 			
 			String line = null;
+			QueryProfiler.Recorder recorder = (profiler != null? profiler.recorder() : null);
+			MatchSink timedSink = new TimedMatchSink(sink, latency.getEmitHistogram());
 
 			// data file can be very large: always reading it from the Reader one line at a time	
 			while ((line = brData.readLine()) != null) {
 				rowNum++;
+				long start = System.nanoTime();
 				
 				// tokenize the line, count word frequencies in it, store for subsequent matching against all queries
-		        wordCounts = 
-		        		Arrays.asList(line.split(","))
-		        		.stream()
-		                .collect(
-		                		Collectors.toMap(w -> w, w -> 1, Integer::sum)
-		                		);
+		        wordCounts = Utils.countWords(line);
 		        if (isSuperVerbose) System.out.println("row: "+rowNum + "; wordCounts="+wordCounts);
 
 		        // apply all queries in turn to this line, write out the result (if any)
-		        matchCount += writeOutOnlyNonMatchingWords(brQuery, wordCounts, outWriter, gson, rowNum);
-
-				if (isVerbose) {
-					// every now and then put something out to console
-					if (rowNum%50000 == 0) {
-						System.out.println("rows processed: " + rowNum);
-					}
-				}
+		        matchCount += (recorder == null? 
+		        		writeOutOnlyNonMatchingWords(brQuery, wordCounts, timedSink, rowNum) 
+		        		: writeOutOnlyNonMatchingWords(brQuery, wordCounts, timedSink, rowNum, recorder));
+		        latency.record(System.nanoTime() - start);
 			}
 
-			// and before we go: ensure that all data written into buffer is actually pushed to the stream behind writer
+			// and before we go: ensure that all results handed to the sink are actually pushed to whatever is behind it
 	        if (isVerbose) System.out.println("Output:");
-			outWriter.flush();
+			sink.flush();
 			
 		}
 		catch (Exception e) {
 			throw new RuntimeException("Error during matching. ", e);
 		}
+		finally {
+			MatcherMetrics.global().allocatedSince(allocationMark);
+			MatcherMetrics.global().merge(latency);
+		}
 			
 		if (isVerbose) {
 			// just to show memory stats after processing
@@ -276,57 +288,80 @@ public class RecordMatcher implements Matcher {
 	/**
 	 * Matches a passed map of {word, count} against all queries. 
 	 * Queries are read from the passed reader; each query is a list of query words: {qword1, qword2, qword3,...}.
-	 * Prints out (to the passed writer) only {word,count} pairs from the map where word does not match any of the query words.
+	 * Hands each match over to the sink; the sink decides what to make of it 
+	 * (JSON sink prints out only {word,count} pairs from the map where word does not match any of the query words).
 	 * 
 	 * @param reader reader to write result to
 	 * @param wordCounts map of {word,count}
-	 * @param outWriter BufferedWriter to write result to
-	 * @param gson reusable instance of Gson to construct JSON
+	 * @param sink receiver of results
 	 * @param row row in the data file from which the map of {word,count} pairs was read
 	 * @throws IOException passes on whatever reader throws
 	 */
 	private long writeOutOnlyNonMatchingWords(
 			OptimizingBufferedReader<Set<String>> reader,
 			Map<String, Integer> wordCounts,
-			BufferedWriter outWriter,
-			Gson gson,
+			MatchSink sink,
 			long rowNum) throws IOException {
 
 		long matchCount = 0;
-		// a holder for a filtered version of the wordCounts Map - only non-query words
-		Map<String, Integer> result = null;	
+		// position of the query in the query file - this is its id
+		int queryId = 0;
 		
 		// apply all queries in turn to this map of word counts
 		Set<String> queryWords;
         while ((queryWords = reader.readLine()) != null) {	
         	
-        	Set<String> qw = queryWords;	// the lambda below complains and wants this var to be either "in scope", or final. Re-assignment does it
-	        if (isSuperVerbose) System.out.println("queryWords="+qw);
+	        if (isSuperVerbose) System.out.println("queryWords="+queryWords);
 
 			// check if all query words are found in the data line
 			if (wordCounts.keySet().containsAll(queryWords)) {
 				if (isSuperVerbose) System.out.println("MATCH!");
 				
-				// ALL query criteria are found; leave only words that *do not match*, and print what's left.						
-				// This stream operation filters out entries that match query
-				result = 
-						wordCounts.entrySet().stream()
-						.filter(entry -> !qw.contains(entry.getKey()))
-						.collect(Collectors.toMap(entry -> entry.getKey(), entry -> entry.getValue()));						
-			
-				// this output adds line # and the query to the match result
-				JsonObject json = new JsonObject();
-				json.addProperty("line", new Long(rowNum));
-				json.addProperty("query", queryWords.toString());
-				json.add("result", gson.toJsonTree(result));
-				
-				// write out a result of all queries that ran against this data line
-				outWriter.write(json.toString());
-				outWriter.newLine();
+				// ALL query criteria are found: pass on the match, with line # and the query
+				sink.onMatch(rowNum, queryId, queryWords, wordCounts);
 				
 				matchCount++;
 			}
+			queryId++;
+        }
+        MatcherMetrics.global().queriesEvaluated(queryId);
+        MatcherMetrics.global().matchesEmitted(matchCount);
+        
+        return matchCount;
+	}
+
+	/**
+	 * Same as {@link #writeOutOnlyNonMatchingWords(OptimizingBufferedReader, Map, MatchSink, long) writeOutOnlyNonMatchingWords}, 
+	 * with every query's cost recorded - a separate loop, so that the unprofiled one does not pay for the checks.
+	 */
+	private long writeOutOnlyNonMatchingWords(
+			OptimizingBufferedReader<Set<String>> reader,
+			Map<String, Integer> wordCounts,
+			MatchSink sink,
+			long rowNum,
+			QueryProfiler.Recorder recorder) throws IOException {
+
+		long matchCount = 0;
+		int queryId = 0;
+		boolean isSampled = recorder.isSampled(rowNum);
+		
+		Set<String> queryWords;
+        while ((queryWords = reader.readLine()) != null) {	
+        	if (rowNum == 1) profiler.query(queryId, queryWords);
+        	long start = (isSampled? System.nanoTime() : 0);
+
+			if (wordCounts.keySet().containsAll(queryWords)) {
+				long chars = sink.getCharsWritten();
+				sink.onMatch(rowNum, queryId, queryWords, wordCounts);
+				recorder.matched(queryId, sink.getCharsWritten() - chars);
+				matchCount++;
+			}
+			if (isSampled) recorder.sampled(queryId, System.nanoTime() - start);
+			queryId++;
         }
+        recorder.evaluated(queryId, isSampled);
+        MatcherMetrics.global().queriesEvaluated(queryId);
+        MatcherMetrics.global().matchesEmitted(matchCount);
         
         return matchCount;
 	}
@@ -0,0 +1,315 @@
+package com.idt.codechallenge;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * <pre>
+ * Records of a local data file as a Stream: see {@link #stream(String) stream}.
+ * Sequential, it reads the file front to back; parallel, the file is split into byte ranges, read by as many threads.
+ *
+ * Splitting: a range is cut in the middle - at a block boundary (blocks: minSplit bytes each, from the start of the file),
+ * the cut moved forward to the next record start: both halves hold whole records. Nothing is counted to split - a few bytes are read.
+ * Line numbers are exact, as in a sequential read: a range that starts past the first block learns its first line # when it
+ * starts reading - the line breaks of all blocks before it, added up (a scan for line breaks - no decoding, no objects).
+ * Each block is counted once per stream, by the first range to need it; ranges count back from their own start,
+ * so ranges started together count different blocks - in parallel - and wait for one another only on blocks already being counted.
+ * Ranges below minSplit bytes are not split any further; a range already being read is not split either.
+ *
+ * Size: an estimate - range length over the average record length of the file's first 64K.
+ * Hence no SIZED: streams split by the estimate, but nothing relies on it being exact.
+ *
+ * The file is assumed not to change while it is streamed (IMMUTABLE); its size is taken when the stream is created.
+ * Each range opens its own reader on its first record, and closes it after its last;
+ * readers of ranges left unfinished (e.g. findFirst(), or a failure) are closed when the stream is: use try-with-resources.
+ *
+ * Line breaks and encoding: as in {@link OffsetLineReader OffsetLineReader}. An unterminated last line is a record too.
+ *
+ * Thread safety: same as any Spliterator - one thread at a time per instance; the stream framework takes care of that.
+ * </pre>
+ */
+public class RecordSpliterator implements Spliterator<Record> {
+
+	private final static int DEFAULT_BUFFERSIZE = 8192;
+	private final static long DEFAULT_MIN_SPLIT = 64 * 1024;
+	private final static int SAMPLE_BYTES = 64 * 1024;
+
+	private final String fileLocation;
+	private final int bufferSize;
+	private final long minSplit;
+	private final double bytesPerRecord;
+	// readers open in this stream, any range: closed by the stream's close()
+	private final Set<OffsetLineReader> openReaders;
+	// line breaks per block, this stream's ranges all
+	private final BlockCounts blockCounts;
+
+	// [start, end): start is always a record start - the first one at or after the start of startBlock
+	private long start;
+	private final long end;
+	private long startBlock;
+	// line # of the record at start; 0 - not known yet
+	private long line;
+	private OffsetLineReader reader = null;
+
+	private RecordSpliterator(String fLocation, long s, long e, long sBlock, long l, int bSize, long mSplit, double bpr, Set<OffsetLineReader> open, BlockCounts counts) {
+		fileLocation = fLocation;
+		start = s;
+		end = e;
+		startBlock = sBlock;
+		line = l;
+		bufferSize = bSize;
+		minSplit = mSplit;
+		bytesPerRecord = bpr;
+		openReaders = open;
+		blockCounts = counts;
+	}
+
+	/**
+	 * Line breaks in each block of a file: counted on first use, once - whoever asks later waits for that count.
+	 */
+	private static final class BlockCounts {
+		private final String fileLocation;
+		private final long blockSize;
+		private final int bufferSize;
+		private final AtomicReferenceArray<FutureTask<Long>> counts;
+
+		BlockCounts(String fLocation, long size, long bSize, int bufSize) {
+			fileLocation = fLocation;
+			blockSize = bSize;
+			bufferSize = bufSize;
+			counts = new AtomicReferenceArray<FutureTask<Long>>((int)Math.min(Integer.MAX_VALUE, (size + bSize - 1) / bSize));
+		}
+
+		/**
+		 * @return line breaks in the blocks before the given one; counted back to front
+		 */
+		long before(long block) throws IOException {
+			long breaks = 0;
+			try (SeekableByteChannel ch = Files.newByteChannel(Utils.getPath(fileLocation))) {
+				byte[] bytes = new byte[bufferSize];
+				for (int b = (int)block - 1; b >= 0; b--) {
+					FutureTask<Long> count = counts.get(b);
+					if (count == null) {
+						int index = b;
+						FutureTask<Long> mine = new FutureTask<Long>(() -> count(ch, bytes, index));
+						if (counts.compareAndSet(b, null, mine)) mine.run();
+						count = counts.get(b);
+					}
+					breaks += get(count);
+				}
+			}
+			return breaks;
+		}
+
+		private long count(SeekableByteChannel ch, byte[] bytes, int block) throws IOException {
+			long from = block * blockSize;
+			long to = from + blockSize;
+			long breaks = 0;
+			ch.position(from);
+			int n;
+			while (from < to && (n = ch.read(ByteBuffer.wrap(bytes, 0, (int)Math.min(bytes.length, to - from)))) > 0) {
+				for (int i = 0; i < n; i++) {
+					if (bytes[i] == '\n') breaks++;
+				}
+				from += n;
+			}
+			return breaks;
+		}
+
+		private static long get(FutureTask<Long> count) throws IOException {
+			try {
+				return count.get();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while counting lines", e);
+			}
+			catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException) throw (IOException)e.getCause();
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * Records of a local file, default buffer size.
+	 * @param fileLocation full path to a local file
+	 * @return sequential stream; parallel() to read it with several threads
+	 * @throws IOException when the file is missing or unreadable
+	 */
+	public static Stream<Record> stream(String fileLocation) throws IOException {
+		return stream(fileLocation, DEFAULT_BUFFERSIZE);
+	}
+
+	/**
+	 * Records of a local file.
+	 * @param fileLocation full path to a local file
+	 * @param bufSize size of read buffers
+	 * @return sequential stream; parallel() to read it with several threads
+	 * @throws IOException when the file is missing or unreadable
+	 */
+	public static Stream<Record> stream(String fileLocation, int bufSize) throws IOException {
+		return stream(fileLocation, bufSize, DEFAULT_MIN_SPLIT);
+	}
+
+	/**
+	 * Same, with the smallest range that is still split.
+	 */
+	static Stream<Record> stream(String fileLocation, int bufSize, long mSplit) throws IOException {
+		if (Utils.getFileLocationType(fileLocation) != Utils.LOCATIONTYPE_FILE) {
+			throw new IllegalArgumentException("Record streams require a local file: " + fileLocation);
+		}
+		if (bufSize <= 0) throw new IllegalArgumentException("bufferSize must be positive");
+		if (mSplit <= 0) throw new IllegalArgumentException("minSplit must be positive");
+		long size = Files.size(Utils.getPath(fileLocation));
+		Set<OffsetLineReader> open = ConcurrentHashMap.newKeySet();
+		RecordSpliterator spliterator = new RecordSpliterator(fileLocation, 0, size, 0, 1, bufSize, mSplit, sample(fileLocation, size), open,
+				new BlockCounts(fileLocation, size, mSplit, bufSize));
+		return StreamSupport.stream(spliterator, false).onClose(() -> closeAll(open));
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super Record> action) {
+		try {
+			if (reader == null) {
+				if (start >= end) return false;
+				if (line == 0) {
+					// all line breaks before the block; and the one the start was moved past, if it was
+					line = 1 + blockCounts.before(startBlock) + (start > startBlock * minSplit? 1 : 0);
+				}
+				reader = OffsetLineReader.open(fileLocation, start, bufferSize);
+				openReaders.add(reader);
+			}
+			long offset = reader.position();
+			String text = null;
+			// the file is final: an unterminated last line is a record too
+			if (offset >= end || ((text = reader.readLine()) == null && (text = reader.readRemainder()) == null)) {
+				finish();
+				return false;
+			}
+			action.accept(new Record(line++, offset, text));
+			return true;
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException("Error reading " + fileLocation + " at " + start + ":" + end, e);
+		}
+	}
+
+	/**
+	 * Cuts off the first half of the range (whole records), for another thread to read.
+	 * @return first half; null if the range is too small, has no record start past the middle, or is being read already
+	 */
+	@Override
+	public Spliterator<Record> trySplit() {
+		if (reader != null || end - start < 2 * minSplit) return null;
+		try {
+			// the block boundary nearest below the middle - past the start of the range
+			long block = Math.max(start / minSplit + 1, (start + (end - start) / 2) / minSplit);
+			long cut = findRecordStart(block * minSplit);
+			if (cut < 0) return null;
+			RecordSpliterator head = new RecordSpliterator(fileLocation, start, cut, startBlock, line, bufferSize, minSplit, bytesPerRecord, openReaders, blockCounts);
+			start = cut;
+			startBlock = block;
+			line = 0;
+			return head;
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException("Error splitting " + fileLocation + " at " + start + ":" + end, e);
+		}
+	}
+
+	@Override
+	public long estimateSize() {
+		long from = (reader != null? reader.position() : start);
+		return (long)Math.ceil(Math.max(0, end - from) / bytesPerRecord);
+	}
+
+	@Override
+	public int characteristics() {
+		return ORDERED | NONNULL | IMMUTABLE;
+	}
+
+	/**
+	 * Reads from just before the position up to the first line break.
+	 * @return first record start at or after the position; -1 if there is none before end
+	 */
+	private long findRecordStart(long position) throws IOException {
+		try (SeekableByteChannel ch = Files.newByteChannel(Utils.getPath(fileLocation))) {
+			// the byte before: a line break there - a record starts right at the position
+			ch.position(position - 1);
+			byte[] bytes = new byte[bufferSize];
+			long pos = position - 1;
+			int n;
+			while (pos < end && (n = ch.read(ByteBuffer.wrap(bytes))) >= 0) {
+				for (int i = 0; i < n; i++, pos++) {
+					// a record starts right after the line break
+					if (bytes[i] == '\n') return (pos + 1 < end? pos + 1 : -1);
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Range is done: its reader is closed, nothing is left to read.
+	 */
+	private void finish() throws IOException {
+		start = end;
+		if (reader != null) {
+			openReaders.remove(reader);
+			reader.close();
+			reader = null;
+		}
+	}
+
+	/**
+	 * Average record length in the first SAMPLE_BYTES of the file.
+	 */
+	private static double sample(String fileLocation, long size) throws IOException {
+		if (size == 0) return 1;
+		long records = 0;
+		int n;
+		try (SeekableByteChannel ch = Files.newByteChannel(Utils.getPath(fileLocation))) {
+			ByteBuffer bytes = ByteBuffer.allocate((int)Math.min(size, SAMPLE_BYTES));
+			while (bytes.hasRemaining() && ch.read(bytes) >= 0) {}
+			n = bytes.position();
+			for (int i = 0; i < n; i++) {
+				if (bytes.get(i) == '\n') records++;
+			}
+		}
+		return Math.max(1.0d, (double)n / Math.max(1, records));
+	}
+
+	private static void closeAll(Set<OffsetLineReader> open) {
+		IOException error = null;
+		for (OffsetLineReader r : open) {
+			try {
+				r.close();
+			}
+			catch (IOException e) {
+				error = e;
+			}
+		}
+		open.clear();
+		if (error != null) throw new UncheckedIOException(error);
+	}
+
+	/**
+	 * A string representation of this instance.
+	 */
+	public String toString() {
+		return "RecordSpliterator: " + fileLocation + " [" + start + ":" + end + "); block=" + startBlock + "; line=" + line;
+	}
+}
@@ -0,0 +1,358 @@
+package com.idt.codechallenge;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <pre>
+ * Runs a match in several child JVMs - beyond what one JVM's heap and GC cope with:
+ * - splits the data file into N byte ranges (shards) of the same size;
+ * - starts a child JVM per shard: MatcherRunner -range START:END -o FILE (see {@link RangeRecordMatcher RangeRecordMatcher}),
+ *   with its own heap size;
+ * - waits for all of them - each for up to a time limit, if set; a shard that failed (or ran out of time) is started again,
+ *   up to maxRetries times;
+ * - merges the shards' outputs, in shard order, into one output: line numbers made absolute again
+ *   (each shard numbers its records from 1; the coordinator adds the record counts of the shards before it).
+ *
+ * Per shard, in the work directory:
+ * - shard-N.jsonl      - its results;
+ * - shard-N.jsonl.done - written by the child once its results are complete: record and match counts.
+ *                        A shard without it failed, whatever its exit code;
+ * - shard-N.log        - the child's stdout and stderr.
+ * A temporary work directory is deleted after a successful merge; on failure it is kept, logs included.
+ * However match() ends, no child is left running: on failure the ones still alive are killed.
+ *
+ * All the coordinator needs from a child is a command line and files in the work directory:
+ * with a shared directory, children could as well run on other machines.
+ *
+ * Data file must be a local file.
+ * </pre>
+ */
+public class ShardCoordinator {
+
+	private final static int DEFAULT_RETRIES = 2;
+	private final static String DONE_SUFFIX = ".done";
+	private final static String KEY_RECORDS = "records";
+	private final static String KEY_MATCHES = "matches";
+	// every result line starts with its line number: see Utils.toJson
+	private final static String LINE_PREFIX = "{\"line\":";
+
+	private final String dataFileLocation;
+	private final String queryFileLocation;
+	private final int shardCount;
+	private final String heap;
+	private final int maxRetries;
+	private final Long timeoutMillis;
+	private final Integer bufferSize;
+	private final Path workDir;
+	private final boolean isVerbose;
+
+	/**
+	 * One shard and the state of its child.
+	 */
+	private static class Shard {
+		final int index;
+		final long start;
+		final long end;
+		final Path output;
+		final Path log;
+		Process process;
+		long startMillis;
+		String failure;
+		int attempts;
+		long records;
+		long matches;
+
+		Shard(int i, long s, long e, Path dir) {
+			index = i;
+			start = s;
+			end = e;
+			output = dir.resolve("shard-" + i + ".jsonl");
+			log = dir.resolve("shard-" + i + ".log");
+		}
+
+		public String toString() {
+			return "shard " + index + " [" + start + ":" + end + ")";
+		}
+	}
+
+	private ShardCoordinator(String df, String qf, int shards, String h, int retries, Long timeout, Integer bsize, Path dir, boolean isVerb) {
+		if (df == null) throw new IllegalArgumentException("dataFileLocation cannot be null");
+		if (qf == null) throw new IllegalArgumentException("queryFileLocation cannot be null");
+		if (shards <= 0) throw new IllegalArgumentException("number of shards must be positive");
+		if (retries < 0) throw new IllegalArgumentException("number of retries cannot be negative");
+		if (timeout != null && timeout <= 0) throw new IllegalArgumentException("timeout must be positive. Default is no limit");
+		dataFileLocation = df;
+		queryFileLocation = qf;
+		shardCount = shards;
+		heap = h;
+		maxRetries = retries;
+		timeoutMillis = timeout;
+		bufferSize = bsize;
+		workDir = dir;
+		isVerbose = isVerb;
+	}
+
+	/**
+	 * Runs the match in child JVMs, writes merged results to the stream.
+	 * @param out stream to write JSON lines to; flushed, not closed
+	 * @return number of matches found
+	 * @throws IOException when a shard still fails after all retries, or files cannot be read/written
+	 */
+	public long match(OutputStream out) throws IOException {
+		if (Utils.getFileLocationType(dataFileLocation) != Utils.LOCATIONTYPE_FILE) {
+			throw new IllegalArgumentException("Sharding requires a local data file: " + dataFileLocation);
+		}
+		long size = Files.size(Utils.getPath(dataFileLocation));
+		boolean isTempDir = (workDir == null);
+		Path dir = (isTempDir? Files.createTempDirectory("matcher-shards") : Files.createDirectories(workDir));
+
+		List<Shard> shards = new ArrayList<Shard>();
+		long[] bounds = split(size, shardCount);
+		for (int i = 0; i < shardCount; i++) shards.add(new Shard(i, bounds[i], bounds[i + 1], dir));
+		info("Data file: " + size + " bytes, " + shardCount + " shards; work directory: " + dir);
+
+		List<Shard> pending = shards;
+		try {
+			while (!pending.isEmpty()) {
+				for (Shard s : pending) launch(s);
+				List<Shard> failed = new ArrayList<Shard>();
+				for (Shard s : pending) {
+					if (!await(s)) failed.add(s);
+				}
+				for (Shard s : failed) {
+					if (s.attempts > maxRetries) {
+						throw new IOException(s + " failed " + s.attempts + " times (last: " + s.failure + "), giving up. See " + s.log);
+					}
+					info(s + " failed (attempt " + s.attempts + ": " + s.failure + "), retrying. See " + s.log);
+				}
+				pending = failed;
+			}
+		}
+		finally {
+			// done: none is alive. Failed, or interrupted: the others are not left running on their own
+			for (Shard s : shards) {
+				if (s.process != null && s.process.isAlive()) s.process.destroyForcibly();
+			}
+		}
+
+		long matchCount = merge(shards, out);
+		if (isTempDir) {
+			for (Shard s : shards) {
+				Files.deleteIfExists(s.output);
+				Files.deleteIfExists(done(s.output));
+				Files.deleteIfExists(s.log);
+			}
+			Files.deleteIfExists(dir);
+		}
+		return matchCount;
+	}
+
+	/**
+	 * Starts the shard's child JVM; whatever the previous attempt left is removed first.
+	 */
+	private void launch(Shard s) throws IOException {
+		Files.deleteIfExists(s.output);
+		Files.deleteIfExists(done(s.output));
+		List<String> command = new ArrayList<String>();
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		if (heap != null) command.add("-Xmx" + heap);
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(MatcherRunner.class.getName());
+		command.add("-range");
+		command.add(s.start + ":" + s.end);
+		command.add("-o");
+		command.add(s.output.toString());
+		if (bufferSize != null) {
+			command.add("-b");
+			command.add(bufferSize.toString());
+		}
+		command.add(dataFileLocation);
+		command.add(queryFileLocation);
+
+		s.attempts++;
+		s.failure = null;
+		s.startMillis = System.currentTimeMillis();
+		s.process = new ProcessBuilder(command)
+				.redirectErrorStream(true)
+				.redirectOutput(s.log.toFile())
+				.start();
+		info(s + " started, attempt " + s.attempts);
+	}
+
+	/**
+	 * Waits for the shard's child to finish - until the time limit, counted from its start, if there is one.
+	 * A child out of time is killed.
+	 * @return true if the shard is complete
+	 */
+	private boolean await(Shard s) throws IOException {
+		int exitCode;
+		try {
+			if (timeoutMillis == null) {
+				exitCode = s.process.waitFor();
+			}
+			else if (s.process.waitFor(Math.max(0, s.startMillis + timeoutMillis - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+				exitCode = s.process.exitValue();
+			}
+			else {
+				s.process.destroyForcibly();
+				s.failure = "timed out after " + timeoutMillis + " ms";
+				return false;
+			}
+		}
+		catch (InterruptedException e) {
+			s.process.destroyForcibly();
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for " + s, e);
+		}
+		Path done = done(s.output);
+		if (exitCode != 0 || !Files.exists(done)) {
+			s.failure = (exitCode != 0? "exit code " + exitCode : "no " + done.getFileName());
+			return false;
+		}
+		Properties counts = new Properties();
+		try (Reader in = Files.newBufferedReader(done, StandardCharsets.UTF_8)) {
+			counts.load(in);
+		}
+		s.records = Long.parseLong(counts.getProperty(KEY_RECORDS));
+		s.matches = Long.parseLong(counts.getProperty(KEY_MATCHES));
+		info(s + " done: " + s.records + " records, " + s.matches + " matches");
+		return true;
+	}
+
+	/**
+	 * Copies the shards' results to the output in shard order, line numbers shifted by the records of the shards before.
+	 * @return number of matches
+	 */
+	private long merge(List<Shard> shards, OutputStream out) throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+		long base = 0;
+		long matchCount = 0;
+		for (Shard s : shards) {
+			try (BufferedReader in = Files.newBufferedReader(s.output, StandardCharsets.UTF_8)) {
+				String line;
+				while ((line = in.readLine()) != null) {
+					writer.write(renumber(line, base));
+					writer.write(System.lineSeparator());
+				}
+			}
+			base += s.records;
+			matchCount += s.matches;
+		}
+		writer.flush();
+		return matchCount;
+	}
+
+	/**
+	 * Splits [0, size) into n ranges of (nearly) the same size.
+	 * @return n + 1 bounds: range i is [bounds[i], bounds[i + 1])
+	 */
+	static long[] split(long size, int n) {
+		long[] bounds = new long[n + 1];
+		for (int i = 0; i <= n; i++) bounds[i] = (long)((double)size * i / n);
+		bounds[n] = size;
+		return bounds;
+	}
+
+	/**
+	 * Adds base to the line number of a result line.
+	 */
+	static String renumber(String line, long base) {
+		if (!line.startsWith(LINE_PREFIX)) throw new IllegalStateException("Not a result line: " + line);
+		if (base == 0) return line;
+		int comma = line.indexOf(',', LINE_PREFIX.length());
+		long n = Long.parseLong(line.substring(LINE_PREFIX.length(), comma));
+		return LINE_PREFIX + (n + base) + line.substring(comma);
+	}
+
+	/**
+	 * Marks a shard's results complete: called by the child, once its output file is closed.
+	 * Written aside, then moved in place: the coordinator never sees half of it.
+	 * @param outputFile the shard's results
+	 * @param records number of records in the shard
+	 * @param matches number of matches
+	 * @throws IOException when the file cannot be written
+	 */
+	public static void markDone(String outputFile, long records, long matches) throws IOException {
+		Path done = done(Utils.getPath(outputFile));
+		Path temp = done.resolveSibling(done.getFileName() + ".tmp");
+		Properties counts = new Properties();
+		counts.setProperty(KEY_RECORDS, Long.toString(records));
+		counts.setProperty(KEY_MATCHES, Long.toString(matches));
+		try (Writer out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+			counts.store(out, null);
+		}
+		Files.move(temp, done, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static Path done(Path output) {
+		return output.resolveSibling(output.getFileName() + DONE_SUFFIX);
+	}
+
+	private void info(Object message) {
+		if (isVerbose) System.out.println("[coordinator] " + message);
+	}
+
+	/**
+	 * A string representation of this instance.
+	 */
+	public String toString() {
+		return "ShardCoordinator: " + dataFileLocation + "; shards=" + shardCount + "; heap=" + heap + "; retries=" + maxRetries + "; timeoutMillis=" + timeoutMillis;
+	}
+
+	/**
+	 * Builder: data and query files are mandatory, the rest - optional.
+	 */
+	public static class Builder {
+		private final String dataFileLocation;
+		private final String queryFileLocation;
+		private int shardCount = Runtime.getRuntime().availableProcessors();
+		private String heap = null;
+		private int maxRetries = DEFAULT_RETRIES;
+		private Long timeoutMillis = null;
+		private Integer bufferSize = null;
+		private Path workDir = null;
+		private boolean isVerbose = false;
+
+		public static Builder builder(String df, String qf) {
+			return new Builder(df, qf);
+		}
+
+		private Builder(String df, String qf) {
+			dataFileLocation = df;
+			queryFileLocation = qf;
+		}
+
+		/** Number of shards - and of child JVMs; default: number of CPUs. */
+		public Builder withShards(int n) {shardCount = n; return this;}
+		/** Max heap of each child, as in -Xmx (e.g. 2g); default: JVM's own default. */
+		public Builder withHeap(String h) {heap = h; return this;}
+		/** How many times a failed shard is started again; default: 2. */
+		public Builder withRetries(int r) {maxRetries = r; return this;}
+		/** Time limit of each child's run, from its start: a child still running then is killed, and counts as failed; default (null): no limit. */
+		public Builder withTimeout(Long millis) {timeoutMillis = millis; return this;}
+		public Builder withBufferSize(Integer b) {bufferSize = b; return this;}
+		/** Where shard files go; default: a temporary directory, deleted when done. */
+		public Builder withWorkDir(String d) {workDir = (d != null? Utils.getPath(d) : null); return this;}
+		public Builder withVerbose(boolean v) {isVerbose = v; return this;}
+
+		public ShardCoordinator build() {
+			return new ShardCoordinator(dataFileLocation, queryFileLocation, shardCount, heap, maxRetries, timeoutMillis, bufferSize, workDir, isVerbose);
+		}
+	}
+}
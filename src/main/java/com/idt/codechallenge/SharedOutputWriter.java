@@ -0,0 +1,183 @@
+package com.idt.codechallenge;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.google.gson.Gson;
+import com.idt.codechallenge.metrics.CountingOutputStream;
+import com.idt.codechallenge.metrics.MatcherMetrics;
+
+/**
+ * <pre>
+ * One output for many data files matched at once: JSON lines, each with the file it is about, e.g.
+ * {"line":2,"file":"data/a.txt","query":"[red, apple]","result":{"chair":1,"purple":1,"house":1}}
+ *
+ * Each file gets a sink of its own ({@link #sinkFor(String) sinkFor}), that collects its lines into chunks of whole lines;
+ * a full chunk (or whatever there is, on flush()) goes into a bounded queue. One writer thread takes chunks off the queue
+ * and writes them out. So:
+ * - lines never get mixed up: chunks are written whole, by one thread;
+ * - a file's lines come out in the order its sink got them; lines of different files are interleaved chunk by chunk;
+ * - memory is bounded: when the output can't keep up, the queue fills up, and sinks wait - so do the matchers behind them.
+ *
+ * close() waits for everything queued to be written, and flushes the stream - it does not close it.
+ * An error writing the stream comes out of the next sink call (or close()).
+ *
+ * Thread safety: safe - as long as each sink is used by one thread at a time.
+ * </pre>
+ */
+public class SharedOutputWriter implements Closeable {
+
+	private final static int DEFAULT_QUEUE = 64;
+	private final static int CHUNK_CHARS = 32 * 1024;
+	// end of output
+	private final static String END = new String("END");
+
+	private final BlockingQueue<String> queue;
+	private final WriterThread writer;
+	private volatile IOException error = null;
+	private boolean isClosed = false;
+
+	/**
+	 * Takes chunks off the queue, writes them out.
+	 */
+	private class WriterThread extends Thread {
+		private final BufferedWriter out;
+
+		WriterThread(OutputStream stream) {
+			super("output-writer");
+			setDaemon(true);
+			out = new BufferedWriter(new OutputStreamWriter(new CountingOutputStream(stream, MatcherMetrics.global()), StandardCharsets.UTF_8));
+		}
+
+		@Override
+		public void run() {
+			try {
+				String chunk;
+				while ((chunk = queue.take()) != END) {
+					out.write(chunk);
+					// nothing else queued: let it out
+					if (queue.isEmpty()) out.flush();
+				}
+				out.flush();
+			}
+			catch (IOException e) {
+				error = e;
+				// nobody is going to take any more: let waiting sinks through
+				queue.clear();
+			}
+			catch (InterruptedException e) {
+				error = new IOException("Output writer interrupted", e);
+			}
+		}
+	}
+
+	/**
+	 * @param out stream to write JSON lines to; flushed at the end, not closed
+	 */
+	public SharedOutputWriter(OutputStream out) {
+		this(out, DEFAULT_QUEUE);
+	}
+
+	/**
+	 * @param out stream to write JSON lines to; flushed at the end, not closed
+	 * @param queueSize max number of chunks (of up to 32K chars each) waiting to be written
+	 */
+	public SharedOutputWriter(OutputStream out, int queueSize) {
+		if (out == null) throw new IllegalArgumentException("output stream cannot be null");
+		if (queueSize <= 0) throw new IllegalArgumentException("queue size must be positive");
+		queue = new ArrayBlockingQueue<String>(queueSize);
+		writer = new WriterThread(out);
+		writer.start();
+	}
+
+	/**
+	 * Sink for one data file: collects its JSON lines, hands them over to the writer chunk by chunk.
+	 * Not thread-safe: one per file, used by one thread at a time.
+	 * @param file data file name, as it goes into the output
+	 * @return sink that writes to this writer
+	 */
+	public MatchSink sinkFor(String file) {
+		return new MatchSink() {
+			private final Gson gson = new Gson();
+			private final StringBuilder chunk = new StringBuilder();
+			private long charsWritten = 0;
+
+			@Override
+			public void onMatch(long line, int queryId, Set<String> queryWords, Map<String, Integer> wordCounts) throws IOException {
+				int length = chunk.length();
+				chunk.append(Utils.toJson(file, line, queryWords, Utils.nonQueryWords(wordCounts, queryWords), gson)).append(System.lineSeparator());
+				charsWritten += chunk.length() - length;
+				if (chunk.length() >= CHUNK_CHARS) flush();
+			}
+
+			@Override
+			public void flush() throws IOException {
+				if (chunk.length() == 0) return;
+				put(chunk.toString());
+				chunk.setLength(0);
+			}
+
+			@Override
+			public long getCharsWritten() {
+				return charsWritten;
+			}
+		};
+	}
+
+	/**
+	 * Queues a chunk; waits while the queue is full.
+	 */
+	private void put(String chunk) throws IOException {
+		try {
+			while (!queue.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+				checkError();
+			}
+			checkError();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the output", e);
+		}
+	}
+
+	private void checkError() throws IOException {
+		IOException e = error;
+		if (e != null) throw new IOException("Error writing output", e);
+	}
+
+	/**
+	 * Waits for all queued output to be written, flushes the stream.
+	 * Chunks still held by sinks that were not flushed are not written.
+	 * @throws IOException whatever writing the stream threw
+	 */
+	@Override
+	public void close() throws IOException {
+		if (isClosed) return;
+		isClosed = true;
+		try {
+			if (error == null) put(END);
+			writer.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the output", e);
+		}
+		checkError();
+	}
+
+	/**
+	 * A string representation of this instance.
+	 */
+	public String toString() {
+		return "SharedOutputWriter: queued chunks=" + queue.size() + (error != null? "; failed: " + error.getMessage() : "");
+	}
+}
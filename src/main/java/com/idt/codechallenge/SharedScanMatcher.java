@@ -0,0 +1,149 @@
+package com.idt.codechallenge;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.idt.codechallenge.concurrent.QueryRegistry;
+import com.idt.codechallenge.metrics.MatcherMetrics;
+
+/**
+ * <pre>
+ * Matches one data source against several query files in a single pass - instead of one pass (one read,
+ * one tokenization of every record) per query file.
+ *
+ * The queries of all files are put into one index ({@link QueryRegistry QueryRegistry}), file after file:
+ * a query's id tells which file it came from (ids of file i follow those of file i - 1).
+ * Each record is read and tokenized once, looked up in the index once; every match goes to the sink of its
+ * query's file, with the query's id within that file.
+ *
+ * Output: one sink per query file. Each gets exactly what RecordMatcher would give it for that query file alone:
+ * same calls, same order, same query ids. Sinks are called from the calling thread only.
+ * A query with no words (e.g. a line ",") matches every record, as it does for RecordMatcher.
+ *
+ * Data file may be a local file or URL - a remote one is where a single pass pays off most.
+ * </pre>
+ */
+public class SharedScanMatcher {
+
+	private final static int DEFAULT_BUFFERSIZE = 8192;
+
+	private final String dataFileLocation;
+	private final List<String> queryFileLocations;
+	private int bufferSize = DEFAULT_BUFFERSIZE;
+	private boolean isVerbose = false;
+	private boolean isSuperVerbose = false;
+
+	/**
+	 * @param df data file: full path or URL
+	 * @param qfs query files: full paths or URLs
+	 * @param bufSize size of read buffers; default: 8192
+	 * @param isVerb verbose flag
+	 * @param isSuperVerb very verbose flag
+	 */
+	public SharedScanMatcher(String df, List<String> qfs, Integer bufSize, Boolean isVerb, Boolean isSuperVerb) {
+		if (df == null) throw new IllegalArgumentException("dataFileLocation cannot be null");
+		if (qfs == null || qfs.isEmpty()) throw new IllegalArgumentException("queryFileLocations cannot be empty");
+		if (qfs.contains(null)) throw new IllegalArgumentException("queryFileLocation cannot be null");
+		if (bufSize != null && bufSize <= 0) throw new IllegalArgumentException("bufferSize must be positive. Default is " + DEFAULT_BUFFERSIZE);
+		dataFileLocation = df;
+		queryFileLocations = new ArrayList<String>(qfs);
+		bufferSize = (bufSize != null? bufSize : DEFAULT_BUFFERSIZE);
+		this.isSuperVerbose = (isSuperVerb != null? isSuperVerb : isSuperVerbose);
+		this.isVerbose = (isVerb != null?  isVerb || isSuperVerbose : isVerbose || isSuperVerbose);	// superverbose is an overriding option
+	}
+
+	/**
+	 * Runs the match, writes each query file's results as JSON lines to its own stream.
+	 * @param outs one stream per query file, in the same order; flushed, not closed
+	 * @return number of matches found, per query file
+	 * @throws IOException when files are unreadable, or a stream throws
+	 */
+	public long[] matchTo(List<OutputStream> outs) throws IOException {
+		List<MatchSink> sinks = new ArrayList<MatchSink>();
+		for (OutputStream out : outs) sinks.add(new JsonMatchSink(out));
+		return match(sinks);
+	}
+
+	/**
+	 * Runs the match; each query file's results go to its own sink. Every sink is flushed at the end.
+	 * @param sinks one sink per query file, in the same order
+	 * @return number of matches found, per query file
+	 * @throws IOException when files are unreadable, or a sink throws
+	 */
+	public long[] match(List<MatchSink> sinks) throws IOException {
+		if (sinks.size() != queryFileLocations.size()) {
+			throw new IllegalArgumentException("Need one sink per query file: " + queryFileLocations.size() + " query files, " + sinks.size() + " sinks");
+		}
+
+		// all queries in one index; per query id: its file, its id within the file
+		QueryRegistry index = new QueryRegistry();
+		List<Set<String>> queries = new ArrayList<Set<String>>();
+		List<Integer> fileOf = new ArrayList<Integer>();
+		List<Integer> localIdOf = new ArrayList<Integer>();
+		for (int f = 0; f < queryFileLocations.size(); f++) {
+			List<Set<String>> fileQueries = Utils.readQueries(queryFileLocations.get(f), bufferSize);
+			for (int q = 0; q < fileQueries.size(); q++) {
+				index.add(fileQueries.get(q));
+				queries.add(fileQueries.get(q));
+				fileOf.add(f);
+				localIdOf.add(q);
+			}
+			info("Read " + fileQueries.size() + " queries from " + queryFileLocations.get(f));
+		}
+		int[] file = fileOf.stream().mapToInt(Integer::intValue).toArray();
+		int[] localId = localIdOf.stream().mapToInt(Integer::intValue).toArray();
+
+		List<MatchSink> timedSinks = new ArrayList<MatchSink>();
+		MatcherMetrics.LatencyRecorder latency = MatcherMetrics.global().latencyRecorder();
+		for (MatchSink sink : sinks) timedSinks.add(new TimedMatchSink(sink, latency.getEmitHistogram()));
+
+		long[] matchCounts = new long[sinks.size()];
+		long rowNum = 0;
+		long allocationMark = MatcherMetrics.threadAllocatedBytes();
+		try (BufferedReader reader = Utils.openReader(dataFileLocation, bufferSize, true)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				rowNum++;
+				long start = System.nanoTime();
+				Map<String, Integer> wordCounts = Utils.countWords(line);
+				debug("row: " + rowNum + "; wordCounts=" + wordCounts);
+				// ascending ids: file by file, and within a file - in query order
+				int[] matched = index.match(wordCounts);
+				for (int id : matched) {
+					timedSinks.get(file[id]).onMatch(rowNum, localId[id], queries.get(id), wordCounts);
+					matchCounts[file[id]]++;
+				}
+				MatcherMetrics.global().matchesEmitted(matched.length);
+				latency.record(System.nanoTime() - start);
+			}
+		}
+		finally {
+			MatcherMetrics.global().allocatedSince(allocationMark);
+			MatcherMetrics.global().merge(latency);
+		}
+		for (MatchSink sink : sinks) sink.flush();
+
+		info("Records processed: " + rowNum);
+		return matchCounts;
+	}
+
+	private void info(Object message) {
+		if (isVerbose) System.out.println(message);
+	}
+
+	private void debug(Object message) {
+		if (isSuperVerbose) System.out.println(message);
+	}
+
+	/**
+	 * A string representation of this instance.
+	 */
+	public String toString() {
+		return "SharedScanMatcher: " + dataFileLocation + "; query files: " + queryFileLocations;
+	}
+}
@@ -0,0 +1,49 @@
+package com.idt.codechallenge;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+
+import com.idt.codechallenge.metrics.LatencyHistogram;
+
+/**
+ * <pre>
+ * Sink wrapper that times every onMatch() of the sink behind it into a latency histogram: per-match emit time.
+ * Everything else is passed through as is.
+ *
+ * Thread safety: same as the histogram's - one thread per instance.
+ * </pre>
+ */
+public class TimedMatchSink implements MatchSink {
+
+	private final MatchSink sink;
+	private final LatencyHistogram histogram;
+
+	/**
+	 * @param s sink to time
+	 * @param h histogram to record emit times into
+	 */
+	public TimedMatchSink(MatchSink s, LatencyHistogram h) {
+		if (s == null) throw new IllegalArgumentException("sink cannot be null");
+		if (h == null) throw new IllegalArgumentException("histogram cannot be null");
+		sink = s;
+		histogram = h;
+	}
+
+	@Override
+	public void onMatch(long line, int queryId, Set<String> queryWords, Map<String, Integer> wordCounts) throws IOException {
+		long start = System.nanoTime();
+		sink.onMatch(line, queryId, queryWords, wordCounts);
+		histogram.record(System.nanoTime() - start);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		sink.flush();
+	}
+
+	@Override
+	public long getCharsWritten() {
+		return sink.getCharsWritten();
+	}
+}
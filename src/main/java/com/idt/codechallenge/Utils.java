@@ -3,15 +3,29 @@ package com.idt.codechallenge;
 import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.idt.codechallenge.metrics.CountingInputStream;
+import com.idt.codechallenge.metrics.MatcherMetrics;
 
 /**
  * Ragtag collection of support methods for the RecordMatcher.
@@ -83,18 +97,73 @@ public class Utils {
 	 * @throws FileNotFoundException when local file location is invalid, on unreadable
 	 */
 	public static BufferedReader openReader(String fileLocation, int bufferSize) throws IOException, FileNotFoundException {
+		return openReader(fileLocation, bufferSize, false);
+	}
+
+	/**
+	 * Opens file at specified location (URL, or full file name) as BufferedReader.
+	 * @param fileLocation file path or URL
+	 * @param bufferSize size of BufferedReader buffer
+	 * @param isData when true - this is the data source: bytes read are also counted as data bytes (what progress is measured by)
+	 * @return opened BufferedReader
+	 * @throws IOException when file URL is invalid, on unreadable
+	 * @throws FileNotFoundException when local file location is invalid, on unreadable
+	 */
+	public static BufferedReader openReader(String fileLocation, int bufferSize, boolean isData) throws IOException, FileNotFoundException {
 		int locationType = getFileLocationType(fileLocation);
 		BufferedReader breader = null;
 		if (locationType == LOCATIONTYPE_FILE) {
-			breader = new BufferedReader(Files.newBufferedReader(getPath(fileLocation)), bufferSize);
+			// same decoding as Files.newBufferedReader (UTF-8, malformed input reported), over a stream that counts bytes read
+			breader = new BufferedReader(new InputStreamReader(countBytes(Files.newInputStream(getPath(fileLocation)), isData), StandardCharsets.UTF_8.newDecoder()), bufferSize);
 		}
 		else if (locationType == LOCATIONTYPE_URL) {
-			breader = new BufferedReader(new InputStreamReader(new URL(fileLocation).openStream()), bufferSize);			
+			breader = new BufferedReader(new InputStreamReader(countBytes(new URL(fileLocation).openStream(), isData)), bufferSize);			
 		}
 		// if neither type matches - return whatever
 		return breader;
 	}
 
+	/**
+	 * Opens file at specified location (URL, or full file name) as a raw InputStream: no buffering, no decoding.
+	 * @param fileLocation file path or URL
+	 * @return opened InputStream
+	 * @throws IOException when file is invalid, or unreadable
+	 */
+	static InputStream openInputStream(String fileLocation) throws IOException {
+		int locationType = getFileLocationType(fileLocation);
+		if (locationType == LOCATIONTYPE_FILE) {
+			return countBytes(Files.newInputStream(getPath(fileLocation)), false);
+		}
+		return countBytes(new URL(fileLocation).openStream(), false);
+	}
+
+	/**
+	 * Wraps a source stream: bytes read from it are reported to metrics.
+	 */
+	private static InputStream countBytes(InputStream in, boolean isData) {
+		return new CountingInputStream(in, MatcherMetrics.global(), isData);
+	}
+
+	/**
+	 * Size of the source, if it can be known up front.
+	 * @param fileLocation file path or URL
+	 * @return size in bytes; -1 if unknown (stdin, URL without Content-Length, unreachable)
+	 */
+	public static long getSourceLength(String fileLocation) {
+		try {
+			int locationType = getFileLocationType(fileLocation);
+			if (locationType == LOCATIONTYPE_FILE) return Files.size(getPath(fileLocation));
+			URLConnection conn = new URL(fileLocation).openConnection();
+			if (conn instanceof HttpURLConnection) ((HttpURLConnection)conn).setRequestMethod("HEAD");
+			long length = conn.getContentLengthLong();
+			if (conn instanceof HttpURLConnection) ((HttpURLConnection)conn).disconnect();
+			return length;
+		}
+		catch (IOException e) {
+			return -1;
+		}
+	}
+
 	/**
 	 * Checks whether fileLocaiton is a valid and reachable URL.
 	 * Exposed as static method to enable user-friendly command-line invocations.
@@ -138,7 +207,7 @@ public class Utils {
 	 * If alternative FS is set - gets Path from it.
 	 * Otherwise - from default FS.
 	 */
-	static private Path getPath(String first, String... more) {
+	static Path getPath(String first, String... more) {
 		if (fs != null) return fs.getPath(first, more);
 		return Paths.get(first, more);
 	}
@@ -168,4 +237,116 @@ public class Utils {
 		
 		return freeToMaxRatio;
 	}
+
+	/**
+	 * Tokenizes a data line and counts word frequencies in it.
+	 * This is the same conversion every matcher applies to every data row.
+	 * @param line data line: comma-separated words
+	 * @return map of {word, count}
+	 */
+	public static Map<String, Integer> countWords(String line) {
+		MatcherMetrics.global().recordParsed();
+		return Arrays.asList(line.split(","))
+        		.stream()
+                .collect(
+                		Collectors.toMap(w -> w, w -> 1, Integer::sum)
+                		);
+	}
+
+	/**
+	 * Splits a query line into a Set containing unique query words.
+	 * @param line query line: comma-separated words
+	 * @return set of unique query words
+	 */
+	public static Set<String> toQueryWords(String line) {
+		return Arrays.asList(line.split(",")).stream().collect(Collectors.toSet());
+	}
+
+	/**
+	 * Reads the whole query file into a list of query word sets.
+	 * @param queryFileLocation file path or URL
+	 * @param bufferSize size of BufferedReader buffer
+	 * @return list of queries, in query file order
+	 * @throws IOException when file is invalid or unreadable
+	 */
+	public static List<Set<String>> readQueries(String queryFileLocation, int bufferSize) throws IOException {
+		List<Set<String>> queries = new ArrayList<Set<String>>();
+		try (BufferedReader qreader = openReader(queryFileLocation, bufferSize)) {
+			String line;
+			while ((line = qreader.readLine()) != null) {
+				queries.add(toQueryWords(line));
+			}
+		}
+		return queries;
+	}
+
+	/**
+	 * Matches one data row against all queries, hands every query that matches over to the sink.
+	 * @param rowNum row in the data file (1-based)
+	 * @param wordCounts map of {word,count} of the row
+	 * @param queries queries to apply; query id is the position in this list
+	 * @param sink receiver of results
+	 * @return number of matches
+	 * @throws IOException passes on whatever sink throws
+	 */
+	public static long matchRow(long rowNum, Map<String, Integer> wordCounts, List<Set<String>> queries, MatchSink sink) throws IOException {
+		long matchCount = 0;
+		for (int q = 0; q < queries.size(); q++) {
+			Set<String> queryWords = queries.get(q);
+			if (wordCounts.keySet().containsAll(queryWords)) {
+				sink.onMatch(rowNum, q, queryWords, wordCounts);
+				matchCount++;
+			}
+		}
+		MatcherMetrics.global().queriesEvaluated(queries.size());
+		MatcherMetrics.global().matchesEmitted(matchCount);
+		return matchCount;
+	}
+
+	/**
+	 * Leaves only {word,count} pairs where word does not match any of the query words.
+	 * @param wordCounts map of {word,count} of a matching data row
+	 * @param queryWords query that matched the row
+	 * @return filtered copy of wordCounts
+	 */
+	public static Map<String, Integer> nonQueryWords(Map<String, Integer> wordCounts, Set<String> queryWords) {
+		return wordCounts.entrySet().stream()
+				.filter(entry -> !queryWords.contains(entry.getKey()))
+				.collect(Collectors.toMap(entry -> entry.getKey(), entry -> entry.getValue()));
+	}
+
+	/**
+	 * Builds one line of output: line #, the query and the match result.
+	 * @param rowNum row in the data file (1-based)
+	 * @param queryWords query that matched the row
+	 * @param result non-query words of the row, with counts
+	 * @param gson reusable instance of Gson
+	 * @return JSON string
+	 */
+	public static String toJson(long rowNum, Set<String> queryWords, Map<String, Integer> result, Gson gson) {
+		JsonObject json = new JsonObject();
+		json.addProperty("line", rowNum);
+		json.addProperty("query", queryWords.toString());
+		json.add("result", gson.toJsonTree(result));
+		return json.toString();
+	}
+
+	/**
+	 * Same, for runs over several data files: the file the row is in goes right after the line #, e.g.
+	 * {"line":2,"file":"data/a.txt","query":"[red, apple]","result":{"chair":1}}
+	 * @param file data file (as given)
+	 * @param rowNum row in the data file (1-based)
+	 * @param queryWords query that matched the row
+	 * @param result non-query words of the row, with counts
+	 * @param gson reusable instance of Gson
+	 * @return JSON string
+	 */
+	public static String toJson(String file, long rowNum, Set<String> queryWords, Map<String, Integer> result, Gson gson) {
+		JsonObject json = new JsonObject();
+		json.addProperty("line", rowNum);
+		json.addProperty("file", file);
+		json.addProperty("query", queryWords.toString());
+		json.add("result", gson.toJsonTree(result));
+		return json.toString();
+	}
 }
@@ -0,0 +1,523 @@
+package com.idt.codechallenge;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+/**
+ * <pre>
+ * Generator of synthetic data and query files, shaped like real data:
+ * word frequencies follow Zipf's law (a few words are everywhere, most are rare), so match rates and skew are realistic.
+ *
+ * Controls (see {@link Builder Builder}):
+ * - vocabulary size, Zipf exponent (0 - uniform; ~1 - natural language);
+ * - words per record (drawn with repetition - words may repeat within a record, as in real data);
+ * - query length (distinct words);
+ * - duplicate-query ratio: share of queries that repeat an earlier query;
+ * - target selectivity: share of records each query should match. Queries are built from words whose frequencies
+ *   multiply up to the target. Approximate: assumes words of a record are independent (they are, in generated data).
+ *   When not set - query words are drawn from the same Zipf distribution as data words.
+ *
+ * Words: rank 0 (most frequent) is "a", then "b" .. "z", "aa", "ab", ... - frequent words are short.
+ *
+ * Deterministic: same settings and seed - same files, byte for byte. Data and query files use separate random streams:
+ * the query file does not depend on how much data is generated.
+ *
+ * Data is streamed to disk: any size (tens of GB included) with constant memory -
+ * the only large structures are per-word tables, about 30 bytes per vocabulary word.
+ * Speed: words are drawn in constant time (alias method) and written as pre-encoded bytes - the disk is the limit.
+ *
+ * Thread safety: an instance may be used by one thread at a time.
+ *
+ * CLI: see {@link #main(String[]) main}.
+ * </pre>
+ */
+public class WorkloadGenerator {
+
+	private final static int DEFAULT_VOCABULARYSIZE = 10000;
+	private final static double DEFAULT_ZIPFEXPONENT = 1.0d;
+	private final static int DEFAULT_WORDSPERRECORD = 10;
+	private final static int DEFAULT_QUERYLENGTH = 2;
+	private final static double DEFAULT_DUPLICATEQUERYRATIO = 0d;
+	private final static double DEFAULT_SELECTIVITY = 0d;
+	private final static long DEFAULT_SEED = 42;
+	private final static boolean DEFAULT_VERBOSE = false;
+
+	private final static int WRITE_BUFFERSIZE = 1 << 20;
+	private final static String LINE_END = "\r\n";
+
+	/**
+	 * How close (as a factor) the last word of a query must bring it to the target selectivity
+	 */
+	private final static double SELECTIVITY_TOLERANCE = 1.25d;
+
+	private final int vocabularySize;
+	private final double zipfExponent;
+	private final int wordsPerRecord;
+	private final int queryLength;
+	private final double duplicateQueryRatio;
+	private final double selectivity;
+	private final long seed;
+	private final boolean isVerbose;
+
+	/**
+	 * Alias table (Vose): slot i gives word i with probability aliasProbability[i], word alias[i] otherwise
+	 */
+	private final double[] aliasProbability;
+	private final int[] alias;
+
+	/**
+	 * All words, ASCII, back to back: word r is wordBytes[wordStart[r] .. wordStart[r+1])
+	 */
+	private final byte[] wordBytes;
+	private final int[] wordStart;
+
+	/**
+	 * Probability of word by rank to be in a record at least once: 1 - (1 - p)^wordsPerRecord. Descending.
+	 */
+	private final double[] inclusion;
+
+	private WorkloadGenerator(int vSize, double zExp, int wpr, int qLen, double dupRatio, double sel, long s, boolean isVerb) {
+		if (vSize <= 0) throw new IllegalArgumentException("vocabularySize must be positive");
+		if (zExp < 0) throw new IllegalArgumentException("zipfExponent cannot be negative");
+		if (wpr <= 0) throw new IllegalArgumentException("wordsPerRecord must be positive");
+		if (qLen <= 0 || qLen > vSize) throw new IllegalArgumentException("queryLength must be positive and not larger than vocabularySize");
+		if (dupRatio < 0 || dupRatio >= 1) throw new IllegalArgumentException("duplicateQueryRatio must be in [0, 1)");
+		if (sel < 0 || sel > 1) throw new IllegalArgumentException("selectivity must be in [0, 1]; 0 - not set");
+
+		vocabularySize = vSize;
+		zipfExponent = zExp;
+		wordsPerRecord = wpr;
+		queryLength = qLen;
+		duplicateQueryRatio = dupRatio;
+		selectivity = sel;
+		seed = s;
+		isVerbose = isVerb;
+
+		double[] weights = new double[vocabularySize];
+		double total = 0;
+		for (int r = 0; r < vocabularySize; r++) {
+			weights[r] = 1d / Math.pow(r + 1, zipfExponent);
+			total += weights[r];
+		}
+		inclusion = new double[vocabularySize];
+		for (int r = 0; r < vocabularySize; r++) {
+			weights[r] /= total;
+			inclusion[r] = 1d - Math.pow(1d - weights[r], wordsPerRecord);
+		}
+
+		aliasProbability = new double[vocabularySize];
+		alias = new int[vocabularySize];
+		buildAliasTable(weights);
+
+		wordStart = new int[vocabularySize + 1];
+		for (int r = 0; r < vocabularySize; r++) {
+			wordStart[r + 1] = wordStart[r] + wordLength(r);
+		}
+		wordBytes = new byte[wordStart[vocabularySize]];
+		StringBuilder sb = new StringBuilder();
+		for (int r = 0; r < vocabularySize; r++) {
+			sb.setLength(0);
+			appendWord(sb, r);
+			for (int i = 0; i < sb.length(); i++) wordBytes[wordStart[r] + i] = (byte)sb.charAt(i);
+		}
+	}
+
+	/**
+	 * Vose's alias method: every slot holds up to two words, with total weight of exactly 1/n.
+	 * @param p word probabilities (consumed)
+	 */
+	private void buildAliasTable(double[] p) {
+		int n = p.length;
+		int[] small = new int[n];
+		int[] large = new int[n];
+		int smallCount = 0;
+		int largeCount = 0;
+		for (int i = 0; i < n; i++) {
+			p[i] *= n;
+			if (p[i] < 1d) small[smallCount++] = i;
+			else large[largeCount++] = i;
+		}
+		while (smallCount > 0 && largeCount > 0) {
+			int s = small[--smallCount];
+			int l = large[--largeCount];
+			aliasProbability[s] = p[s];
+			alias[s] = l;
+			// l gives away what s lacks
+			p[l] = (p[l] + p[s]) - 1d;
+			if (p[l] < 1d) small[smallCount++] = l;
+			else large[largeCount++] = l;
+		}
+		// leftovers are 1 up to rounding
+		while (largeCount > 0) aliasProbability[large[--largeCount]] = 1d;
+		while (smallCount > 0) aliasProbability[small[--smallCount]] = 1d;
+	}
+
+	/**
+	 * Writes the data file: recordCount records.
+	 * @param dataFileLocation local file path; overwritten if exists
+	 * @param recordCount number of records
+	 * @return number of bytes written
+	 * @throws IOException when file cannot be written
+	 */
+	public long writeData(String dataFileLocation, long recordCount) throws IOException {
+		return writeData(dataFileLocation, recordCount, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Writes the data file: records until either limit is reached (the last record may go over maxBytes).
+	 * @param dataFileLocation local file path; overwritten if exists
+	 * @param maxRecords max number of records
+	 * @param maxBytes max file size
+	 * @return number of bytes written
+	 * @throws IOException when file cannot be written
+	 */
+	public long writeData(String dataFileLocation, long maxRecords, long maxBytes) throws IOException {
+		SplittableRandom random = new SplittableRandom(seed);
+		int maxWordLength = wordLength(vocabularySize - 1);
+		byte[] line = new byte[wordsPerRecord * (maxWordLength + 1) + LINE_END.length()];
+		long recordCount = 0;
+		long byteCount = 0;
+		try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(Utils.getPath(dataFileLocation)), WRITE_BUFFERSIZE)) {
+			while (recordCount < maxRecords && byteCount < maxBytes) {
+				int len = 0;
+				for (int i = 0; i < wordsPerRecord; i++) {
+					if (i > 0) line[len++] = ',';
+					int r = nextRank(random);
+					int wordLen = wordStart[r + 1] - wordStart[r];
+					System.arraycopy(wordBytes, wordStart[r], line, len, wordLen);
+					len += wordLen;
+				}
+				line[len++] = '\r';
+				line[len++] = '\n';
+				out.write(line, 0, len);
+				byteCount += len;
+				recordCount++;
+
+				if (isVerbose && recordCount % 1000000 == 0) System.out.println("records: " + recordCount + "; bytes: " + byteCount);
+			}
+		}
+		if (isVerbose) System.out.println("Data file written: " + dataFileLocation + "; records: " + recordCount + "; bytes: " + byteCount);
+		return byteCount;
+	}
+
+	/**
+	 * Writes the query file.
+	 * @param queryFileLocation local file path; overwritten if exists
+	 * @param queryCount number of queries (duplicates included)
+	 * @return number of duplicate queries written
+	 * @throws IOException when file cannot be written
+	 */
+	public int writeQueries(String queryFileLocation, int queryCount) throws IOException {
+		// a stream of its own: same queries whatever the size of the data
+		SplittableRandom random = new SplittableRandom(seed ^ 0x5DEECE66DL);
+		List<String> written = new ArrayList<String>(queryCount);
+		int duplicateCount = 0;
+		try (BufferedWriter writer = openWriter(queryFileLocation)) {
+			for (int i = 0; i < queryCount; i++) {
+				String query;
+				if (!written.isEmpty() && random.nextDouble() < duplicateQueryRatio) {
+					query = written.get(random.nextInt(written.size()));
+					duplicateCount++;
+				}
+				else {
+					query = toLine(selectivity > 0? selectiveQuery(random) : zipfQuery(random));
+				}
+				written.add(query);
+				writer.append(query).append(LINE_END);
+			}
+		}
+		if (isVerbose) System.out.println("Query file written: " + queryFileLocation + "; queries: " + queryCount + "; duplicates: " + duplicateCount);
+		return duplicateCount;
+	}
+
+	/**
+	 * Expected share of records that contain all of the words (words of a record assumed independent).
+	 * @param ranks word ranks
+	 * @return expected selectivity
+	 */
+	double expectedSelectivity(int... ranks) {
+		double s = 1d;
+		for (int r : ranks) s *= inclusion[r];
+		return s;
+	}
+
+	/**
+	 * @param rank word rank; 0 - most frequent
+	 * @return the word
+	 */
+	public static String word(int rank) {
+		StringBuilder sb = new StringBuilder();
+		appendWord(sb, rank);
+		return sb.toString();
+	}
+
+	/**
+	 * Bijective base-26: 0 - "a", 25 - "z", 26 - "aa", ...
+	 */
+	private static void appendWord(StringBuilder sb, int rank) {
+		int start = sb.length();
+		long n = rank + 1L;
+		while (n > 0) {
+			n--;
+			sb.append((char)('a' + (n % 26)));
+			n /= 26;
+		}
+		// digits came out least significant first
+		for (int i = start, j = sb.length() - 1; i < j; i++, j--) {
+			char c = sb.charAt(i);
+			sb.setCharAt(i, sb.charAt(j));
+			sb.setCharAt(j, c);
+		}
+	}
+
+	private static int wordLength(int rank) {
+		int len = 0;
+		for (long n = rank + 1L; n > 0; n = (n - 1) / 26) len++;
+		return len;
+	}
+
+	private int nextRank(SplittableRandom random) {
+		// one number for both choices: integer part - slot, fraction - which of its two words
+		double u = random.nextDouble() * vocabularySize;
+		int slot = Math.min((int)u, vocabularySize - 1);	// product may round up to vocabularySize
+		return (u - slot < aliasProbability[slot]? slot : alias[slot]);
+	}
+
+	private int[] zipfQuery(SplittableRandom random) {
+		int[] ranks = new int[queryLength];
+		for (int i = 0; i < queryLength; i++) {
+			int r;
+			do {
+				r = nextRank(random);
+			} while (contains(ranks, i, r));
+			ranks[i] = r;
+		}
+		return ranks;
+	}
+
+	/**
+	 * All words but the last: picked at random among words with inclusion near the per-word share of the target;
+	 * the last word: picked to bring the product as close to the target as the vocabulary allows.
+	 */
+	private int[] selectiveQuery(SplittableRandom random) {
+		int[] ranks = new int[queryLength];
+		double perWord = Math.pow(selectivity, 1d / queryLength);
+		double sofar = 1d;
+		for (int i = 0; i < queryLength; i++) {
+			boolean isLast = (i == queryLength - 1);
+			double target = (isLast? Math.min(1d, selectivity / sofar) : perWord);
+			double tolerance = (isLast? SELECTIVITY_TOLERANCE : 2d);
+			int from = firstRankAtMost(target * tolerance);
+			int to = firstRankAtMost(target / tolerance) - 1;
+			if (to < from) {
+				// nothing in range: the word closest to the target
+				from = Math.min(from, vocabularySize - 1);
+				to = from;
+			}
+			int r = from + random.nextInt(to - from + 1);
+			// taken by an earlier word of this query: next free one
+			while (contains(ranks, i, r)) r = (r + 1) % vocabularySize;
+			ranks[i] = r;
+			sofar *= inclusion[r];
+		}
+		return ranks;
+	}
+
+	/**
+	 * @return first rank with inclusion <= p (inclusion is descending); vocabularySize if none
+	 */
+	private int firstRankAtMost(double p) {
+		int lo = 0;
+		int hi = vocabularySize;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (inclusion[mid] <= p) hi = mid;
+			else lo = mid + 1;
+		}
+		return lo;
+	}
+
+	private static boolean contains(int[] ranks, int length, int r) {
+		for (int i = 0; i < length; i++) {
+			if (ranks[i] == r) return true;
+		}
+		return false;
+	}
+
+	private static String toLine(int[] ranks) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < ranks.length; i++) {
+			if (i > 0) sb.append(',');
+			appendWord(sb, ranks[i]);
+		}
+		return sb.toString();
+	}
+
+	private static BufferedWriter openWriter(String fileLocation) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(Utils.getPath(fileLocation)), StandardCharsets.US_ASCII), WRITE_BUFFERSIZE);
+	}
+
+	/**
+	 * A string representation of this instance.
+	 */
+	public String toString() {
+		return "WorkloadGenerator: vocabularySize=" + vocabularySize + "; zipfExponent=" + zipfExponent + "; wordsPerRecord=" + wordsPerRecord
+				+ "; queryLength=" + queryLength + "; duplicateQueryRatio=" + duplicateQueryRatio + "; selectivity=" + selectivity + "; seed=" + seed;
+	}
+
+	/**
+	 * Builder: all settings have defaults.
+	 */
+	public static class Builder {
+		private int vocabularySize = DEFAULT_VOCABULARYSIZE;
+		private double zipfExponent = DEFAULT_ZIPFEXPONENT;
+		private int wordsPerRecord = DEFAULT_WORDSPERRECORD;
+		private int queryLength = DEFAULT_QUERYLENGTH;
+		private double duplicateQueryRatio = DEFAULT_DUPLICATEQUERYRATIO;
+		private double selectivity = DEFAULT_SELECTIVITY;
+		private long seed = DEFAULT_SEED;
+		private boolean isVerbose = DEFAULT_VERBOSE;
+
+		public static Builder builder() {
+			return new Builder();
+		}
+
+		private Builder() {
+		}
+
+		public Builder withVocabularySize(int n) {this.vocabularySize = n; return this;}
+		public Builder withZipfExponent(double d) {this.zipfExponent = d; return this;}
+		public Builder withWordsPerRecord(int n) {this.wordsPerRecord = n; return this;}
+		public Builder withQueryLength(int n) {this.queryLength = n; return this;}
+		public Builder withDuplicateQueryRatio(double d) {this.duplicateQueryRatio = d; return this;}
+		public Builder withSelectivity(double d) {this.selectivity = d; return this;}
+		public Builder withSeed(long s) {this.seed = s; return this;}
+		public Builder withVerbose(boolean v) {this.isVerbose = v; return this;}
+
+		public WorkloadGenerator build() {
+			return new WorkloadGenerator(vocabularySize, zipfExponent, wordsPerRecord, queryLength, duplicateQueryRatio, selectivity, seed, isVerbose);
+		}
+	}
+
+	// command line option names
+	private final static String OPT_RECORDS 		= "r";
+	private final static String OPT_SIZE 			= "size";
+	private final static String OPT_QUERIES 		= "n";
+	private final static String OPT_VOCABULARY 		= "vs";
+	private final static String OPT_ZIPF 			= "z";
+	private final static String OPT_WORDS 			= "wr";
+	private final static String OPT_QUERYLENGTH 	= "ql";
+	private final static String OPT_DUPLICATES 		= "d";
+	private final static String OPT_SELECTIVITY 	= "sel";
+	private final static String OPT_SEED 			= "seed";
+	private final static String OPT_VERBOSE 		= "v";
+	private final static String OPT_HELP 			= "help";
+
+	/**
+	 * CLI entry point:
+	 * java -cp idt-test.jar com.idt.codechallenge.WorkloadGenerator [options] dfile qfile
+	 * @param args command line args; -help for details
+	 */
+	public static void main(String[] args) {
+		Options options = getOptions();
+		try {
+			CommandLineParser parser = new DefaultParser();
+			CommandLine line = parser.parse(options, args);
+			if (line.hasOption(OPT_HELP) || line.getArgList().size() < 2) {
+				new HelpFormatter().printHelp("java -cp idt-test.jar " + WorkloadGenerator.class.getName() + " [options] dfile qfile", options);
+				return;
+			}
+
+			Builder builder = Builder.builder();
+			Number val;
+			if ((val = number(line, OPT_VOCABULARY)) != null) builder.withVocabularySize(val.intValue());		System.out.println("vocabularySize="+val);
+			if ((val = number(line, OPT_ZIPF)) != null) builder.withZipfExponent(val.doubleValue());			System.out.println("zipfExponent="+val);
+			if ((val = number(line, OPT_WORDS)) != null) builder.withWordsPerRecord(val.intValue());			System.out.println("wordsPerRecord="+val);
+			if ((val = number(line, OPT_QUERYLENGTH)) != null) builder.withQueryLength(val.intValue());		System.out.println("queryLength="+val);
+			if ((val = number(line, OPT_DUPLICATES)) != null) builder.withDuplicateQueryRatio(val.doubleValue());	System.out.println("duplicateQueryRatio="+val);
+			if ((val = number(line, OPT_SELECTIVITY)) != null) builder.withSelectivity(val.doubleValue());	System.out.println("selectivity="+val);
+			if ((val = number(line, OPT_SEED)) != null) builder.withSeed(val.longValue());						System.out.println("seed="+val);
+			builder.withVerbose(line.hasOption(OPT_VERBOSE));
+
+			long records = ((val = number(line, OPT_RECORDS)) != null? val.longValue() : Long.MAX_VALUE);		System.out.println("records="+val);
+			long size = (line.hasOption(OPT_SIZE)? parseSize(line.getOptionValue(OPT_SIZE)) : Long.MAX_VALUE);						System.out.println("size="+line.getOptionValue(OPT_SIZE));
+			if (records == Long.MAX_VALUE && size == Long.MAX_VALUE) records = 100000;
+			int queries = ((val = number(line, OPT_QUERIES)) != null? val.intValue() : 100);					System.out.println("queries="+queries);
+
+			WorkloadGenerator generator = builder.build();
+			long now = System.currentTimeMillis();
+			generator.writeData(line.getArgList().get(0), records, size);
+			generator.writeQueries(line.getArgList().get(1), queries);
+			System.out.println("elapsed: " + (System.currentTimeMillis() - now) + " ms");
+		}
+		catch (Exception e) {
+			System.out.println(e.getMessage());
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @param s size in bytes, with optional suffix k, m or g (powers of 1024)
+	 * @return size in bytes
+	 */
+	static long parseSize(String s) {
+		String v = s.trim().toLowerCase();
+		long unit = 1;
+		switch (v.charAt(v.length() - 1)) {
+			case 'k': unit = 1L << 10; break;
+			case 'm': unit = 1L << 20; break;
+			case 'g': unit = 1L << 30; break;
+			default: break;
+		}
+		if (unit > 1) v = v.substring(0, v.length() - 1);
+		return Long.parseLong(v) * unit;
+	}
+
+	private static Options getOptions() {
+		Options options = new Options();
+		options.addOption(numberOption(OPT_RECORDS, "COUNT", "number of data records. Default: 100000 (unless -" + OPT_SIZE + " is set)."));
+		options.addOption(Option.builder(OPT_SIZE).hasArg().argName("BYTES").desc("max data file size; suffixes k, m, g allowed (e.g. 20g). The data file stops at -" + OPT_RECORDS + " or -" + OPT_SIZE + ", whichever comes first.").build());
+		options.addOption(numberOption(OPT_QUERIES, "COUNT", "(default: 100) number of queries, duplicates included."));
+		options.addOption(numberOption(OPT_VOCABULARY, "WORDS", "(default: " + DEFAULT_VOCABULARYSIZE + ") number of distinct words."));
+		options.addOption(numberOption(OPT_ZIPF, "EXPONENT", "(default: " + DEFAULT_ZIPFEXPONENT + ") Zipf exponent of word frequencies; 0 - uniform."));
+		options.addOption(numberOption(OPT_WORDS, "WORDS", "(default: " + DEFAULT_WORDSPERRECORD + ") words per data record."));
+		options.addOption(numberOption(OPT_QUERYLENGTH, "WORDS", "(default: " + DEFAULT_QUERYLENGTH + ") words per query."));
+		options.addOption(numberOption(OPT_DUPLICATES, "RATIO", "(default: 0) share of queries that repeat an earlier query."));
+		options.addOption(numberOption(OPT_SELECTIVITY, "RATIO", "target share of records each query matches (e.g. 0.001). Default: not set - query words follow the same Zipf distribution as data."));
+		options.addOption(numberOption(OPT_SEED, "SEED", "(default: " + DEFAULT_SEED + ") random seed; same seed and settings - same files."));
+		options.addOption(OPT_VERBOSE, false, "Verbose: progress output.");
+		options.addOption(OPT_HELP, false, "Prints this information.");
+		return options;
+	}
+
+	/**
+	 * @return value of a {@link #numberOption(String, String, String) numberOption}; null when not given
+	 * @throws ParseException when not a number
+	 */
+	private static Number number(CommandLine line, String name) throws ParseException {
+		// commons-cli 1.4: getParsedOptionValue() is not generic - the one cast, for all number options
+		return (Number)line.getParsedOptionValue(name);
+	}
+
+	private static Option numberOption(String name, String argName, String desc) {
+		Option opt = Option.builder(name).hasArg().argName(argName).desc(desc).build();
+		opt.setType(Number.class);
+		return opt;
+	}
+}
@@ -0,0 +1,229 @@
+package com.idt.codechallenge.concurrent;
+
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.idt.codechallenge.metrics.MatcherMetrics;
+
+/**
+ * <pre>
+ * Tunes a running ConcurrentRecordMatcher, instead of -w/-b by trial and error:
+ * - active workers: the pool is started at its max size, workers above the active count sit parked;
+ * - batch size: max number of lines a worker takes from the reader at a time.
+ *
+ * Hill-climbing on records/s (records tokenized by the workers), measured every interval from a timer thread:
+ * - a move (one knob, one step: workers +-1, batch x2 or /2) that made the rate better by more than EPSILON is repeated;
+ * - one that did not is undone; the next interval is not compared to anything, only measured as the new reference
+ *   (data differs along the file: rates drift), and the other knob is moved.
+ * Direction of a worker move comes from the queue: records piling up - workers do not keep up, add one;
+ * queue drained - the reader does not keep up, spare workers only spin: take one away.
+ *
+ * Workers read the settings (volatile) between batches; the timer thread alone changes them.
+ * </pre>
+ */
+class AutoTuner {
+
+	final static int MIN_BATCH = 16;
+	final static int MAX_BATCH = 4096;
+	// smallest change of rate that counts as better
+	final static double EPSILON = 0.03;
+	final static long DEFAULT_INTERVAL_MILLIS = 500;
+
+	private enum Knob {WORKERS, BATCH}
+
+	private final int maxWorkers;
+	private final long intervalMillis;
+	private final MatcherMetrics metrics;
+	private final PrintStream log;
+
+	private volatile int workers;
+	private volatile int batchSize;
+
+	// hill-climbing state: timer thread only
+	private Knob knob = Knob.WORKERS;
+	private int batchDirection = 1;
+	private Knob lastKnob;
+	private int lastStep;
+	private double lastRate = Double.NaN;
+	private double bestRate;
+	private int moves;
+
+	private ScheduledExecutorService timer;
+	private long lastNanos;
+	private long lastRecords;
+
+	/**
+	 * @param max max number of workers (size of the pool); must be positive
+	 * @param batch initial batch size; clamped to MIN_BATCH..MAX_BATCH
+	 * @param interval ms between measurements; must be positive
+	 * @param m counters to measure the rate on
+	 * @param l where to print every change; null - nowhere
+	 */
+	AutoTuner(int max, int batch, long interval, MatcherMetrics m, PrintStream l) {
+		if (max <= 0) throw new IllegalArgumentException("max number of workers must be positive");
+		if (interval <= 0) throw new IllegalArgumentException("interval must be positive");
+		if (m == null) throw new IllegalArgumentException("metrics cannot be null");
+		maxWorkers = max;
+		// halfway: room to move both ways
+		workers = (max + 1) / 2;
+		batchSize = Math.max(MIN_BATCH, Math.min(MAX_BATCH, batch));
+		intervalMillis = interval;
+		metrics = m;
+		log = l;
+	}
+
+	/**
+	 * @return true if worker number i (0-based) should work now; false - it should stay parked
+	 */
+	boolean isActive(int i) {
+		return i < workers;
+	}
+
+	int getWorkers() {
+		return workers;
+	}
+
+	int getMaxWorkers() {
+		return maxWorkers;
+	}
+
+	int getBatchSize() {
+		return batchSize;
+	}
+
+	double getBestRate() {
+		return bestRate;
+	}
+
+	int getMoves() {
+		return moves;
+	}
+
+	/**
+	 * Starts measuring and tuning.
+	 * @return this
+	 */
+	synchronized AutoTuner start() {
+		if (timer != null) return this;
+		lastNanos = System.nanoTime();
+		lastRecords = metrics.getRecordsParsed();
+		timer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "auto-tuner");
+			t.setDaemon(true);
+			return t;
+		});
+		timer.scheduleAtFixedRate(this::measure, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+		return this;
+	}
+
+	/**
+	 * Stops tuning; settings stay as they are.
+	 */
+	synchronized void stop() {
+		if (timer == null) return;
+		timer.shutdownNow();
+		timer = null;
+	}
+
+	private void measure() {
+		long now = System.nanoTime();
+		long records = metrics.getRecordsParsed();
+		double rate = (records - lastRecords) * 1e9d / (now - lastNanos);
+		lastNanos = now;
+		lastRecords = records;
+		adjust(rate, metrics.getQueueDepth());
+	}
+
+	/**
+	 * One hill-climbing step.
+	 * @param rate records/s over the last interval
+	 * @param queueDepth records read, not yet taken by workers
+	 */
+	void adjust(double rate, long queueDepth) {
+		bestRate = Math.max(bestRate, rate);
+		if (Double.isNaN(lastRate)) {
+			// no reference yet (start, or after an undo): this rate is it, the next move is compared to it
+			lastRate = rate;
+			move(queueDepth);
+			return;
+		}
+		if (lastKnob != null && rate <= lastRate * (1 + EPSILON)) {
+			// no better: back, and try the other way round next
+			undo();
+			lastRate = Double.NaN;
+			return;
+		}
+		lastRate = rate;
+		move(queueDepth);
+	}
+
+	/**
+	 * Moves the current knob one step (or the other knob, if the current one is at its limit).
+	 */
+	private void move(long queueDepth) {
+		for (int tries = 0; tries < 2; tries++) {
+			// the same knob is moved again only right after it did well
+			int step = (lastKnob == knob? lastStep : direction(queueDepth));
+			if (apply(knob, step)) {
+				lastKnob = knob;
+				lastStep = step;
+				moves++;
+				return;
+			}
+			knob = other(knob);
+			lastKnob = null;
+		}
+		// both at a limit
+		lastKnob = null;
+	}
+
+	private void undo() {
+		apply(lastKnob, -lastStep);
+		if (lastKnob == Knob.BATCH) batchDirection = -lastStep;
+		knob = other(lastKnob);
+		lastKnob = null;
+	}
+
+	private int direction(long queueDepth) {
+		if (knob == Knob.BATCH) return batchDirection;
+		// more queued than active workers would take in one go each: workers are behind
+		return (queueDepth > (long)workers * batchSize? 1 : -1);
+	}
+
+	/**
+	 * @return false if the knob is at its limit that way
+	 */
+	private boolean apply(Knob k, int step) {
+		if (k == Knob.WORKERS) {
+			int w = workers + step;
+			if (w < 1 || w > maxWorkers) return false;
+			log("workers " + workers + " -> " + w);
+			workers = w;
+		}
+		else {
+			int b = (step > 0? batchSize * 2 : batchSize / 2);
+			if (b < MIN_BATCH || b > MAX_BATCH) return false;
+			log("batch " + batchSize + " -> " + b);
+			batchSize = b;
+		}
+		return true;
+	}
+
+	private static Knob other(Knob k) {
+		return (k == Knob.WORKERS? Knob.BATCH : Knob.WORKERS);
+	}
+
+	private void log(String change) {
+		if (log != null) log.println(String.format(Locale.ROOT, "[auto-tune] %s (last rate: %,.0f rec/s)", change, lastRate));
+	}
+
+	/**
+	 * A string representation of this instance: current settings.
+	 */
+	public String toString() {
+		return String.format(Locale.ROOT, "workers=%d (max %d); batch=%d; best rate=%,.0f rec/s; moves=%d", workers, maxWorkers, batchSize, bestRate, moves);
+	}
+}
@@ -3,16 +3,16 @@ package com.idt.codechallenge.concurrent;
 import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.stream.Collectors;
 
 import com.idt.codechallenge.Utils;
+import com.idt.codechallenge.metrics.MatcherMetrics;
+import com.idt.codechallenge.metrics.ReadBatchEvent;
+import com.idt.codechallenge.metrics.StageEvents;
 
 /**
  * Data reader that will simultaneously:
@@ -43,8 +43,9 @@ class BufferedDataReader implements DataReader, QueryHolder, Callable<Long> {
 	private List<Set<String>> queries = null;
 	private ConcurrentLinkedQueue<String> data;
 	
-	// if true - source still has more; when false - no more data in the source
-	private boolean willHaveMore = true;
+	// if true - source still has more; when false - no more data in the source.
+	// volatile: set by the reader thread after its last line is queued, workers rely on that order
+	private volatile boolean willHaveMore = true;
 	
 	public BufferedDataReader(
 			String dflLocation, 
@@ -77,7 +78,9 @@ class BufferedDataReader implements DataReader, QueryHolder, Callable<Long> {
 
 	@Override
 	public String readLine() {
-		return data.poll();
+		String line = data.poll();
+		if (line != null) MatcherMetrics.global().dequeued();
+		return line;
 	}
 
 	@Override
@@ -94,58 +97,75 @@ class BufferedDataReader implements DataReader, QueryHolder, Callable<Long> {
 		if (queries == null) throw new IllegalStateException("Reader.init() must be called first before starting it.");
 
 		info("Reader STARTED...");
+		long allocationMark = MatcherMetrics.threadAllocatedBytes();
 
 		willHaveMore = true;
 
 		long rowCount = 0;
-		data = new ConcurrentLinkedQueue<String>();
 
 		// reader for data file
-		BufferedReader dreader = Utils.openReader(dataFileLocation, bufferSize);
+		BufferedReader dreader = Utils.openReader(dataFileLocation, bufferSize, true);
 		
 		String line;
 		long now = System.currentTimeMillis();
+		// JFR: one event per batch of records
+		ReadBatchEvent batch = null;
 		
 		while ((line = dreader.readLine()) != null) {
 		
+			if (batch == null && StageEvents.isReadEnabled()) {
+				batch = new ReadBatchEvent();
+				batch.begin();
+				batch.firstRecord = rowCount + 1;
+			}
 			debug("line: " + line);
 			// add to internal queue
 			data.add(line);
+			MatcherMetrics.global().queued();	// queue size() walks the whole queue: depth is counted instead
 			rowCount++;
 			
+			if (batch != null) {
+				batch.characters += line.length() + 1;
+				if (++batch.records == StageEvents.BATCH_SIZE) {
+					commit(batch);
+					batch = null;
+				}
+			}
 			// TODO check memory, stop temporarily 
 		}
+		if (batch != null) commit(batch);
 		
 		long elapsed = System.currentTimeMillis() - now;
 		info("Reader finished in " + elapsed +" ms");
+		MatcherMetrics.global().allocatedSince(allocationMark);
 
 		willHaveMore = false;
 
 		return rowCount;
 	}
 	
+	private static void commit(ReadBatchEvent batch) {
+		batch.end();
+		if (batch.shouldCommit()) {
+			batch.queueDepth = MatcherMetrics.global().getQueueDepth();
+			batch.commit();
+		}
+	}
+	
 	/**
 	 * Initializes this reader: reads in the entire list of queries
 	 * @throws FileNotFoundException
 	 * @throws IOException
 	 */
 	int init() throws FileNotFoundException, IOException {
-		queries = new ArrayList<Set<String>>();
-
-		// reader for queries		
-		BufferedReader qreader = Utils.openReader(queryFileLocation, bufferSize);
-
-		List<Set<String>> tempQueries = new ArrayList<Set<String>>();
-		
-		String line;
-		while ((line = qreader.readLine()) != null) {
-			// convert and add to internal list
-			tempQueries.add(Arrays.asList(line.split(",")).stream().collect(Collectors.toSet()));
-		}
+		// read in all queries, converting each into a set of query words
+		List<Set<String>> tempQueries = Utils.readQueries(queryFileLocation, bufferSize);
 		// TODO check if all queries have unique word sets?
 
 		// reload queries into immutable list
 		queries = Collections.unmodifiableList(tempQueries);
+		// here, not in call(): workers may start polling before the reader thread gets going
+		data = new ConcurrentLinkedQueue<String>();
 		return queries.size();
 	}
 
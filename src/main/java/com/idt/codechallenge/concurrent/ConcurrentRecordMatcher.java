@@ -7,8 +7,15 @@ import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.function.IntFunction;
 
+import com.idt.codechallenge.JsonMatchSink;
+import com.idt.codechallenge.MatchSink;
 import com.idt.codechallenge.Matcher;
+import com.idt.codechallenge.PositionalFileOutput;
+import com.idt.codechallenge.metrics.MatcherMetrics;
+import com.idt.codechallenge.metrics.QueryProfiler;
+import com.idt.codechallenge.metrics.StageEvents;
 
 
 /**
@@ -29,16 +36,71 @@ public class ConcurrentRecordMatcher implements Matcher {
 	private int bufferSize;
 	private boolean isVerbose = false;
 	private boolean isSuperVerbose = false;
+	private QueryProfiler profiler = null;
+	private boolean isAutoTune = false;
+	private AutoTuner tuner = null;
 	
 	public ConcurrentRecordMatcher(String df, String qf, Integer psize, Integer bsize, Boolean isVerb, Boolean isSuperVerb) {
+		this(df, qf, psize, bsize, isVerb, isSuperVerb, null);
+	}
+
+	/**
+	 * @param prof when not null - every query's cost is recorded in it (see {@link QueryProfiler QueryProfiler}); costs some time itself
+	 */
+	public ConcurrentRecordMatcher(String df, String qf, Integer psize, Integer bsize, Boolean isVerb, Boolean isSuperVerb, QueryProfiler prof) {
+		this(df, qf, psize, bsize, isVerb, isSuperVerb, prof, null);
+	}
+
+	/**
+	 * @param isAuto when true - number of active workers and their batch size are tuned while running (see {@link AutoTuner AutoTuner});
+	 * psize is then the max number of workers (default: number of CPUs)
+	 */
+	public ConcurrentRecordMatcher(String df, String qf, Integer psize, Integer bsize, Boolean isVerb, Boolean isSuperVerb, QueryProfiler prof, Boolean isAuto) {
 		dataFileLocation = df;
 		queryFileLocation = qf;
-		poolSize = (psize == null? 1 : psize);
+		isAutoTune = (isAuto != null? isAuto : isAutoTune);
+		poolSize = (psize != null? psize : isAutoTune? Runtime.getRuntime().availableProcessors() : 1);
 		bufferSize = (bsize == null? 8192 : bsize);
 		this.isSuperVerbose = (isSuperVerb != null? isSuperVerb : isSuperVerbose);;
 		this.isVerbose = (isVerb != null?  isVerb || isSuperVerbose : isVerbose || isSuperVerbose);	// superverbose is an overriding option
+		profiler = prof;
+	}
+
+	/**
+	 * @return settings the auto-tuner ended up with (and its best rate); null if not auto-tuning, or not run yet
+	 */
+	public String getTunedSettings() {
+		return (tuner != null? tuner.toString() : null);
 	}
 	
+	/**
+	 * Runs the match, writes JSON lines to the stream.
+	 * Each worker has its own JSON sink, flushed after every match: lines from different workers never get mixed up.
+	 * 
+	 * @param out an OutpuStream to write result into. 
+	 * @throws IOException some Readers managed outside try-with-resources may throw.
+	 * @return number of matches found
+	 */
+	@Override
+	public long match(OutputStream out) throws IOException  {
+		return match(i -> new JsonMatchSink(out, true));
+	}
+
+	/**
+	 * Runs the match, writes JSON lines to a local file.
+	 * Workers don't take turns on one stream: each serializes its matches in chunks, and writes them into regions
+	 * of the file of its own (see {@link PositionalFileOutput PositionalFileOutput}).
+	 * 
+	 * @param outputFile full path to a local file; created, or truncated
+	 * @throws IOException when the file cannot be written
+	 * @return number of matches found
+	 */
+	public long matchToFile(String outputFile) throws IOException  {
+		try (PositionalFileOutput out = new PositionalFileOutput(outputFile)) {
+			return match(i -> out.newSink());
+		}
+	}
+
 	/**
 	 * Runs the match:
 	 * - starts data reader in a thread;
@@ -46,12 +108,19 @@ public class ConcurrentRecordMatcher implements Matcher {
 	 * 
 	 * Match is done when all threads are finished.
 	 * 
-	 * @param out an OutpuStream to write result into. 
+	 * @param sink receiver of results. Shared by all workers: MUST be thread-safe. 
 	 * @throws IOException some Readers managed outside try-with-resources may throw.
 	 * @return number of matches found
 	 */
 	@Override
-	public long match(OutputStream out) throws IOException  {
+	public long match(MatchSink sink) throws IOException  {
+		return match(i -> sink);
+	}
+
+	/**
+	 * Runs the match; worker i hands its results over to sinks.apply(i).
+	 */
+	private long match(IntFunction<MatchSink> sinks) throws IOException  {
 		
 	    long matchCount = 0;
 
@@ -68,10 +137,15 @@ public class ConcurrentRecordMatcher implements Matcher {
 			int qryRowCount = reader.init();
 			if (isVerbose) System.out.println("Read "+ qryRowCount + " queries");
 	
+			// auto-tune: all workers are started, the tuner decides how many of them work
+			if (isAutoTune) tuner = new AutoTuner(poolSize, StageEvents.BATCH_SIZE, AutoTuner.DEFAULT_INTERVAL_MILLIS, MatcherMetrics.global(), (isVerbose? System.out : null));
+
 			// create workers
 			List<MatcherWorker> workers = new ArrayList<MatcherWorker>();
+			List<MatchSink> workerSinks = new ArrayList<MatchSink>();
 			for (int i = 0; i < poolSize; i++) {
-				workers.add(new MatcherWorker(reader, reader, System.out, isVerbose, isSuperVerbose));			
+				workerSinks.add(sinks.apply(i));
+				workers.add(new MatcherWorker(reader, reader, workerSinks.get(i), isVerbose, isSuperVerbose, profiler, tuner, i));			
 			}
 			
 			ExecutorService readerExecutor = Executors.newSingleThreadExecutor();
@@ -80,11 +154,20 @@ public class ConcurrentRecordMatcher implements Matcher {
 			// launch all:
 			// reader
 			Future<Long> readerResult = readerExecutor.submit(reader);
+			if (tuner != null) tuner.start();
 		    
 			// workers
-			List<Future<Long>> matchResults = workerExecutor.invokeAll(workers);
+			List<Future<Long>> matchResults;
+			try {
+				matchResults = workerExecutor.invokeAll(workers);
+			}
+			finally {
+				if (tuner != null) tuner.stop();
+			}
 			
-			System.out.flush();	
+			for (MatchSink s : workerSinks) {
+				s.flush();
+			}
 			readerExecutor.shutdown();	
 			workerExecutor.shutdown();	
 			
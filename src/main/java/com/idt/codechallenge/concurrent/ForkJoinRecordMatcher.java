@@ -0,0 +1,284 @@
+package com.idt.codechallenge.concurrent;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import com.google.gson.Gson;
+import com.idt.codechallenge.MatchSink;
+import com.idt.codechallenge.Matcher;
+import com.idt.codechallenge.TimedMatchSink;
+import com.idt.codechallenge.Utils;
+import com.idt.codechallenge.metrics.CountingOutputStream;
+import com.idt.codechallenge.metrics.MatcherMetrics;
+
+/**
+ * <pre>
+ * Data-to-query matcher on a work-stealing ForkJoinPool, instead of ConcurrentRecordMatcher's reader + N identical workers:
+ * - the calling thread reads records in chunks (CHUNK_RECORDS) and submits each chunk to the pool as one task;
+ * - the task splits its range of records in halves, recursively, down to LEAF_RECORDS;
+ *   a leaf parses (tokenizes) its records, matches them against all queries and serializes the matches (JSON);
+ * - the calling thread, meanwhile reading ahead (up to 2 chunks per pool thread in flight), writes the chunks out
+ *   in the order they were read, and within a chunk - leaf by leaf in record order.
+ *
+ * The pool's idle threads steal the halves that busy ones have not got to yet: a range of expensive records
+ * (many matches, long records) ends up spread over all the threads instead of holding up the one that took it.
+ * Output is the same as RecordMatcher's, byte for byte.
+ *
+ * With a MatchSink instead of a stream: leaves parse and match, the calling thread hands the matches over
+ * to the sink, in the same order - the sink need not be thread-safe.
+ * </pre>
+ */
+public class ForkJoinRecordMatcher implements Matcher {
+
+	private final static int CHUNK_RECORDS = 4096;
+	private final static int LEAF_RECORDS = 64;
+	// Gson instances are thread-safe: one for all leaves
+	private final static Gson GSON = new Gson();
+
+	private final String dataFileLocation;
+	private final String queryFileLocation;
+	private int parallelism;
+	private int bufferSize;
+	private boolean isVerbose = false;
+	private boolean isSuperVerbose = false;
+
+	/**
+	 * A chunk of records and what the leaves made of them: slots by record (or by leaf), written by one leaf each.
+	 * The calling thread reads them only after the chunk's task is done.
+	 */
+	private static class Chunk {
+		// row # of the first record (1-based)
+		final long firstRow;
+		final String[] lines;
+		final int size;
+		// JSON mode: output of the leaf that starts at i, at i; null elsewhere
+		final String[] json;
+		// sink mode: per record - its word counts and the queries it matched (null - none)
+		final Map<String, Integer>[] wordCounts;
+		final int[][] matched;
+		// number of matches of the leaf that starts at i, at i
+		final long[] leafMatches;
+		ForkJoinTask<?> task;
+
+		Chunk(long r, String[] l, int n, boolean isJson) {
+			firstRow = r;
+			lines = l;
+			size = n;
+			json = (isJson? new String[n] : null);
+			wordCounts = (isJson? null : MatcherWorker.newWordCounts(n));
+			matched = (isJson? null : new int[n][]);
+			leafMatches = new long[n];
+		}
+	}
+
+	/**
+	 * @param df data file location
+	 * @param qf query file location
+	 * @param threads number of pool threads; default: number of CPUs
+	 * @param bsize buffer size for the file readers; default: 8192
+	 * @param isVerb verbose flag
+	 * @param isSuperVerb very verbose flag
+	 */
+	public ForkJoinRecordMatcher(String df, String qf, Integer threads, Integer bsize, Boolean isVerb, Boolean isSuperVerb) {
+		if (df == null) throw new IllegalArgumentException("dataFileLocation cannot be null");
+		if (qf == null) throw new IllegalArgumentException("queryFileLocation cannot be null");
+		if (threads != null && threads <= 0) throw new IllegalArgumentException("number of threads must be positive");
+		if (bsize != null && bsize < 0) throw new IllegalArgumentException("bufferSize must be positive");
+		dataFileLocation = df;
+		queryFileLocation = qf;
+		parallelism = (threads != null? threads : Runtime.getRuntime().availableProcessors());
+		bufferSize = (bsize != null? bsize : 8192);
+		this.isSuperVerbose = (isSuperVerb != null? isSuperVerb : isSuperVerbose);
+		this.isVerbose = (isVerb != null?  isVerb || isSuperVerbose : isVerbose || isSuperVerbose);	// superverbose is an overriding option
+	}
+
+	/**
+	 * Runs the match, writes JSON lines to the stream; serializing is done by the pool as well.
+	 * @param out stream to write JSON lines to
+	 * @return number of matches found
+	 * @throws IOException when files are unreadable, or the stream throws
+	 */
+	@Override
+	public long match(OutputStream out) throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new CountingOutputStream(out, MatcherMetrics.global())));
+		long matchCount = run(null, writer);
+		writer.flush();
+		return matchCount;
+	}
+
+	/**
+	 * Runs the match, hands each result over to the sink - from the calling thread, in record order.
+	 * @param sink receiver of results
+	 * @return number of matches found
+	 * @throws IOException when files are unreadable, or the sink throws
+	 */
+	@Override
+	public long match(MatchSink sink) throws IOException {
+		long matchCount = run(sink, null);
+		sink.flush();
+		return matchCount;
+	}
+
+	/**
+	 * Either sink or writer is set.
+	 */
+	private long run(MatchSink sink, Writer writer) throws IOException {
+		long allocationMark = MatcherMetrics.threadAllocatedBytes();
+		List<Set<String>> queries = Utils.readQueries(queryFileLocation, bufferSize);
+		if (isVerbose) System.out.println("Read " + queries.size() + " queries; " + parallelism + " threads");
+		// latencies of this run: one recorder per thread - the pool's, and this one (emit time)
+		Map<Thread, MatcherMetrics.LatencyRecorder> latencies = new ConcurrentHashMap<Thread, MatcherMetrics.LatencyRecorder>();
+		MatchSink timedSink = (sink != null? new TimedMatchSink(sink, latencies.computeIfAbsent(Thread.currentThread(), t -> MatcherMetrics.global().latencyRecorder()).getEmitHistogram()) : null);
+
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		Deque<Chunk> inFlight = new ArrayDeque<Chunk>();
+		int maxInFlight = 2 * parallelism;
+		long rowCount = 0;
+		long matchCount = 0;
+		try (BufferedReader reader = Utils.openReader(dataFileLocation, bufferSize, true)) {
+			String[] lines = new String[CHUNK_RECORDS];
+			int n = 0;
+			String line;
+			while (true) {
+				line = reader.readLine();
+				if (line != null) lines[n++] = line;
+				if (n == lines.length || (line == null && n > 0)) {
+					Chunk chunk = new Chunk(rowCount + 1, lines, n, writer != null);
+					chunk.task = pool.submit(new Stage(chunk, 0, n, queries, latencies));
+					inFlight.addLast(chunk);
+					rowCount += n;
+					lines = new String[CHUNK_RECORDS];
+					n = 0;
+					// oldest one out, before reading further ahead
+					if (inFlight.size() >= maxInFlight) matchCount += emit(inFlight.removeFirst(), queries, timedSink, writer);
+				}
+				if (line == null) break;
+			}
+			while (!inFlight.isEmpty()) {
+				matchCount += emit(inFlight.removeFirst(), queries, timedSink, writer);
+			}
+		}
+		finally {
+			pool.shutdownNow();
+			MatcherMetrics.global().allocatedSince(allocationMark);
+			latencies.values().forEach(MatcherMetrics.global()::merge);
+		}
+		if (isVerbose) System.out.println("Records processed: " + rowCount + "; steals: " + pool.getStealCount());
+		return matchCount;
+	}
+
+	/**
+	 * Waits for the chunk's task, writes its results out.
+	 * @return number of matches
+	 */
+	private long emit(Chunk chunk, List<Set<String>> queries, MatchSink sink, Writer writer) throws IOException {
+		try {
+			chunk.task.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for records from row " + chunk.firstRow, e);
+		}
+		catch (ExecutionException e) {
+			throw new RuntimeException("Error running match; rows from " + chunk.firstRow, e.getCause());
+		}
+		long matchCount = 0;
+		for (int i = 0; i < chunk.size; i++) {
+			matchCount += chunk.leafMatches[i];
+			if (writer != null) {
+				if (chunk.json[i] != null) writer.write(chunk.json[i]);
+			}
+			else if (chunk.matched[i] != null) {
+				for (int q : chunk.matched[i]) {
+					sink.onMatch(chunk.firstRow + i, q, queries.get(q), chunk.wordCounts[i]);
+				}
+			}
+		}
+		return matchCount;
+	}
+
+	/**
+	 * Records [from, to) of a chunk: split in halves while bigger than a leaf.
+	 */
+	private class Stage extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Chunk chunk;
+		private final int from;
+		private final int to;
+		private final List<Set<String>> queries;
+		private final Map<Thread, MatcherMetrics.LatencyRecorder> latencies;
+
+		Stage(Chunk c, int f, int t, List<Set<String>> qs, Map<Thread, MatcherMetrics.LatencyRecorder> ls) {
+			chunk = c;
+			from = f;
+			to = t;
+			queries = qs;
+			latencies = ls;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > LEAF_RECORDS) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new Stage(chunk, from, middle, queries, latencies), new Stage(chunk, middle, to, queries, latencies));
+				return;
+			}
+			long allocationMark = MatcherMetrics.threadAllocatedBytes();
+			MatcherMetrics.LatencyRecorder latency = latencies.computeIfAbsent(Thread.currentThread(), t -> MatcherMetrics.global().latencyRecorder());
+			StringBuilder json = (chunk.json != null? new StringBuilder() : null);
+			int[] matched = new int[queries.size()];
+			long matchCount = 0;
+			for (int i = from; i < to; i++) {
+				long start = System.nanoTime();
+				long row = chunk.firstRow + i;
+				// parse
+				Map<String, Integer> wordCounts = Utils.countWords(chunk.lines[i]);
+				chunk.lines[i] = null;
+				debug("row: " + row + "; wordCounts=" + wordCounts);
+				// match
+				int n = 0;
+				for (int q = 0; q < queries.size(); q++) {
+					if (wordCounts.keySet().containsAll(queries.get(q))) matched[n++] = q;
+				}
+				// serialize: same as JsonMatchSink
+				if (json != null) {
+					for (int m = 0; m < n; m++) {
+						Set<String> queryWords = queries.get(matched[m]);
+						json.append(Utils.toJson(row, queryWords, Utils.nonQueryWords(wordCounts, queryWords), GSON)).append(System.lineSeparator());
+					}
+				}
+				else if (n > 0) {
+					chunk.wordCounts[i] = wordCounts;
+					chunk.matched[i] = Arrays.copyOf(matched, n);
+				}
+				matchCount += n;
+				latency.record(System.nanoTime() - start);
+			}
+			if (json != null && json.length() > 0) chunk.json[from] = json.toString();
+			chunk.leafMatches[from] = matchCount;
+			MatcherMetrics.global().queriesEvaluated((long)(to - from) * queries.size());
+			MatcherMetrics.global().matchesEmitted(matchCount);
+			MatcherMetrics.global().allocatedSince(allocationMark);
+		}
+	}
+
+	private void debug(Object message) {
+		if (isSuperVerbose) System.out.println("[" + Thread.currentThread().getName()+"] "+message);
+	}
+}
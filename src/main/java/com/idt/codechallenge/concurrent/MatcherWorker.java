@@ -1,21 +1,32 @@
 package com.idt.codechallenge.concurrent;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
-import java.util.stream.Collectors;
+import java.util.concurrent.locks.LockSupport;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
+import com.idt.codechallenge.MatchSink;
+import com.idt.codechallenge.TimedMatchSink;
+import com.idt.codechallenge.Utils;
+import com.idt.codechallenge.metrics.EvaluateBatchEvent;
+import com.idt.codechallenge.metrics.MatcherMetrics;
+import com.idt.codechallenge.metrics.QueryProfiler;
+import com.idt.codechallenge.metrics.StageEvents;
+import com.idt.codechallenge.metrics.TokenizeBatchEvent;
 
 /**
+ * <pre>
  * A worker is meant to be started in a thread and keep reading data lines from DataReader,
- * matching them against queries from QueryHolder, and outputting the results to the OutputStream.
+ * matching them against queries from QueryHolder, and handing the results over to the MatchSink.
+ *
+ * Lines are taken in batches (whatever the reader has, up to StageEvents.BATCH_SIZE):
+ * the whole batch is tokenized, then the whole batch is matched - each of the two is one JFR event (see StageEvents).
+ * Output order is the same as line by line.
+ *
+ * With an AutoTuner: a worker above the tuner's active count stays parked, and batches are capped at the tuner's batch size.
+ * </pre>
  */
 class MatcherWorker implements Callable<Long> {
 	
@@ -23,14 +34,44 @@ class MatcherWorker implements Callable<Long> {
 	private QueryHolder queryHolder;
 	private boolean isVerbose;
 	private boolean isSuperVerbose;
-	private OutputStream out;
+	private MatchSink sink;
+	private QueryProfiler profiler;
+	private QueryProfiler.Recorder recorder;
+	// set when started: histograms belong to the worker's thread
+	private MatcherMetrics.LatencyRecorder latency;
+	private MatchSink timedSink;
+	private final long[] tokenizeNanos;
+	private AutoTuner tuner;
+	private int index;
+
+	// parked worker: how long to sleep before checking again
+	private final static long PARK_NANOS = 1000000L;
 	
-	MatcherWorker(DataReader dr, QueryHolder qh, OutputStream o, boolean v, boolean vv) {
+	MatcherWorker(DataReader dr, QueryHolder qh, MatchSink s, boolean v, boolean vv) {
+		this(dr, qh, s, v, vv, null);
+	}
+
+	/**
+	 * @param prof when not null - every query's cost is recorded in it
+	 */
+	MatcherWorker(DataReader dr, QueryHolder qh, MatchSink s, boolean v, boolean vv, QueryProfiler prof) {
+		this(dr, qh, s, v, vv, prof, null, 0);
+	}
+
+	/**
+	 * @param t when not null - number of active workers and batch size are taken from it
+	 * @param i number of this worker in the pool, 0-based: the tuner activates workers from 0 up
+	 */
+	MatcherWorker(DataReader dr, QueryHolder qh, MatchSink s, boolean v, boolean vv, QueryProfiler prof, AutoTuner t, int i) {
 		dataReader = dr;
 		queryHolder = qh;
 		isVerbose = v;
 		isSuperVerbose = vv;
-		out = o;
+		sink = s;
+		profiler = prof;
+		tuner = t;
+		index = i;
+		tokenizeNanos = new long[t == null? StageEvents.BATCH_SIZE : AutoTuner.MAX_BATCH];
 	}
 
 	/**
@@ -40,79 +81,188 @@ class MatcherWorker implements Callable<Long> {
 	public Long call() {
 		
 		info("Worker STARTED...");
+		long allocationMark = MatcherMetrics.threadAllocatedBytes();
+		latency = MatcherMetrics.global().latencyRecorder();
+		timedSink = new TimedMatchSink(sink, latency.getEmitHistogram());
+		if (profiler != null) {
+			recorder = profiler.recorder();
+			List<Set<String>> queries = queryHolder.getQueries();
+			for (int q = 0; q < queries.size(); q++) profiler.query(q, queries.get(q));
+		}
 		
 		String line = null;
 		long rowCount = 0;
 		long matchCount = 0;
 
-		// refillable map of word frequencies, per line per query... 
-		Map<String, Integer> wordCounts = null;	
+		// current batch: lines, and their maps of word frequencies
+		String[] lines = new String[tokenizeNanos.length];
+		Map<String, Integer>[] wordCounts = newWordCounts(tokenizeNanos.length);
+		int n;
+		boolean isMore;
 
-		// to write output to
-		BufferedWriter outWriter = new BufferedWriter(new OutputStreamWriter(out));
-		
-		// Gson instances are reusable; use this one each time JSON is needed
-		Gson gson = new Gson();
+		// busy: has a line to work on; idle: waiting for the reader. Clock is read on switches only, not per line
+		MatcherMetrics.WorkerTimer timer = MatcherMetrics.global().workerTimer(Thread.currentThread().getName());
+		boolean isBusy = false;
+		long since = System.nanoTime();
 
 		try {
-			// read until the reader says "no more data"	
-			while (dataReader.willHaveMore()) {
-//System.out.println("*** MW.call(): reader has more");					
-				while ((line = dataReader.readLine()) != null) {
-//System.out.println("*** MW.call(): line="+line);					
-					rowCount++;
+			// read until the reader says "no more data" - and nothing is left in it.
+			// Asked before draining: a reader done by then has all of its lines in already
+			do {
+				isMore = dataReader.willHaveMore();
+				if (isMore && tuner != null && !tuner.isActive(index)) {
+					// parked by the tuner: counts as idle
+					if (isBusy) {
+						long now = System.nanoTime();
+						timer.busy(now - since);
+						since = now;
+						isBusy = false;
+					}
+					LockSupport.parkNanos(PARK_NANOS);
+					continue;
+				}
+				// the tuner is asked again before every batch: a worker it parks stops at once, even with lines waiting.
+				// Once the reader is done, whatever is left is drained by everyone
+				while ((!isMore || tuner == null || tuner.isActive(index)) && (n = readBatch(lines)) > 0) {
+					if (!isBusy) {
+						long now = System.nanoTime();
+						timer.idle(now - since);
+						since = now;
+						isBusy = true;
+					}
+					line = lines[n - 1];
 					
-					// tokenize the line, count word frequencies in it, store for subsequent matching against all queries
-			        wordCounts = 
-			        		Arrays.asList(line.split(","))
-			        		.stream()
-			                .collect(
-			                		Collectors.toMap(w -> w, w -> 1, Integer::sum)
-			                		);
-			        debug(" row: "+rowCount + "; wordCounts="+wordCounts);
+					// tokenize the lines, count word frequencies in each, store for subsequent matching against all queries
+					tokenize(lines, wordCounts, n, rowCount);
 		
-			        // apply all queries in turn to this line, write out the result (if any)
-			        matchCount += writeOutOnlyNonMatchingWords(wordCounts, outWriter, gson, rowCount);
-		
-					if (isVerbose) {
-						// every now and then put something out to console
-						if (rowCount%50000 == 0) {
-							debug("rows processed: " + rowCount);
-						}
-					}
+					// apply all queries in turn to each line, write out the results (if any)
+					matchCount += evaluate(wordCounts, n, rowCount);
+					rowCount += n;
 				}
-			}
+				if (isBusy) {
+					long now = System.nanoTime();
+					timer.busy(now - since);
+					since = now;
+					isBusy = false;
+				}
+			} while (isMore);
 		}
 		catch (IOException e) {
 			throw new RuntimeException("Error running match; row: "+rowCount + "; matchCount: " + matchCount + "; data: " + line, e);
 		}
+		finally {
+			long elapsed = System.nanoTime() - since;
+			if (isBusy) timer.busy(elapsed);
+			else timer.idle(elapsed);
+			MatcherMetrics.global().allocatedSince(allocationMark);
+			MatcherMetrics.global().merge(latency);
+		}
 		
 		return rowCount;
 	}
 
+	/**
+	 * Takes as many lines as the reader has right now, up to the size of the array (or the tuner's batch size).
+	 * @return number of lines taken
+	 */
+	private int readBatch(String[] lines) {
+		int n = 0;
+		int max = (tuner == null? lines.length : tuner.getBatchSize());
+		String line;
+		while (n < max && (line = dataReader.readLine()) != null) {
+			lines[n++] = line;
+		}
+		return n;
+	}
+
+	/**
+	 * Counts word frequencies in each line of the batch.
+	 * @param lastRow row before the batch
+	 */
+	private void tokenize(String[] lines, Map<String, Integer>[] wordCounts, int n, long lastRow) {
+		TokenizeBatchEvent event = null;
+		if (StageEvents.isTokenizeEnabled()) {
+			event = new TokenizeBatchEvent();
+			event.begin();
+		}
+		long characters = 0;
+		// one clock read per record: each record's time is from the end of the previous one
+		long last = System.nanoTime();
+		for (int i = 0; i < n; i++) {
+			wordCounts[i] = Utils.countWords(lines[i]);
+			characters += lines[i].length();
+			debug(" row: "+(lastRow + i + 1) + "; wordCounts="+wordCounts[i]);
+			long now = System.nanoTime();
+			tokenizeNanos[i] = now - last;
+			last = now;
+		}
+		if (event != null) {
+			event.end();
+			if (event.shouldCommit()) {
+				event.firstRow = lastRow + 1;
+				event.records = n;
+				event.characters = characters;
+				event.commit();
+			}
+		}
+	}
+
+	/**
+	 * Matches each map of the batch against all queries.
+	 * @param lastRow row before the batch
+	 * @return number of matches
+	 * @throws IOException passes on whatever sink throws
+	 */
+	private long evaluate(Map<String, Integer>[] wordCounts, int n, long lastRow) throws IOException {
+		EvaluateBatchEvent event = null;
+		if (StageEvents.isEvaluateEnabled()) {
+			event = new EvaluateBatchEvent();
+			event.begin();
+		}
+		long matchCount = 0;
+		long last = System.nanoTime();
+		for (int i = 0; i < n; i++) {
+			matchCount += (recorder == null? 
+					writeOutOnlyNonMatchingWords(wordCounts[i], lastRow + i + 1)
+					: writeOutOnlyNonMatchingWords(wordCounts[i], lastRow + i + 1, recorder));
+			wordCounts[i] = null;
+			// record's latency: its tokenizing plus its matching
+			long now = System.nanoTime();
+			latency.record(tokenizeNanos[i] + now - last);
+			last = now;
+		}
+		if (event != null) {
+			event.end();
+			if (event.shouldCommit()) {
+				event.firstRow = lastRow + 1;
+				event.records = n;
+				event.queriesEvaluated = (long)n * queryHolder.getQueries().size();
+				event.matches = matchCount;
+				event.commit();
+			}
+		}
+		return matchCount;
+	}
+
 	/**
 	 * Matches a passed map of {word, count} against all queries. 
 	 * Queries are read from the passed reader; each query is a list of query words: {qword1, qword2, qword3,...}.
-	 * Prints out (to the passed writer) only {word,count} pairs from the map where word does not match any of the query words.
+	 * Hands every match over to the sink (query id: position of the query in the list).
 	 * 
-\	 * @param wordCounts map of {word,count}
-	 * @param outWriter BufferedWriter to write result to
-	 * @param gson reusable instance of Gson to construct JSON
+	 * @param wordCounts map of {word,count}
 	 * @param row row in the data file from which the map of {word,count} pairs was read
-	 * @throws IOException passes on whatever reader throws
+	 * @throws IOException passes on whatever sink throws
 	 */
 	private long writeOutOnlyNonMatchingWords(
 			Map<String, Integer> wordCounts,
-			BufferedWriter outWriter,
-			Gson gson,
 			long rowNum) throws IOException {
 
 		long matchCount = 0;
-		// a holder for a filtered version of the wordCounts Map - only non-query words
-		Map<String, Integer> result = null;	
 		
 		// apply all queries in turn to this map of word counts
-		for (Set<String> queryWords : queryHolder.getQueries() ) {	
+		List<Set<String>> queries = queryHolder.getQueries();
+		for (int q = 0; q < queries.size(); q++) {	
+			Set<String> queryWords = queries.get(q);
         	
 	        debug("queryWords="+queryWords);
 
@@ -120,32 +270,60 @@ class MatcherWorker implements Callable<Long> {
 			if (wordCounts.keySet().containsAll(queryWords)) {
 				debug("MATCH!");
 				
-				// ALL query criteria are found; leave only words that *do not match*, and print what's left.						
-				// This stream operation filters out entries that match query
-				result = 
-						wordCounts.entrySet().stream()
-						.filter(entry -> !queryWords.contains(entry.getKey()))
-						.collect(Collectors.toMap(entry -> entry.getKey(), entry -> entry.getValue()));						
-			
-				// this output adds line # and the query to the match result
-				JsonObject json = new JsonObject();
-				json.addProperty("line", new Long(rowNum));
-				json.addProperty("query", queryWords.toString());
-				json.add("result", gson.toJsonTree(result));
-				
-				// write out a result of all queries that ran against this data line
-				outWriter.write(json.toString());
-				outWriter.newLine();
-				
-				outWriter.flush();
+				// ALL query criteria are found: pass on the match, with line # and the query
+				timedSink.onMatch(rowNum, q, queryWords, wordCounts);
 				
 				matchCount++;
 			}
         }
+        MatcherMetrics.global().queriesEvaluated(queries.size());
+        MatcherMetrics.global().matchesEmitted(matchCount);
         
         return matchCount;
 	}
 
+	/**
+	 * Same as {@link #writeOutOnlyNonMatchingWords(Map, long) writeOutOnlyNonMatchingWords}, with every query's cost recorded.
+	 * Output is charged to queries by what the sink says it wrote: exact with a sink per worker (the JSON default).
+	 */
+	private long writeOutOnlyNonMatchingWords(
+			Map<String, Integer> wordCounts,
+			long rowNum,
+			QueryProfiler.Recorder recorder) throws IOException {
+
+		long matchCount = 0;
+		boolean isSampled = recorder.isSampled(rowNum);
+		
+		List<Set<String>> queries = queryHolder.getQueries();
+		for (int q = 0; q < queries.size(); q++) {	
+			Set<String> queryWords = queries.get(q);
+			long start = (isSampled? System.nanoTime() : 0);
+
+			if (wordCounts.keySet().containsAll(queryWords)) {
+				long chars = timedSink.getCharsWritten();
+				timedSink.onMatch(rowNum, q, queryWords, wordCounts);
+				recorder.matched(q, timedSink.getCharsWritten() - chars);
+				matchCount++;
+			}
+			if (isSampled) recorder.sampled(q, System.nanoTime() - start);
+        }
+		recorder.evaluated(queries.size(), isSampled);
+        MatcherMetrics.global().queriesEvaluated(queries.size());
+        MatcherMetrics.global().matchesEmitted(matchCount);
+        
+        return matchCount;
+	}
+
+	/**
+	 * Java has no generic array creation: the one unchecked cast, for all batches of word counts.
+	 * @param size number of records
+	 * @return array of nulls
+	 */
+	@SuppressWarnings("unchecked")
+	static Map<String, Integer>[] newWordCounts(int size) {
+		return (Map<String, Integer>[])new Map<?, ?>[size];
+	}
+
 	private void info(Object message) {
 		if (isVerbose) System.out.println("[" + Thread.currentThread().getName()+"] "+message);
 	}
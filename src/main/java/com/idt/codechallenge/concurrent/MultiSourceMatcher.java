@@ -0,0 +1,371 @@
+package com.idt.codechallenge.concurrent;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import com.idt.codechallenge.MatchSink;
+import com.idt.codechallenge.Utils;
+import com.idt.codechallenge.metrics.MatcherMetrics;
+
+/**
+ * <pre>
+ * Matches one set of queries against many data sources (files or URLs) at once - for when most of the time
+ * goes into waiting for I/O (remote sources, slow disks), not into matching.
+ *
+ * Two kinds of threads:
+ * - source threads: one per source being read - up to maxReaders at a time, the rest wait their turn.
+ *   A source thread reads its source in batches, hands each batch over to the worker pool,
+ *   and hands the results over to the source's sink, batch by batch, in line order.
+ *   It keeps up to 2 batches in the pool: reading goes on while the previous batch is being matched.
+ *   On Java 21+ these are virtual threads: a blocked read costs a few KB, not a platform thread -
+ *   thousands of sources can be open at once. Before that - platform threads, with small stacks.
+ * - workers: a fixed pool (default: number of CPUs) that parses and matches batches - all the CPU-bound work.
+ *
+ * Queries are read and indexed once (see {@link QueryRegistry QueryRegistry}), and shared by all.
+ *
+ * Output: one sink per source (sinks.apply(source)), called by the source's thread only - in line order,
+ * the same sequence of onMatch() calls as the sequential matcher makes for that source, then flush().
+ * Sinks of different sources are called concurrently: a sink shared by several sources must be thread-safe.
+ *
+ * Any source failing fails the run: the others are stopped, the error comes out of match().
+ * </pre>
+ */
+public class MultiSourceMatcher {
+
+	private final static int DEFAULT_BATCH = 256;
+	private final static int IN_FLIGHT = 2;
+	// platform source threads: stack size (bytes), default count
+	private final static long PLATFORM_STACK = 256 * 1024;
+	private final static int PLATFORM_READERS = 64;
+	private final static int VIRTUAL_READERS = 4096;
+
+	private final List<String> dataFileLocations;
+	private final String queryFileLocation;
+	private final int maxReaders;
+	private final int workerCount;
+	private final int batchSize;
+	private final int bufferSize;
+	private final boolean isVerbose;
+	private final boolean isSuperVerbose;
+	private final ThreadFactory sourceThreads;
+	private final boolean isVirtual;
+
+	/**
+	 * A batch of records of one source, and what a worker made of them.
+	 */
+	private static class Batch {
+		// row # of the first record (1-based)
+		final long firstRow;
+		final String[] lines;
+		final int size;
+		// per record - its word counts and the queries it matched (null - none)
+		final Map<String, Integer>[] wordCounts;
+		final int[][] matched;
+		Future<Long> result;
+
+		Batch(long r, String[] l, int n) {
+			firstRow = r;
+			lines = l;
+			size = n;
+			wordCounts = MatcherWorker.newWordCounts(n);
+			matched = new int[n][];
+		}
+	}
+
+	private MultiSourceMatcher(List<String> dfs, String qf, Integer readers, int workers, int bsize, int bufSize, boolean isVerb, boolean isSuperVerb) {
+		if (dfs == null || dfs.isEmpty()) throw new IllegalArgumentException("dataFileLocations cannot be empty");
+		if (dfs.contains(null)) throw new IllegalArgumentException("dataFileLocation cannot be null");
+		if (qf == null) throw new IllegalArgumentException("queryFileLocation cannot be null");
+		if (readers != null && readers <= 0) throw new IllegalArgumentException("number of readers must be positive");
+		if (workers <= 0) throw new IllegalArgumentException("number of workers must be positive");
+		if (bsize <= 0) throw new IllegalArgumentException("batch size must be positive");
+		if (bufSize <= 0) throw new IllegalArgumentException("bufferSize must be positive");
+		dataFileLocations = new ArrayList<String>(dfs);
+		queryFileLocation = qf;
+		ThreadFactory virtual = virtualThreadFactory();
+		isVirtual = (virtual != null);
+		sourceThreads = (isVirtual? virtual : new NamedThreadFactory("source-", PLATFORM_STACK));
+		maxReaders = (readers != null? readers : isVirtual? VIRTUAL_READERS : PLATFORM_READERS);
+		workerCount = workers;
+		batchSize = bsize;
+		bufferSize = bufSize;
+		isSuperVerbose = isSuperVerb;
+		isVerbose = isVerb || isSuperVerbose;	// superverbose is an overriding option
+	}
+
+	/**
+	 * Runs the match over all sources.
+	 * @param sinks sink for each source; called once per source, from the source's thread
+	 * @return number of matches found, all sources
+	 * @throws IOException when the query file or any source is unreadable, or a sink throws
+	 */
+	public long match(Function<String, MatchSink> sinks) throws IOException {
+		List<Set<String>> queries = Utils.readQueries(queryFileLocation, bufferSize);
+		// indexed once, shared read-only by all workers; ids are positions in the query file
+		QueryRegistry index = new QueryRegistry();
+		index.addAll(queries);
+		info("Read " + queries.size() + " queries; " + dataFileLocations.size() + " sources; " + this);
+
+		ThreadPoolExecutor readers = new ThreadPoolExecutor(maxReaders, maxReaders, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), sourceThreads);
+		readers.allowCoreThreadTimeOut(true);
+		ThreadPoolExecutor workers = new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("match-worker-", 0));
+		// latencies of this run: one recorder per worker thread
+		Map<Thread, MatcherMetrics.LatencyRecorder> latencies = new ConcurrentHashMap<Thread, MatcherMetrics.LatencyRecorder>();
+		long matchCount = 0;
+		try {
+			// sources as they finish: the first one to fail stops the run
+			CompletionService<Long> done = new ExecutorCompletionService<Long>(readers);
+			Map<Future<Long>, String> sources = new HashMap<Future<Long>, String>();
+			for (String source : dataFileLocations) {
+				sources.put(done.submit(() -> matchSource(source, sinks.apply(source), queries, index, workers, latencies)), source);
+			}
+			for (int i = 0; i < sources.size(); i++) {
+				Future<Long> result = take(done);
+				long sourceMatches = await(result, sources.get(result));
+				info(sources.get(result) + ": " + sourceMatches + " matches");
+				matchCount += sourceMatches;
+			}
+		}
+		finally {
+			readers.shutdownNow();
+			workers.shutdownNow();
+			latencies.values().forEach(MatcherMetrics.global()::merge);
+		}
+		return matchCount;
+	}
+
+	/**
+	 * One source, on its own thread: read in batches, match on the workers, emit in order.
+	 * @return number of matches
+	 */
+	private long matchSource(String source, MatchSink sink, List<Set<String>> queries, QueryRegistry index, ExecutorService workers, Map<Thread, MatcherMetrics.LatencyRecorder> latencies) throws IOException, InterruptedException, ExecutionException {
+		debug("reading " + source);
+		Deque<Batch> inFlight = new ArrayDeque<Batch>();
+		long rowCount = 0;
+		long matchCount = 0;
+		try (BufferedReader reader = Utils.openReader(source, bufferSize, true)) {
+			String[] lines = new String[batchSize];
+			int n = 0;
+			String line;
+			while (true) {
+				line = reader.readLine();
+				if (line != null) lines[n++] = line;
+				if (n == lines.length || (line == null && n > 0)) {
+					Batch batch = new Batch(rowCount + 1, lines, n);
+					batch.result = workers.submit(matchBatch(batch, index, latencies));
+					inFlight.addLast(batch);
+					rowCount += n;
+					lines = new String[batchSize];
+					n = 0;
+					// oldest one out, before reading further ahead
+					if (inFlight.size() >= IN_FLIGHT) matchCount += emit(inFlight.removeFirst(), queries, sink);
+				}
+				if (line == null) break;
+			}
+			while (!inFlight.isEmpty()) {
+				matchCount += emit(inFlight.removeFirst(), queries, sink);
+			}
+		}
+		finally {
+			for (Batch b : inFlight) b.result.cancel(true);
+		}
+		sink.flush();
+		debug(source + ": " + rowCount + " records");
+		return matchCount;
+	}
+
+	/**
+	 * Worker's part: parse and match a batch - against the index: only queries anchored at the record's words are checked (and counted as evaluated, by the index).
+	 */
+	private Callable<Long> matchBatch(Batch batch, QueryRegistry index, Map<Thread, MatcherMetrics.LatencyRecorder> latencies) {
+		return () -> {
+			long allocationMark = MatcherMetrics.threadAllocatedBytes();
+			MatcherMetrics.LatencyRecorder latency = latencies.computeIfAbsent(Thread.currentThread(), t -> MatcherMetrics.global().latencyRecorder());
+			long matchCount = 0;
+			for (int i = 0; i < batch.size; i++) {
+				long start = System.nanoTime();
+				Map<String, Integer> wordCounts = Utils.countWords(batch.lines[i]);
+				batch.lines[i] = null;
+				int[] matched = index.match(wordCounts);
+				if (matched.length > 0) {
+					batch.wordCounts[i] = wordCounts;
+					batch.matched[i] = matched;
+				}
+				matchCount += matched.length;
+				latency.record(System.nanoTime() - start);
+			}
+			MatcherMetrics.global().matchesEmitted(matchCount);
+			MatcherMetrics.global().allocatedSince(allocationMark);
+			return matchCount;
+		};
+	}
+
+	/**
+	 * Source thread's part: wait for a batch, hand its matches over to the sink.
+	 * @return number of matches
+	 */
+	private long emit(Batch batch, List<Set<String>> queries, MatchSink sink) throws IOException, InterruptedException, ExecutionException {
+		long matchCount = batch.result.get();
+		for (int i = 0; i < batch.size; i++) {
+			if (batch.matched[i] == null) continue;
+			for (int q : batch.matched[i]) {
+				sink.onMatch(batch.firstRow + i, q, queries.get(q), batch.wordCounts[i]);
+			}
+		}
+		return matchCount;
+	}
+
+	private static Future<Long> take(CompletionService<Long> done) throws IOException {
+		try {
+			return done.take();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for sources", e);
+		}
+	}
+
+	/**
+	 * Result of a source that is done; errors come out as they were thrown, as far as possible.
+	 */
+	private static long await(Future<Long> result, String source) throws IOException {
+		try {
+			return result.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for " + source, e);
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			// a worker's error comes wrapped once more
+			if (cause instanceof ExecutionException) cause = cause.getCause();
+			if (cause instanceof IOException) throw (IOException)cause;
+			if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+			throw new RuntimeException("Error matching " + source, cause);
+		}
+	}
+
+	/**
+	 * Virtual threads, if this JVM has them (Java 21+): Thread.ofVirtual().name("source-", 0).factory().
+	 * Looked up by reflection - the code itself is built for Java 8.
+	 * @return factory; null if not available
+	 */
+	static ThreadFactory virtualThreadFactory() {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "source-", 0L);
+			Method factory = builderClass.getMethod("factory");
+			return (ThreadFactory)factory.invoke(builder);
+		}
+		catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Platform threads: daemons, numbered.
+	 */
+	private static class NamedThreadFactory implements ThreadFactory {
+		private final String prefix;
+		private final long stackSize;
+		private final AtomicInteger count = new AtomicInteger();
+
+		/**
+		 * @param p thread name prefix
+		 * @param stack stack size in bytes; 0 - JVM's default
+		 */
+		NamedThreadFactory(String p, long stack) {
+			prefix = p;
+			stackSize = stack;
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(null, r, prefix + count.getAndIncrement(), stackSize);
+			t.setDaemon(true);
+			return t;
+		}
+	}
+
+	/**
+	 * @return true if sources are read on virtual threads
+	 */
+	public boolean isVirtual() {
+		return isVirtual;
+	}
+
+	private void info(Object message) {
+		if (isVerbose) System.out.println(message);
+	}
+
+	private void debug(Object message) {
+		if (isSuperVerbose) System.out.println("[" + Thread.currentThread().getName()+"] "+message);
+	}
+
+	/**
+	 * A string representation of this instance.
+	 */
+	public String toString() {
+		return "MultiSourceMatcher: readers=" + maxReaders + (isVirtual? " (virtual)" : " (platform)") + "; workers=" + workerCount + "; batch=" + batchSize;
+	}
+
+	/**
+	 * Builder: data sources and the query file are mandatory, the rest - optional.
+	 */
+	public static class Builder {
+		private final List<String> dataFileLocations;
+		private final String queryFileLocation;
+		private Integer maxReaders = null;
+		private int workerCount = Runtime.getRuntime().availableProcessors();
+		private int batchSize = DEFAULT_BATCH;
+		private int bufferSize = 8192;
+		private boolean isVerbose = false;
+		private boolean isSuperVerbose = false;
+
+		public static Builder builder(List<String> dfs, String qf) {
+			return new Builder(dfs, qf);
+		}
+
+		private Builder(List<String> dfs, String qf) {
+			dataFileLocations = dfs;
+			queryFileLocation = qf;
+		}
+
+		/** Max sources read at once; default: 4096 on virtual threads, 64 on platform ones. */
+		public Builder withReaders(Integer r) {maxReaders = r; return this;}
+		/** Number of worker threads (parsing and matching); default: number of CPUs. */
+		public Builder withWorkers(Integer w) {if (w != null) workerCount = w; return this;}
+		/** Records per batch; default: 256. */
+		public Builder withBatchSize(Integer b) {if (b != null) batchSize = b; return this;}
+		public Builder withBufferSize(Integer b) {if (b != null) bufferSize = b; return this;}
+		public Builder withVerbose(Boolean v) {if (v != null) isVerbose = v; return this;}
+		public Builder withSuperVerbose(Boolean v) {if (v != null) isSuperVerbose = v; return this;}
+
+		public MultiSourceMatcher build() {
+			return new MultiSourceMatcher(dataFileLocations, queryFileLocation, maxReaders, workerCount, batchSize, bufferSize, isVerbose, isSuperVerbose);
+		}
+	}
+}
@@ -0,0 +1,360 @@
+package com.idt.codechallenge.concurrent;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.idt.codechallenge.MatchSink;
+import com.idt.codechallenge.metrics.MatcherMetrics;
+
+/**
+ * <pre>
+ * Live set of queries for long-running processes: queries can be added, updated and removed
+ * while other threads keep matching records against the set.
+ *
+ * Each query gets an id on registration; ids grow, so they also give the query order
+ * (matches for a record are reported in id order - same as query file order for a loaded file).
+ *
+ * Index: every query is filed under exactly one of its words (the anchor).
+ * A record is matched by looking up the queries anchored at each of its words, and checking only those.
+ * Anchor is picked at registration: the query word whose bucket is currently the smallest - keeps buckets short.
+ * A query with no words (e.g. a line ",") has no anchor: it matches every record, same as for RecordMatcher -
+ * such queries are kept in a list of their own, and are among the matches of every record.
+ *
+ * Concurrency:
+ * - buckets are immutable views: an array, and how much of it is in use; a change publishes a new view;
+ * - adding a query writes the next unused slot of the array, and publishes a view one longer - readers of the old view
+ *   never look past its length; a full array is copied into one twice the size. Adds cost amortized O(1), even for one huge bucket;
+ * - updating or removing a query copies the bucket (copy-on-write), and publishes the copy;
+ * - buckets live in a ConcurrentHashMap: matching threads never lock, and never see a half-updated bucket;
+ * - writers are serialized among themselves (synchronized), readers are not affected by that.
+ *
+ * Consistency: each change is atomic on its own. A record matched while changes are being made
+ * may see some of them and not others (each query is either fully there, or not there).
+ * </pre>
+ */
+public class QueryRegistry implements QueryHolder {
+
+	private final static Query[] EMPTY = new Query[0];
+	private final static Bucket EMPTY_BUCKET = new Bucket(EMPTY, 0);
+
+	/**
+	 * Registered query
+	 */
+	private final static class Query {
+		final int id;
+		final Set<String> words;
+		final String anchor;
+
+		Query(int i, Set<String> w, String a) {
+			id = i;
+			words = w;
+			anchor = a;
+		}
+	}
+
+	private final ConcurrentHashMap<Integer, Query> byId = new ConcurrentHashMap<Integer, Query>();
+	/**
+	 * Queries filed under one anchor: first size of the array. Never changed once published - except slots past size
+	 */
+	private final static class Bucket {
+		final Query[] queries;
+		final int size;
+
+		Bucket(Query[] q, int s) {
+			queries = q;
+			size = s;
+		}
+	}
+
+	private final ConcurrentHashMap<String, Bucket> byAnchor = new ConcurrentHashMap<String, Bucket>();
+	// queries with no words - no anchor, match every record; ascending by id, copy-on-write
+	private volatile Query[] matchAll = EMPTY;
+	private final AtomicInteger nextId = new AtomicInteger();
+
+	/**
+	 * Ordered list of queries, built on demand; dropped on every change
+	 */
+	private volatile List<Set<String>> queryList = null;
+
+	/**
+	 * Registers a query.
+	 * @param queryWords query words; the set must not be changed afterwards
+	 * @return id of the new query
+	 */
+	public synchronized int add(Set<String> queryWords) {
+		int id = nextId.getAndIncrement();
+		append(new Query(id, Collections.unmodifiableSet(queryWords), pickAnchor(queryWords)));
+		return id;
+	}
+
+	/**
+	 * Registers all queries, in order.
+	 * @param queries list of queries
+	 * @return number of queries added
+	 */
+	public synchronized int addAll(Collection<Set<String>> queries) {
+		for (Set<String> q : queries) add(q);
+		return queries.size();
+	}
+
+	/**
+	 * Replaces words of a registered query; the query keeps its id (and so its place in the output order).
+	 * @param id query id
+	 * @param queryWords new query words
+	 * @return false if there is no such query
+	 */
+	public synchronized boolean update(int id, Set<String> queryWords) {
+		Query old = byId.get(id);
+		if (old == null) return false;
+		Query q = new Query(id, Collections.unmodifiableSet(queryWords), pickAnchor(queryWords));
+		// new version goes in first: a reader may briefly see both, never neither
+		put(q);
+		if (!Objects.equals(old.anchor, q.anchor)) unfile(old);
+		return true;
+	}
+
+	/**
+	 * Drops a query.
+	 * @param id query id
+	 * @return false if there is no such query
+	 */
+	public synchronized boolean remove(int id) {
+		Query old = byId.remove(id);
+		if (old == null) return false;
+		unfile(old);
+		queryList = null;
+		return true;
+	}
+
+	/**
+	 * @param id query id
+	 * @return query words, or null if there is no such query
+	 */
+	public Set<String> get(int id) {
+		Query q = byId.get(id);
+		return (q != null? q.words : null);
+	}
+
+	/**
+	 * @return number of registered queries
+	 */
+	public int size() {
+		return byId.size();
+	}
+
+	/**
+	 * QueryHolder impl: all queries, in id order.
+	 * Built on first call after a change - meant for listing, not for per-record matching (use {@link #match(Map) match} for that).
+	 */
+	@Override
+	public List<Set<String>> getQueries() {
+		List<Set<String>> list = queryList;
+		if (list == null) {
+			List<Query> all = new ArrayList<Query>(byId.values());
+			all.sort((a, b) -> Integer.compare(a.id, b.id));
+			List<Set<String>> tmp = new ArrayList<Set<String>>(all.size());
+			for (Query q : all) tmp.add(q.words);
+			list = Collections.unmodifiableList(tmp);
+			queryList = list;
+		}
+		return list;
+	}
+
+	/**
+	 * Finds queries matching a record. Never locks.
+	 * @param wordCounts map of {word,count} of the record
+	 * @return ids of matching queries, ascending
+	 */
+	public int[] match(Map<String, Integer> wordCounts) {
+		Query[] found = find(wordCounts);
+		int[] ids = new int[found.length];
+		for (int i = 0; i < found.length; i++) ids[i] = found[i].id;
+		return ids;
+	}
+
+	/**
+	 * Matches a record against current queries, hands every match over to the sink (query id: registry id), in id order.
+	 * @param rowNum row in the data file (1-based)
+	 * @param wordCounts map of {word,count} of the row
+	 * @param sink receiver of results
+	 * @return number of matches
+	 * @throws IOException passes on whatever sink throws
+	 */
+	public long match(long rowNum, Map<String, Integer> wordCounts, MatchSink sink) throws IOException {
+		Query[] found = find(wordCounts);
+		for (Query q : found) {
+			sink.onMatch(rowNum, q.id, q.words, wordCounts);
+		}
+		MatcherMetrics.global().matchesEmitted(found.length);
+		return found.length;
+	}
+
+	/**
+	 * @return matching queries (the versions that matched), ascending by id
+	 */
+	private Query[] find(Map<String, Integer> wordCounts) {
+		// matches of every record: they come first, the sort below puts them in their places
+		Query[] all = matchAll;
+		Query[] found = (all.length == 0? EMPTY : Arrays.copyOf(all, Math.max(4, all.length * 2)));
+		int n = all.length;
+		int evaluated = all.length;
+		for (String w : wordCounts.keySet()) {
+			Bucket bucket = byAnchor.get(w);
+			if (bucket == null) continue;
+			evaluated += bucket.size;
+			for (int i = 0; i < bucket.size; i++) {
+				Query q = bucket.queries[i];
+				if (wordCounts.keySet().containsAll(q.words)) {
+					if (n == found.length) found = Arrays.copyOf(found, Math.max(4, n * 2));
+					found[n++] = q;
+				}
+			}
+		}
+		// only candidates from the index count: the rest were never looked at
+		MatcherMetrics.global().queriesEvaluated(evaluated);
+		if (n == 0) return EMPTY;
+		Arrays.sort(found, 0, n, (a, b) -> Integer.compare(a.id, b.id));
+		// an update that moves a query to another anchor may be seen half-way: same id in two buckets
+		int unique = 1;
+		for (int i = 1; i < n; i++) {
+			if (found[i].id != found[unique - 1].id) found[unique++] = found[i];
+		}
+		return (unique == found.length? found : Arrays.copyOf(found, unique));
+	}
+
+	/**
+	 * Files a new query (an id not in the index yet) at the end of its anchor's bucket, registers id.
+	 */
+	private void append(Query q) {
+		if (q.anchor == null) {
+			fileMatchAll(q);
+			return;
+		}
+		Bucket bucket = byAnchor.getOrDefault(q.anchor, EMPTY_BUCKET);
+		Query[] queries = bucket.queries;
+		// no room: twice the size. Otherwise the slot past the end is free - no published view reaches it
+		if (bucket.size == queries.length) queries = Arrays.copyOf(queries, Math.max(4, queries.length * 2));
+		queries[bucket.size] = q;
+		byAnchor.put(q.anchor, new Bucket(queries, bucket.size + 1));
+		byId.put(q.id, q);
+		queryList = null;
+	}
+
+	/**
+	 * Files query under its anchor (replacing older version with the same id, if there), registers id.
+	 */
+	private void put(Query q) {
+		if (q.anchor == null) {
+			fileMatchAll(q);
+			return;
+		}
+		Bucket bucket = byAnchor.getOrDefault(q.anchor, EMPTY_BUCKET);
+		int pos = indexOf(bucket, q.id);
+		if (pos < 0) {
+			append(q);
+			return;
+		}
+		Query[] copy = Arrays.copyOf(bucket.queries, bucket.size);
+		copy[pos] = q;
+		byAnchor.put(q.anchor, new Bucket(copy, copy.length));
+		byId.put(q.id, q);
+		queryList = null;
+	}
+
+	/**
+	 * Takes query out of its anchor's bucket.
+	 */
+	private void unfile(Query q) {
+		if (q.anchor == null) {
+			Query[] all = matchAll;
+			int pos = indexOf(all, all.length, q.id);
+			if (pos < 0) return;
+			Query[] copy = new Query[all.length - 1];
+			System.arraycopy(all, 0, copy, 0, pos);
+			System.arraycopy(all, pos + 1, copy, pos, all.length - pos - 1);
+			matchAll = copy;
+			return;
+		}
+		Bucket bucket = byAnchor.get(q.anchor);
+		int pos = indexOf(bucket, q.id);
+		if (pos < 0) return;
+		if (bucket.size == 1) {
+			byAnchor.remove(q.anchor);
+			return;
+		}
+		Query[] copy = new Query[bucket.size - 1];
+		System.arraycopy(bucket.queries, 0, copy, 0, pos);
+		System.arraycopy(bucket.queries, pos + 1, copy, pos, bucket.size - pos - 1);
+		byAnchor.put(q.anchor, new Bucket(copy, copy.length));
+	}
+
+	/**
+	 * Files a query with no words among those that match every record (replacing older version with the same id, if there), registers id.
+	 */
+	private void fileMatchAll(Query q) {
+		Query[] all = matchAll;
+		int pos = indexOf(all, all.length, q.id);
+		Query[] copy;
+		if (pos >= 0) {
+			copy = all.clone();
+			copy[pos] = q;
+		}
+		else {
+			// ids of new queries grow; a query updated into an empty one may go anywhere
+			int at = all.length;
+			while (at > 0 && all[at - 1].id > q.id) at--;
+			copy = new Query[all.length + 1];
+			System.arraycopy(all, 0, copy, 0, at);
+			copy[at] = q;
+			System.arraycopy(all, at, copy, at + 1, all.length - at);
+		}
+		matchAll = copy;
+		byId.put(q.id, q);
+		queryList = null;
+	}
+
+	private static int indexOf(Bucket bucket, int id) {
+		if (bucket == null) return -1;
+		return indexOf(bucket.queries, bucket.size, id);
+	}
+
+	private static int indexOf(Query[] queries, int size, int id) {
+		for (int i = 0; i < size; i++) {
+			if (queries[i].id == id) return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return anchor for the query; null for a query with no words
+	 */
+	private String pickAnchor(Set<String> queryWords) {
+		String anchor = null;
+		int min = Integer.MAX_VALUE;
+		for (String w : queryWords) {
+			Bucket bucket = byAnchor.get(w);
+			int len = (bucket != null? bucket.size : 0);
+			if (len < min) {
+				min = len;
+				anchor = w;
+			}
+		}
+		return anchor;
+	}
+
+	/**
+	 * A string representation of this instance.
+	 */
+	public String toString() {
+		return "QueryRegistry: queries=" + byId.size() + "; anchors=" + byAnchor.size() + "; matchAll=" + matchAll.length;
+	}
+}
@@ -0,0 +1,351 @@
+package com.idt.codechallenge.concurrent;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.idt.codechallenge.MatchSink;
+import com.idt.codechallenge.Matcher;
+import com.idt.codechallenge.TimedMatchSink;
+import com.idt.codechallenge.Utils;
+import com.idt.codechallenge.metrics.EvaluateBatchEvent;
+import com.idt.codechallenge.metrics.MatcherMetrics;
+import com.idt.codechallenge.metrics.StageEvents;
+
+/**
+ * <pre>
+ * Data-to-query matcher for very large query files: workers split the queries between them, not the records.
+ *
+ * - reader (one thread): reads and tokenizes records, a batch (StageEvents.BATCH_SIZE records) at a time,
+ *   and hands every batch, as is, to every worker: records are tokenized once and never copied;
+ * - workers: each owns a contiguous range of queries (a shard) and matches every batch against it;
+ * - merger (the calling thread): takes a batch's results from all workers and hands the matches over to the sink
+ *   in the same order RecordMatcher does - by record, then by query. Shards are contiguous and in query order:
+ *   for one record, it is worker 0's matches, then worker 1's, and so on.
+ *
+ * With N workers each record costs each worker 1/N of the queries: this scales with the number of queries.
+ * ConcurrentRecordMatcher splits the records instead - there every worker walks all the queries for its records.
+ * Shards have the same number of queries each (not the same cost: query lengths differ).
+ *
+ * Stages are connected by bounded queues (QUEUE_BATCHES batches each): a slow stage holds the others back,
+ * memory in flight stays bounded. A batch is read-only once handed over.
+ * The sink is called from the calling thread only: need not be thread-safe.
+ * </pre>
+ */
+public class QueryShardedRecordMatcher implements Matcher {
+
+	private final static int QUEUE_BATCHES = 4;
+	// merger: how often to check that the workers it waits for are still alive
+	private final static long POLL_MILLIS = 100;
+
+	private final String dataFileLocation;
+	private final String queryFileLocation;
+	private int shardCount;
+	private int bufferSize;
+	private boolean isVerbose = false;
+	private boolean isSuperVerbose = false;
+
+	/**
+	 * Records of one batch, tokenized.
+	 */
+	private static class Batch {
+		// row # of the first record (1-based)
+		final long firstRow;
+		final Map<String, Integer>[] wordCounts;
+		final int size;
+
+		Batch(long r, Map<String, Integer>[] wc, int n) {
+			firstRow = r;
+			wordCounts = wc;
+			size = n;
+		}
+	}
+
+	// end of data: goes to every worker after the last batch
+	private final static Batch NO_MORE_DATA = new Batch(0, null, 0);
+
+	/**
+	 * One worker's matches in one batch: (record in batch, query) pairs, by record, then by query.
+	 */
+	private static class ShardResult {
+		final Batch batch;
+		int[] records = new int[16];
+		int[] queries = new int[16];
+		int size;
+
+		ShardResult(Batch b) {
+			batch = b;
+		}
+
+		void add(int record, int query) {
+			if (size == records.length) {
+				records = Arrays.copyOf(records, size * 2);
+				queries = Arrays.copyOf(queries, size * 2);
+			}
+			records[size] = record;
+			queries[size] = query;
+			size++;
+		}
+	}
+
+	// end of results: last thing a worker puts out
+	private final static ShardResult NO_MORE_RESULTS = new ShardResult(null);
+
+	/**
+	 * @param df data file location
+	 * @param qf query file location
+	 * @param shards number of workers (query shards); default: number of CPUs. Never more than there are queries
+	 * @param bsize buffer size for the file readers; default: 8192
+	 * @param isVerb verbose flag
+	 * @param isSuperVerb very verbose flag
+	 */
+	public QueryShardedRecordMatcher(String df, String qf, Integer shards, Integer bsize, Boolean isVerb, Boolean isSuperVerb) {
+		if (df == null) throw new IllegalArgumentException("dataFileLocation cannot be null");
+		if (qf == null) throw new IllegalArgumentException("queryFileLocation cannot be null");
+		if (shards != null && shards <= 0) throw new IllegalArgumentException("number of shards must be positive");
+		if (bsize != null && bsize < 0) throw new IllegalArgumentException("bufferSize must be positive");
+		dataFileLocation = df;
+		queryFileLocation = qf;
+		shardCount = (shards != null? shards : Runtime.getRuntime().availableProcessors());
+		bufferSize = (bsize != null? bsize : 8192);
+		this.isSuperVerbose = (isSuperVerb != null? isSuperVerb : isSuperVerbose);
+		this.isVerbose = (isVerb != null?  isVerb || isSuperVerbose : isVerbose || isSuperVerbose);	// superverbose is an overriding option
+	}
+
+	/**
+	 * Runs the match:
+	 * - starts the reader in a thread;
+	 * - starts one worker per shard in a thread pool;
+	 * - merges the workers' results in this thread.
+	 *
+	 * @param sink receiver of results; called from this thread only
+	 * @throws IOException if the sink throws
+	 * @return number of matches found
+	 */
+	@Override
+	public long match(MatchSink sink) throws IOException {
+
+		long allocationMark = MatcherMetrics.threadAllocatedBytes();
+		List<Set<String>> queries = Utils.readQueries(queryFileLocation, bufferSize);
+		int n = Math.max(1, Math.min(shardCount, queries.size()));
+		if (isVerbose) System.out.println("Read " + queries.size() + " queries; " + n + " shards");
+
+		List<ShardWorker> workers = new ArrayList<ShardWorker>();
+		for (int s = 0; s < n; s++) {
+			workers.add(new ShardWorker(queries, (int)((long)s * queries.size() / n), (int)((long)(s + 1) * queries.size() / n)));
+		}
+
+		ExecutorService readerExecutor = Executors.newSingleThreadExecutor();
+		ExecutorService workerExecutor = Executors.newFixedThreadPool(n);
+		// emit time per match: the merger's
+		MatcherMetrics.LatencyRecorder latency = MatcherMetrics.global().latencyRecorder();
+		long matchCount = 0;
+		try {
+			Future<Long> readerResult = readerExecutor.submit(() -> read(workers));
+			List<Future<Long>> workerResults = new ArrayList<Future<Long>>();
+			for (ShardWorker w : workers) workerResults.add(workerExecutor.submit(w));
+
+			matchCount = merge(workers, workerResults, queries, new TimedMatchSink(sink, latency.getEmitHistogram()));
+			sink.flush();
+
+			long rowCount = readerResult.get();
+			if (isVerbose) System.out.println("Records processed: " + rowCount + "; matches: " + matchCount);
+			for (Future<Long> f : workerResults) f.get();
+		}
+		catch (IOException e) {
+			throw e;
+		}
+		catch (Exception e) {
+			throw new RuntimeException("Error running match.", e);
+		}
+		finally {
+			// on failure: a stage may still be blocked on a full/empty queue
+			readerExecutor.shutdownNow();
+			workerExecutor.shutdownNow();
+			MatcherMetrics.global().allocatedSince(allocationMark);
+			MatcherMetrics.global().merge(latency);
+		}
+		return matchCount;
+	}
+
+	/**
+	 * Reader stage: reads and tokenizes records, hands each batch over to all workers.
+	 * @return number of records read
+	 */
+	private long read(List<ShardWorker> workers) throws IOException, InterruptedException {
+		info("Reader STARTED...");
+		long allocationMark = MatcherMetrics.threadAllocatedBytes();
+		long rowCount = 0;
+		try (BufferedReader reader = Utils.openReader(dataFileLocation, bufferSize, true)) {
+			String line;
+			Map<String, Integer>[] wordCounts = MatcherWorker.newWordCounts(StageEvents.BATCH_SIZE);
+			int size = 0;
+			while ((line = reader.readLine()) != null) {
+				wordCounts[size++] = Utils.countWords(line);
+				rowCount++;
+				if (size == wordCounts.length) {
+					broadcast(workers, new Batch(rowCount - size + 1, wordCounts, size));
+					// the batch is the workers' now: a new array for the next one
+					wordCounts = MatcherWorker.newWordCounts(StageEvents.BATCH_SIZE);
+					size = 0;
+				}
+			}
+			if (size > 0) broadcast(workers, new Batch(rowCount - size + 1, wordCounts, size));
+		}
+		finally {
+			// also after a failure: workers finish what they have, the error comes from this stage's result
+			broadcast(workers, NO_MORE_DATA);
+			info("Reader finished: " + rowCount + " records");
+			MatcherMetrics.global().allocatedSince(allocationMark);
+		}
+		return rowCount;
+	}
+
+	private static void broadcast(List<ShardWorker> workers, Batch batch) throws InterruptedException {
+		for (ShardWorker w : workers) w.in.put(batch);
+	}
+
+	/**
+	 * Merger stage: per batch, one result from each worker (all of them get the batches in the same order);
+	 * matches go to the sink by record, then by shard - i.e. by query.
+	 * @return number of matches
+	 */
+	private long merge(List<ShardWorker> workers, List<Future<Long>> workerResults, List<Set<String>> queries, MatchSink sink) throws Exception {
+		int n = workers.size();
+		ShardResult[] results = new ShardResult[n];
+		int[] next = new int[n];
+		long matchCount = 0;
+		while (true) {
+			for (int s = 0; s < n; s++) {
+				results[s] = take(workers.get(s).out, workerResults.get(s));
+				next[s] = 0;
+			}
+			// workers stop together: after the same last batch
+			if (results[0] == NO_MORE_RESULTS) break;
+
+			Batch batch = results[0].batch;
+			for (int r = 0; r < batch.size; r++) {
+				for (int s = 0; s < n; s++) {
+					ShardResult result = results[s];
+					while (next[s] < result.size && result.records[next[s]] == r) {
+						int q = result.queries[next[s]++];
+						sink.onMatch(batch.firstRow + r, q, queries.get(q), batch.wordCounts[r]);
+						matchCount++;
+					}
+				}
+			}
+		}
+		return matchCount;
+	}
+
+	/**
+	 * Next result of a worker. Waits as long as the worker is alive; a worker that died will not put anything: its error is thrown.
+	 */
+	private static ShardResult take(BlockingQueue<ShardResult> queue, Future<Long> worker) throws Exception {
+		ShardResult result;
+		while ((result = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+			if (worker.isDone()) {
+				worker.get();
+				// finished normally: its last words must be in the queue
+				result = queue.poll();
+				if (result == null) throw new IllegalStateException("Worker finished without handing over all of its results");
+				return result;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Worker stage: matches every batch against a range of queries.
+	 */
+	private class ShardWorker implements Callable<Long> {
+		private final List<Set<String>> queries;
+		private final int from;
+		private final int to;
+		final BlockingQueue<Batch> in = new ArrayBlockingQueue<Batch>(QUEUE_BATCHES);
+		final BlockingQueue<ShardResult> out = new ArrayBlockingQueue<ShardResult>(QUEUE_BATCHES);
+
+		/**
+		 * @param qs all queries
+		 * @param f first query of the shard
+		 * @param t query after the last one of the shard
+		 */
+		ShardWorker(List<Set<String>> qs, int f, int t) {
+			queries = qs;
+			from = f;
+			to = t;
+		}
+
+		@Override
+		public Long call() throws Exception {
+			info("Worker STARTED: queries " + from + " to " + (to - 1));
+			long allocationMark = MatcherMetrics.threadAllocatedBytes();
+			long matchCount = 0;
+			try {
+				Batch batch;
+				while ((batch = in.take()) != NO_MORE_DATA) {
+					ShardResult result = evaluate(batch);
+					matchCount += result.size;
+					out.put(result);
+				}
+				out.put(NO_MORE_RESULTS);
+			}
+			finally {
+				MatcherMetrics.global().allocatedSince(allocationMark);
+			}
+			return matchCount;
+		}
+
+		private ShardResult evaluate(Batch batch) {
+			EvaluateBatchEvent event = null;
+			if (StageEvents.isEvaluateEnabled()) {
+				event = new EvaluateBatchEvent();
+				event.begin();
+			}
+			ShardResult result = new ShardResult(batch);
+			for (int r = 0; r < batch.size; r++) {
+				Set<String> words = batch.wordCounts[r].keySet();
+				for (int q = from; q < to; q++) {
+					// check if all query words are found in the data line
+					if (words.containsAll(queries.get(q))) {
+						debug("MATCH! row: " + (batch.firstRow + r) + "; query: " + q);
+						result.add(r, q);
+					}
+				}
+			}
+			long evaluated = (long)batch.size * (to - from);
+			MatcherMetrics.global().queriesEvaluated(evaluated);
+			MatcherMetrics.global().matchesEmitted(result.size);
+			if (event != null) {
+				event.end();
+				if (event.shouldCommit()) {
+					event.firstRow = batch.firstRow;
+					event.records = batch.size;
+					event.queriesEvaluated = evaluated;
+					event.matches = result.size;
+					event.commit();
+				}
+			}
+			return result;
+		}
+	}
+
+	private void info(Object message) {
+		if (isVerbose) System.out.println("[" + Thread.currentThread().getName()+"] "+message);
+	}
+
+	private void debug(Object message) {
+		if (isSuperVerbose) System.out.println("[" + Thread.currentThread().getName()+"] "+message);
+	}
+}
@@ -0,0 +1,56 @@
+package com.idt.codechallenge.metrics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream that reports every byte read to {@link MatcherMetrics#bytesRead(long) bytesRead};
+ * bytes of data sources - also to {@link MatcherMetrics#dataBytesRead(long) dataBytesRead}.
+ */
+public class CountingInputStream extends FilterInputStream {
+
+	private final MatcherMetrics metrics;
+	private final boolean isData;
+
+	public CountingInputStream(InputStream in, MatcherMetrics m) {
+		this(in, m, false);
+	}
+
+	/**
+	 * @param in stream to count
+	 * @param m metrics to report to
+	 * @param isDataSource when true - bytes are also counted as data bytes
+	 */
+	public CountingInputStream(InputStream in, MatcherMetrics m, boolean isDataSource) {
+		super(in);
+		metrics = m;
+		isData = isDataSource;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = super.read();
+		if (b >= 0) count(1);
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int n = super.read(b, off, len);
+		if (n > 0) count(n);
+		return n;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = super.skip(n);
+		if (skipped > 0) count(skipped);
+		return skipped;
+	}
+
+	private void count(long n) {
+		metrics.bytesRead(n);
+		if (isData) metrics.dataBytesRead(n);
+	}
+}
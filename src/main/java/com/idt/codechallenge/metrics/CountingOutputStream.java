@@ -0,0 +1,31 @@
+package com.idt.codechallenge.metrics;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream that reports every byte written to {@link MatcherMetrics#outputBytes(long) outputBytes}.
+ */
+public class CountingOutputStream extends FilterOutputStream {
+
+	private final MatcherMetrics metrics;
+
+	public CountingOutputStream(OutputStream out, MatcherMetrics m) {
+		super(out);
+		metrics = m;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		out.write(b);
+		metrics.outputBytes(1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		// FilterOutputStream's own version writes byte by byte
+		out.write(b, off, len);
+		metrics.outputBytes(len);
+	}
+}
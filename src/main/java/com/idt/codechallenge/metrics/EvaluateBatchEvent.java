@@ -0,0 +1,30 @@
+package com.idt.codechallenge.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event: a batch of tokenized records matched against the queries by a worker. See {@link StageEvents StageEvents}.
+ */
+@Name("com.idt.codechallenge.EvaluateBatch")
+@Label("Evaluate Batch")
+@Category({"Large File Reader", "Worker"})
+@Description("Batch of tokenized records matched against the queries by a worker; includes handing matches over to the sink")
+public class EvaluateBatchEvent extends jdk.jfr.Event {
+
+	@Label("First Row")
+	@Description("Worker's own count of rows before the batch, plus one")
+	public long firstRow;
+
+	@Label("Records")
+	public int records;
+
+	@Label("Queries Evaluated")
+	@Description("Candidate (record, query) pairs checked")
+	public long queriesEvaluated;
+
+	@Label("Matches")
+	public long matches;
+}
@@ -0,0 +1,142 @@
+package com.idt.codechallenge.metrics;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * <pre>
+ * Log-linear histogram of durations in ns, HdrHistogram-style:
+ * - values under 2^7 ns: one bucket per ns (exact);
+ * - above: each power of 2 split into 2^7 equal buckets - i.e. any value is off by less than 1/128 (0.8%),
+ *   however large it is.
+ * Tracks up to 2^40 ns (~18 minutes); longer values land in the top bucket (max is still exact).
+ *
+ * Buckets are one fixed long[] (4352 longs, ~34 KB), allocated up front: recording is an index computation
+ * and an increment, never an allocation.
+ *
+ * Thread safety: not safe. Each thread records into its own; {@link #add(LatencyHistogram) add} them up once done.
+ * </pre>
+ */
+public class LatencyHistogram {
+
+	// precision: buckets per power of 2
+	private final static int SUB_BITS = 7;
+	private final static int SUB_COUNT = 1 << SUB_BITS;
+	// highest trackable value: 2^MAX_BITS - 1
+	private final static int MAX_BITS = 40;
+	private final static long MAX_TRACKABLE = (1L << MAX_BITS) - 1;
+	private final static int BUCKET_COUNT = SUB_COUNT + (MAX_BITS - SUB_BITS) * SUB_COUNT;
+
+	private final long[] counts = new long[BUCKET_COUNT];
+	private long count;
+	private long max;
+	private long total;
+
+	/**
+	 * Adds one value.
+	 * @param nanos duration; negative counts as 0
+	 */
+	public void record(long nanos) {
+		long v = (nanos < 0? 0 : nanos);
+		counts[index(Math.min(v, MAX_TRACKABLE))]++;
+		count++;
+		total += v;
+		if (v > max) max = v;
+	}
+
+	/**
+	 * Adds all values of another histogram to this one.
+	 * @param other histogram to add; not changed
+	 * @return this
+	 */
+	public LatencyHistogram add(LatencyHistogram other) {
+		for (int i = 0; i < BUCKET_COUNT; i++) counts[i] += other.counts[i];
+		count += other.count;
+		total += other.total;
+		max = Math.max(max, other.max);
+		return this;
+	}
+
+	/**
+	 * Removes all values.
+	 */
+	public void reset() {
+		Arrays.fill(counts, 0);
+		count = 0;
+		total = 0;
+		max = 0;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getMax() {
+		return max;
+	}
+
+	public double getMean() {
+		return (count > 0? (double)total / count : 0);
+	}
+
+	/**
+	 * @param percentile 0 to 100
+	 * @return value at or below which the given percent of values are: the top of their bucket (never above max); 0 when empty
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if (count == 0) return 0;
+		long rank = Math.max(1, (long)Math.ceil(Math.min(100d, Math.max(0d, percentile)) / 100d * count));
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += counts[i];
+			// top bucket also holds whatever was beyond trackable
+			if (seen >= rank) return (i == BUCKET_COUNT - 1? max : Math.min(highestValue(i), max));
+		}
+		return max;
+	}
+
+	/**
+	 * @return count, p50, p99, p99.9 and max - in ns
+	 */
+	public Map<String, Long> getSummary() {
+		Map<String, Long> summary = new LinkedHashMap<String, Long>();
+		summary.put("count", count);
+		summary.put("p50", getValueAtPercentile(50));
+		summary.put("p99", getValueAtPercentile(99));
+		summary.put("p999", getValueAtPercentile(99.9));
+		summary.put("max", max);
+		return summary;
+	}
+
+	/**
+	 * A string representation of this instance: count and percentiles, in microseconds.
+	 */
+	public String toString() {
+		return String.format(Locale.ROOT, "count=%d; p50=%.1f us; p99=%.1f us; p99.9=%.1f us; max=%.1f us",
+				count, getValueAtPercentile(50) / 1e3d, getValueAtPercentile(99) / 1e3d, getValueAtPercentile(99.9) / 1e3d, max / 1e3d);
+	}
+
+	/**
+	 * Bucket of a value in [0, MAX_TRACKABLE].
+	 */
+	static int index(long v) {
+		if (v < SUB_COUNT) return (int)v;
+		int exponent = 63 - Long.numberOfLeadingZeros(v);		// v is in [2^exponent, 2^(exponent+1))
+		int shift = exponent - SUB_BITS;
+		// top SUB_BITS bits below the leading one pick the bucket within the power of 2
+		int sub = (int)(v >>> shift) - SUB_COUNT;
+		return SUB_COUNT + shift * SUB_COUNT + sub;
+	}
+
+	/**
+	 * Highest value that falls into the bucket.
+	 */
+	static long highestValue(int index) {
+		if (index < SUB_COUNT) return index;
+		int shift = (index - SUB_COUNT) / SUB_COUNT;
+		int sub = (index - SUB_COUNT) % SUB_COUNT;
+		return ((long)(SUB_COUNT + sub + 1) << shift) - 1;
+	}
+}
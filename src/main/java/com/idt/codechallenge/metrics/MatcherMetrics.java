@@ -0,0 +1,390 @@
+package com.idt.codechallenge.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * <pre>
+ * Counters and timers of a matching run, per stage:
+ * - read: bytes read (all sources; data sources alone - too), records parsed;
+ * - match: queries evaluated, matches emitted;
+ * - hand-over: queue depth (concurrent mode);
+ * - output: bytes written;
+ * - workers: busy (matching) vs idle (waiting for data) time, per worker;
+ * - memory: bytes allocated by the reading and matching threads (where the JVM can tell - HotSpot can);
+ * - latency: per-record processing time and per-match emit time - histograms (see {@link LatencyRecorder LatencyRecorder}):
+ *   one pair per thread per run, added to the process-wide totals once the run is done - see {@link #latencyRecorder() latencyRecorder}.
+ *
+ * All counters are LongAdders: each thread updates its own cell, so instrumenting the hot loops of many workers
+ * does not make them contend on one cache line. Reading a value sums the cells - cheap enough for JMX polling,
+ * not meant for the hot path.
+ * Hot loops should add per record (or per batch), not per query.
+ *
+ * Published over JMX as com.idt.codechallenge:type=MatcherMetrics (see {@link #register() register}):
+ * watch it in JConsole / VisualVM, or scrape it with any JMX exporter.
+ *
+ * One process-wide instance ({@link #global() global}) is what matchers report to.
+ * </pre>
+ */
+public class MatcherMetrics implements MatcherMetricsMXBean {
+
+	public final static String OBJECT_NAME = "com.idt.codechallenge:type=MatcherMetrics";
+
+	private final static MatcherMetrics GLOBAL = new MatcherMetrics();
+
+	// HotSpot's extension of ThreadMXBean: per-thread allocation counters. Null when not there or not enabled
+	private final static com.sun.management.ThreadMXBean ALLOCATION_BEAN = allocationBean();
+
+	private final LongAdder bytesRead = new LongAdder();
+	private final LongAdder dataBytesRead = new LongAdder();
+	private final LongAdder recordsParsed = new LongAdder();
+	private final LongAdder queriesEvaluated = new LongAdder();
+	private final LongAdder matchesEmitted = new LongAdder();
+	private final LongAdder queueDepth = new LongAdder();
+	private final LongAdder outputBytes = new LongAdder();
+	private final LongAdder allocatedBytes = new LongAdder();
+	private final ConcurrentHashMap<String, WorkerTimer> workers = new ConcurrentHashMap<String, WorkerTimer>();
+	// recorders of runs still going; and what the finished ones added up to (guarded by itself)
+	private final Set<LatencyRecorder> liveLatencies = ConcurrentHashMap.newKeySet();
+	private final LatencyRecorder latencies = new LatencyRecorder();
+
+	private volatile long startNanos = System.nanoTime();
+
+	/**
+	 * Busy/idle time of one worker. Meant to be updated by that worker only, on state changes.
+	 */
+	public static class WorkerTimer {
+		private final LongAdder busyNanos = new LongAdder();
+		private final LongAdder idleNanos = new LongAdder();
+
+		public void busy(long nanos) {
+			busyNanos.add(nanos);
+		}
+
+		public void idle(long nanos) {
+			idleNanos.add(nanos);
+		}
+
+		private void reset() {
+			busyNanos.reset();
+			idleNanos.reset();
+		}
+	}
+
+	/**
+	 * <pre>
+	 * Latency histograms of one thread, for one run:
+	 * - record: tokenizing a record and matching it against the queries, emitting its matches included;
+	 * - emit: handing one match over to the sink (formatting and writing it, for JSON output).
+	 * Meant to be updated by that thread only. Reading them while the thread is still at it (JMX) gives a close, not exact, picture.
+	 * Handed back with {@link MatcherMetrics#merge(LatencyRecorder) merge} once the run is done.
+	 * </pre>
+	 */
+	public static class LatencyRecorder {
+		private final LatencyHistogram record = new LatencyHistogram();
+		private final LatencyHistogram emit = new LatencyHistogram();
+
+		public void record(long nanos) {
+			record.record(nanos);
+		}
+
+		public void emit(long nanos) {
+			emit.record(nanos);
+		}
+
+		/**
+		 * @return histogram of emit times - to record into directly
+		 */
+		public LatencyHistogram getEmitHistogram() {
+			return emit;
+		}
+
+		private void reset() {
+			record.reset();
+			emit.reset();
+		}
+	}
+
+	/**
+	 * @return process-wide instance
+	 */
+	public static MatcherMetrics global() {
+		return GLOBAL;
+	}
+
+	public void bytesRead(long n) {
+		bytesRead.add(n);
+	}
+
+	public void dataBytesRead(long n) {
+		dataBytesRead.add(n);
+	}
+
+	public void recordParsed() {
+		recordsParsed.increment();
+	}
+
+	public void queriesEvaluated(long n) {
+		queriesEvaluated.add(n);
+	}
+
+	public void matchesEmitted(long n) {
+		matchesEmitted.add(n);
+	}
+
+	public void queued() {
+		queueDepth.increment();
+	}
+
+	public void dequeued() {
+		queueDepth.decrement();
+	}
+
+	public void outputBytes(long n) {
+		outputBytes.add(n);
+	}
+
+	/**
+	 * Adds what the calling thread allocated since the mark. Threads that read or match call it when done:
+	 * a pool thread's counter is gone once the thread is.
+	 * @param mark {@link #threadAllocatedBytes() threadAllocatedBytes} of this thread when it started; negative - ignored
+	 */
+	public void allocatedSince(long mark) {
+		allocatedSince(Thread.currentThread(), mark);
+	}
+
+	/**
+	 * Adds what another thread allocated since the mark - for threads that run no code of ours when done (e.g. common pool threads of a parallel stream).
+	 * @param thread thread the mark was taken on; still alive
+	 * @param mark {@link #threadAllocatedBytes(Thread) threadAllocatedBytes} of the thread; negative - ignored
+	 */
+	public void allocatedSince(Thread thread, long mark) {
+		long now = threadAllocatedBytes(thread);
+		if (mark >= 0 && now >= mark) allocatedBytes.add(now - mark);
+	}
+
+	/**
+	 * @return bytes allocated by the calling thread since it started; -1 when the JVM cannot tell
+	 */
+	public static long threadAllocatedBytes() {
+		return threadAllocatedBytes(Thread.currentThread());
+	}
+
+	/**
+	 * @param thread a live thread
+	 * @return bytes allocated by the thread since it started; -1 when the JVM cannot tell (or the thread is gone)
+	 */
+	public static long threadAllocatedBytes(Thread thread) {
+		return (ALLOCATION_BEAN != null? ALLOCATION_BEAN.getThreadAllocatedBytes(thread.getId()) : -1);
+	}
+
+	private static com.sun.management.ThreadMXBean allocationBean() {
+		try {
+			ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			if (bean instanceof com.sun.management.ThreadMXBean) {
+				com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean)bean;
+				if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled()) return hotspot;
+			}
+		}
+		catch (LinkageError e) {
+			// not HotSpot
+		}
+		return null;
+	}
+
+	/**
+	 * @param name worker name (e.g. thread name)
+	 * @return timer of the worker; created on first call
+	 */
+	public WorkerTimer workerTimer(String name) {
+		return workers.computeIfAbsent(name, n -> new WorkerTimer());
+	}
+
+	/**
+	 * <pre>
+	 * Latency histograms for one thread's run: new ones, never shared - so no two writers ever record into the same histogram.
+	 * Counted in the totals right away; hand them back with {@link #merge(LatencyRecorder) merge} when the run is done
+	 * (in a finally block): only runs in progress keep a recorder of their own.
+	 * </pre>
+	 * @return new recorder
+	 */
+	public LatencyRecorder latencyRecorder() {
+		LatencyRecorder recorder = new LatencyRecorder();
+		liveLatencies.add(recorder);
+		return recorder;
+	}
+
+	/**
+	 * Adds a finished run's latencies to the totals; the recorder is not to be used after. Merging twice does nothing.
+	 * @param recorder from {@link #latencyRecorder() latencyRecorder}; null - ignored
+	 */
+	public void merge(LatencyRecorder recorder) {
+		if (recorder == null) return;
+		synchronized (latencies) {
+			if (!liveLatencies.remove(recorder)) return;
+			latencies.record.add(recorder.record);
+			latencies.emit.add(recorder.emit);
+		}
+	}
+
+	/**
+	 * @return record latencies of all threads, added up (a copy)
+	 */
+	public LatencyHistogram getRecordLatency() {
+		LatencyHistogram merged = new LatencyHistogram();
+		synchronized (latencies) {
+			merged.add(latencies.record);
+			liveLatencies.forEach(l -> merged.add(l.record));
+		}
+		return merged;
+	}
+
+	/**
+	 * @return emit latencies of all threads, added up (a copy)
+	 */
+	public LatencyHistogram getEmitLatency() {
+		LatencyHistogram merged = new LatencyHistogram();
+		synchronized (latencies) {
+			merged.add(latencies.emit);
+			liveLatencies.forEach(l -> merged.add(l.emit));
+		}
+		return merged;
+	}
+
+	/**
+	 * Publishes this instance over JMX (platform MBean server). Does nothing if already published.
+	 * @return this
+	 */
+	public synchronized MatcherMetrics register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (!server.isRegistered(name)) server.registerMBean(this, name);
+		}
+		catch (JMException e) {
+			throw new IllegalStateException("Cannot register metrics MBean " + OBJECT_NAME, e);
+		}
+		return this;
+	}
+
+	/**
+	 * Removes this instance from JMX, if there.
+	 */
+	public synchronized void unregister() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name)) server.unregisterMBean(name);
+		}
+		catch (JMException e) {
+			throw new IllegalStateException("Cannot unregister metrics MBean " + OBJECT_NAME, e);
+		}
+	}
+
+	@Override
+	public long getBytesRead() {
+		return bytesRead.sum();
+	}
+
+	@Override
+	public long getDataBytesRead() {
+		return dataBytesRead.sum();
+	}
+
+	@Override
+	public long getRecordsParsed() {
+		return recordsParsed.sum();
+	}
+
+	@Override
+	public long getQueriesEvaluated() {
+		return queriesEvaluated.sum();
+	}
+
+	@Override
+	public long getMatchesEmitted() {
+		return matchesEmitted.sum();
+	}
+
+	@Override
+	public long getQueueDepth() {
+		return queueDepth.sum();
+	}
+
+	@Override
+	public long getOutputBytes() {
+		return outputBytes.sum();
+	}
+
+	@Override
+	public long getAllocatedBytes() {
+		return allocatedBytes.sum();
+	}
+
+	@Override
+	public double getRecordsPerSecond() {
+		long elapsed = System.nanoTime() - startNanos;
+		return (elapsed > 0? recordsParsed.sum() * 1e9d / elapsed : 0d);
+	}
+
+	@Override
+	public Map<String, Long> getWorkerBusyMillis() {
+		Map<String, Long> result = new TreeMap<String, Long>();
+		workers.forEach((name, t) -> result.put(name, TimeUnit.NANOSECONDS.toMillis(t.busyNanos.sum())));
+		return result;
+	}
+
+	@Override
+	public Map<String, Long> getWorkerIdleMillis() {
+		Map<String, Long> result = new TreeMap<String, Long>();
+		workers.forEach((name, t) -> result.put(name, TimeUnit.NANOSECONDS.toMillis(t.idleNanos.sum())));
+		return result;
+	}
+
+	@Override
+	public Map<String, Long> getRecordLatencyNanos() {
+		return getRecordLatency().getSummary();
+	}
+
+	@Override
+	public Map<String, Long> getEmitLatencyNanos() {
+		return getEmitLatency().getSummary();
+	}
+
+	@Override
+	public void reset() {
+		bytesRead.reset();
+		dataBytesRead.reset();
+		recordsParsed.reset();
+		queriesEvaluated.reset();
+		matchesEmitted.reset();
+		outputBytes.reset();
+		allocatedBytes.reset();
+		workers.values().forEach(WorkerTimer::reset);
+		synchronized (latencies) {
+			latencies.reset();
+			liveLatencies.forEach(LatencyRecorder::reset);
+		}
+		startNanos = System.nanoTime();
+	}
+
+	/**
+	 * A string representation of this instance.
+	 */
+	public String toString() {
+		return "MatcherMetrics: bytesRead=" + getBytesRead() + "; dataBytesRead=" + getDataBytesRead() + "; recordsParsed=" + getRecordsParsed()
+				+ "; queriesEvaluated=" + getQueriesEvaluated() + "; matchesEmitted=" + getMatchesEmitted()
+				+ "; queueDepth=" + getQueueDepth() + "; outputBytes=" + getOutputBytes() + "; allocatedBytes=" + getAllocatedBytes()
+				+ "; workerBusyMillis=" + getWorkerBusyMillis() + "; workerIdleMillis=" + getWorkerIdleMillis();
+	}
+}
@@ -0,0 +1,79 @@
+package com.idt.codechallenge.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link MatcherMetrics MatcherMetrics}: all counters are totals since start (or last reset).
+ */
+public interface MatcherMetricsMXBean {
+
+	/**
+	 * @return bytes read from data and query sources
+	 */
+	long getBytesRead();
+
+	/**
+	 * @return bytes read from data sources only (no queries) - what progress is measured by
+	 */
+	long getDataBytesRead();
+
+	/**
+	 * @return data records tokenized
+	 */
+	long getRecordsParsed();
+
+	/**
+	 * @return (record, query) pairs checked
+	 */
+	long getQueriesEvaluated();
+
+	/**
+	 * @return matches handed over to output
+	 */
+	long getMatchesEmitted();
+
+	/**
+	 * @return records read but not yet taken by workers (concurrent mode)
+	 */
+	long getQueueDepth();
+
+	/**
+	 * @return bytes written to output
+	 */
+	long getOutputBytes();
+
+	/**
+	 * @return bytes allocated by reading and matching threads (counted when each of them finishes); 0 when the JVM cannot tell
+	 */
+	long getAllocatedBytes();
+
+	/**
+	 * @return records parsed per second, averaged since start (or last reset)
+	 */
+	double getRecordsPerSecond();
+
+	/**
+	 * @return ms each worker spent matching, by worker name
+	 */
+	Map<String, Long> getWorkerBusyMillis();
+
+	/**
+	 * @return ms each worker spent waiting for data, by worker name
+	 */
+	Map<String, Long> getWorkerIdleMillis();
+
+	/**
+	 * @return per-record processing time, all threads: count, p50, p99, p999, max (ns)
+	 */
+	Map<String, Long> getRecordLatencyNanos();
+
+	/**
+	 * @return per-match emit time, all threads: count, p50, p99, p999, max (ns)
+	 */
+	Map<String, Long> getEmitLatencyNanos();
+
+	/**
+	 * Zeroes all counters (queue depth excluded - it is a level, not a total).
+	 */
+	void reset();
+}
@@ -0,0 +1,29 @@
+package com.idt.codechallenge.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * <pre>
+ * JFR event: buffered JSON output pushed to the stream. See {@link StageEvents StageEvents}.
+ * Concurrent runs flush after every match - only flushes slower than the threshold are recorded, unless set lower.
+ * </pre>
+ */
+@Name("com.idt.codechallenge.OutputFlush")
+@Label("Output Flush")
+@Category({"Large File Reader", "Writer"})
+@Description("Buffered JSON output pushed to the output stream")
+@Threshold("1 ms")
+public class OutputFlushEvent extends jdk.jfr.Event {
+
+	@Label("Chars")
+	@Description("Characters written since the previous flush, line separators included (not bytes: non-ASCII words encode to more)")
+	public long chars;
+
+	@Label("Matches")
+	@Description("Matches written since the previous flush")
+	public long matches;
+}
@@ -0,0 +1,151 @@
+package com.idt.codechallenge.metrics;
+
+import java.io.PrintStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <pre>
+ * Periodic progress line, printed from a single timer thread: the matching threads do nothing extra for it
+ * (they only feed the counters of {@link MatcherMetrics MatcherMetrics} they feed anyway).
+ *
+ * E.g.:
+ * progress: 42.0% | records: 1,200,000 (51,230/s) | data: 860.2 MB (36.1 MB/s) | matches: 3,456 (140/s) | queued: 0 | ETA: 0:19:53
+ *
+ * - counts (records, data, matches) are since start(), same as the ETA's rate - a reused metrics instance does not inflate them;
+ * - rates are over the last interval;
+ * - percent done: data bytes processed vs the size of the data source;
+ * - ETA: data bytes left at the average rate since start.
+ * When the size is not known (stdin, URL without Content-Length) - rates only.
+ *
+ * Bytes processed: data bytes read, less what is still queued for the workers (concurrent mode: the reader runs ahead) -
+ * queued records are taken at the average size of records read so far.
+ * When data is pre-loaded into memory (-od) it is all read before matching starts: progress jumps to 100%.
+ *
+ * Lines go to the passed stream (normally System.err - System.out carries the results).
+ * </pre>
+ */
+public class ProgressReporter implements AutoCloseable {
+
+	private final static double MB = 1024d * 1024d;
+
+	private final MatcherMetrics metrics;
+	private final long totalBytes;
+	private final long intervalMillis;
+	private final PrintStream out;
+
+	private ScheduledExecutorService timer;
+
+	private long startNanos;
+	private long startBytes;
+	private long startRecords;
+	private long startMatches;
+	private long lastNanos;
+	private long lastBytes;
+	private long lastRecords;
+	private long lastMatches;
+
+	/**
+	 * @param m counters to report on
+	 * @param total size of the data source in bytes; 0 or less - unknown
+	 * @param interval ms between lines; must be positive
+	 * @param o where to print
+	 */
+	public ProgressReporter(MatcherMetrics m, long total, long interval, PrintStream o) {
+		if (m == null) throw new IllegalArgumentException("metrics cannot be null");
+		if (interval <= 0) throw new IllegalArgumentException("interval must be positive");
+		if (o == null) throw new IllegalArgumentException("output stream cannot be null");
+		metrics = m;
+		totalBytes = total;
+		intervalMillis = interval;
+		out = o;
+	}
+
+	/**
+	 * Starts printing, every interval. Counters are taken as of now: whatever was counted before does not count as progress.
+	 * @return this
+	 */
+	public synchronized ProgressReporter start() {
+		if (timer != null) return this;
+		startNanos = lastNanos = System.nanoTime();
+		startBytes = lastBytes = metrics.getDataBytesRead();
+		startRecords = lastRecords = metrics.getRecordsParsed();
+		startMatches = lastMatches = metrics.getMatchesEmitted();
+		timer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "progress");
+			t.setDaemon(true);	// never keeps the process alive
+			return t;
+		});
+		timer.scheduleAtFixedRate(this::report, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+		return this;
+	}
+
+	/**
+	 * Stops printing; prints one last line.
+	 */
+	public synchronized void stop() {
+		if (timer == null) return;
+		timer.shutdownNow();
+		timer = null;
+		report();
+	}
+
+	/**
+	 * AutoCloseable impl: same as stop.
+	 */
+	@Override
+	public void close() {
+		stop();
+	}
+
+	/**
+	 * Prints one line; called by the timer.
+	 */
+	synchronized void report() {
+		out.println(line(System.nanoTime()));
+	}
+
+	/**
+	 * Builds the line, advances the interval.
+	 */
+	String line(long now) {
+		long bytes = metrics.getDataBytesRead();
+		long records = metrics.getRecordsParsed();
+		long matches = metrics.getMatchesEmitted();
+		double seconds = Math.max(1e-9, (now - lastNanos) / 1e9d);
+
+		StringBuilder sb = new StringBuilder("progress: ");
+		long read = bytes - startBytes;
+		long queued = metrics.getQueueDepth();
+		long parsed = records - startRecords;
+		// read but not processed yet: queued records, at the average record size
+		long done = (queued > 0 && parsed + queued > 0? (long)((double)read * parsed / (parsed + queued)) : read);
+		if (totalBytes > 0) {
+			sb.append(String.format("%.1f%% | ", Math.min(100d, 100d * done / totalBytes)));
+		}
+		sb.append(String.format("records: %,d (%,.0f/s)", parsed, (records - lastRecords) / seconds));
+		sb.append(String.format(" | data: %.1f MB (%.1f MB/s)", read / MB, (bytes - lastBytes) / MB / seconds));
+		sb.append(String.format(" | matches: %,d (%,.0f/s)", matches - startMatches, (matches - lastMatches) / seconds));
+		sb.append(String.format(" | queued: %,d", queued));
+		if (totalBytes > 0) {
+			sb.append(" | ETA: ").append(eta(done, now - startNanos));
+		}
+
+		lastNanos = now;
+		lastBytes = bytes;
+		lastRecords = records;
+		lastMatches = matches;
+		return sb.toString();
+	}
+
+	/**
+	 * Time left at the average rate so far.
+	 */
+	private String eta(long done, long elapsedNanos) {
+		if (done >= totalBytes) return "0:00:00";
+		if (done <= 0 || elapsedNanos <= 0) return "?";
+		long secondsLeft = (long)((double)(totalBytes - done) * elapsedNanos / done / 1e9d);
+		return String.format("%d:%02d:%02d", secondsLeft / 3600, (secondsLeft / 60) % 60, secondsLeft % 60);
+	}
+}
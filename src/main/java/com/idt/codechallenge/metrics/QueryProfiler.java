@@ -0,0 +1,250 @@
+package com.idt.codechallenge.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.google.gson.GsonBuilder;
+
+/**
+ * <pre>
+ * Per-query cost profile of a run: which queries take the time, and which produce the output.
+ *
+ * Per query:
+ * - evaluations: (record, query) pairs checked;
+ * - matches, and characters of output they produced (as counted by the sink, see MatchSink.getCharsWritten);
+ * - sampled time: every N-th record (default: 64th) each query's check - and output, when it matches - is timed;
+ *   the estimate for the whole run is the sampled time scaled up by records/sampled records.
+ *   Only sampled records pay for the clock reads.
+ *
+ * Report: one line per query, most expensive (estimated time) first - CSV or JSON.
+ *
+ * Thread safety: each matching thread takes its own {@link Recorder Recorder} (not thread-safe, no locks on the hot path);
+ * reports add all recorders up - take them once the threads are done.
+ * </pre>
+ */
+public class QueryProfiler {
+
+	public final static int DEFAULT_SAMPLE_EVERY = 64;
+
+	private final int sampleEvery;
+	private final List<Recorder> recorders = new CopyOnWriteArrayList<Recorder>();
+	private final ConcurrentHashMap<Integer, String> queries = new ConcurrentHashMap<Integer, String>();
+
+	public QueryProfiler() {
+		this(DEFAULT_SAMPLE_EVERY);
+	}
+
+	/**
+	 * @param every time every so many records; must be positive
+	 */
+	public QueryProfiler(int every) {
+		if (every <= 0) throw new IllegalArgumentException("sampling interval must be positive");
+		sampleEvery = every;
+	}
+
+	/**
+	 * @return new recorder, for the calling thread only
+	 */
+	public Recorder recorder() {
+		Recorder r = new Recorder(sampleEvery);
+		recorders.add(r);
+		return r;
+	}
+
+	/**
+	 * Remembers the query's text, for the report. Only the first call per id counts.
+	 * @param id query id
+	 * @param queryWords the query
+	 */
+	public void query(int id, Set<String> queryWords) {
+		queries.putIfAbsent(id, String.join(",", queryWords));
+	}
+
+	/**
+	 * @return stats of all queries seen so far, most expensive first
+	 */
+	public List<QueryStats> getStats() {
+		int queryCount = 0;
+		for (Recorder r : recorders) queryCount = Math.max(queryCount, r.queryCount);
+
+		List<QueryStats> stats = new ArrayList<QueryStats>(queryCount);
+		for (int q = 0; q < queryCount; q++) {
+			QueryStats s = new QueryStats(q, queries.get(q));
+			for (Recorder r : recorders) {
+				if (q >= r.queryCount) continue;
+				s.evaluations += r.rows;
+				s.matches += r.matches[q];
+				s.outputChars += r.outputChars[q];
+				s.sampledNanos += r.sampledNanos[q];
+				if (r.sampledRows > 0) s.estimatedNanos += (double)r.sampledNanos[q] * r.rows / r.sampledRows;
+			}
+			stats.add(s);
+		}
+
+		double totalNanos = 0;
+		for (QueryStats s : stats) totalNanos += s.estimatedNanos;
+		for (QueryStats s : stats) {
+			s.matchRate = (s.evaluations > 0? (double)s.matches / s.evaluations : 0);
+			s.estimatedMillis = s.estimatedNanos / 1e6d;
+			s.timeShare = (totalNanos > 0? s.estimatedNanos / totalNanos : 0);
+		}
+
+		Collections.sort(stats, Comparator.comparingDouble((QueryStats s) -> s.estimatedNanos).reversed()
+				.thenComparing(Comparator.comparingLong((QueryStats s) -> s.outputChars).reversed())
+				.thenComparingInt(s -> s.queryId));
+		for (int i = 0; i < stats.size(); i++) stats.get(i).rank = i + 1;
+		return stats;
+	}
+
+	/**
+	 * Writes the ranked report as CSV, with a header line.
+	 * @param out where to write; not closed
+	 * @throws IOException passes on whatever out throws
+	 */
+	public void writeCsv(Writer out) throws IOException {
+		out.write("rank,queryId,query,evaluations,matches,matchRate,outputChars,sampledNanos,estimatedMillis,timeShare\n");
+		for (QueryStats s : getStats()) {
+			out.write(s.rank + "," + s.queryId + ",\"" + (s.query != null? s.query.replace("\"", "\"\"") : "") + "\","
+					+ s.evaluations + "," + s.matches + "," + String.format(Locale.ROOT, "%.6f", s.getMatchRate()) + ","
+					+ s.outputChars + "," + s.sampledNanos + "," + String.format(Locale.ROOT, "%.3f", s.getEstimatedMillis()) + ","
+					+ String.format(Locale.ROOT, "%.4f", s.timeShare) + "\n");
+		}
+	}
+
+	/**
+	 * Writes the ranked report as a JSON array, one object per query.
+	 * @param out where to write; not closed
+	 * @throws IOException passes on whatever out throws
+	 */
+	public void writeJson(Writer out) throws IOException {
+		new GsonBuilder().setPrettyPrinting().create().toJson(getStats(), out);
+		out.write("\n");
+	}
+
+	/**
+	 * Writes the report in the format the file name asks for: JSON for *.json, CSV otherwise.
+	 * @param fileName name of the report file
+	 * @param out where to write; not closed
+	 * @throws IOException passes on whatever out throws
+	 */
+	public void writeReport(String fileName, Writer out) throws IOException {
+		if (fileName.toLowerCase().endsWith(".json")) writeJson(out);
+		else writeCsv(out);
+	}
+
+	/**
+	 * Collects the profile of one thread.
+	 */
+	public static class Recorder {
+
+		private final int sampleEvery;
+
+		private long rows;
+		private long sampledRows;
+		private int queryCount;
+		private long[] matches = new long[16];
+		private long[] outputChars = new long[16];
+		private long[] sampledNanos = new long[16];
+
+		private Recorder(int every) {
+			sampleEvery = every;
+		}
+
+		/**
+		 * @param row 1-based row
+		 * @return true when queries should be timed on this row
+		 */
+		public boolean isSampled(long row) {
+			return row % sampleEvery == 0;
+		}
+
+		/**
+		 * A record was checked against all queries.
+		 * @param count number of queries
+		 * @param isSampled whether the checks were timed
+		 */
+		public void evaluated(int count, boolean isSampled) {
+			rows++;
+			if (isSampled) sampledRows++;
+			if (count > queryCount) {
+				ensureCapacity(count);
+				queryCount = count;
+			}
+		}
+
+		/**
+		 * @param q query id
+		 * @param chars output written for the match
+		 */
+		public void matched(int q, long chars) {
+			ensureCapacity(q + 1);
+			matches[q]++;
+			outputChars[q] += chars;
+		}
+
+		/**
+		 * @param q query id
+		 * @param nanos time the check (and output, if matched) took
+		 */
+		public void sampled(int q, long nanos) {
+			ensureCapacity(q + 1);
+			sampledNanos[q] += nanos;
+		}
+
+		private void ensureCapacity(int n) {
+			if (n <= matches.length) return;
+			int size = Math.max(n, matches.length * 2);
+			matches = Arrays.copyOf(matches, size);
+			outputChars = Arrays.copyOf(outputChars, size);
+			sampledNanos = Arrays.copyOf(sampledNanos, size);
+		}
+	}
+
+	/**
+	 * One line of the report. Fields are what goes into JSON.
+	 */
+	public static class QueryStats {
+		private int rank;
+		private final int queryId;
+		private final String query;
+		private long evaluations;
+		private long matches;
+		private double matchRate;
+		private long outputChars;
+		private long sampledNanos;
+		private double estimatedMillis;
+		private double timeShare;
+		private transient double estimatedNanos;
+
+		private QueryStats(int id, String q) {
+			queryId = id;
+			query = q;
+		}
+
+		public int getRank() {return rank;}
+		public int getQueryId() {return queryId;}
+		public String getQuery() {return query;}
+		public long getEvaluations() {return evaluations;}
+		public long getMatches() {return matches;}
+		public double getMatchRate() {return matchRate;}
+		public long getOutputChars() {return outputChars;}
+		public long getSampledNanos() {return sampledNanos;}
+		public double getEstimatedMillis() {return estimatedMillis;}
+		/** @return share of the estimated time of all queries, base-1 */
+		public double getTimeShare() {return timeShare;}
+
+		public String toString() {
+			return "#" + rank + " query " + queryId + " [" + query + "]: matches=" + matches + "; outputChars=" + outputChars
+					+ "; estimatedMillis=" + String.format("%.1f", estimatedMillis);
+		}
+	}
+}
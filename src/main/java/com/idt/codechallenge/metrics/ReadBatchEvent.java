@@ -0,0 +1,31 @@
+package com.idt.codechallenge.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event: a batch of records read from the data source and queued for the workers. See {@link StageEvents StageEvents}.
+ */
+@Name("com.idt.codechallenge.ReadBatch")
+@Label("Read Batch")
+@Category({"Large File Reader", "Reader"})
+@Description("Batch of data records read from the source and queued for the workers")
+public class ReadBatchEvent extends jdk.jfr.Event {
+
+	@Label("First Record")
+	@Description("1-based line number of the first record in the batch")
+	public long firstRecord;
+
+	@Label("Records")
+	public int records;
+
+	@Label("Characters")
+	@Description("Characters read, line breaks included (same as bytes for ASCII data)")
+	public long characters;
+
+	@Label("Queue Depth")
+	@Description("Records waiting for the workers at the end of the batch")
+	public long queueDepth;
+}
@@ -0,0 +1,85 @@
+package com.idt.codechallenge.metrics;
+
+/**
+ * <pre>
+ * Java Flight Recorder events of the matcher stages:
+ * - {@link ReadBatchEvent ReadBatchEvent}: data reader - a batch of records read from the source and queued;
+ * - {@link TokenizeBatchEvent TokenizeBatchEvent}: worker - a batch of lines split into word counts;
+ * - {@link EvaluateBatchEvent EvaluateBatchEvent}: worker - a batch of records matched against all queries;
+ * - {@link OutputFlushEvent OutputFlushEvent}: JSON output pushed to the stream (slow flushes only, by default).
+ *
+ * Recorded with any JFR recording, e.g.
+ * java -XX:StartFlightRecording=duration=10m,filename=matcher.jfr -jar idt-test.jar ...
+ * All of them are under "Large File Reader" in JDK Mission Control: lay them over the GC and I/O events of the same threads.
+ *
+ * Cost when nothing is recording: one check per batch (per flush) - {@link #isReadEnabled() isReadEnabled()} and the like;
+ * events are only created while a recording has their type enabled.
+ *
+ * Flight Recorder API (jdk.jfr) is in JDK 8u262 and later. On older JVMs no events are created at all:
+ * the checks look at {@link #ENABLED ENABLED} first - and never load an event class when it is false.
+ * </pre>
+ */
+public final class StageEvents {
+
+	/**
+	 * Records per read/tokenize/evaluate event.
+	 */
+	public final static int BATCH_SIZE = 1024;
+
+	/**
+	 * True when this JVM has the Flight Recorder API.
+	 */
+	public final static boolean ENABLED = isAvailable();
+
+	private StageEvents() {
+	}
+
+	/**
+	 * One event of each type, never committed: asked whether a recording wants the type right now.
+	 * Loaded on first use - so only when ENABLED.
+	 */
+	private static final class Probes {
+		private final static ReadBatchEvent READ = new ReadBatchEvent();
+		private final static TokenizeBatchEvent TOKENIZE = new TokenizeBatchEvent();
+		private final static EvaluateBatchEvent EVALUATE = new EvaluateBatchEvent();
+		private final static OutputFlushEvent FLUSH = new OutputFlushEvent();
+	}
+
+	/**
+	 * @return true when a recording has {@link ReadBatchEvent ReadBatchEvent} enabled
+	 */
+	public static boolean isReadEnabled() {
+		return ENABLED && Probes.READ.isEnabled();
+	}
+
+	/**
+	 * @return true when a recording has {@link TokenizeBatchEvent TokenizeBatchEvent} enabled
+	 */
+	public static boolean isTokenizeEnabled() {
+		return ENABLED && Probes.TOKENIZE.isEnabled();
+	}
+
+	/**
+	 * @return true when a recording has {@link EvaluateBatchEvent EvaluateBatchEvent} enabled
+	 */
+	public static boolean isEvaluateEnabled() {
+		return ENABLED && Probes.EVALUATE.isEnabled();
+	}
+
+	/**
+	 * @return true when a recording has {@link OutputFlushEvent OutputFlushEvent} enabled
+	 */
+	public static boolean isFlushEnabled() {
+		return ENABLED && Probes.FLUSH.isEnabled();
+	}
+
+	private static boolean isAvailable() {
+		try {
+			Class.forName("jdk.jfr.Event", false, StageEvents.class.getClassLoader());
+			return true;
+		}
+		catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+}
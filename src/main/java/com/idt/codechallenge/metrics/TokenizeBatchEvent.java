@@ -0,0 +1,26 @@
+package com.idt.codechallenge.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event: a batch of data lines split into {word, count} maps by a worker. See {@link StageEvents StageEvents}.
+ */
+@Name("com.idt.codechallenge.TokenizeBatch")
+@Label("Tokenize Batch")
+@Category({"Large File Reader", "Worker"})
+@Description("Batch of data lines split into word counts by a worker")
+public class TokenizeBatchEvent extends jdk.jfr.Event {
+
+	@Label("First Row")
+	@Description("Worker's own count of rows before the batch, plus one")
+	public long firstRow;
+
+	@Label("Records")
+	public int records;
+
+	@Label("Characters")
+	public long characters;
+}
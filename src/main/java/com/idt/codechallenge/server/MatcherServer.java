@@ -0,0 +1,168 @@
+package com.idt.codechallenge.server;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.idt.codechallenge.DataIndex;
+import com.idt.codechallenge.JsonMatchSink;
+import com.idt.codechallenge.TimedMatchSink;
+import com.idt.codechallenge.Utils;
+import com.idt.codechallenge.metrics.CountingOutputStream;
+import com.idt.codechallenge.metrics.MatcherMetrics;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * <pre>
+ * Long-running matcher: the data file is read and encoded once ({@link DataIndex DataIndex}),
+ * then any number of query batches are matched against it over HTTP.
+ * Saves JVM startup, data reads and tokenization on every run - what's left is the matching itself.
+ *
+ * Endpoints (local interface only):
+ * - POST /match  body: query file contents (CSV, one query per line).
+ *                response: JSON lines, same as RecordMatcher output (one line per match).
+ *                The whole batch is matched first - hits sorted into RecordMatcher's order (see {@link DataIndex#match DataIndex.match});
+ *                then lines are sent chunked, as they are written: a large response is not held in memory.
+ * - GET  /status response: record and word counts of the loaded data.
+ *
+ * E.g.: curl --data-binary @queries.txt http://localhost:8080/match
+ *
+ * Requests are served by a fixed pool of threads; all of them share the same read-only index.
+ *
+ * Built on the JDK's own HTTP server (com.sun.net.httpserver) - no extra dependencies.
+ * </pre>
+ */
+public class MatcherServer {
+
+	private final static int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+
+	private final DataIndex index;
+	private final int port;
+	private final int threadCount;
+	private final boolean isVerbose;
+
+	private HttpServer server;
+	private ExecutorService executor;
+
+	/**
+	 * @param idx loaded data
+	 * @param p port to listen on (loopback interface); 0 - any free port
+	 * @param threads number of request threads. If null is passed - will use number of CPUs.
+	 * @param isVerb when true - generates some extra output
+	 */
+	public MatcherServer(DataIndex idx, int p, Integer threads, Boolean isVerb) {
+		if (idx == null) throw new IllegalArgumentException("index cannot be null");
+		if (threads != null && threads <= 0) throw new IllegalArgumentException("thread count must be positive");
+		index = idx;
+		port = p;
+		threadCount = (threads != null? threads : DEFAULT_THREADS);
+		isVerbose = (isVerb != null? isVerb : false);
+	}
+
+	/**
+	 * Starts listening. Returns right away; requests are served on the server's own threads.
+	 * @return actual port the server listens on
+	 * @throws IOException when port cannot be bound
+	 */
+	public synchronized int start() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext("/match", this::handleMatch);
+		server.createContext("/status", this::handleStatus);
+		executor = Executors.newFixedThreadPool(threadCount);
+		server.setExecutor(executor);
+		server.start();
+		int actualPort = server.getAddress().getPort();
+		info("Listening on port " + actualPort + "; " + index);
+		return actualPort;
+	}
+
+	/**
+	 * Stops listening; waits (up to a second) for requests in flight.
+	 */
+	public synchronized void stop() {
+		if (server != null) {
+			server.stop(1);
+			executor.shutdown();
+			server = null;
+		}
+	}
+
+	private void handleMatch(HttpExchange exchange) throws IOException {
+		try {
+			if (!"POST".equals(exchange.getRequestMethod())) {
+				sendError(exchange, 405, "POST query lines to /match");
+				return;
+			}
+
+			List<Set<String>> queries = new ArrayList<Set<String>>();
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					queries.add(Utils.toQueryWords(line));
+				}
+			}
+
+			long now = System.currentTimeMillis();
+			exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+			// 0: chunked - results go out as they are written
+			exchange.sendResponseHeaders(200, 0);
+			long matchCount;
+			// emit time per match goes to this request's histogram
+			MatcherMetrics.LatencyRecorder latency = MatcherMetrics.global().latencyRecorder();
+			try (BufferedWriter outWriter = new BufferedWriter(new OutputStreamWriter(new CountingOutputStream(exchange.getResponseBody(), MatcherMetrics.global()), StandardCharsets.UTF_8))) {
+				matchCount = index.match(queries, new TimedMatchSink(new JsonMatchSink(outWriter, false), latency.getEmitHistogram()));
+			}
+			finally {
+				MatcherMetrics.global().merge(latency);
+			}
+			info("Matched " + queries.size() + " queries: " + matchCount + " matches in " + (System.currentTimeMillis() - now) + " ms");
+		}
+		catch (RuntimeException e) {
+			// headers may have been sent already; nothing better to do than drop the connection
+			info("Error serving request: " + e);
+			throw e;
+		}
+		finally {
+			exchange.close();
+		}
+	}
+
+	private void handleStatus(HttpExchange exchange) throws IOException {
+		try {
+			String status = "{\"records\":" + index.size() + ",\"words\":" + index.getWordCount() + "}";
+			byte[] body = status.getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", "application/json");
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		}
+		finally {
+			exchange.close();
+		}
+	}
+
+	private void sendError(HttpExchange exchange, int code, String message) throws IOException {
+		byte[] body = message.getBytes(StandardCharsets.UTF_8);
+		exchange.sendResponseHeaders(code, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	private void info(Object message) {
+		if (isVerbose) System.out.println("[" + Thread.currentThread().getName()+"] "+message);
+	}
+}
@@ -3,6 +3,7 @@ package com.idt.codechallenge;
 import java.io.IOException;
 import java.nio.file.FileSystem;
 import java.nio.file.Path;
+import java.util.Random;
 
 import com.google.common.jimfs.Configuration;
 import com.google.common.jimfs.Jimfs;
@@ -47,6 +48,25 @@ public class AbstractTest {
 	protected Path getPath(String first, String... more) {
 		return fs.getPath(first, more);
 	}
+
+	/**
+	 * Random CSV records, for data and query files alike: words w0 to w11 - so that records share words, and queries match.
+	 * @param random source of words
+	 * @param count number of lines
+	 * @param words number of words per line
+	 * @return lines, each ending with \n
+	 */
+	protected static String lines(Random random, int count, int words) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			for (int w = 0; w < words; w++) {
+				if (w > 0) sb.append(',');
+				sb.append("w").append(random.nextInt(12));
+			}
+			sb.append("\n");
+		}
+		return sb.toString();
+	}
 	
 
 }
@@ -0,0 +1,176 @@
+package com.idt.codechallenge;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Collection of JUnit tests for AsyncOutputStream.
+ */
+public class AsyncOutputStreamTest {
+
+	/**
+	 * Writes of all sizes - smaller than a buffer, across buffers, many buffers long - come out as written.
+	 * @throws Exception
+	 */
+	@Test
+	public void test_write_SameBytesInOrder() throws Exception {
+		Random random = new Random(5);
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (AsyncOutputStream async = new AsyncOutputStream(out, 3, 100, null)) {
+			for (int i = 0; i < 2000; i++) {
+				byte[] bytes = new byte[random.nextInt(i % 50 == 0? 1000 : 60)];
+				random.nextBytes(bytes);
+				async.write(bytes, 0, bytes.length);
+				expected.write(bytes);
+				if (i % 10 == 0) {
+					async.write(i);
+					expected.write(i);
+				}
+			}
+		}
+		assertArrayEquals(expected.toByteArray(), out.toByteArray());
+	}
+
+	/**
+	 * The output stuck: the caller goes on while there is a free buffer; flush() gets everything out once it moves.
+	 * @throws Exception
+	 */
+	@Test(timeout = 10000)
+	public void test_write_NoWaitWhileBufferFree() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		OutputStream stuck = new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				write(new byte[] {(byte)b}, 0, 1);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				try {
+					release.await();
+				}
+				catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+				out.write(b, off, len);
+			}
+		};
+		AsyncOutputStream async = new AsyncOutputStream(stuck, 2, 10, null);
+		// first buffer full: handed over, the writer is stuck on it; second one being filled
+		async.write("0123456789abcde".getBytes(), 0, 15);
+		assertEquals(0, out.size());
+		release.countDown();
+		async.flush();
+		assertEquals("0123456789abcde", out.toString());
+		async.close();
+	}
+
+	/**
+	 * Time policy: bytes in a buffer that is not full get out without flush().
+	 * @throws Exception
+	 */
+	@Test(timeout = 10000)
+	public void test_write_TimePolicy() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		CountDownLatch flushed = new CountDownLatch(1);
+		OutputStream flushing = new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				out.write(b);
+			}
+
+			@Override
+			public void flush() {
+				if (out.size() > 0) flushed.countDown();
+			}
+		};
+		try (AsyncOutputStream async = new AsyncOutputStream(flushing, 2, 1024 * 1024, 20L)) {
+			async.write("line\n".getBytes(), 0, 5);
+			assertTrue(flushed.await(5, TimeUnit.SECONDS));
+			assertEquals("line\n", out.toString());
+		}
+	}
+
+	/**
+	 * The output failing: the next write fails, so does close().
+	 * @throws Exception
+	 */
+	@Test(timeout = 10000)
+	public void test_write_OutputFails() throws Exception {
+		OutputStream failing = new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				throw new IOException("disk full");
+			}
+		};
+		AsyncOutputStream async = new AsyncOutputStream(failing, 2, 16, null);
+		IOException error = null;
+		try {
+			for (int i = 0; i < 100000 && error == null; i++) async.write(new byte[8], 0, 8);
+		}
+		catch (IOException e) {
+			error = e;
+		}
+		assertNotNull(error);
+		assertEquals("disk full", error.getCause().getMessage());
+		try {
+			async.close();
+			fail("close() should fail too");
+		}
+		catch (IOException e) {
+			assertEquals("disk full", e.getCause().getMessage());
+		}
+	}
+
+	/**
+	 * flush() returns once the stream behind is flushed, not just written to: nothing is left in its buffer.
+	 * @throws Exception
+	 */
+	@Test(timeout = 10000)
+	public void test_flush_StreamBehindFlushed() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		// holds bytes until flushed - and takes its time to flush
+		OutputStream buffered = new OutputStream() {
+			private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+			@Override
+			public synchronized void write(int b) {
+				pending.write(b);
+			}
+
+			@Override
+			public synchronized void flush() throws IOException {
+				try {
+					Thread.sleep(100);
+				}
+				catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+				pending.writeTo(bytes);
+				pending.reset();
+			}
+		};
+		try (AsyncOutputStream async = new AsyncOutputStream(buffered, 2, 16, null)) {
+			for (int i = 0; i < 3; i++) {
+				async.write(new byte[10], 0, 10);
+				async.flush();
+				assertEquals(10 * (i + 1), bytes.size());
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_newAsyncOutputStream_OneBuffer() {
+		new AsyncOutputStream(new ByteArrayOutputStream(), 1, null, null);
+	}
+}
@@ -0,0 +1,170 @@
+package com.idt.codechallenge;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+/**
+ * Collection of JUnit tests for BinaryMatchSink and BinaryResultReader.
+ */
+@RunWith(PowerMockRunner.class)
+public class BinaryResultReaderTest extends AbstractTest {
+
+	private String dataFile;
+	private String queryFile;
+	private String resultFile;
+
+	/**
+	 * Test setup - once for all tests.
+	 */
+	@BeforeClass
+	public static void setupAll() {
+		AbstractTest.setupAll();
+	}
+
+	@AfterClass
+	public static void teardownAll() throws IOException {
+		AbstractTest.teardownAll();
+	}
+
+	/**
+	 * Test setup - once for each test: data with repeated words; a few queries.
+	 */
+	@Before
+	public void setupOne() throws IOException {
+		Random random = new Random(11);
+		StringBuilder data = new StringBuilder();
+		for (int i = 0; i < 3000; i++) {
+			for (int w = 0; w < 6; w++) data.append(w > 0? "," : "").append(random.nextInt(5) == 0? "x" : "w").append(random.nextInt(200));
+			data.append("\n");
+		}
+		dataFile = "data-" + UUID.randomUUID() + ".txt";
+		queryFile = "queries-" + UUID.randomUUID() + ".txt";
+		resultFile = "results-" + UUID.randomUUID() + ".bin";
+		Files.write(getPath(dataFile), data.toString().getBytes("UTF-8"));
+		Files.write(getPath(queryFile), "w1\nw2,w3\nx4\nw5,w6,w7\nnothing\n".getBytes("UTF-8"));
+	}
+
+	@After
+	public void teardownOne() throws IOException {
+		Files.deleteIfExists(getPath(dataFile));
+		Files.deleteIfExists(getPath(queryFile));
+		Files.deleteIfExists(getPath(resultFile));
+	}
+
+	/**
+	 * Read back, the results make the very same JSON output; the file is much smaller.
+	 * @throws Exception
+	 */
+	@Test
+	public void test_next_SameAsJson() throws Exception {
+		ByteArrayOutputStream json = new ByteArrayOutputStream();
+		long expectedCount = new RecordMatcher(dataFile, queryFile).match(json);
+		assertTrue(expectedCount > 0);
+
+		long count;
+		try (OutputStream out = Files.newOutputStream(getPath(resultFile)); BinaryMatchSink sink = new BinaryMatchSink(out)) {
+			count = new RecordMatcher(dataFile, queryFile).match(sink);
+			sink.finish();
+		}
+		assertEquals(expectedCount, count);
+		assertTrue(Files.size(getPath(resultFile)) < json.size() / 2);
+
+		ByteArrayOutputStream replayed = new ByteArrayOutputStream();
+		long read = 0;
+		try (BinaryResultReader reader = new BinaryResultReader(resultFile)) {
+			BinaryResultReader.Result result;
+			while ((result = reader.next()) != null) {
+				replayed.write((result.toJson() + System.lineSeparator()).getBytes("UTF-8"));
+				read++;
+			}
+			assertNull(reader.next());
+			assertNull(reader.getQuery(4));
+		}
+		assertEquals(count, read);
+		assertEquals(json.toString("UTF-8"), replayed.toString("UTF-8"));
+	}
+
+	/**
+	 * Words are UTF-8: any of them come back as they were; so do queries and counts.
+	 * @throws Exception
+	 */
+	@Test
+	public void test_next_NonAsciiWords() throws Exception {
+		Map<String, Integer> wordCounts = new HashMap<String, Integer>();
+		wordCounts.put("caf\u00e9", 300);
+		wordCounts.put("\u65e5\u672c", 1);
+		wordCounts.put("q", 2);
+		try (OutputStream out = Files.newOutputStream(getPath(resultFile)); BinaryMatchSink sink = new BinaryMatchSink(out)) {
+			sink.onMatch(123456789012L, 7, Collections.singleton("q"), wordCounts);
+			sink.finish();
+		}
+		try (BinaryResultReader reader = new BinaryResultReader(resultFile)) {
+			BinaryResultReader.Result result = reader.next();
+			assertEquals(123456789012L, result.getLine());
+			assertEquals(7, result.getQueryId());
+			assertEquals(Collections.singleton("q"), result.getQueryWords());
+			assertEquals(Utils.nonQueryWords(wordCounts, Collections.singleton("q")), result.getResult());
+			assertNull(reader.next());
+		}
+	}
+
+	/**
+	 * No matches: still a valid file, with nothing in it.
+	 * @throws Exception
+	 */
+	@Test
+	public void test_next_NoResults() throws Exception {
+		try (OutputStream out = Files.newOutputStream(getPath(resultFile)); BinaryMatchSink sink = new BinaryMatchSink(out)) {
+			sink.finish();
+		}
+		try (BinaryResultReader reader = new BinaryResultReader(resultFile)) {
+			assertNull(reader.next());
+			assertEquals(0, reader.getWordCount());
+		}
+	}
+
+	/**
+	 * A sink closed but not finished - as when the match fails: no footer, the file can't be read.
+	 * @throws Exception
+	 */
+	@Test(expected = IOException.class)
+	public void test_newBinaryResultReader_NotFinished() throws Exception {
+		try (OutputStream out = Files.newOutputStream(getPath(resultFile)); BinaryMatchSink sink = new BinaryMatchSink(out)) {
+			sink.onMatch(1, 0, Collections.singleton("q"), Collections.singletonMap("word", 1));
+			throw new IllegalStateException("match failed");
+		}
+		catch (IllegalStateException e) {
+			assertTrue(Files.size(getPath(resultFile)) > 0);
+		}
+		new BinaryResultReader(resultFile).close();
+	}
+
+	/**
+	 * JSON is not binary results.
+	 * @throws Exception
+	 */
+	@Test(expected = IOException.class)
+	public void test_newBinaryResultReader_NotBinary() throws Exception {
+		try (OutputStream out = Files.newOutputStream(getPath(resultFile))) {
+			new RecordMatcher(dataFile, queryFile).match(out);
+		}
+		new BinaryResultReader(resultFile).close();
+	}
+}
@@ -0,0 +1,101 @@
+package com.idt.codechallenge;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+/**
+ * Collection of JUnit tests for DataIndex.
+ */
+@RunWith(PowerMockRunner.class)
+public class DataIndexTest extends AbstractTest {
+
+	private final static String DATA =
+			"cat,dog,lizard,lizard,lion\r\n"
+			+"du,du,du,da,da,da\r\n"
+			+"cat,is,an,alien\r\n"
+			+"mon,tue,wed,thu,fri,sat,mon\r\n"
+			+"ask,me,about,cat,and,dog,on,wed,and,thu\r\n";
+	private final static String QUERIES =
+			"cat,dog\r\n"
+			+"ask,me\r\n"
+			+"wed,thu\r\n"
+			+"cat,unknown\r\n";
+
+	private String dataFile;
+	private String queryFile;
+
+	@BeforeClass
+	public static void setupAll() {
+		AbstractTest.setupAll();
+	}
+
+	@AfterClass
+	public static void teardownAll() throws IOException {
+		AbstractTest.teardownAll();
+	}
+
+	@Before
+	public void setupOne() throws IOException {
+		dataFile = "data-" + UUID.randomUUID() + ".txt";
+		queryFile = "queries-" + UUID.randomUUID() + ".txt";
+		Files.write(getPath(dataFile), DATA.getBytes());
+		Files.write(getPath(queryFile), QUERIES.getBytes());
+	}
+
+	@After
+	public void teardownOne() throws IOException {
+		Files.deleteIfExists(getPath(dataFile));
+		Files.deleteIfExists(getPath(queryFile));
+	}
+
+	@Test
+	public void test_load() throws Exception {
+		DataIndex index = DataIndex.load(dataFile, 100);
+		assertEquals(5, index.size());
+		assertEquals(2, index.getWordCounts(0).get("lizard").intValue());
+	}
+
+	@Test
+	public void test_find() throws Exception {
+		DataIndex index = DataIndex.load(dataFile, 100);
+		assertArrayEquals(new int[] {0, 4}, index.find(new HashSet<String>(Arrays.asList("cat", "dog"))));
+		assertArrayEquals(new int[] {3, 4}, index.find(new HashSet<String>(Arrays.asList("thu", "wed"))));
+		assertArrayEquals(new int[0], index.find(new HashSet<String>(Arrays.asList("cat", "unknown"))));
+	}
+
+	/**
+	 * Same lines, same order as RecordMatcher.
+	 * @throws Exception
+	 */
+	@Test
+	public void test_match_SameAsRecordMatcher() throws Exception {
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		long expectedCount = new RecordMatcher(dataFile, queryFile).match(expected);
+
+		DataIndex index = DataIndex.load(dataFile, 100);
+		StringWriter actual = new StringWriter();
+		BufferedWriter writer = new BufferedWriter(actual);
+		long actualCount = index.match(Utils.readQueries(queryFile, 100), new JsonMatchSink(writer, false));
+		writer.flush();
+
+		assertEquals(5, actualCount);
+		assertEquals(expectedCount, actualCount);
+		assertEquals(expected.toString(), actual.toString());
+	}
+}
@@ -0,0 +1,105 @@
+package com.idt.codechallenge;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+/**
+ * Collection of JUnit tests for DataSources.
+ */
+@RunWith(PowerMockRunner.class)
+public class DataSourcesTest extends AbstractTest {
+
+	private String dir;
+
+	/**
+	 * Test setup - once for all tests.
+	 */
+	@BeforeClass
+	public static void setupAll() {
+		AbstractTest.setupAll();
+	}
+
+	@AfterClass
+	public static void teardownAll() throws IOException {
+		AbstractTest.teardownAll();
+	}
+
+	/**
+	 * Test setup - once for each test: a directory with files, a hidden file and a subdirectory with more files.
+	 */
+	@Before
+	public void setupOne() throws IOException {
+		dir = "dir-" + UUID.randomUUID();
+		Files.createDirectories(getPath(dir, "sub"));
+		for (String file : new String[] {"b.txt", "a.txt", "c.csv", ".hidden.txt", "sub/d.txt"}) {
+			Files.write(getPath(dir, file), "x\n".getBytes());
+		}
+	}
+
+	@After
+	public void teardownOne() throws IOException {
+		for (String file : new String[] {"b.txt", "a.txt", "c.csv", ".hidden.txt", "sub/d.txt", "sub", ""}) {
+			Files.deleteIfExists(getPath(dir, file));
+		}
+	}
+
+	/**
+	 * Directory: its own regular files, by name - no hidden ones, no subdirectories.
+	 * @throws Exception
+	 */
+	@Test
+	public void test_expand_Directory() throws Exception {
+		assertEquals(Arrays.asList(dir + "/a.txt", dir + "/b.txt", dir + "/c.csv"), DataSources.expand(Arrays.asList(dir)));
+		assertTrue(DataSources.isMulti(dir));
+	}
+
+	/**
+	 * Patterns: one level, any depth with **; files that come up twice are kept once, where they first came up.
+	 * @throws Exception
+	 */
+	@Test
+	public void test_expand_Glob() throws Exception {
+		assertEquals(Arrays.asList(dir + "/a.txt", dir + "/b.txt"), DataSources.expand(Arrays.asList(dir + "/*.txt")));
+		assertEquals(Arrays.asList(dir + "/c.csv", dir + "/a.txt", dir + "/b.txt", dir + "/sub/d.txt"),
+				DataSources.expand(Arrays.asList(dir + "/c.csv", dir + "/**.{txt,csv}")));
+		assertTrue(DataSources.isMulti(dir + "/*.txt"));
+	}
+
+	/**
+	 * Plain names stay as they are; checking them is up to whoever opens them.
+	 * @throws Exception
+	 */
+	@Test
+	public void test_expand_Files() throws Exception {
+		assertEquals(Arrays.asList(dir + "/b.txt", "missing.txt"), DataSources.expand(Arrays.asList(dir + "/b.txt", "missing.txt")));
+		assertFalse(DataSources.isMulti(dir + "/b.txt"));
+	}
+
+	/**
+	 * URLs with a query string (or other pattern characters) are one source each - no connection is made to tell.
+	 * @throws Exception
+	 */
+	@Test
+	public void test_expand_Url() throws Exception {
+		String url = "http://host.invalid/data?x=1&y=[2]";
+		assertFalse(DataSources.isMulti(url));
+		assertEquals(Arrays.asList(url, dir + "/a.txt"), DataSources.expand(Arrays.asList(url, dir + "/a.txt")));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_expand_NoMatch() throws Exception {
+		DataSources.expand(Arrays.asList(dir + "/*.json"));
+	}
+}
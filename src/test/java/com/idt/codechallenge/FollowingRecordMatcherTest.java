@@ -0,0 +1,133 @@
+package com.idt.codechallenge;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+/**
+ * Collection of JUnit tests for FollowingRecordMatcher.
+ */
+@RunWith(PowerMockRunner.class)
+public class FollowingRecordMatcherTest extends AbstractTest {
+
+	private String dataFile;
+	private String queryFile;
+	private ExecutorService executor;
+
+	/**
+	 * Collects matches as "line:queryId".
+	 */
+	private static class ListSink implements MatchSink {
+		private final List<String> matches = Collections.synchronizedList(new ArrayList<String>());
+
+		@Override
+		public void onMatch(long line, int queryId, Set<String> queryWords, Map<String, Integer> wordCounts) {
+			matches.add(line + ":" + queryId);
+		}
+	}
+
+	/**
+	 * Test setup - once for all tests.
+	 */
+	@BeforeClass
+	public static void setupAll() {
+		AbstractTest.setupAll();
+	}
+
+	@AfterClass
+	public static void teardownAll() throws IOException {
+		AbstractTest.teardownAll();
+	}
+
+	/**
+	 * Test setup - once for each test: fresh file names; a thread to follow in.
+	 */
+	@Before
+	public void setupOne() throws IOException {
+		dataFile = "data-" + UUID.randomUUID() + ".txt";
+		queryFile = "queries-" + UUID.randomUUID() + ".txt";
+		Files.write(getPath(queryFile), "cat,dog\nbird\n".getBytes());
+		executor = Executors.newSingleThreadExecutor();
+	}
+
+	@After
+	public void teardownOne() throws IOException {
+		executor.shutdownNow();
+		Files.deleteIfExists(getPath(dataFile));
+		Files.deleteIfExists(getPath(queryFile));
+	}
+
+	/**
+	 * Second run of the same instance: follows from the beginning again, against the same queries - not twice as many.
+	 * @throws Exception
+	 */
+	@Test(timeout = 20000)
+	public void test_match_SecondRun() throws Exception {
+		Files.write(getPath(dataFile), "cat,dog\nbird,cat\nfish\n".getBytes());
+		FollowingRecordMatcher matcher = new FollowingRecordMatcher(dataFile, queryFile, 10L, null, null, null, null);
+		List<String> expected = Arrays.asList("1:0", "2:1");
+
+		for (int run = 0; run < 2; run++) {
+			ListSink sink = new ListSink();
+			Future<Long> result = executor.submit(() -> matcher.match(sink));
+			awaitMatches(sink, expected.size());
+			// nothing more to come: the run has to be still following, until stopped
+			Thread.sleep(100);
+			assertFalse(result.isDone());
+			matcher.stop();
+			assertEquals(expected.size(), result.get().longValue());
+			assertEquals(expected, sink.matches);
+		}
+		assertEquals(2, matcher.getQueryRegistry().size());
+	}
+
+	/**
+	 * Lines appended while following: matched as they come, numbered on from the lines before them; stop() ends the run.
+	 * @throws Exception
+	 */
+	@Test(timeout = 20000)
+	public void test_match_Appended() throws Exception {
+		Files.write(getPath(dataFile), "cat,dog\nfish\n".getBytes());
+		FollowingRecordMatcher matcher = new FollowingRecordMatcher(dataFile, queryFile, 10L, null, null, null, null);
+		ListSink sink = new ListSink();
+		Future<Long> result = executor.submit(() -> matcher.match(sink));
+		awaitMatches(sink, 1);
+		assertEquals(Arrays.asList("1:0"), sink.matches);
+
+		// a record in two writes: not matched until its line break is there
+		Files.write(getPath(dataFile), "bird,cat".getBytes(), StandardOpenOption.APPEND);
+		Thread.sleep(200);
+		assertEquals(1, sink.matches.size());
+		Files.write(getPath(dataFile), ",dog\nfish\nbird\n".getBytes(), StandardOpenOption.APPEND);
+		awaitMatches(sink, 4);
+		assertEquals(Arrays.asList("1:0", "3:0", "3:1", "5:1"), sink.matches);
+
+		assertFalse(result.isDone());
+		matcher.stop();
+		assertEquals(4, result.get().longValue());
+	}
+
+	private static void awaitMatches(ListSink sink, int count) throws InterruptedException {
+		while (sink.matches.size() < count) Thread.sleep(10);
+	}
+}
@@ -0,0 +1,143 @@
+package com.idt.codechallenge;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+/**
+ * Collection of JUnit tests for IncrementalRecordMatcher.
+ */
+@RunWith(PowerMockRunner.class)
+public class IncrementalRecordMatcherTest extends AbstractTest {
+
+	private String dataFile;
+	private String queryFile;
+	private String checkpointFile;
+
+	/**
+	 * Test setup - once for all tests.
+	 */
+	@BeforeClass
+	public static void setupAll() {
+		AbstractTest.setupAll();
+	}
+
+	@AfterClass
+	public static void teardownAll() throws IOException {
+		AbstractTest.teardownAll();
+	}
+
+	/**
+	 * Test setup - once for each test: fresh file names.
+	 */
+	@Before
+	public void setupOne() {
+		dataFile = "data-" + UUID.randomUUID() + ".txt";
+		queryFile = "queries-" + UUID.randomUUID() + ".txt";
+		checkpointFile = "checkpoint-" + UUID.randomUUID() + ".properties";
+	}
+
+	@After
+	public void teardownOne() throws IOException {
+		Files.deleteIfExists(getPath(dataFile));
+		Files.deleteIfExists(getPath(queryFile));
+		Files.deleteIfExists(getPath(checkpointFile));
+	}
+
+	/**
+	 * Second run only sees appended records, with absolute line numbers.
+	 * Unterminated last line waits for the next run.
+	 * @throws Exception
+	 */
+	@Test
+	public void test_match_ResumesFromCheckpoint() throws Exception {
+		Files.write(getPath(queryFile), "cat,dog\n".getBytes());
+		Files.write(getPath(dataFile), (
+				"cat,dog,lion\n"		// 1: match
+				+"du,da\n"				// 2
+				+"dog,cat").getBytes());// 3: match, but not terminated yet
+
+		String out1 = run();
+		assertEquals(1, countLines(out1));
+		assertTrue(out1.contains("\"line\":1"));
+		assertTrue(Files.exists(getPath(checkpointFile)));
+
+		// writer finishes line 3, appends line 4
+		append(",bird\r\ncat,dog\n");
+
+		String out2 = run();
+		assertEquals(2, countLines(out2));
+		assertTrue(out2.contains("\"line\":3"));
+		assertTrue(out2.contains("\"line\":4"));
+		assertTrue(out2.contains("bird"));
+		assertFalse(out2.contains("\"line\":1"));
+
+		// nothing new
+		assertEquals("", run());
+	}
+
+	/**
+	 * Changed query file invalidates the checkpoint.
+	 * @throws Exception
+	 */
+	@Test
+	public void test_match_QueryFileChanged() throws Exception {
+		Files.write(getPath(queryFile), "cat,dog\n".getBytes());
+		Files.write(getPath(dataFile), "cat,dog,lion\nlion,tiger\n".getBytes());
+		assertEquals(1, countLines(run()));
+
+		Files.write(getPath(queryFile), "lion\n".getBytes());
+		String out = run();
+		assertEquals(2, countLines(out));
+		assertTrue(out.contains("\"line\":1"));
+	}
+
+	/**
+	 * Rewritten data file (head changed, or got shorter) invalidates the checkpoint.
+	 * @throws Exception
+	 */
+	@Test
+	public void test_match_DataFileRewritten() throws Exception {
+		Files.write(getPath(queryFile), "cat\n".getBytes());
+		Files.write(getPath(dataFile), "cat,dog\ncat,lion\n".getBytes());
+		assertEquals(2, countLines(run()));
+
+		// same length, different contents
+		Files.write(getPath(dataFile), "cat,cow\ncat,lion\n".getBytes());
+		assertEquals(2, countLines(run()));
+
+		// truncated
+		Files.write(getPath(dataFile), "cat\n".getBytes());
+		String out = run();
+		assertEquals(1, countLines(out));
+		assertTrue(out.contains("\"line\":1"));
+	}
+
+	private String run() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new IncrementalRecordMatcher(dataFile, queryFile, checkpointFile).match(out);
+		return out.toString();
+	}
+
+	private void append(String s) throws IOException {
+		Path p = getPath(dataFile);
+		Files.write(p, s.getBytes(), StandardOpenOption.APPEND);
+	}
+
+	private static int countLines(String s) {
+		return s.isEmpty()? 0 : s.split("\r?\n").length;
+	}
+}
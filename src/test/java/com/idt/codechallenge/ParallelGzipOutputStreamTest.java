@@ -0,0 +1,142 @@
+package com.idt.codechallenge;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+/**
+ * Collection of JUnit tests for ParallelGzipOutputStream.
+ */
+public class ParallelGzipOutputStreamTest {
+
+	/**
+	 * Many small blocks, compressed by several threads: gunzipped, the output is what was written, in order.
+	 * @throws Exception
+	 */
+	@Test
+	public void test_write_RoundTrip() throws Exception {
+		Random random = new Random(7);
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (ParallelGzipOutputStream gzip = new ParallelGzipOutputStream(out, 4, 1000, 1)) {
+			for (int i = 0; i < 20000; i++) {
+				byte[] line = ("{\"line\":" + i + ",\"query\":\"[w" + random.nextInt(20) + "]\",\"result\":{\"w" + random.nextInt(50) + "\":1}}\n").getBytes();
+				gzip.write(line, 0, line.length);
+				expected.write(line);
+				if (i % 1000 == 0) gzip.flush();
+			}
+		}
+		assertTrue(out.size() < expected.size() / 2);
+		assertArrayEquals(expected.toByteArray(), gunzip(out.toByteArray()));
+	}
+
+	/**
+	 * Nothing written: still a valid gzip file.
+	 * @throws Exception
+	 */
+	@Test
+	public void test_close_Empty() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new ParallelGzipOutputStream(out).close();
+		assertTrue(out.size() > 0);
+		assertEquals(0, gunzip(out.toByteArray()).length);
+	}
+
+	/**
+	 * The output failing: a later write fails, so does close().
+	 * @throws Exception
+	 */
+	@Test(timeout = 10000)
+	public void test_write_OutputFails() throws Exception {
+		OutputStream failing = new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				throw new IOException("disk full");
+			}
+		};
+		ParallelGzipOutputStream gzip = new ParallelGzipOutputStream(failing, 2, 64, null);
+		IOException error = null;
+		try {
+			for (int i = 0; i < 100000 && error == null; i++) gzip.write(new byte[32], 0, 32);
+		}
+		catch (IOException e) {
+			error = e;
+		}
+		assertNotNull(error);
+		assertEquals("disk full", error.getCause().getMessage());
+		try {
+			gzip.close();
+			fail("close() should fail too");
+		}
+		catch (IOException e) {
+			assertEquals("disk full", e.getCause().getMessage());
+		}
+	}
+
+	/**
+	 * Many flushes while the writer is busy: one flush of the stream behind, not one each.
+	 * @throws Exception
+	 */
+	@Test(timeout = 10000)
+	public void test_flush_Coalesced() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger flushes = new AtomicInteger();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		OutputStream slow = new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				write(new byte[] {(byte)b}, 0, 1);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				try {
+					release.await();
+				}
+				catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+				bytes.write(b, off, len);
+			}
+
+			@Override
+			public void flush() {
+				flushes.incrementAndGet();
+			}
+		};
+		ParallelGzipOutputStream gzip = new ParallelGzipOutputStream(slow, 2, 64, null);
+		// one block: the writer is stuck on it
+		gzip.write(new byte[64], 0, 64);
+		for (int i = 0; i < 10000; i++) gzip.flush();
+		release.countDown();
+		gzip.close();
+		// the queued one, and close()'s
+		assertEquals(2, flushes.get());
+		assertEquals(64, gunzip(bytes.toByteArray()).length);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_newParallelGzipOutputStream_BadLevel() {
+		new ParallelGzipOutputStream(new ByteArrayOutputStream(), null, null, 10);
+	}
+
+	private static byte[] gunzip(byte[] gzipped) throws IOException {
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+			byte[] buffer = new byte[8192];
+			int n;
+			while ((n = in.read(buffer)) > 0) result.write(buffer, 0, n);
+		}
+		return result.toByteArray();
+	}
+}
@@ -0,0 +1,192 @@
+package com.idt.codechallenge;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.idt.codechallenge.concurrent.ConcurrentRecordMatcher;
+
+/**
+ * Collection of JUnit tests for PositionalFileOutput.
+ */
+@RunWith(PowerMockRunner.class)
+public class PositionalFileOutputTest extends AbstractTest {
+
+	private String outputFile;
+
+	/**
+	 * Test setup - once for all tests.
+	 */
+	@BeforeClass
+	public static void setupAll() {
+		AbstractTest.setupAll();
+	}
+
+	@AfterClass
+	public static void teardownAll() throws IOException {
+		AbstractTest.teardownAll();
+	}
+
+	/**
+	 * Test setup - once for each test: fresh file name.
+	 */
+	@Before
+	public void setupOne() {
+		outputFile = "out-" + UUID.randomUUID() + ".jsonl";
+	}
+
+	@After
+	public void teardownOne() throws IOException {
+		Files.deleteIfExists(getPath(outputFile));
+	}
+
+	/**
+	 * Several threads, a sink each: every line whole, each sink's lines in their order, no gaps.
+	 * @throws Exception
+	 */
+	@Test
+	public void test_newSink_NoInterleaving() throws Exception {
+		int threads = 6;
+		int lines = 4000;
+		Set<String> query = Collections.singleton("q");
+		List<Exception> errors = Collections.synchronizedList(new ArrayList<Exception>());
+		long size;
+		try (PositionalFileOutput out = new PositionalFileOutput(outputFile)) {
+			List<Thread> writers = new ArrayList<Thread>();
+			for (int t = 0; t < threads; t++) {
+				MatchSink sink = out.newSink();
+				Map<String, Integer> words = new HashMap<String, Integer>();
+				words.put("q", 1);
+				words.put("thread" + t, 1);
+				writers.add(new Thread(() -> {
+					try {
+						for (int i = 1; i <= lines; i++) sink.onMatch(i, 0, query, words);
+						sink.flush();
+					}
+					catch (IOException e) {
+						errors.add(e);
+					}
+				}));
+			}
+			for (Thread t : writers) t.start();
+			for (Thread t : writers) t.join();
+			size = out.size();
+		}
+		assertEquals(Collections.emptyList(), errors);
+		assertEquals(size, Files.size(getPath(outputFile)));
+
+		Map<String, Long> lastLine = new HashMap<String, Long>();
+		int count = 0;
+		for (String line : Files.readAllLines(getPath(outputFile), StandardCharsets.UTF_8)) {
+			JsonObject json = new JsonParser().parse(line).getAsJsonObject();
+			String thread = json.get("result").getAsJsonObject().entrySet().iterator().next().getKey();
+			long n = json.get("line").getAsLong();
+			assertEquals(thread, lastLine.getOrDefault(thread, 0L) + 1, n);
+			lastLine.put(thread, n);
+			count++;
+		}
+		assertEquals(threads * lines, count);
+	}
+
+	/**
+	 * Ordered: chunks handed in out of order, by several threads - the file has them in sequence order; empty ones included.
+	 * @throws Exception
+	 */
+	@Test
+	public void test_write_InSequence() throws Exception {
+		int chunks = 200;
+		List<Integer> order = new ArrayList<Integer>();
+		for (int i = 0; i < chunks; i++) order.add(i);
+		Collections.shuffle(order, new Random(1));
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < chunks; i++) expected.append(chunk(i));
+
+		List<Exception> errors = Collections.synchronizedList(new ArrayList<Exception>());
+		try (PositionalFileOutput out = new PositionalFileOutput(outputFile)) {
+			List<Thread> writers = new ArrayList<Thread>();
+			for (int t = 0; t < 4; t++) {
+				List<Integer> mine = order.subList(t * chunks / 4, (t + 1) * chunks / 4);
+				Collections.sort(mine);
+				writers.add(new Thread(() -> {
+					try {
+						for (int i : mine) out.write(i, ByteBuffer.wrap(chunk(i).getBytes(StandardCharsets.UTF_8)));
+					}
+					catch (IOException e) {
+						errors.add(e);
+					}
+				}));
+			}
+			for (Thread t : writers) t.start();
+			for (Thread t : writers) t.join();
+		}
+		assertEquals(Collections.emptyList(), errors);
+		assertEquals(expected.toString(), new String(Files.readAllBytes(getPath(outputFile)), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Concurrent matcher writing to a file: same matches as the sequential matcher.
+	 * Order aside, and line numbers aside: concurrent workers number the records each of them took.
+	 * @throws Exception
+	 */
+	@Test
+	public void test_matchToFile_SameLinesAsSequential() throws Exception {
+		String dataFile = "data-" + UUID.randomUUID() + ".txt";
+		String queryFile = "queries-" + UUID.randomUUID() + ".txt";
+		Files.write(getPath(dataFile), lines(new Random(9), 3000, 3).getBytes());
+		Files.write(getPath(queryFile), "w1\nw2,w3\nw4,w5\n".getBytes());
+		try {
+			ByteArrayOutputStream expected = new ByteArrayOutputStream();
+			long expectedCount = new RecordMatcher(dataFile, queryFile).match(expected);
+			new ConcurrentRecordMatcher(dataFile, queryFile, 3, null, null, null).matchToFile(outputFile);
+
+			List<String> expectedLines = withoutLineNumbers(Arrays.asList(expected.toString().split(System.lineSeparator())));
+			List<String> lines = withoutLineNumbers(Files.readAllLines(getPath(outputFile), StandardCharsets.UTF_8));
+			assertEquals(expectedCount, lines.size());
+			Collections.sort(expectedLines);
+			Collections.sort(lines);
+			assertEquals(expectedLines, lines);
+		}
+		finally {
+			Files.deleteIfExists(getPath(dataFile));
+			Files.deleteIfExists(getPath(queryFile));
+		}
+	}
+
+	private static List<String> withoutLineNumbers(List<String> lines) {
+		List<String> result = new ArrayList<String>();
+		for (String line : lines) {
+			JsonObject json = new JsonParser().parse(line).getAsJsonObject();
+			json.remove("line");
+			result.add(json.toString());
+		}
+		return result;
+	}
+
+	// every 7th chunk empty
+	private static String chunk(int i) {
+		return (i % 7 == 0? "" : "chunk " + i + "\n");
+	}
+}
@@ -0,0 +1,112 @@
+package com.idt.codechallenge;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+/**
+ * Collection of JUnit tests for QueryMatcher.
+ */
+@RunWith(PowerMockRunner.class)
+public class QueryMatcherTest extends AbstractTest {
+
+	private String dataFile;
+	private String queryFile;
+
+	/**
+	 * Test setup - once for all tests.
+	 */
+	@BeforeClass
+	public static void setupAll() {
+		AbstractTest.setupAll();
+	}
+
+	@AfterClass
+	public static void teardownAll() throws IOException {
+		AbstractTest.teardownAll();
+	}
+
+	/**
+	 * Test setup - once for each test: small vocabulary, so that there are plenty of matches.
+	 */
+	@Before
+	public void setupOne() throws IOException {
+		dataFile = "data-" + UUID.randomUUID() + ".txt";
+		queryFile = "queries-" + UUID.randomUUID() + ".txt";
+		Random random = new Random(11);
+		Files.write(getPath(dataFile), lines(random, 4000, 8).getBytes());
+		Files.write(getPath(queryFile), lines(random, 30, 2).getBytes());
+	}
+
+	@After
+	public void teardownOne() throws IOException {
+		Files.deleteIfExists(getPath(dataFile));
+		Files.deleteIfExists(getPath(queryFile));
+	}
+
+	/**
+	 * Parallel stream of records, small ranges: same output, byte for byte, as the sequential matcher.
+	 * @throws Exception
+	 */
+	@Test
+	public void test_match_ParallelSameAsSequential() throws Exception {
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		long expectedCount = new RecordMatcher(dataFile, queryFile).match(expected);
+		assertTrue(expectedCount > 100);
+
+		QueryMatcher matcher = QueryMatcher.load(queryFile);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		long count;
+		try (Stream<Record> records = RecordSpliterator.stream(dataFile, 64, 512)) {
+			count = matcher.match(records.parallel(), new JsonMatchSink(out));
+		}
+		assertEquals(expectedCount, count);
+		assertEquals(expected.toString(), out.toString());
+	}
+
+	/**
+	 * Plain stream pipeline, with the sink as the ordered consumer.
+	 * @throws Exception
+	 */
+	@Test
+	public void test_matchRecord_FlatMap() throws Exception {
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		new RecordMatcher(dataFile, queryFile).match(expected);
+
+		QueryMatcher matcher = QueryMatcher.load(queryFile);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		JsonMatchSink sink = new JsonMatchSink(out);
+		try (Stream<Record> records = RecordSpliterator.stream(dataFile, 64, 512)) {
+			records.parallel().flatMap(matcher::matchRecord).forEachOrdered(QueryMatcher.into(sink));
+		}
+		sink.flush();
+		assertEquals(expected.toString(), out.toString());
+	}
+
+	/**
+	 * Sink's IOException comes out as is.
+	 * @throws Exception
+	 */
+	@Test(expected = IOException.class)
+	public void test_match_SinkFails() throws Exception {
+		QueryMatcher matcher = QueryMatcher.load(queryFile);
+		try (Stream<Record> records = RecordSpliterator.stream(dataFile, 64, 512)) {
+			matcher.match(records.parallel(), (line, queryId, queryWords, wordCounts) -> {
+				throw new IOException("sink is full");
+			});
+		}
+	}
+}
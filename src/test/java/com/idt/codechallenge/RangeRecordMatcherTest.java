@@ -0,0 +1,119 @@
+package com.idt.codechallenge;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+/**
+ * Collection of JUnit tests for RangeRecordMatcher.
+ */
+@RunWith(PowerMockRunner.class)
+public class RangeRecordMatcherTest extends AbstractTest {
+
+	private String dataFile;
+	private String queryFile;
+
+	/**
+	 * Test setup - once for all tests.
+	 */
+	@BeforeClass
+	public static void setupAll() {
+		AbstractTest.setupAll();
+	}
+
+	@AfterClass
+	public static void teardownAll() throws IOException {
+		AbstractTest.teardownAll();
+	}
+
+	/**
+	 * Test setup - once for each test: fresh file names.
+	 */
+	@Before
+	public void setupOne() {
+		dataFile = "data-" + UUID.randomUUID() + ".txt";
+		queryFile = "queries-" + UUID.randomUUID() + ".txt";
+	}
+
+	@After
+	public void teardownOne() throws IOException {
+		Files.deleteIfExists(getPath(dataFile));
+		Files.deleteIfExists(getPath(queryFile));
+	}
+
+	/**
+	 * Ranges cut at every byte: each record is matched exactly once, in the range it starts in.
+	 * @throws Exception
+	 */
+	@Test
+	public void test_match_EveryCut() throws Exception {
+		String data = 
+				"cat,dog,lizard\r\n"	// 1: match
+				+"du,da\n"				// 2
+				+"\n"					// 3: empty
+				+"dog,cat\n"			// 4: match
+				+"cat,dog,cow";			// 5: match, unterminated
+		Files.write(getPath(dataFile), data.getBytes());
+		Files.write(getPath(queryFile), "cat,dog\n".getBytes());
+
+		for (int cut = 0; cut <= data.length(); cut++) {
+			RangeRecordMatcher first = new RangeRecordMatcher(dataFile, queryFile, 0, cut);
+			RangeRecordMatcher second = new RangeRecordMatcher(dataFile, queryFile, cut, Long.MAX_VALUE);
+			long matches = first.match(new ByteArrayOutputStream()) + second.match(new ByteArrayOutputStream());
+			assertEquals("cut at " + cut, 3, matches);
+			assertEquals("cut at " + cut, 5, first.getRecordCount() + second.getRecordCount());
+		}
+		// a record starting right at the cut belongs to the second range
+		RangeRecordMatcher second = new RangeRecordMatcher(dataFile, queryFile, data.indexOf("dog,cat"), Long.MAX_VALUE);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertEquals(2, second.match(out));
+		assertEquals(2, second.getRecordCount());
+		assertTrue(out.toString().startsWith("{\"line\":1,"));
+	}
+
+	/**
+	 * Ranges put back together, line numbers shifted: same output as the whole file.
+	 * @throws Exception
+	 */
+	@Test
+	public void test_match_RangesMakeWhole() throws Exception {
+		String data = lines(new Random(11), 500, 6);
+		Files.write(getPath(dataFile), data.getBytes());
+		Files.write(getPath(queryFile), "w1,w2\nw3\nw4,w5,w6\n".getBytes());
+
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		new RecordMatcher(dataFile, queryFile).match(expected);
+
+		StringBuilder merged = new StringBuilder();
+		long base = 0;
+		long[] bounds = ShardCoordinator.split(data.length(), 7);
+		for (int i = 0; i < 7; i++) {
+			RangeRecordMatcher rm = new RangeRecordMatcher(dataFile, queryFile, bounds[i], bounds[i + 1]);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			rm.match(out);
+			for (String line : out.toString().split(System.lineSeparator())) {
+				if (!line.isEmpty()) merged.append(ShardCoordinator.renumber(line, base)).append(System.lineSeparator());
+			}
+			base += rm.getRecordCount();
+		}
+		assertEquals(500, base);
+		assertEquals(expected.toString(), merged.toString());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_newRangeRecordMatcher_InvalidRange() {
+		new RangeRecordMatcher(dataFile, queryFile, 10, 5);
+	}
+}
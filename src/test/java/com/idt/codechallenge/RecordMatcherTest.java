@@ -14,14 +14,18 @@ import static org.junit.Assert.*;
 
 import com.google.common.jimfs.Configuration;
 import com.google.common.jimfs.Jimfs;
+import com.idt.codechallenge.metrics.QueryProfiler;
 
+import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.StringWriter;
 import java.nio.charset.Charset;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 import java.util.UUID;
@@ -239,6 +243,88 @@ public class RecordMatcherTest extends AbstractTest {
 		assertFalse(Files.exists(pqf));
 	}
 
+	/**
+	 * Runs match into a custom sink: every match is handed over with its line #, query id and the full record.
+	 * @throws Exception
+	 */
+	@Test
+	public void test_match_IntoSink() throws Exception {
+		
+		String data = 
+				"cat,dog,lizard,lizard,lion\r\n"
+				+"du,du,du,da,da,da\r\n"
+				+"ask,me,about,cat,and,dog,on,wed,and,thu\r\n"
+				;
+		String qry = 
+				"cat,dog\r\n"
+				+"ask,me\r\n"
+				;
+
+		String dataFile = "data-" + UUID.randomUUID() + ".txt";
+		String queryFile = "queries-"+ UUID.randomUUID() + ".txt";
+		Files.write(getPath(dataFile), data.getBytes());
+		Files.write(getPath(queryFile), qry.getBytes());
+
+		// TEST
+		List<String> received = new ArrayList<String>();
+		RecordMatcher rm = new RecordMatcher(dataFile, queryFile);		
+		long actualMatchCount = rm.match((line, queryId, queryWords, wordCounts) -> 
+				received.add(line + ":" + queryId + ":" + wordCounts.get("and")));
+		
+		assertEquals("Wrong # of matches found", 3, actualMatchCount);
+		assertEquals(Arrays.asList("1:0:null", "3:0:2", "3:1:2"), received);
+		
+		// cleanup
+		Files.delete(getPath(dataFile));
+		Files.delete(getPath(queryFile));
+	}
+
+	@Test
+	public void test_match_Profiled() throws Exception {
+		
+		String data = 
+				"cat,dog,lizard,lizard,lion\r\n"
+				+"du,du,du,da,da,da\r\n"
+				+"ask,me,about,cat,and,dog,on,wed,and,thu\r\n"
+				;
+		String qry = 
+				"cat,dog\r\n"
+				+"ask,me\r\n"
+				+"owl\r\n"
+				;
+
+		String dataFile = "data-" + UUID.randomUUID() + ".txt";
+		String queryFile = "queries-"+ UUID.randomUUID() + ".txt";
+		Files.write(getPath(dataFile), data.getBytes());
+		Files.write(getPath(queryFile), qry.getBytes());
+
+		// TEST: sample every record
+		QueryProfiler profiler = new QueryProfiler(1);
+		RecordMatcher rm = new RecordMatcher(dataFile, queryFile, null, null, null, true, null, null, profiler);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertEquals("Wrong # of matches found", 3, rm.match(out));
+		
+		List<QueryProfiler.QueryStats> stats = profiler.getStats();
+		assertEquals(3, stats.size());
+		long outputChars = 0;
+		for (QueryProfiler.QueryStats s : stats) {
+			assertEquals(3, s.getEvaluations());
+			assertEquals(s.getQueryId() == 0? 2 : s.getQueryId() == 1? 1 : 0, s.getMatches());
+			assertTrue(s.getEstimatedMillis() > 0);
+			if (s.getQueryId() == 2) assertEquals("owl", s.getQuery());
+			outputChars += s.getOutputChars();
+		}
+		assertEquals(out.toString().length(), outputChars);
+		
+		StringWriter report = new StringWriter();
+		profiler.writeReport("profile.csv", report);
+		assertEquals(4, report.toString().split("\n").length);
+		
+		// cleanup
+		Files.delete(getPath(dataFile));
+		Files.delete(getPath(queryFile));
+	}
+
 	/**
 	 * Makes a fake query file.
 	 * Format: CSV
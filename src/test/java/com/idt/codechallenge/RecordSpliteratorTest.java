@@ -0,0 +1,159 @@
+package com.idt.codechallenge;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+/**
+ * Collection of JUnit tests for RecordSpliterator.
+ */
+@RunWith(PowerMockRunner.class)
+public class RecordSpliteratorTest extends AbstractTest {
+
+	private String dataFile;
+
+	/**
+	 * Test setup - once for all tests.
+	 */
+	@BeforeClass
+	public static void setupAll() {
+		AbstractTest.setupAll();
+	}
+
+	@AfterClass
+	public static void teardownAll() throws IOException {
+		AbstractTest.teardownAll();
+	}
+
+	/**
+	 * Test setup - once for each test: fresh file name.
+	 */
+	@Before
+	public void setupOne() {
+		dataFile = "data-" + UUID.randomUUID() + ".txt";
+	}
+
+	@After
+	public void teardownOne() throws IOException {
+		Files.deleteIfExists(getPath(dataFile));
+	}
+
+	/**
+	 * Split down to tiny ranges, parallel: every record once, in order, with its exact line # and offset.
+	 * @throws Exception
+	 */
+	@Test
+	public void test_stream_ParallelSameAsSequential() throws Exception {
+		StringBuilder data = new StringBuilder();
+		List<String> expected = new ArrayList<String>();
+		for (int i = 1; i <= 3000; i++) {
+			String text = (i % 7 == 0? "" : "w" + i + (i % 3 == 0? ",long,long,long,record" : ""));
+			expected.add(i + ":" + data.length() + ":" + text);
+			data.append(text).append(i % 5 == 0? "\r\n" : "\n");
+		}
+		// unterminated last line
+		expected.add("3001:" + data.length() + ":last");
+		data.append("last");
+		Files.write(getPath(dataFile), data.toString().getBytes());
+
+		for (boolean isParallel : new boolean[] {false, true}) {
+			try (Stream<Record> records = RecordSpliterator.stream(dataFile, 16, 32)) {
+				List<String> actual = (isParallel? records.parallel() : records)
+						.map(r -> r.getLine() + ":" + r.getOffset() + ":" + r.getText())
+						.collect(Collectors.toList());
+				assertEquals("parallel: " + isParallel, expected, actual);
+			}
+		}
+	}
+
+	/**
+	 * Records much longer than a block: cuts land blocks past where they were aimed; line #s are still exact.
+	 * @throws Exception
+	 */
+	@Test
+	public void test_stream_RecordsSpanBlocks() throws Exception {
+		Random random = new Random(3);
+		StringBuilder data = new StringBuilder();
+		List<String> expected = new ArrayList<String>();
+		for (int i = 1; i <= 2000; i++) {
+			StringBuilder text = new StringBuilder();
+			int length = (random.nextInt(10) == 0? random.nextInt(200) : random.nextInt(8));
+			for (int c = 0; c < length; c++) text.append((char)('a' + random.nextInt(26)));
+			expected.add(i + ":" + data.length());
+			data.append(text).append("\n");
+		}
+		Files.write(getPath(dataFile), data.toString().getBytes());
+
+		try (Stream<Record> records = RecordSpliterator.stream(dataFile, 16, 4)) {
+			assertEquals(expected, records.parallel().map(r -> r.getLine() + ":" + r.getOffset()).collect(Collectors.toList()));
+		}
+	}
+
+	/**
+	 * A split hands over whole records: the first half ends with a line break, the second one starts right after it.
+	 * @throws Exception
+	 */
+	@Test
+	public void test_trySplit_WholeRecords() throws Exception {
+		Files.write(getPath(dataFile), "aaaa\nbbbbbbbbbbbbbbbbbbbb\ncc\ndd\n".getBytes());
+		try (Stream<Record> records = RecordSpliterator.stream(dataFile, 4, 4)) {
+			Spliterator<Record> second = records.spliterator();
+			Spliterator<Record> first = second.trySplit();
+			assertNotNull(first);
+			List<Record> head = new ArrayList<Record>();
+			first.forEachRemaining(head::add);
+			List<Record> tail = new ArrayList<Record>();
+			second.forEachRemaining(tail::add);
+			assertEquals(2, head.size());
+			assertEquals("bbbbbbbbbbbbbbbbbbbb", head.get(1).getText());
+			assertEquals(2, tail.size());
+			assertEquals(3, tail.get(0).getLine());
+			assertEquals(26, tail.get(0).getOffset());
+			assertEquals("cc", tail.get(0).getText());
+		}
+	}
+
+	/**
+	 * One long record: nowhere to cut.
+	 * @throws Exception
+	 */
+	@Test
+	public void test_trySplit_NoRecordStart() throws Exception {
+		Files.write(getPath(dataFile), "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa\n".getBytes());
+		try (Stream<Record> records = RecordSpliterator.stream(dataFile, 4, 4)) {
+			Spliterator<Record> spliterator = records.spliterator();
+			assertNull(spliterator.trySplit());
+			assertEquals(1, spliterator.estimateSize());
+		}
+	}
+
+	@Test
+	public void test_stream_Empty() throws Exception {
+		Files.write(getPath(dataFile), new byte[0]);
+		try (Stream<Record> records = RecordSpliterator.stream(dataFile)) {
+			assertEquals(0, records.parallel().count());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_stream_NoBuffer() throws Exception {
+		Files.write(getPath(dataFile), "a\n".getBytes());
+		RecordSpliterator.stream(dataFile, 0);
+	}
+}
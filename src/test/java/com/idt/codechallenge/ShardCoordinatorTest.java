@@ -0,0 +1,102 @@
+package com.idt.codechallenge;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Collection of JUnit tests for ShardCoordinator.
+ * Child JVMs see the real FS only: these tests use it too (no JIMFS).
+ */
+public class ShardCoordinatorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void test_split() {
+		assertArrayEquals(new long[] {0, 3, 6, 10}, ShardCoordinator.split(10, 3));
+		assertArrayEquals(new long[] {0, 0, 1}, ShardCoordinator.split(1, 2));
+		assertArrayEquals(new long[] {0, 0}, ShardCoordinator.split(0, 1));
+	}
+
+	@Test
+	public void test_renumber() {
+		String line = "{\"line\":2,\"query\":\"[red, apple]\",\"result\":{\"chair\":1}}";
+		assertSame(line, ShardCoordinator.renumber(line, 0));
+		assertEquals("{\"line\":1002,\"query\":\"[red, apple]\",\"result\":{\"chair\":1}}", ShardCoordinator.renumber(line, 1000));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void test_renumber_NotAResult() {
+		ShardCoordinator.renumber("isVerbose=null", 10);
+	}
+
+	/**
+	 * Real child JVMs: merged output is the same as one JVM's; a shard's work files are gone afterwards.
+	 * @throws Exception
+	 */
+	@Test
+	public void test_match_ChildJVMs() throws Exception {
+		File data = folder.newFile("data.txt");
+		File queries = folder.newFile("queries.txt");
+		Files.write(data.toPath(), AbstractTest.lines(new Random(5), 2000, 6).getBytes());
+		Files.write(queries.toPath(), "w1,w2\nw3\nw4,w5,w6\n".getBytes());
+
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		long expectedCount = new RecordMatcher(data.getPath(), queries.getPath()).match(expected);
+
+		File work = folder.newFolder("work");
+		ShardCoordinator coordinator = ShardCoordinator.Builder.builder(data.getPath(), queries.getPath())
+				.withShards(3)
+				.withHeap("64m")
+				.withWorkDir(work.getPath())
+				.build();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertEquals(expectedCount, coordinator.match(out));
+		assertEquals(expected.toString(), out.toString());
+		assertTrue(new File(work, "shard-2.jsonl.done").exists());
+	}
+
+	/**
+	 * Children out of time: killed, retried, given up on - with the reason.
+	 * @throws Exception
+	 */
+	@Test(timeout = 60000)
+	public void test_match_Timeout() throws Exception {
+		File data = folder.newFile("data.txt");
+		File queries = folder.newFile("queries.txt");
+		Files.write(data.toPath(), "w1,w2\nw3\n".getBytes());
+		Files.write(queries.toPath(), "w1\n".getBytes());
+
+		File work = folder.newFolder("work");
+		ShardCoordinator coordinator = ShardCoordinator.Builder.builder(data.getPath(), queries.getPath())
+				.withShards(2)
+				.withRetries(1)
+				// no JVM starts that fast
+				.withTimeout(1L)
+				.withWorkDir(work.getPath())
+				.build();
+		try {
+			coordinator.match(new ByteArrayOutputStream());
+			fail("Shards out of time should fail the match");
+		}
+		catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("failed 2 times (last: timed out after 1 ms)"));
+		}
+		assertFalse(new File(work, "shard-0.jsonl.done").exists());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_newShardCoordinator_BadTimeout() {
+		ShardCoordinator.Builder.builder("data.txt", "queries.txt").withTimeout(0L).build();
+	}
+}
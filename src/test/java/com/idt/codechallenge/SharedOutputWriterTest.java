@@ -0,0 +1,105 @@
+package com.idt.codechallenge;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Collection of JUnit tests for SharedOutputWriter.
+ */
+public class SharedOutputWriterTest {
+
+	/**
+	 * Many threads, one sink each, a small queue: every line comes out whole, each file's lines in their order.
+	 * @throws Exception
+	 */
+	@Test
+	public void test_sinkFor_NoInterleaving() throws Exception {
+		int files = 8;
+		int lines = 5000;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Set<String> query = Collections.singleton("q");
+		Map<String, Integer> words = new HashMap<String, Integer>();
+		words.put("q", 1);
+		words.put("word", 2);
+
+		try (SharedOutputWriter writer = new SharedOutputWriter(out, 2)) {
+			List<Thread> threads = new ArrayList<Thread>();
+			List<Exception> errors = Collections.synchronizedList(new ArrayList<Exception>());
+			for (int f = 0; f < files; f++) {
+				MatchSink sink = writer.sinkFor("file-" + f);
+				threads.add(new Thread(() -> {
+					try {
+						for (int i = 1; i <= lines; i++) sink.onMatch(i, 0, query, words);
+						sink.flush();
+					}
+					catch (IOException e) {
+						errors.add(e);
+					}
+				}));
+			}
+			for (Thread t : threads) t.start();
+			for (Thread t : threads) t.join();
+			assertEquals(Collections.emptyList(), errors);
+		}
+
+		Map<String, Long> lastLine = new HashMap<String, Long>();
+		int count = 0;
+		for (String line : out.toString().split(System.lineSeparator())) {
+			JsonObject json = new JsonParser().parse(line).getAsJsonObject();
+			String file = json.get("file").getAsString();
+			long n = json.get("line").getAsLong();
+			assertEquals(file, lastLine.getOrDefault(file, 0L) + 1, n);
+			assertEquals("{\"word\":2}", json.get("result").toString());
+			lastLine.put(file, n);
+			count++;
+		}
+		assertEquals(files * lines, count);
+	}
+
+	/**
+	 * The output failing: the sink's next chunk fails, so does close().
+	 * @throws Exception
+	 */
+	@Test
+	public void test_sinkFor_OutputFails() throws Exception {
+		OutputStream failing = new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				throw new IOException("disk full");
+			}
+		};
+		SharedOutputWriter writer = new SharedOutputWriter(failing, 1);
+		MatchSink sink = writer.sinkFor("data.txt");
+		IOException error = null;
+		try {
+			for (int i = 1; i <= 100000 && error == null; i++) {
+				sink.onMatch(i, 0, Collections.singleton("q"), Collections.singletonMap("q", 1));
+			}
+		}
+		catch (IOException e) {
+			error = e;
+		}
+		assertNotNull(error);
+		try {
+			writer.close();
+			fail("close() should fail too");
+		}
+		catch (IOException e) {
+			assertEquals("disk full", e.getCause().getMessage());
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package com.idt.codechallenge;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+/**
+ * Collection of JUnit tests for SharedScanMatcher.
+ */
+@RunWith(PowerMockRunner.class)
+public class SharedScanMatcherTest extends AbstractTest {
+
+	private String dataFile;
+	private List<String> queryFiles;
+
+	/**
+	 * Test setup - once for all tests.
+	 */
+	@BeforeClass
+	public static void setupAll() {
+		AbstractTest.setupAll();
+	}
+
+	@AfterClass
+	public static void teardownAll() throws IOException {
+		AbstractTest.teardownAll();
+	}
+
+	/**
+	 * Test setup - once for each test: one data file; query files of different sizes, one with the same query twice,
+	 * one with queries that are in another file too.
+	 */
+	@Before
+	public void setupOne() throws IOException {
+		Random random = new Random(3);
+		dataFile = "data-" + UUID.randomUUID() + ".txt";
+		Files.write(getPath(dataFile), lines(random, 2000, 8).getBytes());
+		queryFiles = new ArrayList<String>();
+		String[] contents = {lines(random, 20, 2), "w1,w2\nw1,w2\nw3\n", lines(random, 5, 3) + "w3\n"};
+		for (String content : contents) {
+			String queryFile = "queries-" + UUID.randomUUID() + ".txt";
+			Files.write(getPath(queryFile), content.getBytes());
+			queryFiles.add(queryFile);
+		}
+	}
+
+	@After
+	public void teardownOne() throws IOException {
+		Files.deleteIfExists(getPath(dataFile));
+		for (String queryFile : queryFiles) Files.deleteIfExists(getPath(queryFile));
+	}
+
+	/**
+	 * Each query file's output is what a run with that query file alone gives, byte for byte.
+	 * @throws Exception
+	 */
+	@Test
+	public void test_match_SameAsSeparateRuns() throws Exception {
+		List<ByteArrayOutputStream> outs = new ArrayList<ByteArrayOutputStream>();
+		for (int i = 0; i < queryFiles.size(); i++) outs.add(new ByteArrayOutputStream());
+		long[] counts = new SharedScanMatcher(dataFile, queryFiles, null, null, null).matchTo(new ArrayList<OutputStream>(outs));
+
+		for (int i = 0; i < queryFiles.size(); i++) {
+			ByteArrayOutputStream expected = new ByteArrayOutputStream();
+			long expectedCount = new RecordMatcher(dataFile, queryFiles.get(i)).match(expected);
+			assertTrue(expectedCount > 0);
+			assertEquals(queryFiles.get(i), expectedCount, counts[i]);
+			assertEquals(queryFiles.get(i), expected.toString(), outs.get(i).toString());
+		}
+	}
+
+	/**
+	 * A query with no words matches every record - same as RecordMatcher; the queries around it keep their ids.
+	 * @throws Exception
+	 */
+	@Test
+	public void test_match_EmptyQuery() throws Exception {
+		String queryFile = "queries-" + UUID.randomUUID() + ".txt";
+		Files.write(getPath(queryFile), "w1,w2\n,\nw3\n".getBytes());
+		queryFiles.add(0, queryFile);
+		List<ByteArrayOutputStream> outs = new ArrayList<ByteArrayOutputStream>();
+		for (int i = 0; i < queryFiles.size(); i++) outs.add(new ByteArrayOutputStream());
+		long[] counts = new SharedScanMatcher(dataFile, queryFiles, null, null, null).matchTo(new ArrayList<OutputStream>(outs));
+
+		for (int i = 0; i < queryFiles.size(); i++) {
+			ByteArrayOutputStream expected = new ByteArrayOutputStream();
+			long expectedCount = new RecordMatcher(dataFile, queryFiles.get(i)).match(expected);
+			assertEquals(queryFiles.get(i), expectedCount, counts[i]);
+			assertEquals(queryFiles.get(i), expected.toString(), outs.get(i).toString());
+		}
+		// every record, at least
+		assertTrue(counts[0] >= 2000);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_match_SinkPerQueryFile() throws Exception {
+		new SharedScanMatcher(dataFile, queryFiles, null, null, null).matchTo(Arrays.asList(new ByteArrayOutputStream()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_newSharedScanMatcher_NoQueryFiles() {
+		new SharedScanMatcher(dataFile, new ArrayList<String>(), null, null, null);
+	}
+}
@@ -0,0 +1,148 @@
+package com.idt.codechallenge;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+/**
+ * Collection of JUnit tests for WorkloadGenerator.
+ */
+@RunWith(PowerMockRunner.class)
+public class WorkloadGeneratorTest extends AbstractTest {
+
+	private String dataFile;
+	private String queryFile;
+
+	@BeforeClass
+	public static void setupAll() {
+		AbstractTest.setupAll();
+	}
+
+	@AfterClass
+	public static void teardownAll() throws IOException {
+		AbstractTest.teardownAll();
+	}
+
+	@Before
+	public void setupOne() {
+		dataFile = "data-" + UUID.randomUUID() + ".txt";
+		queryFile = "queries-" + UUID.randomUUID() + ".txt";
+	}
+
+	@After
+	public void teardownOne() throws IOException {
+		Files.deleteIfExists(getPath(dataFile));
+		Files.deleteIfExists(getPath(queryFile));
+	}
+
+	@Test
+	public void test_word() {
+		assertEquals("a", WorkloadGenerator.word(0));
+		assertEquals("z", WorkloadGenerator.word(25));
+		assertEquals("aa", WorkloadGenerator.word(26));
+		assertEquals("ba", WorkloadGenerator.word(52));
+	}
+
+	@Test
+	public void test_parseSize() {
+		assertEquals(100, WorkloadGenerator.parseSize("100"));
+		assertEquals(20L << 30, WorkloadGenerator.parseSize("20g"));
+		assertEquals(5L << 20, WorkloadGenerator.parseSize("5M"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_build_InvalidDuplicateRatio() {
+		WorkloadGenerator.Builder.builder().withDuplicateQueryRatio(1.5).build();
+	}
+
+	/**
+	 * Same seed - same bytes; shape as requested; most frequent word is "a".
+	 * @throws Exception
+	 */
+	@Test
+	public void test_writeData() throws Exception {
+		WorkloadGenerator generator = WorkloadGenerator.Builder.builder().withVocabularySize(1000).withWordsPerRecord(7).withSeed(7).build();
+		long bytes = generator.writeData(dataFile, 2000);
+
+		byte[] first = Files.readAllBytes(getPath(dataFile));
+		assertEquals(bytes, first.length);
+		List<String> lines = Files.readAllLines(getPath(dataFile));
+		assertEquals(2000, lines.size());
+		int withA = 0;
+		int withB = 0;
+		for (String line : lines) {
+			List<String> words = Arrays.asList(line.split(","));
+			assertEquals(7, words.size());
+			if (words.contains("a")) withA++;
+			if (words.contains("b")) withB++;
+		}
+		assertTrue("Zipf: rank 0 should be the most frequent; a=" + withA + ", b=" + withB, withA > withB);
+
+		generator.writeData(dataFile, 2000);
+		assertArrayEquals("Same seed should give the same file", first, Files.readAllBytes(getPath(dataFile)));
+	}
+
+	@Test
+	public void test_writeData_SizeLimit() throws Exception {
+		WorkloadGenerator generator = WorkloadGenerator.Builder.builder().build();
+		long bytes = generator.writeData(dataFile, Long.MAX_VALUE, 10000);
+		assertTrue(bytes >= 10000);
+		assertTrue(bytes < 10000 + 1000);
+		assertEquals(bytes, Files.size(getPath(dataFile)));
+	}
+
+	@Test
+	public void test_writeQueries_Duplicates() throws Exception {
+		WorkloadGenerator generator = WorkloadGenerator.Builder.builder().withQueryLength(3).withDuplicateQueryRatio(0.5).build();
+		int duplicates = generator.writeQueries(queryFile, 1000);
+
+		List<String> lines = Files.readAllLines(getPath(queryFile));
+		assertEquals(1000, lines.size());
+		assertTrue("about half should be duplicates: " + duplicates, duplicates > 400 && duplicates < 600);
+		Set<String> distinct = new HashSet<String>(lines);
+		assertTrue(distinct.size() <= 1000 - duplicates);
+		for (String line : lines) {
+			assertEquals(3, Utils.toQueryWords(line).size());
+		}
+	}
+
+	/**
+	 * Queries match about the requested share of records.
+	 * @throws Exception
+	 */
+	@Test
+	public void test_writeQueries_Selectivity() throws Exception {
+		double selectivity = 0.01;
+		WorkloadGenerator generator = WorkloadGenerator.Builder.builder()
+				.withVocabularySize(2000)
+				.withWordsPerRecord(20)
+				.withQueryLength(2)
+				.withSelectivity(selectivity)
+				.build();
+		generator.writeData(dataFile, 20000);
+		generator.writeQueries(queryFile, 50);
+
+		DataIndex index = DataIndex.load(dataFile, 8192);
+		long matches = 0;
+		List<Set<String>> queries = Utils.readQueries(queryFile, 8192);
+		for (Set<String> q : queries) {
+			matches += index.find(q).length;
+		}
+		double actual = (double)matches / queries.size() / index.size();
+		assertTrue("selectivity should be near " + selectivity + ": " + actual, actual > selectivity / 2 && actual < selectivity * 2);
+	}
+}
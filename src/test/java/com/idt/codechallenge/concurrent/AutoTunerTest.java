@@ -0,0 +1,81 @@
+package com.idt.codechallenge.concurrent;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.idt.codechallenge.metrics.MatcherMetrics;
+
+/**
+ * Collection of JUnit tests for AutoTuner: hill-climbing steps fed with made-up rates.
+ */
+public class AutoTunerTest {
+
+	@Test
+	public void test_adjust_GrowsWhileBetter() {
+		AutoTuner tuner = new AutoTuner(8, 1024, 100, new MatcherMetrics(), null);
+		assertEquals(4, tuner.getWorkers());
+
+		// queue piling up: workers are behind - one more
+		tuner.adjust(1000, 1000000);
+		assertEquals(5, tuner.getWorkers());
+		assertTrue(tuner.isActive(4));
+		assertFalse(tuner.isActive(5));
+
+		// better: same way again, up to the max
+		tuner.adjust(1200, 1000000);
+		tuner.adjust(1400, 1000000);
+		tuner.adjust(1600, 1000000);
+		assertEquals(8, tuner.getWorkers());
+
+		// workers at the max: batch is moved instead
+		tuner.adjust(1800, 1000000);
+		assertEquals(8, tuner.getWorkers());
+		assertEquals(2048, tuner.getBatchSize());
+		assertEquals(1800, tuner.getBestRate(), 0);
+	}
+
+	@Test
+	public void test_adjust_UndoesWhenNotBetter() {
+		AutoTuner tuner = new AutoTuner(8, 1024, 100, new MatcherMetrics(), null);
+
+		// queue empty: reader is behind - one less
+		tuner.adjust(1000, 0);
+		assertEquals(3, tuner.getWorkers());
+
+		// no better (within EPSILON): back to 4; the next step measures that again, without comparing
+		tuner.adjust(1010, 0);
+		assertEquals(4, tuner.getWorkers());
+		tuner.adjust(1000, 0);
+		assertEquals(4, tuner.getWorkers());
+
+		// ...then tries the other knob
+		assertEquals(2048, tuner.getBatchSize());
+		// worse: back; the batch goes the other way next time
+		tuner.adjust(900, 0);
+		assertEquals(1024, tuner.getBatchSize());
+		tuner.adjust(1000, 0);
+		assertEquals(3, tuner.getWorkers());
+		tuner.adjust(900, 0);
+		assertEquals(4, tuner.getWorkers());
+		tuner.adjust(1000, 0);
+		assertEquals(512, tuner.getBatchSize());
+	}
+
+	@Test
+	public void test_adjust_Limits() {
+		AutoTuner tuner = new AutoTuner(1, 1, 100, new MatcherMetrics(), null);
+		assertEquals(1, tuner.getWorkers());
+		assertEquals(AutoTuner.MIN_BATCH, tuner.getBatchSize());
+
+		// one worker, the only way for the batch is up
+		for (int i = 0; i < 20; i++) tuner.adjust(1000 * (i + 1), 0);
+		assertEquals(1, tuner.getWorkers());
+		assertEquals(AutoTuner.MAX_BATCH, tuner.getBatchSize());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_new_NoWorkers() {
+		new AutoTuner(0, 1024, 100, new MatcherMetrics(), null);
+	}
+}
@@ -0,0 +1,114 @@
+package com.idt.codechallenge.concurrent;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import com.idt.codechallenge.AbstractTest;
+import com.idt.codechallenge.RecordMatcher;
+
+/**
+ * Collection of JUnit tests for ForkJoinRecordMatcher.
+ */
+@RunWith(PowerMockRunner.class)
+public class ForkJoinRecordMatcherTest extends AbstractTest {
+
+	private String dataFile;
+	private String queryFile;
+
+	/**
+	 * Test setup - once for all tests.
+	 */
+	@BeforeClass
+	public static void setupAll() {
+		AbstractTest.setupAll();
+	}
+
+	@AfterClass
+	public static void teardownAll() throws IOException {
+		AbstractTest.teardownAll();
+	}
+
+	/**
+	 * Test setup - once for each test: more records than fit in one chunk;
+	 * every 100th record is long and matches a lot (skew).
+	 */
+	@Before
+	public void setupOne() throws IOException {
+		dataFile = "data-" + UUID.randomUUID() + ".txt";
+		queryFile = "queries-" + UUID.randomUUID() + ".txt";
+		Random random = new Random(3);
+		StringBuilder data = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			int words = (i % 100 == 0? 60 : 6);
+			for (int w = 0; w < words; w++) data.append(w > 0? "," : "").append("w").append(random.nextInt(i % 100 == 0? 20 : 12));
+			data.append("\n");
+		}
+		StringBuilder queries = new StringBuilder();
+		for (int q = 0; q < 20; q++) queries.append("w").append(random.nextInt(20)).append(",w").append(random.nextInt(20)).append("\n");
+		Files.write(getPath(dataFile), data.toString().getBytes());
+		Files.write(getPath(queryFile), queries.toString().getBytes());
+	}
+
+	@After
+	public void teardownOne() throws IOException {
+		Files.deleteIfExists(getPath(dataFile));
+		Files.deleteIfExists(getPath(queryFile));
+	}
+
+	/**
+	 * Same output, byte for byte, as the sequential matcher - whatever the number of threads.
+	 * @throws Exception
+	 */
+	@Test
+	public void test_match_SameOrderAsSequential() throws Exception {
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		long expectedCount = new RecordMatcher(dataFile, queryFile, null, null, null, true, null, null).match(expected);
+		assertTrue(expectedCount > 1000);
+
+		for (int threads : new int[] {1, 4}) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			long count = new ForkJoinRecordMatcher(dataFile, queryFile, threads, null, null, null).match(out);
+			assertEquals("threads: " + threads, expectedCount, count);
+			assertEquals("threads: " + threads, expected.toString(), out.toString());
+		}
+	}
+
+	/**
+	 * Sink gets the matches from the calling thread, in (record, query) order.
+	 * @throws Exception
+	 */
+	@Test
+	public void test_match_Sink() throws Exception {
+		List<String> expected = new ArrayList<String>();
+		new RecordMatcher(dataFile, queryFile, null, null, null, true, null, null).match((line, queryId, queryWords, wordCounts) -> expected.add(line + ":" + queryId));
+
+		List<String> received = new ArrayList<String>();
+		Thread caller = Thread.currentThread();
+		long count = new ForkJoinRecordMatcher(dataFile, queryFile, 3, null, null, null).match((line, queryId, queryWords, wordCounts) -> {
+			assertSame(caller, Thread.currentThread());
+			received.add(line + ":" + queryId);
+		});
+		assertEquals(expected.size(), count);
+		assertEquals(expected, received);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_newForkJoinRecordMatcher_NoThreads() {
+		new ForkJoinRecordMatcher(dataFile, queryFile, 0, null, null, null);
+	}
+}
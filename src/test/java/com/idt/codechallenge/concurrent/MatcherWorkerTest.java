@@ -0,0 +1,173 @@
+package com.idt.codechallenge.concurrent;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import com.idt.codechallenge.MatchSink;
+import com.idt.codechallenge.metrics.MatcherMetrics;
+import com.idt.codechallenge.metrics.StageEvents;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Collection of JUnit tests for MatcherWorker.
+ */
+public class MatcherWorkerTest {
+
+	private final static int LINES = 2500;
+
+	/**
+	 * In-memory reader: all lines are there from the start.
+	 */
+	private static class ListDataReader implements DataReader, QueryHolder {
+		private final ConcurrentLinkedQueue<String> data;
+		private final List<Set<String>> queries;
+
+		ListDataReader(List<String> lines, List<Set<String>> q) {
+			data = new ConcurrentLinkedQueue<String>(lines);
+			queries = q;
+		}
+
+		@Override
+		public String readLine() {
+			return data.poll();
+		}
+
+		@Override
+		public boolean willHaveMore() {
+			return !data.isEmpty();
+		}
+
+		@Override
+		public List<Set<String>> getQueries() {
+			return queries;
+		}
+	}
+
+	private static ListDataReader reader() {
+		List<String> lines = new ArrayList<String>();
+		for (int i = 0; i < LINES; i++) {
+			lines.add(i % 10 == 0? "red,apple,chair" : "blue,pear");
+		}
+		List<Set<String>> queries = Arrays.asList(
+				new HashSet<String>(Arrays.asList("red", "apple")),
+				new HashSet<String>(Arrays.asList("pear")),
+				Collections.singleton("house"));
+		return new ListDataReader(lines, queries);
+	}
+
+	/**
+	 * Batches must not change what is matched, nor the rows reported.
+	 * @throws Exception
+	 */
+	@Test
+	public void test_call() throws Exception {
+		List<Long> rows = new ArrayList<Long>();
+		List<Integer> queryIds = new ArrayList<Integer>();
+		MatchSink sink = (line, queryId, queryWords, wordCounts) -> {
+			rows.add(line);
+			queryIds.add(queryId);
+		};
+		ListDataReader reader = reader();
+		assertEquals(LINES, new MatcherWorker(reader, reader, sink, false, false).call().longValue());
+
+		assertEquals(LINES, rows.size());
+		for (int i = 0; i < LINES; i++) {
+			assertEquals(i + 1, rows.get(i).longValue());
+			assertEquals(i % 10 == 0? 0 : 1, queryIds.get(i).intValue());
+		}
+	}
+
+	/**
+	 * Parked by the tuner while lines are waiting: the worker stops taking batches at once, not when it runs out of lines.
+	 * Active again - it takes the rest.
+	 * @throws Exception
+	 */
+	@Test(timeout = 10000)
+	public void test_call_ParkedWithLinesWaiting() throws Exception {
+		AtomicBoolean isActive = new AtomicBoolean(true);
+		AutoTuner tuner = new AutoTuner(2, AutoTuner.MIN_BATCH, AutoTuner.DEFAULT_INTERVAL_MILLIS, MatcherMetrics.global(), null) {
+			@Override
+			boolean isActive(int i) {
+				return isActive.get();
+			}
+		};
+		CountDownLatch parked = new CountDownLatch(1);
+		MatchSink sink = (line, queryId, queryWords, wordCounts) -> {
+			// first batch: park the worker while it is still at it
+			if (parked.getCount() > 0) {
+				isActive.set(false);
+				parked.countDown();
+			}
+		};
+		ListDataReader reader = reader();
+		FutureTask<Long> worker = new FutureTask<Long>(new MatcherWorker(reader, reader, sink, false, false, null, tuner, 0));
+		new Thread(worker).start();
+
+		parked.await();
+		Thread.sleep(200);
+		assertEquals(LINES - AutoTuner.MIN_BATCH, reader.data.size());
+		assertFalse(worker.isDone());
+
+		isActive.set(true);
+		assertEquals(LINES, worker.get().longValue());
+		assertTrue(reader.data.isEmpty());
+	}
+
+	@Test
+	public void test_call_FlightRecorderEvents() throws Exception {
+		assumeTrue(StageEvents.ENABLED);
+
+		Path file = Files.createTempFile("matcher", ".jfr");
+		try (Recording recording = new Recording()) {
+			recording.enable("com.idt.codechallenge.TokenizeBatch");
+			recording.enable("com.idt.codechallenge.EvaluateBatch");
+			recording.start();
+			ListDataReader reader = reader();
+			new MatcherWorker(reader, reader, (line, queryId, queryWords, wordCounts) -> {}, false, false).call();
+			recording.stop();
+			recording.dump(file);
+
+			int tokenized = 0;
+			int evaluated = 0;
+			long queriesEvaluated = 0;
+			long matches = 0;
+			for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+				assertTrue(event.getInt("records") <= StageEvents.BATCH_SIZE);
+				if ("com.idt.codechallenge.TokenizeBatch".equals(event.getEventType().getName())) {
+					tokenized += event.getInt("records");
+				}
+				else {
+					evaluated += event.getInt("records");
+					queriesEvaluated += event.getLong("queriesEvaluated");
+					matches += event.getLong("matches");
+				}
+			}
+			assertEquals(LINES, tokenized);
+			assertEquals(LINES, evaluated);
+			assertEquals(LINES * 3, queriesEvaluated);
+			assertEquals(LINES, matches);
+		}
+		finally {
+			Files.deleteIfExists(file);
+		}
+	}
+}
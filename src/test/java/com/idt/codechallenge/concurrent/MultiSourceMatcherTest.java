@@ -0,0 +1,151 @@
+package com.idt.codechallenge.concurrent;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import com.idt.codechallenge.AbstractTest;
+import com.idt.codechallenge.JsonMatchSink;
+import com.idt.codechallenge.RecordMatcher;
+
+/**
+ * Collection of JUnit tests for MultiSourceMatcher.
+ */
+@RunWith(PowerMockRunner.class)
+public class MultiSourceMatcherTest extends AbstractTest {
+
+	private List<String> dataFiles;
+	private String queryFile;
+
+	/**
+	 * Test setup - once for all tests.
+	 */
+	@BeforeClass
+	public static void setupAll() {
+		AbstractTest.setupAll();
+	}
+
+	@AfterClass
+	public static void teardownAll() throws IOException {
+		AbstractTest.teardownAll();
+	}
+
+	/**
+	 * Test setup - once for each test: several data files of different sizes (one empty), one query file.
+	 */
+	@Before
+	public void setupOne() throws IOException {
+		Random random = new Random(5);
+		dataFiles = new ArrayList<String>();
+		for (int i = 0; i < 6; i++) {
+			String dataFile = "data-" + i + "-" + UUID.randomUUID() + ".txt";
+			Files.write(getPath(dataFile), lines(random, i * 400, 8).getBytes());
+			dataFiles.add(dataFile);
+		}
+		queryFile = "queries-" + UUID.randomUUID() + ".txt";
+		Files.write(getPath(queryFile), lines(random, 30, 2).getBytes());
+	}
+
+	@After
+	public void teardownOne() throws IOException {
+		for (String dataFile : dataFiles) Files.deleteIfExists(getPath(dataFile));
+		Files.deleteIfExists(getPath(queryFile));
+	}
+
+	/**
+	 * Fewer readers than sources: each source's output is the sequential matcher's, byte for byte.
+	 * @throws Exception
+	 */
+	@Test
+	public void test_match_SameAsSequentialPerSource() throws Exception {
+		Map<String, ByteArrayOutputStream> outputs = new ConcurrentHashMap<String, ByteArrayOutputStream>();
+		MultiSourceMatcher matcher = MultiSourceMatcher.Builder.builder(dataFiles, queryFile)
+				.withReaders(2)
+				.withWorkers(3)
+				.withBatchSize(50)
+				.build();
+		long count = matcher.match(source -> {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			outputs.put(source, out);
+			return new JsonMatchSink(out);
+		});
+
+		long expectedCount = 0;
+		for (String dataFile : dataFiles) {
+			ByteArrayOutputStream expected = new ByteArrayOutputStream();
+			expectedCount += new RecordMatcher(dataFile, queryFile).match(expected);
+			assertEquals(dataFile, expected.toString(), outputs.get(dataFile).toString());
+		}
+		assertTrue(expectedCount > 100);
+		assertEquals(expectedCount, count);
+	}
+
+	/**
+	 * A query with no words (a line ",") matches every record, in every source - same as the sequential matcher.
+	 * @throws Exception
+	 */
+	@Test
+	public void test_match_EmptyQuery() throws Exception {
+		Files.write(getPath(queryFile), "w1,w2\n,\nw3\n".getBytes());
+		Map<String, ByteArrayOutputStream> outputs = new ConcurrentHashMap<String, ByteArrayOutputStream>();
+		long count = MultiSourceMatcher.Builder.builder(dataFiles, queryFile).withBatchSize(50).build().match(source -> {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			outputs.put(source, out);
+			return new JsonMatchSink(out);
+		});
+
+		long expectedCount = 0;
+		for (String dataFile : dataFiles) {
+			ByteArrayOutputStream expected = new ByteArrayOutputStream();
+			expectedCount += new RecordMatcher(dataFile, queryFile).match(expected);
+			assertEquals(dataFile, expected.toString(), outputs.get(dataFile).toString());
+		}
+		// every record, at least
+		assertTrue(expectedCount >= 15 * 400);
+		assertEquals(expectedCount, count);
+	}
+
+	/**
+	 * A missing source fails the run.
+	 * @throws Exception
+	 */
+	@Test(expected = IOException.class)
+	public void test_match_MissingSource() throws Exception {
+		List<String> sources = new ArrayList<String>(dataFiles);
+		sources.add("missing-" + UUID.randomUUID() + ".txt");
+		MultiSourceMatcher.Builder.builder(sources, queryFile).build().match(source -> new JsonMatchSink(new ByteArrayOutputStream()));
+	}
+
+	/**
+	 * A failing sink fails the run, with the sink's own error.
+	 * @throws Exception
+	 */
+	@Test(expected = IOException.class)
+	public void test_match_SinkFails() throws Exception {
+		MultiSourceMatcher.Builder.builder(dataFiles, queryFile).build().match(source -> (line, queryId, queryWords, wordCounts) -> {
+			throw new IOException("sink is full");
+		});
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_newMultiSourceMatcher_NoSources() {
+		MultiSourceMatcher.Builder.builder(Collections.<String>emptyList(), queryFile).build();
+	}
+}
@@ -0,0 +1,147 @@
+package com.idt.codechallenge.concurrent;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.idt.codechallenge.Utils;
+import com.idt.codechallenge.metrics.MatcherMetrics;
+
+/**
+ * Collection of JUnit tests for QueryRegistry.
+ */
+public class QueryRegistryTest {
+
+	@Test
+	public void test_add_match() {
+		QueryRegistry registry = new QueryRegistry();
+		int catDog = registry.add(words("cat,dog"));
+		int askMe = registry.add(words("ask,me"));
+		int wedThu = registry.add(words("wed,thu"));
+
+		assertEquals(3, registry.size());
+		assertArrayEquals(new int[] {catDog, askMe, wedThu}, registry.match(Utils.countWords("ask,me,about,cat,and,dog,on,wed,and,thu")));
+		assertArrayEquals(new int[] {catDog}, registry.match(Utils.countWords("cat,dog,lizard,lizard,lion")));
+		assertArrayEquals(new int[0], registry.match(Utils.countWords("cat,is,an,alien")));
+	}
+
+	@Test
+	public void test_update_remove() {
+		QueryRegistry registry = new QueryRegistry();
+		int first = registry.add(words("cat,dog"));
+		int second = registry.add(words("cat"));
+
+		assertTrue(registry.update(first, words("lion")));
+		assertArrayEquals(new int[] {first, second}, registry.match(Utils.countWords("cat,lion")));
+		assertArrayEquals(new int[] {second}, registry.match(Utils.countWords("cat,dog")));
+		assertEquals(Arrays.asList(words("lion"), words("cat")), registry.getQueries());
+
+		assertTrue(registry.remove(second));
+		assertFalse(registry.remove(second));
+		assertFalse(registry.update(second, words("cat")));
+		assertArrayEquals(new int[0], registry.match(Utils.countWords("cat,dog")));
+		assertEquals(1, registry.getQueries().size());
+	}
+
+	/**
+	 * A query with no words matches every record, in its place by id; it is counted as evaluated. It can be updated and removed like any other.
+	 */
+	@Test
+	public void test_match_EmptyQuery() {
+		QueryRegistry registry = new QueryRegistry();
+		int cat = registry.add(words("cat"));
+		int empty = registry.add(words(","));
+		int dog = registry.add(words("dog"));
+		assertTrue(registry.get(empty).isEmpty());
+
+		long evaluated = MatcherMetrics.global().getQueriesEvaluated();
+		assertArrayEquals(new int[] {cat, empty, dog}, registry.match(Utils.countWords("cat,dog")));
+		assertEquals(3, MatcherMetrics.global().getQueriesEvaluated() - evaluated);
+		assertArrayEquals(new int[] {empty}, registry.match(Utils.countWords("lion")));
+
+		// out of the match-all list, and back into it
+		assertTrue(registry.update(empty, words("lion")));
+		assertArrayEquals(new int[0], registry.match(Utils.countWords("fish")));
+		assertTrue(registry.update(cat, words(",")));
+		assertArrayEquals(new int[] {cat, empty}, registry.match(Utils.countWords("lion")));
+		assertTrue(registry.remove(cat));
+		assertArrayEquals(new int[] {empty, dog}, registry.match(Utils.countWords("lion,dog")));
+		assertEquals(Arrays.asList(words("lion"), words("dog")), registry.getQueries());
+	}
+
+	/**
+	 * Many queries on one anchor: loading them stays linear (a bucket copy per add would take minutes),
+	 * and removes, updates and adds after that still see the right bucket.
+	 */
+	@Test(timeout = 10000)
+	public void test_addAll_OneAnchor() {
+		int count = 200000;
+		List<Set<String>> queries = new ArrayList<Set<String>>();
+		for (int i = 0; i < count; i++) queries.add(Collections.singleton("hot"));
+		QueryRegistry registry = new QueryRegistry();
+		assertEquals(count, registry.addAll(queries));
+
+		int[] ids = registry.match(Utils.countWords("hot,day"));
+		assertEquals(count, ids.length);
+		for (int i = 0; i < count; i++) assertEquals(i, ids[i]);
+
+		assertTrue(registry.remove(7));
+		assertTrue(registry.update(8, words("cold")));
+		int added = registry.add(words("hot"));
+		ids = registry.match(Utils.countWords("hot,day"));
+		assertEquals(count - 1, ids.length);
+		assertEquals(6, ids[6]);
+		assertEquals(9, ids[7]);
+		assertEquals(added, ids[ids.length - 1]);
+		assertArrayEquals(new int[] {8}, registry.match(Utils.countWords("cold")));
+	}
+
+	/**
+	 * Readers keep matching while a writer churns queries: no errors, and a query that is never touched is always found.
+	 * @throws Exception
+	 */
+	@Test
+	public void test_match_WhileChanging() throws Exception {
+		QueryRegistry registry = new QueryRegistry();
+		int stable = registry.add(words("cat,dog"));
+		AtomicBoolean isDone = new AtomicBoolean();
+		AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+		Thread reader = new Thread(() -> {
+			try {
+				while (!isDone.get()) {
+					int[] ids = registry.match(Utils.countWords("cat,dog,lion"));
+					if (Arrays.binarySearch(ids, stable) < 0) throw new AssertionError("stable query not found");
+				}
+			}
+			catch (Throwable t) {
+				error.set(t);
+			}
+		});
+		reader.start();
+
+		for (int i = 0; i < 20000; i++) {
+			int id = registry.add(words("cat,w" + i));
+			registry.update(id, words("dog,lion"));
+			registry.remove(id);
+		}
+		isDone.set(true);
+		reader.join();
+
+		assertNull(error.get());
+		assertEquals(1, registry.size());
+	}
+
+	private static Set<String> words(String line) {
+		return new HashSet<String>(Utils.toQueryWords(line));
+	}
+}
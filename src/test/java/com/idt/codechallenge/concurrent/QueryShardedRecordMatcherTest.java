@@ -0,0 +1,97 @@
+package com.idt.codechallenge.concurrent;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import com.idt.codechallenge.AbstractTest;
+import com.idt.codechallenge.RecordMatcher;
+
+/**
+ * Collection of JUnit tests for QueryShardedRecordMatcher.
+ */
+@RunWith(PowerMockRunner.class)
+public class QueryShardedRecordMatcherTest extends AbstractTest {
+
+	private String dataFile;
+	private String queryFile;
+
+	/**
+	 * Test setup - once for all tests.
+	 */
+	@BeforeClass
+	public static void setupAll() {
+		AbstractTest.setupAll();
+	}
+
+	@AfterClass
+	public static void teardownAll() throws IOException {
+		AbstractTest.teardownAll();
+	}
+
+	/**
+	 * Test setup - once for each test: small vocabulary, so that there are plenty of matches;
+	 * more records than fit in one batch.
+	 */
+	@Before
+	public void setupOne() throws IOException {
+		dataFile = "data-" + UUID.randomUUID() + ".txt";
+		queryFile = "queries-" + UUID.randomUUID() + ".txt";
+		Random random = new Random(7);
+		Files.write(getPath(dataFile), lines(random, 2500, 8).getBytes());
+		Files.write(getPath(queryFile), lines(random, 30, 2).getBytes());
+	}
+
+	@After
+	public void teardownOne() throws IOException {
+		Files.deleteIfExists(getPath(dataFile));
+		Files.deleteIfExists(getPath(queryFile));
+	}
+
+	/**
+	 * Same output, byte for byte, as the sequential matcher - whatever the number of shards
+	 * (more shards than queries included).
+	 * @throws Exception
+	 */
+	@Test
+	public void test_match_SameOrderAsSequential() throws Exception {
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		long expectedCount = new RecordMatcher(dataFile, queryFile).match(expected);
+		assertTrue(expectedCount > 100);
+
+		for (int shards : new int[] {1, 3, 50}) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			long count = new QueryShardedRecordMatcher(dataFile, queryFile, shards, null, null, null).match(out);
+			assertEquals("shards: " + shards, expectedCount, count);
+			assertEquals("shards: " + shards, expected.toString(), out.toString());
+		}
+	}
+
+	/**
+	 * A failing sink stops the run - its error comes out, nothing is left hanging.
+	 * @throws Exception
+	 */
+	@Test(expected = IOException.class)
+	public void test_match_SinkFails() throws Exception {
+		new QueryShardedRecordMatcher(dataFile, queryFile, 3, null, null, null).match((line, queryId, queryWords, wordCounts) -> {
+			throw new IOException("sink is full");
+		});
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_newQueryShardedRecordMatcher_NoShards() {
+		new QueryShardedRecordMatcher(dataFile, queryFile, 0, null, null, null);
+	}
+}
@@ -0,0 +1,81 @@
+package com.idt.codechallenge.metrics;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import org.junit.Test;
+
+/**
+ * Collection of JUnit tests for LatencyHistogram.
+ */
+public class LatencyHistogramTest {
+
+	@Test
+	public void test_index_Contiguous() {
+		// every value falls into its own or the next bucket; bucket tops are where values say they are
+		int last = 0;
+		for (long v = 0; v < 100000; v++) {
+			int index = LatencyHistogram.index(v);
+			assertTrue(index == last || index == last + 1);
+			assertTrue(v <= LatencyHistogram.highestValue(index));
+			if (index > 0) assertTrue(v > LatencyHistogram.highestValue(index - 1));
+			last = index;
+		}
+		long max = (1L << 40) - 1;
+		assertEquals(max, LatencyHistogram.highestValue(LatencyHistogram.index(max)));
+	}
+
+	@Test
+	public void test_getValueAtPercentile() {
+		LatencyHistogram h = new LatencyHistogram();
+		for (long v = 1; v <= 100000; v++) h.record(v * 1000);
+
+		assertEquals(100000, h.getCount());
+		assertEquals(100000000L, h.getMax());
+		assertEquals(50000500d, h.getMean(), 0.5);
+		assertEquals(50000000d, h.getValueAtPercentile(50), 50000000d / 128);
+		assertEquals(99000000d, h.getValueAtPercentile(99), 99000000d / 128);
+		assertEquals(99900000d, h.getValueAtPercentile(99.9), 99900000d / 128);
+		assertEquals(100000000L, h.getValueAtPercentile(100));
+		assertEquals(Long.valueOf(100000), h.getSummary().get("count"));
+	}
+
+	@Test
+	public void test_add() {
+		LatencyHistogram a = new LatencyHistogram();
+		LatencyHistogram b = new LatencyHistogram();
+		for (int i = 0; i < 99; i++) a.record(10);
+		b.record(Long.MAX_VALUE);	// beyond trackable: top bucket, exact max
+		b.record(-5);
+
+		a.add(b);
+		assertEquals(101, a.getCount());
+		assertEquals(10, a.getValueAtPercentile(50));
+		assertEquals(Long.MAX_VALUE, a.getMax());
+		assertEquals(Long.MAX_VALUE, a.getValueAtPercentile(100));
+		assertEquals(2, b.getCount());
+
+		a.reset();
+		assertEquals(0, a.getCount());
+		assertEquals(0, a.getValueAtPercentile(99));
+	}
+
+	@Test
+	public void test_record_NoAllocation() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean)) return;
+		com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean)threads;
+		if (!mx.isThreadAllocatedMemorySupported() || !mx.isThreadAllocatedMemoryEnabled()) return;
+
+		LatencyHistogram h = new LatencyHistogram();
+		long id = Thread.currentThread().getId();
+		// warm-up: whatever the first calls load or compile
+		for (int i = 0; i < 100000; i++) h.record(i);
+		long before = mx.getThreadAllocatedBytes(id);
+		for (int i = 0; i < 1000000; i++) h.record(i * 37L);
+		long allocated = mx.getThreadAllocatedBytes(id) - before;
+		assertTrue("recording should not allocate: " + allocated + " bytes", allocated < 1024);
+	}
+}
@@ -0,0 +1,133 @@
+package com.idt.codechallenge.metrics;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+/**
+ * Collection of JUnit tests for MatcherMetrics.
+ */
+public class MatcherMetricsTest {
+
+	@Test
+	public void test_counters_ManyThreads() throws Exception {
+		MatcherMetrics metrics = new MatcherMetrics();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			threads.add(new Thread(() -> {
+				MatcherMetrics.WorkerTimer timer = metrics.workerTimer(Thread.currentThread().getName());
+				for (int i = 0; i < 10000; i++) {
+					metrics.recordParsed();
+					metrics.queriesEvaluated(3);
+					metrics.queued();
+					metrics.dequeued();
+				}
+				timer.busy(5000000);
+				timer.idle(1000000);
+			}, "worker-" + t));
+		}
+		for (Thread t : threads) t.start();
+		for (Thread t : threads) t.join();
+
+		assertEquals(40000, metrics.getRecordsParsed());
+		assertEquals(120000, metrics.getQueriesEvaluated());
+		assertEquals(0, metrics.getQueueDepth());
+		assertEquals(4, metrics.getWorkerBusyMillis().size());
+		assertEquals(5L, metrics.getWorkerBusyMillis().get("worker-0").longValue());
+		assertEquals(1L, metrics.getWorkerIdleMillis().get("worker-3").longValue());
+
+		metrics.reset();
+		assertEquals(0, metrics.getRecordsParsed());
+		assertEquals(0L, metrics.getWorkerBusyMillis().get("worker-0").longValue());
+	}
+
+	/**
+	 * Runs on threads of the same name, at the same time: each records into its own histograms; none is lost once merged.
+	 * @throws Exception
+	 */
+	@Test
+	public void test_latencyRecorder_SameThreadNames() throws Exception {
+		MatcherMetrics metrics = new MatcherMetrics();
+		MatcherMetrics.LatencyRecorder running = metrics.latencyRecorder();
+		running.record(5);
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 8; t++) {
+			// two pools reusing the same names
+			threads.add(new Thread(() -> {
+				MatcherMetrics.LatencyRecorder latency = metrics.latencyRecorder();
+				try {
+					for (int i = 0; i < 10000; i++) {
+						latency.record(i);
+						latency.emit(i);
+					}
+				}
+				finally {
+					metrics.merge(latency);
+				}
+			}, "pool-1-thread-" + (t % 4)));
+		}
+		for (Thread t : threads) t.start();
+		for (Thread t : threads) t.join();
+
+		// the run still going is counted too
+		assertEquals(80001, metrics.getRecordLatency().getCount());
+		assertEquals(80000, metrics.getEmitLatency().getCount());
+		assertEquals(9999, metrics.getRecordLatency().getMax());
+
+		metrics.merge(running);
+		metrics.merge(running);
+		assertEquals(80001, metrics.getRecordLatency().getCount());
+
+		metrics.reset();
+		assertEquals(0, metrics.getRecordLatency().getCount());
+	}
+
+	@Test
+	public void test_countingStreams() throws Exception {
+		MatcherMetrics metrics = new MatcherMetrics();
+		try (InputStream in = new CountingInputStream(new ByteArrayInputStream(new byte[100]), metrics)) {
+			in.read();
+			in.read(new byte[50]);
+			in.skip(10);
+			in.read(new byte[100]);
+		}
+		assertEquals(100, metrics.getBytesRead());
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (OutputStream out = new CountingOutputStream(bytes, metrics)) {
+			out.write('x');
+			out.write(new byte[20], 5, 10);
+		}
+		assertEquals(11, metrics.getOutputBytes());
+		assertEquals(11, bytes.size());
+	}
+
+	@Test
+	public void test_register() throws Exception {
+		MatcherMetrics metrics = MatcherMetrics.global();
+		metrics.register();
+		metrics.register();	// second time: no-op
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(MatcherMetrics.OBJECT_NAME);
+			assertTrue(server.isRegistered(name));
+			metrics.matchesEmitted(7);
+			assertEquals(metrics.getMatchesEmitted(), ((Long)server.getAttribute(name, "MatchesEmitted")).longValue());
+		}
+		finally {
+			metrics.unregister();
+		}
+		assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName(MatcherMetrics.OBJECT_NAME)));
+	}
+}
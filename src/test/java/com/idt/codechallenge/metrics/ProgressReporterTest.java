@@ -0,0 +1,52 @@
+package com.idt.codechallenge.metrics;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.junit.Test;
+
+/**
+ * Collection of JUnit tests for ProgressReporter.
+ */
+public class ProgressReporterTest {
+
+	@Test
+	public void test_line() throws Exception {
+		MatcherMetrics metrics = new MatcherMetrics();
+		// counted before start: not progress
+		metrics.dataBytesRead(1000);
+		for (int i = 0; i < 30; i++) metrics.recordParsed();
+		metrics.matchesEmitted(1);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ProgressReporter progress = new ProgressReporter(metrics, 10000, 60000, new PrintStream(bytes, true));
+		progress.start();
+		try {
+			metrics.dataBytesRead(2500);
+			for (int i = 0; i < 50; i++) metrics.recordParsed();
+			String line = progress.line(System.nanoTime());
+			assertTrue(line, line.startsWith("progress: 25.0% | records: 50 "));
+			assertTrue(line, line.contains("| matches: 0 "));
+			assertTrue(line, line.contains("| ETA: "));
+
+			// half of what was read is still queued
+			for (int i = 0; i < 50; i++) metrics.queued();
+			line = progress.line(System.nanoTime());
+			assertTrue(line, line.startsWith("progress: 12.5% "));
+			assertTrue(line, line.contains("| queued: 50 "));
+		}
+		finally {
+			progress.stop();
+		}
+		assertTrue(bytes.toString().startsWith("progress: "));
+	}
+
+	@Test
+	public void test_line_UnknownSize() {
+		ProgressReporter progress = new ProgressReporter(new MatcherMetrics(), -1, 1000, System.err);
+		String line = progress.line(System.nanoTime());
+		assertTrue(line, line.startsWith("progress: records: 0 "));
+		assertFalse(line, line.contains("ETA"));
+	}
+}
@@ -0,0 +1,73 @@
+package com.idt.codechallenge.metrics;
+
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Collection of JUnit tests for QueryProfiler.
+ */
+public class QueryProfilerTest {
+
+	/**
+	 * Two threads' recorders add up; the query that took the time comes first.
+	 */
+	@Test
+	public void test_getStats_Ranked() throws Exception {
+		QueryProfiler profiler = new QueryProfiler(2);
+		profiler.query(0, new HashSet<String>(Arrays.asList("cheap")));
+		profiler.query(1, new HashSet<String>(Arrays.asList("hot")));
+
+		QueryProfiler.Recorder r1 = profiler.recorder();
+		QueryProfiler.Recorder r2 = profiler.recorder();
+		for (long row = 1; row <= 10; row++) {
+			for (QueryProfiler.Recorder r : Arrays.asList(r1, r2)) {
+				boolean isSampled = r.isSampled(row);
+				r.matched(1, 100);
+				if (isSampled) {
+					r.sampled(0, 10);
+					r.sampled(1, 1000);
+				}
+				r.evaluated(2, isSampled);
+			}
+		}
+
+		List<QueryProfiler.QueryStats> stats = profiler.getStats();
+		assertEquals(2, stats.size());
+		QueryProfiler.QueryStats hot = stats.get(0);
+		assertEquals(1, hot.getRank());
+		assertEquals("hot", hot.getQuery());
+		assertEquals(20, hot.getEvaluations());
+		assertEquals(20, hot.getMatches());
+		assertEquals(1.0, hot.getMatchRate(), 0);
+		assertEquals(2000, hot.getOutputChars());
+		assertEquals(10000, hot.getSampledNanos());
+		// half of the rows sampled: estimate is twice the sampled time
+		assertEquals(0.02, hot.getEstimatedMillis(), 1e-9);
+		assertEquals(1000d / 1010d, hot.getTimeShare(), 1e-9);
+		assertEquals(0, stats.get(1).getMatches());
+
+		StringWriter json = new StringWriter();
+		profiler.writeReport("profile.JSON", json);
+		JsonArray array = new JsonParser().parse(json.toString()).getAsJsonArray();
+		assertEquals(2, array.size());
+		JsonObject first = array.get(0).getAsJsonObject();
+		assertEquals("hot", first.get("query").getAsString());
+		assertEquals(2000, first.get("outputChars").getAsLong());
+		assertFalse(first.has("estimatedNanos"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_new_InvalidSampling() {
+		new QueryProfiler(0);
+	}
+}
@@ -0,0 +1,224 @@
+package com.idt.codechallenge.perf;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.idt.codechallenge.MatcherRunner;
+import com.idt.codechallenge.WorkloadGenerator;
+import com.idt.codechallenge.metrics.MatcherMetrics;
+
+/**
+ * <pre>
+ * Performance regression gate: runs a fixed set of end-to-end scenarios through MatcherRunner
+ * on generated (seeded - always the same) data, and compares them with a committed baseline.
+ *
+ * Run by the "perf" Maven profile:
+ * mvn -Pperf verify                      - fails the build on a regression
+ * mvn -Pperf verify -Dperf.update=true   - writes the results as the new baseline (commit it)
+ *
+ * Per scenario: warm-up (at least 2 runs and 2 s), then -Dperf.runs (default 5) measured runs; the best of them counts.
+ * - throughput: records/s;
+ * - allocation: bytes allocated by the reading and matching threads (ThreadMXBean.getThreadAllocatedBytes,
+ *   see MatcherMetrics.getAllocatedBytes), per record - and per second, for information.
+ *
+ * Regression: throughput below baseline by more than the throughputDrop tolerance,
+ * or allocation per record above baseline by more than the allocationGrowth tolerance (both in the baseline file).
+ * Allocation per record hardly depends on the machine: its tolerance is tight.
+ * Throughput does, and is noisy even on one machine (JIT, GC, neighbours): its tolerance is loose - catches
+ * gross slowdowns only. Re-baseline on the machine the gate runs on.
+ *
+ * Args: baseline file, work directory (data and results go there).
+ * </pre>
+ */
+public class PerfRegression {
+
+	private final static long SEED = 42;
+	private final static int RECORDS = 200000;
+	private final static int FEW_RECORDS = 20000;
+	private final static int FEW_QUERIES = 10;
+	private final static int MANY_QUERIES = 200;
+	private final static int WARMUP_RUNS = 2;
+	private final static long WARMUP_NANOS = 2000000000L;
+
+	/**
+	 * Baseline/results file layout.
+	 */
+	static class Baseline {
+		Map<String, Double> tolerances = new LinkedHashMap<String, Double>();
+		Map<String, Result> scenarios = new LinkedHashMap<String, Result>();
+	}
+
+	static class Result {
+		double recordsPerSecond;
+		double allocatedBytesPerRecord;
+		double allocatedMBPerSecond;
+	}
+
+	private static class Scenario {
+		final String name;
+		final long records;
+		final String[] args;
+
+		Scenario(String n, long r, String... a) {
+			name = n;
+			records = r;
+			args = a;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		Path baselineFile = Paths.get(args.length > 0? args[0] : "src/test/resources/perf/baseline.json");
+		Path workDir = Paths.get(args.length > 1? args[1] : "target/perf");
+		boolean isUpdate = Boolean.getBoolean("perf.update");
+		int runs = Integer.getInteger("perf.runs", 5);
+
+		if (MatcherMetrics.threadAllocatedBytes() < 0) throw new IllegalStateException("This JVM cannot count allocated bytes per thread");
+
+		Files.createDirectories(workDir);
+		String data = workDir.resolve("records.txt").toString();
+		String fewData = workDir.resolve("records-few.txt").toString();
+		String fewQueries = workDir.resolve("queries-few.txt").toString();
+		String manyQueries = workDir.resolve("queries-many.txt").toString();
+		WorkloadGenerator generator = WorkloadGenerator.Builder.builder().withSeed(SEED).withSelectivity(0.001).build();
+		generator.writeData(data, RECORDS);
+		generator.writeData(fewData, FEW_RECORDS);
+		generator.writeQueries(fewQueries, FEW_QUERIES);
+		generator.writeQueries(manyQueries, MANY_QUERIES);
+
+		List<Scenario> scenarios = Arrays.asList(
+				new Scenario("sequential-few-queries", RECORDS, "-oq", data, fewQueries),
+				new Scenario("sequential-many-queries", RECORDS, "-oq", data, manyQueries),
+				new Scenario("sequential-preload-data", RECORDS, "-oq", "-od", data, manyQueries),
+				// queries re-read for every record: kept small
+				new Scenario("sequential-no-preload", FEW_RECORDS, fewData, fewQueries),
+				new Scenario("concurrent-few-queries", RECORDS, "-c", "-w", "2", data, fewQueries),
+				new Scenario("concurrent-many-queries", RECORDS, "-c", "-w", "4", data, manyQueries)
+				);
+
+		Baseline baseline = (Files.exists(baselineFile)? read(baselineFile) : new Baseline());
+		double throughputDrop = baseline.tolerances.getOrDefault("throughputDrop", 0.50);
+		double allocationGrowth = baseline.tolerances.getOrDefault("allocationGrowth", 0.10);
+
+		Baseline results = new Baseline();
+		results.tolerances.put("throughputDrop", throughputDrop);
+		results.tolerances.put("allocationGrowth", allocationGrowth);
+		List<String> regressions = new ArrayList<String>();
+
+		for (Scenario s : scenarios) {
+			// warm-up: the short scenarios would otherwise be measured half-compiled
+			long warmUntil = System.nanoTime() + WARMUP_NANOS;
+			for (int i = 0; i < WARMUP_RUNS || System.nanoTime() < warmUntil; i++) run(s);
+			// best of the runs: highest throughput, lowest allocation
+			Result best = new Result();
+			best.allocatedBytesPerRecord = Double.MAX_VALUE;
+			for (int i = 0; i < runs; i++) {
+				Result r = run(s);
+				if (r.recordsPerSecond > best.recordsPerSecond) {
+					best.recordsPerSecond = r.recordsPerSecond;
+					best.allocatedMBPerSecond = r.allocatedMBPerSecond;
+				}
+				best.allocatedBytesPerRecord = Math.min(best.allocatedBytesPerRecord, r.allocatedBytesPerRecord);
+			}
+			results.scenarios.put(s.name, best);
+
+			Result base = baseline.scenarios.get(s.name);
+			String verdict = "no baseline";
+			if (base != null) {
+				List<String> problems = new ArrayList<String>();
+				if (best.recordsPerSecond < base.recordsPerSecond * (1 - throughputDrop)) {
+					problems.add(String.format(Locale.ROOT, "throughput %.0f rec/s < baseline %.0f - %.0f%%", best.recordsPerSecond, base.recordsPerSecond, throughputDrop * 100));
+				}
+				if (best.allocatedBytesPerRecord > base.allocatedBytesPerRecord * (1 + allocationGrowth)) {
+					problems.add(String.format(Locale.ROOT, "allocation %.0f B/rec > baseline %.0f + %.0f%%", best.allocatedBytesPerRecord, base.allocatedBytesPerRecord, allocationGrowth * 100));
+				}
+				verdict = (problems.isEmpty()? String.format(Locale.ROOT, "OK (%+.1f%% rec/s, %+.1f%% B/rec)",
+						100 * (best.recordsPerSecond / base.recordsPerSecond - 1), 100 * (best.allocatedBytesPerRecord / base.allocatedBytesPerRecord - 1))
+						: "REGRESSION: " + String.join("; ", problems));
+				if (!problems.isEmpty()) regressions.add(s.name + ": " + String.join("; ", problems));
+			}
+			System.out.println(String.format(Locale.ROOT, "%-26s %,12.0f rec/s %,10.0f B/rec %,8.1f MB/s alloc  %s",
+					s.name, best.recordsPerSecond, best.allocatedBytesPerRecord, best.allocatedMBPerSecond, verdict));
+		}
+
+		write(results, workDir.resolve("perf-results.json"));
+		if (isUpdate) {
+			Files.createDirectories(baselineFile.toAbsolutePath().getParent());
+			write(results, baselineFile);
+			System.out.println("Baseline written to " + baselineFile);
+			return;
+		}
+		if (!regressions.isEmpty()) {
+			System.out.println("Performance regressions:");
+			regressions.forEach(r -> System.out.println("  " + r));
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * One run of the scenario through MatcherRunner; output (results included) is thrown away.
+	 */
+	private static Result run(Scenario s) {
+		MatcherMetrics metrics = MatcherMetrics.global();
+		metrics.reset();
+		PrintStream stdout = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+			}
+		}));
+		long start = System.nanoTime();
+		try {
+			MatcherRunner.main(s.args);
+		}
+		finally {
+			System.setOut(stdout);
+		}
+		double seconds = (System.nanoTime() - start) / 1e9d;
+
+		// MatcherRunner reports errors, it does not throw them: a run that did not go through is caught here
+		if (metrics.getRecordsParsed() != s.records) {
+			throw new IllegalStateException(s.name + ": expected " + s.records + " records, got " + metrics.getRecordsParsed());
+		}
+		Result r = new Result();
+		r.recordsPerSecond = round(s.records / seconds);
+		r.allocatedBytesPerRecord = round((double)metrics.getAllocatedBytes() / s.records);
+		r.allocatedMBPerSecond = round(metrics.getAllocatedBytes() / seconds / (1024d * 1024d));
+		return r;
+	}
+
+	private static double round(double d) {
+		return Math.round(d * 10) / 10d;
+	}
+
+	private static Baseline read(Path file) throws IOException {
+		try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			return new Gson().fromJson(in, Baseline.class);
+		}
+	}
+
+	private static void write(Baseline b, Path file) throws IOException {
+		try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			new GsonBuilder().setPrettyPrinting().create().toJson(b, out);
+			out.write("\n");
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package com.idt.codechallenge.server;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.idt.codechallenge.DataIndex;
+import com.idt.codechallenge.RecordMatcher;
+
+/**
+ * Collection of JUnit tests for MatcherServer: a real server, on a free port of the loopback interface.
+ */
+public class MatcherServerTest {
+
+	private final static String DATA =
+			"cat,dog,lizard,lizard,lion\n"
+			+"du,du,du,da,da,da\n"
+			+"cat,is,an,alien\n"
+			+"mon,tue,wed,thu,fri,sat,mon\n"
+			+"ask,me,about,cat,and,dog,on,wed,and,thu\n";
+	private final static String QUERIES =
+			"cat,dog\n"
+			+"wed,thu\n"
+			+"cat,unknown\n";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File data;
+	private MatcherServer server;
+	private int port;
+
+	@Before
+	public void setupOne() throws Exception {
+		data = folder.newFile("data.txt");
+		Files.write(data.toPath(), DATA.getBytes(StandardCharsets.UTF_8));
+		server = new MatcherServer(DataIndex.load(data.getPath(), 100), 0, 2, false);
+		port = server.start();
+	}
+
+	@After
+	public void teardownOne() {
+		server.stop();
+	}
+
+	/**
+	 * A batch of queries posted: the JSON lines RecordMatcher gives for the same data and queries.
+	 * @throws Exception
+	 */
+	@Test
+	public void test_match() throws Exception {
+		File queries = folder.newFile("queries.txt");
+		Files.write(queries.toPath(), QUERIES.getBytes(StandardCharsets.UTF_8));
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		assertEquals(4, new RecordMatcher(data.getPath(), queries.getPath()).match(expected));
+
+		HttpURLConnection connection = open("/match");
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		try (OutputStream out = connection.getOutputStream()) {
+			out.write(QUERIES.getBytes(StandardCharsets.UTF_8));
+		}
+		assertEquals(200, connection.getResponseCode());
+		assertEquals("application/x-ndjson", connection.getContentType());
+		String body = read(connection);
+		assertEquals(expected.toString("UTF-8"), body);
+		assertTrue(body.startsWith("{\"line\":1,\"query\":\"[cat, dog]\",\"result\":{"));
+
+		// the index is not used up: same batch, same answer
+		connection = open("/match");
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		try (OutputStream out = connection.getOutputStream()) {
+			out.write(QUERIES.getBytes(StandardCharsets.UTF_8));
+		}
+		assertEquals(body, read(connection));
+	}
+
+	@Test
+	public void test_status() throws Exception {
+		HttpURLConnection connection = open("/status");
+		assertEquals(200, connection.getResponseCode());
+		assertEquals("{\"records\":5,\"words\":20}", read(connection));
+	}
+
+	@Test
+	public void test_match_NotPost() throws Exception {
+		assertEquals(405, open("/match").getResponseCode());
+	}
+
+	private HttpURLConnection open(String path) throws Exception {
+		return (HttpURLConnection)new URL("http://127.0.0.1:" + port + path).openConnection();
+	}
+
+	private static String read(HttpURLConnection connection) throws Exception {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		try (InputStream in = connection.getInputStream()) {
+			byte[] buffer = new byte[4096];
+			int n;
+			while ((n = in.read(buffer)) > 0) body.write(buffer, 0, n);
+		}
+		return body.toString("UTF-8");
+	}
+}